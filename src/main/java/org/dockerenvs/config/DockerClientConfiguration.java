@@ -7,6 +7,7 @@ import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
 import com.github.dockerjava.httpclient5.ApacheDockerHttpClient.Builder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 import java.time.Duration;
 
@@ -17,6 +18,7 @@ import java.time.Duration;
 public class DockerClientConfiguration {
 
     @Bean
+    @Primary
     public DockerClient dockerClient() {
         DefaultDockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder().build();
 
@@ -32,5 +34,22 @@ public class DockerClientConfiguration {
 
         return DockerClientImpl.getInstance(config, httpClient);
     }
-}
 
+    /**
+     * 事件流专用客户端：事件流是长连接，空闲时可能长时间没有数据，不能套用30秒的响应超时
+     */
+    @Bean
+    public DockerClient dockerEventsClient() {
+        DefaultDockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder().build();
+
+        ApacheDockerHttpClient httpClient = new ApacheDockerHttpClient.Builder()
+            .dockerHost(config.getDockerHost())
+            .sslConfig(config.getSSLConfig())
+            .connectionTimeout(Duration.ofSeconds(10))
+            .responseTimeout(Duration.ZERO)
+            .maxConnections(2)
+            .build();
+
+        return DockerClientImpl.getInstance(config, httpClient);
+    }
+}
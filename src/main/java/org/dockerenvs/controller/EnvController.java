@@ -2,14 +2,23 @@ package org.dockerenvs.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.dockerenvs.dto.ApiResponse;
+import org.dockerenvs.dto.BatchStartRequest;
 import org.dockerenvs.dto.EnvInfo;
+import org.dockerenvs.dto.EnvJob;
 import org.dockerenvs.dto.StartEnvRequest;
+import org.dockerenvs.service.AdmissionControlService;
+import org.dockerenvs.service.EnvActivityService;
+import org.dockerenvs.service.EnvJobService;
 import org.dockerenvs.service.EnvManagerService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 环境管理 REST API
@@ -22,6 +31,15 @@ public class EnvController {
     @Autowired
     private EnvManagerService envManagerService;
     
+    @Autowired
+    private EnvJobService envJobService;
+    
+    @Autowired
+    private EnvActivityService envActivityService;
+    
+    @Autowired
+    private AdmissionControlService admissionControlService;
+    
     /**
      * 启动/创建环境
      * POST /api/env/start
@@ -34,6 +52,48 @@ public class EnvController {
         return ResponseEntity.ok(ApiResponse.success(envInfo, "环境启动成功"));
     }
     
+    /**
+     * 异步创建环境（立即返回任务，创建在后台执行）
+     * POST /api/env/jobs
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<ApiResponse<EnvJob>> submitEnvJob(@RequestBody StartEnvRequest request) {
+        log.info("提交环境创建任务: userId={}, systemId={}, expId={}", 
+            request.getUserId(), request.getSystemId(), request.getExpId());
+        EnvJob job = envJobService.submit(request);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ApiResponse.success(job, "创建任务已提交"));
+    }
+    
+    /**
+     * 查询创建任务状态
+     * GET /api/env/jobs/{jobId}
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ApiResponse<EnvJob>> getEnvJob(@PathVariable String jobId) {
+        return ResponseEntity.ok(ApiResponse.success(envJobService.getJob(jobId)));
+    }
+    
+    /**
+     * 订阅创建任务进度（SSE，事件名 progress）
+     * GET /api/env/jobs/{jobId}/events
+     */
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeEnvJob(@PathVariable String jobId) {
+        log.info("订阅创建任务进度: jobId={}", jobId);
+        return envJobService.subscribe(jobId);
+    }
+    
+    /**
+     * 批量创建环境（同一实验、多个用户），以 SSE 逐个返回用户结果
+     * POST /api/env/batch-start
+     */
+    @PostMapping(value = "/batch-start", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter batchStartEnv(@RequestBody BatchStartRequest request) {
+        log.info("批量创建环境请求: systemId={}, expId={}, 用户数={}", request.getSystemId(), request.getExpId(),
+            request.getUserIds() != null ? request.getUserIds().size() : 0);
+        return envJobService.submitBatch(request);
+    }
+    
     /**
      * 停止环境
      * POST /api/env/stop
@@ -46,7 +106,18 @@ public class EnvController {
     }
     
     /**
-     * 启动已停止的环境（启动已存在的容器）
+     * 冻结环境（docker pause，保留内存状态，启动时毫秒级恢复）
+     * POST /api/env/pause
+     */
+    @PostMapping("/pause")
+    public ResponseEntity<ApiResponse<Object>> pauseEnv(@RequestParam String envId) {
+        log.info("冻结环境: envId={}", envId);
+        envManagerService.pauseEnv(envId);
+        return ResponseEntity.ok(ApiResponse.success(null, "环境冻结成功"));
+    }
+    
+    /**
+     * 启动已停止的环境（启动已存在的容器，已冻结的环境直接解冻）
      * POST /api/env/start-existing
      */
     @PostMapping("/start-existing")
@@ -104,6 +175,31 @@ public class EnvController {
         return ResponseEntity.ok(ApiResponse.success(null, "环境销毁成功"));
     }
     
+    /**
+     * 批量销毁环境（按实验/用户/系统过滤，至少指定一个）
+     * POST /api/env/batch-destroy?expId=xxx&userId=xxx&systemId=xxx
+     */
+    @PostMapping("/batch-destroy")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> batchDestroyEnv(
+            @RequestParam(required = false) String expId,
+            @RequestParam(required = false) String userId,
+            @RequestParam(required = false) String systemId) {
+        log.info("批量销毁环境请求: expId={}, userId={}, systemId={}", expId, userId, systemId);
+        Map<String, Object> summary = envManagerService.destroyEnvs(expId, userId, systemId,
+            EnvManagerService.REASON_MANUAL);
+        return ResponseEntity.ok(ApiResponse.success(summary, "环境批量销毁完成"));
+    }
+    
+    /**
+     * 环境心跳（前端页面定期上报，用于空闲回收判断）
+     * POST /api/env/{envId}/heartbeat
+     */
+    @PostMapping("/{envId}/heartbeat")
+    public ResponseEntity<ApiResponse<Object>> heartbeat(@PathVariable String envId) {
+        envActivityService.touchEnv(envId);
+        return ResponseEntity.ok(ApiResponse.success(null));
+    }
+    
     /**
      * 查询环境状态
      * GET /api/env/{envId}/status
@@ -130,6 +226,15 @@ public class EnvController {
         return ResponseEntity.ok(ApiResponse.success(envs));
     }
     
+    /**
+     * 查询用户正在等待主机资源的创建请求及排队位置
+     * GET /api/env/queue/{userId}
+     */
+    @GetMapping("/queue/{userId}")
+    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> getUserQueue(@PathVariable String userId) {
+        return ResponseEntity.ok(ApiResponse.success(admissionControlService.getUserQueue(userId)));
+    }
+    
     /**
      * 查询所有环境（管理用）
      * GET /api/env/all
@@ -0,0 +1,383 @@
+package org.dockerenvs.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.dockerenvs.exception.EnvException;
+import org.dockerenvs.exception.EnvNotFoundException;
+import org.dockerenvs.service.EnvActivityService;
+import org.dockerenvs.service.EnvGatewayService;
+import org.dockerenvs.socket.EnvGatewayWebSocketHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+import org.springframework.web.socket.server.support.WebSocketHttpRequestHandler;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.AsyncContext;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 环境网关：把 /{envId}/... 或 {envId}.{domain} 的请求转发到环境容器（路由见 EnvGatewayService）
+ * - HTTP 请求和响应体流式转发，上游使用连接池中的长连接（按环境地址限制连接数）
+ * - HTTP 转发以异步请求交给网关专用线程池执行，Tomcat 工作线程立即归还；等待慢速或流式环境响应
+ *   只占用网关线程，不会耗尽管理接口所用的工作线程，网关线程和队列都满时直接返回 503
+ * - WebSocket 升级请求在这里完成握手，由 EnvGatewayWebSocketHandler 双向转发
+ * - 路径路由时改写响应的 Location 和 Set-Cookie 路径，使跳转和 Cookie 限定在环境前缀下
+ * 不匹配网关路由的请求直接交给后续过滤器
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class EnvGatewayFilter extends OncePerRequestFilter {
+
+    /**
+     * 逐跳请求头，不转发（Content-Length 由请求体重新生成）
+     */
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList(
+        "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "proxy-connection",
+        "te", "trailer", "transfer-encoding", "upgrade", "host", "content-length"));
+
+    private static final Pattern COOKIE_PATH = Pattern.compile("(?i)(;\\s*path=)([^;]*)");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final EnvGatewayService envGatewayService;
+    private final EnvActivityService envActivityService;
+    private final CloseableHttpClient httpClient;
+    private final ThreadPoolExecutor proxyExecutor;
+    private final WebSocketHttpRequestHandler webSocketRequestHandler;
+
+    public EnvGatewayFilter(EnvGatewayService envGatewayService,
+                            EnvActivityService envActivityService,
+                            EnvGatewayWebSocketHandler webSocketHandler,
+                            @Value("${env.gateway.max-connections:1024}") int maxConnections,
+                            @Value("${env.gateway.max-connections-per-env:32}") int maxConnectionsPerEnv,
+                            @Value("${env.gateway.connect-timeout-ms:3000}") long connectTimeoutMs,
+                            @Value("${env.gateway.response-timeout-ms:300000}") long responseTimeoutMs,
+                            @Value("${env.gateway.idle-connection-seconds:30}") long idleConnectionSeconds,
+                            @Value("${env.gateway.proxy-threads:200}") int proxyThreads,
+                            @Value("${env.gateway.proxy-queue-size:200}") int proxyQueueSize) {
+        this.envGatewayService = envGatewayService;
+        this.envActivityService = envActivityService;
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnectionsPerEnv)
+            .build();
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                .build())
+            // 原样转发：不跟随跳转、不管理 Cookie、不解压、不重试
+            .disableRedirectHandling()
+            .disableCookieManagement()
+            .disableContentCompression()
+            .disableAutomaticRetries()
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.ofSeconds(idleConnectionSeconds))
+            .build();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.proxyExecutor = new ThreadPoolExecutor(proxyThreads, proxyThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(Math.max(proxyQueueSize, 1)), r -> {
+                Thread thread = new Thread(r, "env-gateway-proxy-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.proxyExecutor.allowCoreThreadTimeOut(true);
+
+        // 浏览器请求的子协议原样接受，并在连接上游时带上
+        DefaultHandshakeHandler handshakeHandler = new DefaultHandshakeHandler() {
+            @Override
+            protected String selectProtocol(List<String> requestedProtocols, WebSocketHandler webSocketHandler) {
+                return requestedProtocols.isEmpty() ? null : requestedProtocols.get(0);
+            }
+        };
+        this.webSocketRequestHandler = new WebSocketHttpRequestHandler(webSocketHandler, handshakeHandler);
+        this.webSocketRequestHandler.setHandshakeInterceptors(
+            Collections.singletonList(new GatewayHandshakeInterceptor()));
+        this.webSocketRequestHandler.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        webSocketRequestHandler.stop();
+        proxyExecutor.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.warn("关闭网关连接池失败", e);
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        EnvGatewayService.RouteMatch match = envGatewayService.matchRequest(request);
+        if (match == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        envGatewayService.recordRequest();
+        String envId = match.getEnvId();
+
+        // /{envId} 不带斜杠时跳转，保证页面中的相对路径落在环境前缀下
+        if (!match.getUpstreamPath().startsWith("/")) {
+            response.sendRedirect(match.getPrefix() + "/" + match.getUpstreamPath());
+            return;
+        }
+
+        String address;
+        try {
+            address = envGatewayService.resolveUpstream(envId);
+        } catch (EnvException e) {
+            envGatewayService.recordRejected();
+            boolean notFound = EnvNotFoundException.ERROR_CODE.equals(e.getErrorCode());
+            reject(response, notFound ? HttpServletResponse.SC_NOT_FOUND : HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                e.getMessage());
+            return;
+        }
+        envActivityService.touchEnv(envId);
+
+        if ("websocket".equalsIgnoreCase(request.getHeader("Upgrade"))) {
+            request.setAttribute(EnvGatewayWebSocketHandler.UPSTREAM_URI_ATTRIBUTE,
+                URI.create("ws://" + address + match.getUpstreamPath()));
+            request.setAttribute(EnvGatewayWebSocketHandler.ENV_ID_ATTRIBUTE, envId);
+            webSocketRequestHandler.handleRequest(request, response);
+            return;
+        }
+        proxyAsync(request, response, match, address);
+    }
+
+    /**
+     * 转为异步请求，在网关线程池中转发；超时由上游连接的响应超时控制，异步请求本身不设超时
+     */
+    private void proxyAsync(HttpServletRequest request, HttpServletResponse response,
+                            EnvGatewayService.RouteMatch match, String address) throws IOException {
+        if (!request.isAsyncSupported()) {
+            // 过滤器链中有不支持异步的组件时只能在当前线程转发
+            proxyHttp(request, response, match, address);
+            return;
+        }
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(0);
+        try {
+            proxyExecutor.execute(() -> {
+                try {
+                    proxyHttp(request, response, match, address);
+                } catch (Exception e) {
+                    log.debug("网关转发失败: envId={}, path={}, error={}", match.getEnvId(), match.getUpstreamPath(),
+                        e.getMessage());
+                } finally {
+                    asyncContext.complete();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            envGatewayService.recordRejected();
+            log.warn("网关转发线程已满: envId={}, active={}, queued={}", match.getEnvId(),
+                proxyExecutor.getActiveCount(), proxyExecutor.getQueue().size());
+            try {
+                reject(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "网关繁忙，请稍后重试");
+            } finally {
+                asyncContext.complete();
+            }
+        }
+    }
+
+    private void proxyHttp(HttpServletRequest request, HttpServletResponse response,
+                           EnvGatewayService.RouteMatch match, String address) throws IOException {
+        BasicClassicHttpRequest upstreamRequest = new BasicClassicHttpRequest(request.getMethod(),
+            URI.create("http://" + address + match.getUpstreamPath()));
+        copyRequestHeaders(request, upstreamRequest, match);
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > 0 || request.getHeader("Transfer-Encoding") != null) {
+            // Content-Type 已作为普通请求头转发
+            upstreamRequest.setEntity(new InputStreamEntity(request.getInputStream(), contentLength, null));
+        }
+
+        try {
+            httpClient.execute(upstreamRequest, upstreamResponse -> {
+                copyResponse(upstreamResponse, response, match, address);
+                return null;
+            });
+        } catch (ConnectException | NoRouteToHostException | ConnectTimeoutException e) {
+            // 容器已停止或地址已变化，路由失效后下次请求重新解析
+            envGatewayService.recordUpstreamError(match.getEnvId());
+            log.warn("网关连接环境失败: envId={}, upstream={}, error={}", match.getEnvId(), address, e.getMessage());
+            reject(response, HttpServletResponse.SC_BAD_GATEWAY, "环境服务不可达: " + match.getEnvId());
+        } catch (SocketTimeoutException e) {
+            log.warn("网关等待环境响应超时: envId={}, path={}", match.getEnvId(), match.getUpstreamPath());
+            reject(response, HttpServletResponse.SC_GATEWAY_TIMEOUT, "环境响应超时: " + match.getEnvId());
+        } catch (IOException e) {
+            // 多为浏览器中途断开，响应已开始时只能放弃
+            log.debug("网关转发中断: envId={}, path={}, error={}", match.getEnvId(), match.getUpstreamPath(),
+                e.getMessage());
+            reject(response, HttpServletResponse.SC_BAD_GATEWAY, "转发失败: " + e.getMessage());
+        }
+    }
+
+    private void copyRequestHeaders(HttpServletRequest request, BasicClassicHttpRequest upstreamRequest,
+                                    EnvGatewayService.RouteMatch match) {
+        for (String name : Collections.list(request.getHeaderNames())) {
+            if (HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.ROOT))
+                || name.toLowerCase(Locale.ROOT).startsWith("x-forwarded-")) {
+                continue;
+            }
+            for (String value : Collections.list(request.getHeaders(name))) {
+                upstreamRequest.addHeader(name, value);
+            }
+        }
+        String forwardedFor = request.getHeader("X-Forwarded-For");
+        upstreamRequest.setHeader("X-Forwarded-For", forwardedFor != null
+            ? forwardedFor + ", " + request.getRemoteAddr() : request.getRemoteAddr());
+        upstreamRequest.setHeader("X-Forwarded-Proto", request.getScheme());
+        upstreamRequest.setHeader("X-Forwarded-Host", request.getHeader("Host"));
+        if (!match.getPrefix().isEmpty()) {
+            upstreamRequest.setHeader("X-Forwarded-Prefix", match.getPrefix());
+        }
+    }
+
+    private void copyResponse(ClassicHttpResponse upstreamResponse, HttpServletResponse response,
+                              EnvGatewayService.RouteMatch match, String address) throws IOException {
+        response.setStatus(upstreamResponse.getCode());
+        for (Header header : upstreamResponse.getHeaders()) {
+            String name = header.getName().toLowerCase(Locale.ROOT);
+            if (HOP_BY_HOP_HEADERS.contains(name) && !"content-length".equals(name)) {
+                continue;
+            }
+            String value = header.getValue();
+            if ("location".equals(name)) {
+                value = rewriteLocation(value, match, address);
+            } else if ("set-cookie".equals(name) && !match.getPrefix().isEmpty()) {
+                value = rewriteCookiePath(value, match.getPrefix());
+            }
+            response.addHeader(header.getName(), value);
+        }
+
+        HttpEntity entity = upstreamResponse.getEntity();
+        if (entity == null) {
+            return;
+        }
+        try (InputStream in = entity.getContent()) {
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                // 上游暂时没有更多数据时立即下发（流式响应、SSE）
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * 上游跳转到自身地址或根路径时，改写为经过网关的地址
+     */
+    private String rewriteLocation(String location, EnvGatewayService.RouteMatch match, String address) {
+        String upstreamBase = "http://" + address;
+        if (location.startsWith(upstreamBase)) {
+            location = location.substring(upstreamBase.length());
+            if (location.isEmpty()) {
+                location = "/";
+            }
+        }
+        if (location.startsWith("/") && !location.startsWith("//")) {
+            return match.getPrefix() + location;
+        }
+        return location;
+    }
+
+    private String rewriteCookiePath(String cookie, String prefix) {
+        Matcher matcher = COOKIE_PATH.matcher(cookie);
+        if (!matcher.find()) {
+            return cookie;
+        }
+        String path = matcher.group(2).trim();
+        String rewritten = prefix + (path.startsWith("/") ? path : "/" + path);
+        return cookie.substring(0, matcher.start(2)) + rewritten + cookie.substring(matcher.end(2));
+    }
+
+    private void reject(HttpServletResponse response, int status, String message) throws IOException {
+        if (response.isCommitted()) {
+            return;
+        }
+        response.resetBuffer();
+        response.setStatus(status);
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getOutputStream().write(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 把网关解析出的上游地址和环境ID从请求属性复制到 WebSocket 会话属性
+     */
+    private static class GatewayHandshakeInterceptor implements HandshakeInterceptor {
+
+        @Override
+        public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            if (!(request instanceof ServletServerHttpRequest)) {
+                return false;
+            }
+            HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+            attributes.put(EnvGatewayWebSocketHandler.UPSTREAM_URI_ATTRIBUTE,
+                servletRequest.getAttribute(EnvGatewayWebSocketHandler.UPSTREAM_URI_ATTRIBUTE));
+            attributes.put(EnvGatewayWebSocketHandler.ENV_ID_ATTRIBUTE,
+                servletRequest.getAttribute(EnvGatewayWebSocketHandler.ENV_ID_ATTRIBUTE));
+            return true;
+        }
+
+        @Override
+        public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Exception exception) {
+        }
+    }
+}
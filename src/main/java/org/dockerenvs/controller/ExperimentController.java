@@ -0,0 +1,55 @@
+package org.dockerenvs.controller;
+
+import org.dockerenvs.dto.ApiResponse;
+import org.dockerenvs.dto.ExperimentSummary;
+import org.dockerenvs.service.ExperimentMetadataService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 实验目录 REST API（实验列表从内存返回，内容未变化时按 ETag 返回 304）
+ */
+@RestController
+@RequestMapping("/api/experiments")
+public class ExperimentController {
+
+    @Autowired
+    private ExperimentMetadataService experimentMetadataService;
+
+    /**
+     * 查询全部实验
+     * GET /api/experiments
+     */
+    @GetMapping
+    public ResponseEntity<ApiResponse<List<ExperimentSummary>>> listExperiments(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ExperimentMetadataService.Catalog catalog = experimentMetadataService.getCatalog();
+        if (catalog.getEtag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(catalog.getEtag()).build();
+        }
+        return ResponseEntity.ok().eTag(catalog.getEtag()).body(ApiResponse.success(catalog.getExperiments()));
+    }
+
+    /**
+     * 查询单个实验
+     * GET /api/experiments/{expId}
+     */
+    @GetMapping("/{expId}")
+    public ResponseEntity<ApiResponse<ExperimentSummary>> getExperiment(@PathVariable String expId) {
+        ExperimentSummary summary = experimentMetadataService.getSummary(expId);
+        if (summary == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(ApiResponse.error("EXPERIMENT_NOT_FOUND", "实验不存在: " + expId));
+        }
+        return ResponseEntity.ok(ApiResponse.success(summary));
+    }
+}
@@ -7,6 +7,9 @@ import org.dockerenvs.exception.DatabaseException;
 import org.dockerenvs.exception.EnvException;
 import org.dockerenvs.exception.EnvNotFoundException;
 import org.dockerenvs.exception.PortException;
+import org.dockerenvs.service.AdmissionControlService;
+import org.dockerenvs.service.EnvJobService;
+import org.dockerenvs.service.EnvManagerService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -42,6 +45,14 @@ public class GlobalExceptionHandler {
             e.getErrorCode() != null ? e.getErrorCode() : ContainerException.ERROR_CODE_START_FAILED,
             e.getMessage()
         );
+        // Docker 不可用（熔断器打开）返回 503，便于调用方稍后重试
+        if (ContainerException.ERROR_CODE_DOCKER_UNAVAILABLE.equals(e.getErrorCode())) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+        // 环境正处于创建中/启动中/停止中，返回 409
+        if (EnvManagerService.ERROR_CODE_ENV_BUSY.equals(e.getErrorCode())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        }
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
     }
     
@@ -81,6 +92,25 @@ public class GlobalExceptionHandler {
             e.getErrorCode() != null ? e.getErrorCode() : "ENV_OPERATION_FAILED",
             e.getMessage()
         );
+        // 创建任务队列已满返回 503，便于调用方稍后重试
+        if (EnvJobService.ERROR_CODE_QUEUE_FULL.equals(e.getErrorCode())) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+        if (EnvJobService.ERROR_CODE_JOB_NOT_FOUND.equals(e.getErrorCode())) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        // 准入控制：创建过于频繁返回 429，排队已满或等待超时返回 503
+        if (AdmissionControlService.ERROR_CODE_RATE_LIMITED.equals(e.getErrorCode())) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
+        }
+        if (AdmissionControlService.ERROR_CODE_QUEUE_FULL.equals(e.getErrorCode())
+                || AdmissionControlService.ERROR_CODE_TIMEOUT.equals(e.getErrorCode())) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+        // 环境正处于创建中/启动中/停止中，返回 409
+        if (EnvManagerService.ERROR_CODE_ENV_BUSY.equals(e.getErrorCode())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        }
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
     }
     
@@ -0,0 +1,207 @@
+package org.dockerenvs.controller;
+
+import org.dockerenvs.dto.ApiResponse;
+import org.dockerenvs.service.AdmissionControlService;
+import org.dockerenvs.service.DockerHealthMonitor;
+import org.dockerenvs.service.DockerStateCache;
+import org.dockerenvs.service.EnvGatewayService;
+import org.dockerenvs.service.EnvJobService;
+import org.dockerenvs.service.EnvManagerService;
+import org.dockerenvs.service.EnvRuntimeRegistry;
+import org.dockerenvs.service.ExperimentMetadataService;
+import org.dockerenvs.service.IdleReaperService;
+import org.dockerenvs.service.PortLeaseService;
+import org.dockerenvs.service.PortManagerService;
+import org.dockerenvs.service.ProcessRunner;
+import org.dockerenvs.service.StartupReconcileService;
+import org.dockerenvs.service.WarmPoolService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 运维监控 REST API（运行指标）
+ */
+@RestController
+@RequestMapping("/api/ops")
+public class OpsController {
+    
+    @Autowired
+    private DockerHealthMonitor dockerHealthMonitor;
+    
+    @Autowired
+    private DockerStateCache dockerStateCache;
+    
+    @Autowired
+    private ProcessRunner processRunner;
+    
+    @Autowired
+    private EnvJobService envJobService;
+    
+    @Autowired
+    private WarmPoolService warmPoolService;
+    
+    @Autowired
+    private EnvManagerService envManagerService;
+    
+    @Autowired
+    private IdleReaperService idleReaperService;
+    
+    @Autowired
+    private AdmissionControlService admissionControlService;
+    
+    @Autowired
+    private StartupReconcileService startupReconcileService;
+    
+    @Autowired
+    private PortManagerService portManagerService;
+    
+    @Autowired
+    private PortLeaseService portLeaseService;
+    
+    @Autowired
+    private EnvGatewayService envGatewayService;
+    
+    @Autowired
+    private ExperimentMetadataService experimentMetadataService;
+    
+    @Autowired
+    private EnvRuntimeRegistry envRuntimeRegistry;
+    
+    /**
+     * Docker 守护进程指标（健康/熔断状态、ping 延迟、状态缓存、环境运行时描述索引）
+     * GET /api/ops/docker
+     */
+    @GetMapping("/docker")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getDockerMetrics() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("health", dockerHealthMonitor.getStats());
+        data.put("stateCache", dockerStateCache.getStats());
+        data.put("runtimes", envRuntimeRegistry.getStats());
+        return ResponseEntity.ok(ApiResponse.success(data));
+    }
+    
+    /**
+     * 外部命令执行指标（并发、排队、按命令统计的次数/失败/超时/耗时）
+     * GET /api/ops/processes
+     */
+    @GetMapping("/processes")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getProcessMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(processRunner.getStats()));
+    }
+    
+    /**
+     * 环境异步创建任务指标（工作线程、排队、成功/失败/拒绝数）
+     * GET /api/ops/jobs
+     */
+    @GetMapping("/jobs")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getJobMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(envJobService.getStats()));
+    }
+    
+    /**
+     * 预热环境池指标（按实验统计可用数、命中/未命中、补充次数与耗时）
+     * GET /api/ops/warm-pool
+     */
+    @GetMapping("/warm-pool")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getWarmPoolMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(warmPoolService.getStats()));
+    }
+    
+    /**
+     * 创建请求合并指标（进行中的创建数、被合并到进行中创建的请求数）
+     * GET /api/ops/creates
+     */
+    @GetMapping("/creates")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getCreateMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(envManagerService.getCreateStats()));
+    }
+    
+    /**
+     * 重置指标（编排模型未变化原地重启、部分服务重建、全部重建的次数）
+     * GET /api/ops/resets
+     */
+    @GetMapping("/resets")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getResetMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(envManagerService.getResetStats()));
+    }
+    
+    /**
+     * 空闲回收指标（上次执行时间、检查/采样数、因空闲停止和超期销毁的环境数、活跃度跟踪情况）
+     * GET /api/ops/reaper
+     */
+    @GetMapping("/reaper")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getReaperMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(idleReaperService.getStats()));
+    }
+    
+    /**
+     * 准入控制指标（主机容量、已占用、启动中、按系统的排队数、限流/超时次数、等待耗时）
+     * GET /api/ops/admission
+     */
+    @GetMapping("/admission")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getAdmissionMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(admissionControlService.getStats()));
+    }
+    
+    /**
+     * 启动状态对账结果（执行状态、修正的环境状态和端口数、修正明细）
+     * GET /api/ops/reconcile
+     */
+    @GetMapping("/reconcile")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getReconcileMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(startupReconcileService.getStats()));
+    }
+    
+    /**
+     * 端口分配指标（分配方式、已用/空闲端口数、跳过的宿主机占用端口、异步写回情况）和租约回收指标
+     * GET /api/ops/ports
+     */
+    @GetMapping("/ports")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getPortMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("allocator", portManagerService.getStats());
+        metrics.put("leases", portLeaseService.getStats());
+        return ResponseEntity.ok(ApiResponse.success(metrics));
+    }
+    
+    /**
+     * 网关指标（请求数、WebSocket 连接数、路由缓存、上游错误）
+     * GET /api/ops/gateway
+     */
+    @GetMapping("/gateway")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getGatewayMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(envGatewayService.getStats()));
+    }
+    
+    /**
+     * 实验元数据缓存指标（缓存数、命中/加载/失效次数、目录监听状态、实验目录构建次数与 ETag、校验未通过的实验）
+     * GET /api/ops/experiments
+     */
+    @GetMapping("/experiments")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getExperimentMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(experimentMetadataService.getStats()));
+    }
+    
+    /**
+     * 重新加载实验元数据：指定 expId 时立即重新加载该实验，否则使全部缓存失效
+     * POST /api/ops/experiments/reload?expId=xxx
+     */
+    @PostMapping("/experiments/reload")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> reloadExperiments(
+            @RequestParam(required = false) String expId) {
+        if (expId != null && !expId.isEmpty()) {
+            return ResponseEntity.ok(ApiResponse.success(experimentMetadataService.reload(expId)));
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("invalidated", experimentMetadataService.reloadAll());
+        return ResponseEntity.ok(ApiResponse.success(data));
+    }
+}
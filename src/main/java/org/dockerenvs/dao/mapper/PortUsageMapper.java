@@ -1,13 +1,74 @@
 package org.dockerenvs.dao.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 import org.dockerenvs.entity.PortUsage;
 
+import java.util.List;
+
 /**
  * 端口使用 Mapper
  */
 @Mapper
 public interface PortUsageMapper extends BaseMapper<PortUsage> {
+    
+    /**
+     * 锁定端口范围内的记录（SELECT ... FOR UPDATE，同时锁住范围内的间隙，防止并发分配）
+     */
+    @Select("SELECT port, env_id, status, allocated_time FROM port_usage "
+        + "WHERE port BETWEEN #{min} AND #{max} FOR UPDATE")
+    List<PortUsage> selectRangeForUpdate(@Param("min") int min, @Param("max") int max);
+    
+    /**
+     * 批量标记端口为已使用并授予租约（不存在则插入，存在则覆盖）
+     * @param leaseSeconds 租约期限（秒）
+     * @return 影响行数
+     */
+    @Insert({"<script>",
+        "INSERT INTO port_usage (port, env_id, status, allocated_time, lease_expires_time) VALUES",
+        "<foreach collection='ports' item='p' separator=','>",
+        "(#{p.port}, #{p.envId}, 'USED', NOW(), DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND))",
+        "</foreach>",
+        "ON DUPLICATE KEY UPDATE env_id = VALUES(env_id), status = 'USED', allocated_time = VALUES(allocated_time),",
+        "lease_expires_time = VALUES(lease_expires_time)",
+        "</script>"})
+    int batchMarkUsed(@Param("ports") List<PortUsage> ports, @Param("leaseSeconds") long leaseSeconds);
+    
+    /**
+     * 为未销毁环境占用的端口（含多端口实验的整组端口）续期租约（单条 UPDATE ... JOIN 语句）
+     * @param leaseSeconds 租约期限（秒）
+     * @return 续期的端口数
+     */
+    @Update("UPDATE port_usage p JOIN virtual_env e ON e.env_id = p.env_id "
+        + "SET p.lease_expires_time = DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND) "
+        + "WHERE p.status = 'USED' AND e.status <> 'DESTROYED'")
+    int renewLeases(@Param("leaseSeconds") long leaseSeconds);
+    
+    /**
+     * 查询租约已过期、且没有未销毁环境占用的端口（泄漏的端口）
+     * 没有租约的旧记录按分配时间加租约期限计算到期时间
+     */
+    @Select("SELECT p.port, p.env_id, p.status, p.allocated_time, p.lease_expires_time FROM port_usage p "
+        + "LEFT JOIN virtual_env e ON e.env_id = p.env_id AND e.status <> 'DESTROYED' "
+        + "WHERE p.status = 'USED' AND e.env_id IS NULL "
+        + "AND COALESCE(p.lease_expires_time, DATE_ADD(p.allocated_time, INTERVAL #{leaseSeconds} SECOND)) < NOW()")
+    List<PortUsage> selectExpiredLeases(@Param("leaseSeconds") long leaseSeconds);
+    
+    /**
+     * 回收泄漏的端口：仅当端口仍属于记录中的环境时才释放（单条 UPDATE 语句）
+     * @return 回收的端口数
+     */
+    @Update({"<script>",
+        "UPDATE port_usage SET status = 'FREE', env_id = NULL WHERE status = 'USED' AND (",
+        "<foreach collection='ports' item='p' separator=' OR '>",
+        "(port = #{p.port} AND <choose><when test='p.envId != null'>env_id = #{p.envId}</when>",
+        "<otherwise>env_id IS NULL</otherwise></choose>)",
+        "</foreach>",
+        ")",
+        "</script>"})
+    int reclaimLeases(@Param("ports") List<PortUsage> ports);
 }
-
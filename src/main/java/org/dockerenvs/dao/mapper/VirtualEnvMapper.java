@@ -1,13 +1,122 @@
 package org.dockerenvs.dao.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 import org.dockerenvs.entity.VirtualEnv;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * 虚拟环境 Mapper
  */
 @Mapper
 public interface VirtualEnvMapper extends BaseMapper<VirtualEnv> {
+    
+    /**
+     * 条件批量更新环境状态：只更新当前状态仍为 fromStatus 的记录，扫描后已被其他操作改变的环境保持不变
+     * @param envs 需要更新的环境（使用 envId、status，statusReason 为空时保留原值）
+     * @return 更新行数
+     */
+    @Update({"<script>",
+        "UPDATE virtual_env SET status = CASE env_id",
+        "<foreach collection='envs' item='env'> WHEN #{env.envId} THEN #{env.status} </foreach>",
+        "END, status_reason = CASE env_id",
+        "<foreach collection='envs' item='env'> WHEN #{env.envId} THEN COALESCE(#{env.statusReason,jdbcType=VARCHAR}, status_reason) </foreach>",
+        "END, updated_time = NOW() WHERE status = #{fromStatus} AND env_id IN",
+        "<foreach collection='envs' item='env' open='(' separator=',' close=')'>#{env.envId}</foreach>",
+        "</script>"})
+    int batchTransitStatus(@Param("envs") List<VirtualEnv> envs, @Param("fromStatus") String fromStatus);
+    
+    /**
+     * 批量标记环境为已销毁（单条 UPDATE 语句）
+     * @return 更新行数
+     */
+    @Update({"<script>",
+        "UPDATE virtual_env SET status = 'DESTROYED', status_reason = #{reason}, updated_time = NOW() WHERE env_id IN",
+        "<foreach collection='envIds' item='envId' open='(' separator=',' close=')'>#{envId}</foreach>",
+        "</script>"})
+    int batchMarkDestroyed(@Param("envIds") List<String> envIds, @Param("reason") String reason);
+    
+    /**
+     * 认领预热环境：仅当环境仍为 WARM 时将其绑定到用户并置为 RUNNING（条件更新保证只被认领一次）
+     * @return 更新行数，0 表示已被其他请求认领
+     */
+    @Update("UPDATE virtual_env SET user_id = #{userId}, system_id = #{systemId}, status = 'RUNNING', "
+        + "last_active_time = NOW(), updated_time = NOW() WHERE env_id = #{envId} AND status = 'WARM'")
+    int claimWarmEnv(@Param("envId") String envId, @Param("userId") String userId,
+                     @Param("systemId") String systemId);
+    
+    /**
+     * 批量插入环境记录（单条多值 INSERT）
+     * @return 插入行数
+     */
+    @Insert({"<script>",
+        "INSERT INTO virtual_env (env_id, user_id, system_id, exp_id, port, extra_ports, container_id, env_dir, compose_fingerprint, status, url, ",
+        "last_active_time, created_time, updated_time) VALUES",
+        "<foreach collection='envs' item='env' separator=','>",
+        "(#{env.envId}, #{env.userId}, #{env.systemId}, #{env.expId}, #{env.port}, #{env.extraPorts}, #{env.containerId}, ",
+        "#{env.envDir}, #{env.composeFingerprint}, #{env.status}, #{env.url}, #{env.lastActiveTime}, #{env.createdTime}, #{env.updatedTime})",
+        "</foreach>",
+        "</script>"})
+    int insertBatch(@Param("envs") List<VirtualEnv> envs);
+    
+    /**
+     * 批量更新环境状态、容器ID、端口、编排模型指纹和运行时描述（单条 UPDATE ... CASE 语句）
+     * @param envs 需要更新的环境（使用 envId、status、containerId、port、url、composeFingerprint 和 runtimeDescriptor）
+     * @return 更新行数
+     */
+    @Update({"<script>",
+        "UPDATE virtual_env SET status = CASE env_id",
+        "<foreach collection='envs' item='env'> WHEN #{env.envId} THEN #{env.status} </foreach>",
+        "END, container_id = CASE env_id",
+        "<foreach collection='envs' item='env'> WHEN #{env.envId} THEN #{env.containerId} </foreach>",
+        "END, port = CASE env_id",
+        "<foreach collection='envs' item='env'> WHEN #{env.envId} THEN #{env.port} </foreach>",
+        "END, url = CASE env_id",
+        "<foreach collection='envs' item='env'> WHEN #{env.envId} THEN #{env.url} </foreach>",
+        "END, compose_fingerprint = CASE env_id",
+        "<foreach collection='envs' item='env'> WHEN #{env.envId} THEN #{env.composeFingerprint} </foreach>",
+        "END, runtime_descriptor = CASE env_id",
+        "<foreach collection='envs' item='env'> WHEN #{env.envId} THEN #{env.runtimeDescriptor} </foreach>",
+        "END, updated_time = NOW() WHERE env_id IN",
+        "<foreach collection='envs' item='env' open='(' separator=',' close=')'>#{env.envId}</foreach>",
+        "</script>"})
+    int batchUpdateRuntime(@Param("envs") List<VirtualEnv> envs);
+    
+    /**
+     * 批量更新最近活跃时间（单条 UPDATE ... CASE 语句，不修改 updated_time）
+     * @param envs 需要更新的环境（使用 envId 和 lastActiveTime）
+     * @return 更新行数
+     */
+    @Update({"<script>",
+        "UPDATE virtual_env SET last_active_time = CASE env_id",
+        "<foreach collection='envs' item='env'> WHEN #{env.envId} THEN #{env.lastActiveTime} </foreach>",
+        "END, updated_time = updated_time WHERE env_id IN",
+        "<foreach collection='envs' item='env' open='(' separator=',' close=')'>#{env.envId}</foreach>",
+        "</script>"})
+    int batchUpdateLastActive(@Param("envs") List<VirtualEnv> envs);
+    
+    /**
+     * 按实验和状态统计占用主机资源的环境数（运行中、已冻结、预热池中，以及创建中、启动中、停止中）
+     * @return 每行包含 exp_id、status、cnt
+     */
+    @Select("SELECT exp_id, status, COUNT(*) AS cnt FROM virtual_env "
+        + "WHERE status IN ('RUNNING', 'PAUSED', 'WARM', 'CREATING', 'STARTING', 'STOPPING') GROUP BY exp_id, status")
+    List<Map<String, Object>> countActiveByExpAndStatus();
+    
+    /**
+     * 条件更新环境状态：仅当当前状态属于 fromStatuses 时才更新（用于进入过渡状态，防止并发操作同一环境）
+     * @return 更新行数，0 表示环境已被其他操作占用或状态不符
+     */
+    @Update({"<script>",
+        "UPDATE virtual_env SET status = #{toStatus}, updated_time = NOW() WHERE env_id = #{envId} AND status IN",
+        "<foreach collection='fromStatuses' item='s' open='(' separator=',' close=')'>#{s}</foreach>",
+        "</script>"})
+    int transitStatus(@Param("envId") String envId, @Param("fromStatuses") List<String> fromStatuses,
+                      @Param("toStatus") String toStatus);
 }
-
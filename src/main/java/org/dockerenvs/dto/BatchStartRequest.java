@@ -0,0 +1,18 @@
+package org.dockerenvs.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量创建环境请求（同一实验、多个用户，如按班级名单开通）
+ */
+@Data
+public class BatchStartRequest {
+    
+    private String systemId;
+    
+    private String expId;
+    
+    private List<String> userIds;
+}
@@ -0,0 +1,43 @@
+package org.dockerenvs.dto;
+
+import lombok.Data;
+
+/**
+ * 批量创建中单个用户的结果
+ */
+@Data
+public class BatchStartResult {
+    
+    private String userId;
+    
+    private boolean success;
+    
+    /**
+     * 是否为已存在的环境（未新建容器）
+     */
+    private boolean existing;
+    
+    private EnvInfo env;
+    
+    private String errorCode;
+    
+    private String message;
+    
+    public static BatchStartResult success(String userId, EnvInfo env, boolean existing) {
+        BatchStartResult result = new BatchStartResult();
+        result.setUserId(userId);
+        result.setSuccess(true);
+        result.setExisting(existing);
+        result.setEnv(env);
+        return result;
+    }
+    
+    public static BatchStartResult failure(String userId, String errorCode, String message) {
+        BatchStartResult result = new BatchStartResult();
+        result.setUserId(userId);
+        result.setSuccess(false);
+        result.setErrorCode(errorCode);
+        result.setMessage(message);
+        return result;
+    }
+}
@@ -0,0 +1,99 @@
+package org.dockerenvs.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 外部命令执行结果
+ */
+@Data
+public class CommandResult {
+    
+    /**
+     * 退出码（超时、被拒绝或启动失败时为 -1）
+     */
+    private int exitCode = -1;
+    
+    /**
+     * 标准输出（只保留最后 N 行）
+     */
+    private List<String> stdoutLines = new ArrayList<>();
+    
+    /**
+     * 错误输出（只保留最后 N 行）
+     */
+    private List<String> stderrLines = new ArrayList<>();
+    
+    /**
+     * 按到达顺序合并的标准输出和错误输出（只保留最后 N 行）
+     */
+    private List<String> outputLines = new ArrayList<>();
+    
+    /**
+     * 是否有输出行因超出上限被丢弃
+     */
+    private boolean truncated;
+    
+    /**
+     * 是否因超时被终止
+     */
+    private boolean timedOut;
+    
+    /**
+     * 是否因并发数已满、排队超时被拒绝（命令未执行）
+     */
+    private boolean rejected;
+    
+    /**
+     * 执行耗时（毫秒，不含排队时间）
+     */
+    private long durationMs;
+    
+    /**
+     * 启动失败等异常信息
+     */
+    private String errorMessage;
+    
+    public boolean isSuccess() {
+        return exitCode == 0;
+    }
+    
+    public String getStdout() {
+        return String.join("\n", stdoutLines);
+    }
+    
+    public String getStderr() {
+        return String.join("\n", stderrLines);
+    }
+    
+    /**
+     * 合并输出（含超时/拒绝说明），用于日志和错误提示
+     */
+    public String getOutput() {
+        StringBuilder output = new StringBuilder(String.join("\n", outputLines));
+        if (timedOut) {
+            output.append("\n[命令执行超时，已终止]");
+        }
+        if (rejected) {
+            output.append("\n[并发命令数已满，排队超时]");
+        }
+        if (errorMessage != null) {
+            output.append("\n").append(errorMessage);
+        }
+        return output.toString();
+    }
+    
+    /**
+     * 标准输出的第一行（去除首尾空白），没有输出时返回null
+     */
+    public String getFirstLine() {
+        for (String line : stdoutLines) {
+            if (!line.trim().isEmpty()) {
+                return line.trim();
+            }
+        }
+        return null;
+    }
+}
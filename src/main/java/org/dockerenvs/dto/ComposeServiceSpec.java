@@ -0,0 +1,53 @@
+package org.dockerenvs.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编排模型中的单个服务
+ */
+@Data
+public class ComposeServiceSpec {
+    
+    /**
+     * 服务名称（同时作为网络别名，如 app / db）
+     */
+    private String name;
+    
+    private String image;
+    
+    private String containerName;
+    
+    /**
+     * 启动命令（与 compose 文件中的 command 写法一致，按 shell 规则拆分）
+     */
+    private String command;
+    
+    /**
+     * 端口映射（格式: "hostPort:containerPort"）
+     */
+    private List<String> ports = new ArrayList<>();
+    
+    private List<VolumeConfig> volumes = new ArrayList<>();
+    
+    private Map<String, String> environment = new LinkedHashMap<>();
+    
+    private String workingDir;
+    
+    /**
+     * 加入的网络（compose 中的网络键）
+     */
+    private List<String> networks = new ArrayList<>();
+    
+    private String restart = "unless-stopped";
+    
+    private boolean tty;
+    
+    private boolean stdinOpen;
+    
+    private HealthCheckConfig healthCheck;
+}
@@ -0,0 +1,55 @@
+package org.dockerenvs.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 环境编排模型（与 docker-compose.yml 同源，供原生编排引擎直接通过 Docker API 创建）
+ */
+@Data
+public class ComposeSpec {
+    
+    /**
+     * compose 项目名称
+     */
+    private String projectName;
+    
+    /**
+     * 环境目录（compose 文件所在目录）
+     */
+    private String workingDir;
+    
+    /**
+     * 服务列表（第一个为应用服务 app）
+     */
+    private List<ComposeServiceSpec> services = new ArrayList<>();
+    
+    /**
+     * 项目内网络（实际名称为 {projectName}_{network}）
+     */
+    private List<String> networks = new ArrayList<>();
+    
+    /**
+     * 外部网络（如共享MySQL网络，需已存在）
+     */
+    private List<String> externalNetworks = new ArrayList<>();
+    
+    /**
+     * 附加到所有容器上的标签（envId/userId/expId，用于按标签批量查询）
+     */
+    private Map<String, String> labels = new LinkedHashMap<>();
+    
+    /**
+     * 将 compose 中的网络键解析为 Docker 中的实际网络名称
+     */
+    public String resolveNetworkName(String network) {
+        if (externalNetworks.contains(network)) {
+            return network;
+        }
+        return projectName + "_" + network;
+    }
+}
@@ -0,0 +1,25 @@
+package org.dockerenvs.dto;
+
+import lombok.Data;
+
+/**
+ * 容器资源使用计数（累计值，用于两次采样之间比较判断是否活跃）
+ */
+@Data
+public class ContainerUsage {
+    
+    /**
+     * 累计 CPU 时间（纳秒）
+     */
+    private long cpuTotalNanos;
+    
+    /**
+     * 累计网络收发字节数（所有网卡）
+     */
+    private long networkBytes;
+    
+    /**
+     * 采样时间（毫秒时间戳）
+     */
+    private long sampledAt;
+}
@@ -2,6 +2,7 @@ package org.dockerenvs.dto;
 
 import lombok.Data;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 /**
  * 环境信息响应
@@ -19,6 +20,11 @@ public class EnvInfo {
     
     private Integer port;
     
+    /**
+     * 附加端口映射（容器端口 -> 宿主机端口），仅多端口实验有
+     */
+    private Map<String, Integer> extraPorts;
+    
     private String containerId;
     
     private String containerName;
@@ -29,6 +35,10 @@ public class EnvInfo {
     
     private String url;
     
+    private LocalDateTime lastActiveTime;
+    
+    private String statusReason;
+    
     private LocalDateTime createdTime;
     
     private LocalDateTime updatedTime;
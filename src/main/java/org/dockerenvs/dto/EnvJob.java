@@ -0,0 +1,49 @@
+package org.dockerenvs.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 环境创建任务（异步创建的进度与结果）
+ */
+@Data
+public class EnvJob {
+    
+    private String jobId;
+    
+    private String userId;
+    
+    private String systemId;
+    
+    private String expId;
+    
+    /**
+     * 当前阶段
+     */
+    private EnvJobStage stage;
+    
+    /**
+     * 准入控制排队位置（从1开始，仅在 WAITING_ADMISSION 阶段有值）
+     */
+    private Integer queuePosition;
+    
+    /**
+     * 阶段说明或失败原因
+     */
+    private String message;
+    
+    /**
+     * 失败时的错误码
+     */
+    private String errorCode;
+    
+    /**
+     * 创建成功后的环境信息
+     */
+    private EnvInfo env;
+    
+    private LocalDateTime createdTime;
+    
+    private LocalDateTime updatedTime;
+}
@@ -0,0 +1,51 @@
+package org.dockerenvs.dto;
+
+/**
+ * 环境创建任务阶段
+ */
+public enum EnvJobStage {
+    
+    /**
+     * 已提交，等待工作线程
+     */
+    QUEUED,
+    
+    /**
+     * 等待主机资源（准入控制排队中）
+     */
+    WAITING_ADMISSION,
+    
+    /**
+     * 分配端口
+     */
+    ALLOCATING_PORT,
+    
+    /**
+     * 准备数据库、生成编排文件
+     */
+    RENDERING,
+    
+    /**
+     * 启动容器
+     */
+    STARTING,
+    
+    /**
+     * 等待健康检查
+     */
+    WAITING_HEALTH,
+    
+    /**
+     * 环境已就绪
+     */
+    READY,
+    
+    /**
+     * 创建失败
+     */
+    FAILED;
+    
+    public boolean isFinished() {
+        return this == READY || this == FAILED;
+    }
+}
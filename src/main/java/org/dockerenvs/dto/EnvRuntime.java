@@ -0,0 +1,40 @@
+package org.dockerenvs.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 环境运行时描述（创建时确定一次，之后的容器操作直接使用，不再从 compose 文件推导项目名称）
+ */
+@Data
+public class EnvRuntime {
+
+    /**
+     * compose 项目名称（env-{envId}）
+     */
+    private String projectName;
+
+    /**
+     * 环境目录（compose 文件所在目录）
+     */
+    private String envDir;
+
+    /**
+     * 服务名称 -> 容器ID（app / db），命令行方式启动时可能只有应用容器
+     */
+    private Map<String, String> containers = new LinkedHashMap<>();
+
+    /**
+     * 容器连接的网络实际名称（含外部网络）
+     */
+    private List<String> networks = new ArrayList<>();
+
+    /**
+     * 项目的命名数据卷实际名称
+     */
+    private List<String> volumes = new ArrayList<>();
+}
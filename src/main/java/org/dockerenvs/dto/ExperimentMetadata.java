@@ -1,6 +1,7 @@
 package org.dockerenvs.dto;
 
 import lombok.Data;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -46,11 +47,16 @@ public class ExperimentMetadata {
     private Integer containerPort;
     
     /**
-     * 主机端口映射（格式: ["8080:8080", "9090:9090"]）
-     * 如果不指定，系统会自动分配
+     * 额外暴露的端口（格式: ["9090", "9091/udp"]，兼容旧格式 ["18000:9090"]，宿主机端口部分会被忽略）
+     * 每个容器端口由系统分配一个宿主机端口，与应用端口一起作为一组分配和释放
      */
     private List<String> hostPorts;
     
+    /**
+     * 一组宿主机端口是否要求连续（默认false）
+     */
+    private Boolean contiguousPorts = false;
+    
     /**
      * 环境变量
      */
@@ -71,6 +77,30 @@ public class ExperimentMetadata {
      */
     private List<ServiceConfig> services;
     
+    // ========== 空闲回收配置 ==========
+    
+    /**
+     * 空闲多少分钟后自动停止（为空时使用全局默认值 env.idle.default-idle-minutes，0 表示不回收）
+     */
+    private Integer idleTimeoutMinutes;
+    
+    /**
+     * 环境最长保留时间（小时），超过后自动销毁（为空时使用全局默认值 env.idle.default-max-lifetime-hours，0 表示不限制）
+     */
+    private Integer maxLifetimeHours;
+    
+    // ========== 资源占用（准入控制） ==========
+    
+    /**
+     * 单个环境预计占用的 CPU 核数（为空时使用全局默认值 env.admission.default-cpu）
+     */
+    private Double cpuCores;
+    
+    /**
+     * 单个环境预计占用的内存（MB）（为空时使用全局默认值 env.admission.default-memory-mb）
+     */
+    private Integer memoryMb;
+    
     // ========== 数据库配置（向后兼容字段） ==========
     
     /**
@@ -109,6 +139,31 @@ public class ExperimentMetadata {
         return containerPort != null ? containerPort : port;
     }
     
+    /**
+     * 需要发布的容器端口（应用端口在前，其后为 hostPorts 中声明的其他容器端口，去重）
+     * 宿主机端口按此顺序一一对应
+     */
+    public List<String> getEffectivePortSpecs() {
+        List<String> specs = new ArrayList<>();
+        Integer appPort = getEffectiveContainerPort();
+        if (appPort != null) {
+            specs.add(String.valueOf(appPort));
+        }
+        if (hostPorts != null) {
+            for (String mapping : hostPorts) {
+                if (mapping == null || mapping.trim().isEmpty()) {
+                    continue;
+                }
+                String spec = mapping.substring(mapping.lastIndexOf(':') + 1).trim();
+                String normalized = spec.endsWith("/tcp") ? spec.substring(0, spec.length() - 4) : spec;
+                if (!specs.contains(normalized)) {
+                    specs.add(normalized);
+                }
+            }
+        }
+        return specs;
+    }
+    
     /**
      * 获取数据库配置（兼容旧字段）
      */
@@ -0,0 +1,49 @@
+package org.dockerenvs.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 实验目录条目（实验列表接口返回，由实验元数据缓存预先计算）
+ */
+@Data
+public class ExperimentSummary {
+
+    private String expId;
+
+    private String name;
+
+    /**
+     * 运行时类型（java / python / nginx 等）
+     */
+    private String runtimeType;
+
+    private String baseImage;
+
+    private Integer containerPort;
+
+    /**
+     * 发布的容器端口（第一个为应用端口）
+     */
+    private List<String> ports = new ArrayList<>();
+
+    /**
+     * 数据库提供者（provider:type，如 shared:mysql），不需要数据库时为null
+     */
+    private String database;
+
+    private boolean hasInitSql;
+
+    private boolean healthCheck;
+
+    private Double cpuCores;
+
+    private Integer memoryMb;
+
+    /**
+     * 元数据校验问题（为空表示校验通过）
+     */
+    private List<String> problems = new ArrayList<>();
+}
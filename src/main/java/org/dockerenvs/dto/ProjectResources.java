@@ -0,0 +1,24 @@
+package org.dockerenvs.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 编排项目在守护进程中的资源（按 compose 项目标签归集，用于快速销毁）
+ */
+@Data
+public class ProjectResources {
+    
+    /**
+     * 编排项目名称（env-{envId}）
+     */
+    private String projectName;
+    
+    private List<String> containerIds = new ArrayList<>();
+    
+    private List<String> networkIds = new ArrayList<>();
+    
+    private List<String> volumeNames = new ArrayList<>();
+}
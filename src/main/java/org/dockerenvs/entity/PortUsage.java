@@ -25,5 +25,10 @@ public class PortUsage {
     private String status;
     
     private LocalDateTime allocatedTime;
+    
+    /**
+     * 租约到期时间（环境未销毁时由租约清理任务续期，过期且环境已不存在时端口被回收）
+     */
+    private LocalDateTime leaseExpiresTime;
 }
 
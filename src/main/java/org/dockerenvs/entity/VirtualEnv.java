@@ -25,17 +25,42 @@ public class VirtualEnv {
     
     private Integer port;
     
+    /**
+     * 附加端口映射（多端口实验，格式: "18001:9090,18002:9091"，宿主机端口:容器端口），与主端口一起分配和释放
+     */
+    private String extraPorts;
+    
     private String containerId;
     
     private String envDir;
     
     /**
-     * 状态: CREATED / RUNNING / STOPPED / DESTROYED
+     * 编排模型指纹（按服务的模型摘要，格式: "app=xxxx,db=xxxx"），重置和启动时比对，只重建模型变化的服务
+     */
+    private String composeFingerprint;
+    
+    /**
+     * 运行时描述（JSON: 项目名称、容器ID、网络、数据卷），容器启动后记录，之后的容器操作直接使用
+     */
+    private String runtimeDescriptor;
+    
+    /**
+     * 状态: CREATING / STARTING / STOPPING / WARM / RUNNING / PAUSED / STOPPED / DESTROYED（CREATING/STARTING/STOPPING 为过渡状态，WARM 为预热池中未分配的环境，PAUSED 为容器进程已冻结）
      */
     private String status;
     
     private String url;
     
+    /**
+     * 最近活跃时间（终端会话、接口调用、容器 CPU/网络计数变化）
+     */
+    private LocalDateTime lastActiveTime;
+    
+    /**
+     * 最近一次状态变更原因: MANUAL / IDLE / MAX_LIFETIME / DEMOTED / CREATE_FAILED / STALE
+     */
+    private String statusReason;
+    
     private LocalDateTime createdTime;
     
     private LocalDateTime updatedTime;
@@ -10,6 +10,7 @@ public class ContainerException extends EnvException {
     public static final String ERROR_CODE_NOT_FOUND = "CONTAINER_NOT_FOUND";
     public static final String ERROR_CODE_NOT_RUNNING = "CONTAINER_NOT_RUNNING";
     public static final String ERROR_CODE_HEALTH_CHECK_TIMEOUT = "CONTAINER_HEALTH_CHECK_TIMEOUT";
+    public static final String ERROR_CODE_DOCKER_UNAVAILABLE = "DOCKER_UNAVAILABLE";
     
     public ContainerException(String message) {
         super(message);
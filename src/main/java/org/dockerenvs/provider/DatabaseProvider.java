@@ -1,5 +1,6 @@
 package org.dockerenvs.provider;
 
+import org.dockerenvs.dto.ComposeServiceSpec;
 import org.dockerenvs.dto.DatabaseConfig;
 
 import java.util.Map;
@@ -46,6 +47,16 @@ public interface DatabaseProvider {
      */
     String getServiceConfig(DatabaseConfig config, Map<String, Object> context);
     
+    /**
+     * 获取与 getServiceConfig 等价的结构化服务定义（供原生编排引擎使用）
+     * @param config 数据库配置
+     * @param context 模板上下文（同 getServiceConfig）
+     * @return 服务定义，不需要额外服务时返回null
+     */
+    default ComposeServiceSpec getServiceSpec(DatabaseConfig config, Map<String, Object> context) {
+        return null;
+    }
+    
     /**
      * 获取docker-compose中需要添加的数据卷配置
      */
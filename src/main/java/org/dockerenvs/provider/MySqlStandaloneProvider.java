@@ -1,7 +1,11 @@
 package org.dockerenvs.provider;
 
 import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dto.ComposeServiceSpec;
 import org.dockerenvs.dto.DatabaseConfig;
+import org.dockerenvs.dto.HealthCheckConfig;
+import org.dockerenvs.dto.VolumeConfig;
+import org.dockerenvs.service.TemplateManagerService;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
@@ -61,9 +65,20 @@ public class MySqlStandaloneProvider implements DatabaseProvider {
             initSqlVolume = "\n      - " + initSqlPath + ":/docker-entrypoint-initdb.d/init.sql:ro";
         }
         
+        StringBuilder labels = new StringBuilder();
+        @SuppressWarnings("unchecked")
+        Map<String, String> labelMap = (Map<String, String>) context.get("labels");
+        if (labelMap != null && !labelMap.isEmpty()) {
+            labels.append("    labels:\n");
+            // 与应用服务的标签一样转义，userId / expId 中的特殊字符不能破坏文件或注入其他字段
+            labelMap.forEach((key, value) -> labels.append("      - ")
+                .append(TemplateManagerService.quoteComposeString(key + "=" + value)).append("\n"));
+        }
+        
         return "  db:\n" +
                "    image: mysql:8.0\n" +
                "    container_name: " + containerName + "-db\n" +
+               labels +
                "    environment:\n" +
                "      - MYSQL_ROOT_PASSWORD=" + dbPassword + "\n" +
                "      - MYSQL_DATABASE=" + dbName + "\n" +
@@ -80,6 +95,47 @@ public class MySqlStandaloneProvider implements DatabaseProvider {
                "      start_period: 15s";
     }
     
+    @Override
+    public ComposeServiceSpec getServiceSpec(DatabaseConfig config, Map<String, Object> context) {
+        // 与 getServiceConfig 生成的 db 服务保持一致
+        String containerName = (String) context.get("containerName");
+        String networkName = (String) context.get("networkName");
+        String envDir = (String) context.get("envDir");
+        String initSqlPath = (String) context.get("initSqlPath");
+        
+        String dbPassword = config.getPassword() != null ? config.getPassword() : "123456";
+        String dbName = config.getName() != null ? config.getName() : "test_db";
+        
+        ComposeServiceSpec service = new ComposeServiceSpec();
+        service.setName("db");
+        service.setImage("mysql:8.0");
+        service.setContainerName(containerName + "-db");
+        service.getEnvironment().put("MYSQL_ROOT_PASSWORD", dbPassword);
+        service.getEnvironment().put("MYSQL_DATABASE", dbName);
+        
+        VolumeConfig dataVolume = new VolumeConfig();
+        dataVolume.setHostPath(envDir.replace("\\", "/") + "/mysql-data");
+        dataVolume.setContainerPath("/var/lib/mysql");
+        service.getVolumes().add(dataVolume);
+        if (initSqlPath != null && !initSqlPath.isEmpty()) {
+            VolumeConfig initSqlVolume = new VolumeConfig();
+            initSqlVolume.setHostPath(initSqlPath);
+            initSqlVolume.setContainerPath("/docker-entrypoint-initdb.d/init.sql");
+            initSqlVolume.setOptions(":ro");
+            service.getVolumes().add(initSqlVolume);
+        }
+        service.getNetworks().add(networkName);
+        
+        HealthCheckConfig healthCheck = new HealthCheckConfig();
+        healthCheck.setTest("[\"CMD\", \"mysqladmin\", \"ping\", \"-h\", \"localhost\", \"-u\", \"root\", \"-p" + dbPassword + "\"]");
+        healthCheck.setInterval("5s");
+        healthCheck.setTimeout("3s");
+        healthCheck.setRetries(3);
+        healthCheck.setStartPeriod("15s");
+        service.setHealthCheck(healthCheck);
+        return service;
+    }
+    
     @Override
     public boolean shouldWaitForAppHealthCheck() {
         // 独立数据库模式：不等待应用健康检查，应用会自动重试连接数据库
@@ -0,0 +1,712 @@
+package org.dockerenvs.service;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.Info;
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dao.mapper.VirtualEnvMapper;
+import org.dockerenvs.dto.ExperimentMetadata;
+import org.dockerenvs.exception.EnvException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 主机容量准入控制
+ * 按实验的资源占用（metadata.json 的 cpuCores / memoryMb）和主机容量决定是否允许启动新环境：
+ * - 已占用 = 运行中、已冻结（只计内存）、预热池中的环境（定期从数据库统计）+ 已准入但仍在启动中的环境
+ * - 容量不足时请求进入公平队列：按 systemId 轮转，同一系统内按 userId 轮转，同一用户内先到先得
+ * - 队头请求放不下时不跳过，避免大占用的实验一直饿死
+ * - 每个用户有创建频率限制（令牌桶），超出时直接拒绝
+ * - 预热池补充只使用空闲容量，有请求排队时不补充
+ */
+@Slf4j
+@Service
+public class AdmissionControlService {
+
+    public static final String ERROR_CODE_RATE_LIMITED = "ADMISSION_RATE_LIMITED";
+    public static final String ERROR_CODE_QUEUE_FULL = "ADMISSION_QUEUE_FULL";
+    public static final String ERROR_CODE_TIMEOUT = "ADMISSION_TIMEOUT";
+
+    @Autowired
+    private VirtualEnvMapper virtualEnvMapper;
+
+    @Autowired
+    private DockerClient dockerClient;
+
+    // 与 EnvManagerService 互相依赖（读取实验元数据 / 创建时准入），延迟注入
+    @Lazy
+    @Autowired
+    private EnvManagerService envManagerService;
+
+    @Value("${env.admission.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 主机 CPU 核数，0 表示自动检测（Docker 守护进程信息，失败时取本机）
+     */
+    @Value("${env.admission.cpu-capacity:0}")
+    private double cpuCapacityConfig;
+
+    /**
+     * 主机内存（MB），0 表示自动检测
+     */
+    @Value("${env.admission.memory-capacity-mb:0}")
+    private long memoryCapacityConfig;
+
+    @Value("${env.admission.reserved-memory-mb:1024}")
+    private long reservedMemoryMb;
+
+    @Value("${env.admission.cpu-overcommit:4.0}")
+    private double cpuOvercommit;
+
+    @Value("${env.admission.memory-overcommit:1.0}")
+    private double memoryOvercommit;
+
+    @Value("${env.admission.default-cpu:1.0}")
+    private double defaultCpu;
+
+    @Value("${env.admission.default-memory-mb:512}")
+    private int defaultMemoryMb;
+
+    @Value("${env.admission.queue-timeout-seconds:300}")
+    private long queueTimeoutSeconds;
+
+    @Value("${env.admission.max-queue:1000}")
+    private int maxQueue;
+
+    @Value("${env.admission.user-rate-per-minute:10}")
+    private double userRatePerMinute;
+
+    @Value("${env.admission.refresh-interval-ms:10000}")
+    private long refreshIntervalMs;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "admission-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile double cpuCapacity;
+    private volatile long memoryCapacityMb;
+
+    /**
+     * 各实验的资源占用，定期刷新以反映 metadata.json 的修改
+     */
+    private final Map<String, Footprint> footprints = new ConcurrentHashMap<>();
+
+    private final Map<String, RateBucket> rateBuckets = new ConcurrentHashMap<>();
+
+    // 以下字段由 this 保护
+    private double committedCpu;
+    private double committedMemoryMb;
+    private double inFlightCpu;
+    private double inFlightMemoryMb;
+    private int inFlightCount;
+    private int waitingCount;
+    private final Map<String, Integer> inFlightByExp = new HashMap<>();
+    private final Map<String, TenantQueue> tenants = new HashMap<>();
+    private final Deque<TenantQueue> tenantRing = new ArrayDeque<>();
+
+    private final AtomicLong admittedCount = new AtomicLong();
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong rateLimitedCount = new AtomicLong();
+    private final AtomicLong queueFullCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitMs = new AtomicLong();
+    private volatile long maxWaitMs;
+
+    /**
+     * 先检测主机容量，避免第一次刷新前按容量为0放行全部请求（已占用在应用就绪后的第一次刷新中统计）
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            detectCapacity();
+        } catch (Exception e) {
+            log.warn("检测主机容量失败，下次刷新时重试: {}", e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("准入控制已禁用");
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::refreshSafely, 0, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 申请启动一个环境的资源，容量不足时排队等待
+     * @param onWait 需要排队时回调一次（在调用线程中执行）
+     * @return 准入凭证，环境启动完成（或失败）后必须调用 release；准入控制禁用时返回null
+     */
+    public Ticket acquire(String userId, String systemId, String expId, Runnable onWait) {
+        if (!enabled) {
+            return null;
+        }
+        String tenant = systemId != null && !systemId.trim().isEmpty() ? systemId.trim() : "";
+        checkRate(tenant + "|" + userId);
+
+        Ticket ticket = new Ticket(tenant, userId, expId, footprint(expId));
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            if (waitingCount >= maxQueue) {
+                queueFullCount.incrementAndGet();
+                throw new EnvException(ERROR_CODE_QUEUE_FULL, "主机资源排队人数已满，请稍后重试");
+            }
+            enqueue(ticket);
+            dispatch();
+        }
+        if (!ticket.granted) {
+            queuedCount.incrementAndGet();
+            log.info("主机资源不足，进入排队: userId={}, systemId={}, expId={}, position={}",
+                userId, systemId, expId, getQueuePosition(ticket));
+            onWait.run();
+        }
+
+        synchronized (this) {
+            long deadline = start + TimeUnit.SECONDS.toMillis(queueTimeoutSeconds);
+            try {
+                while (!ticket.granted) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        remove(ticket);
+                        timeoutCount.incrementAndGet();
+                        throw new EnvException(ERROR_CODE_TIMEOUT,
+                            "等待主机资源超时（" + queueTimeoutSeconds + "秒），请稍后重试");
+                    }
+                    wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // 中断前可能刚被放行，此时调用方拿不到凭证，由这里归还占用
+                if (ticket.granted) {
+                    release(ticket, false);
+                } else {
+                    remove(ticket);
+                }
+                throw new EnvException(ERROR_CODE_TIMEOUT, "等待主机资源被中断");
+            }
+        }
+        recordWait(System.currentTimeMillis() - start);
+        return ticket;
+    }
+
+    /**
+     * 不排队地申请资源（预热池补充使用）
+     * @return 准入凭证；有请求在排队或容量不足时返回null；准入控制禁用时返回不占用资源的凭证
+     */
+    public Ticket tryAcquire(String expId) {
+        if (!enabled) {
+            Ticket ticket = new Ticket("", WarmPoolService.POOL_USER_ID, expId, new Footprint());
+            ticket.granted = true;
+            ticket.released = true;
+            return ticket;
+        }
+        Ticket ticket = new Ticket("", WarmPoolService.POOL_USER_ID, expId, footprint(expId));
+        synchronized (this) {
+            if (waitingCount > 0 || !fits(ticket)) {
+                return null;
+            }
+            grant(ticket);
+        }
+        return ticket;
+    }
+
+    /**
+     * 释放准入凭证
+     * @param started 环境是否已启动；已启动的占用直接计入已占用，直到下次从数据库统计
+     */
+    public void release(Ticket ticket, boolean started) {
+        if (ticket == null) {
+            return;
+        }
+        synchronized (this) {
+            if (!ticket.granted || ticket.released) {
+                return;
+            }
+            ticket.released = true;
+            inFlightCpu -= ticket.cpu;
+            inFlightMemoryMb -= ticket.memoryMb;
+            inFlightCount--;
+            inFlightByExp.computeIfPresent(ticket.expId, (expId, count) -> count > 1 ? count - 1 : null);
+            if (started) {
+                committedCpu += ticket.cpu;
+                committedMemoryMb += ticket.memoryMb;
+            }
+            dispatch();
+        }
+    }
+
+    /**
+     * 查询某个用户创建请求的排队位置
+     * @return 排队位置（从1开始），未在排队时返回null
+     */
+    public Integer getQueuePosition(String userId, String systemId, String expId) {
+        if (!enabled) {
+            return null;
+        }
+        String tenant = systemId != null && !systemId.trim().isEmpty() ? systemId.trim() : "";
+        synchronized (this) {
+            TenantQueue tenantQueue = tenants.get(tenant);
+            Deque<Ticket> tickets = tenantQueue != null ? tenantQueue.users.get(userId) : null;
+            if (tickets == null) {
+                return null;
+            }
+            for (Ticket ticket : tickets) {
+                if (ticket.expId.equals(expId)) {
+                    return positionOf(ticket);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 查询用户正在排队的请求
+     */
+    public List<Map<String, Object>> getUserQueue(String userId) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        synchronized (this) {
+            for (TenantQueue tenantQueue : tenantRing) {
+                Deque<Ticket> tickets = tenantQueue.users.get(userId);
+                if (tickets == null) {
+                    continue;
+                }
+                for (Ticket ticket : tickets) {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("systemId", ticket.tenant.isEmpty() ? null : ticket.tenant);
+                    item.put("expId", ticket.expId);
+                    item.put("position", positionOf(ticket));
+                    item.put("waitingMs", System.currentTimeMillis() - ticket.enqueuedAt);
+                    result.add(item);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Integer getQueuePosition(Ticket ticket) {
+        synchronized (this) {
+            return ticket.granted ? null : positionOf(ticket);
+        }
+    }
+
+    /**
+     * 按轮转顺序模拟出队，计算凭证的排队位置
+     */
+    private int positionOf(Ticket target) {
+        List<List<Deque<Ticket>>> rounds = new ArrayList<>();
+        for (TenantQueue tenantQueue : tenantRing) {
+            List<Deque<Ticket>> users = new ArrayList<>();
+            for (String userId : tenantQueue.userRing) {
+                users.add(new ArrayDeque<>(tenantQueue.users.get(userId)));
+            }
+            rounds.add(users);
+        }
+        int position = 0;
+        int[] userCursor = new int[rounds.size()];
+        boolean remaining = true;
+        while (remaining) {
+            remaining = false;
+            for (int i = 0; i < rounds.size(); i++) {
+                List<Deque<Ticket>> users = rounds.get(i);
+                for (int tried = 0; tried < users.size(); tried++) {
+                    Deque<Ticket> tickets = users.get(userCursor[i] % users.size());
+                    userCursor[i]++;
+                    Ticket ticket = tickets.pollFirst();
+                    if (ticket == null) {
+                        continue;
+                    }
+                    position++;
+                    if (ticket == target) {
+                        return position;
+                    }
+                    remaining = true;
+                    break;
+                }
+            }
+        }
+        return position;
+    }
+
+    private void enqueue(Ticket ticket) {
+        TenantQueue tenantQueue = tenants.get(ticket.tenant);
+        if (tenantQueue == null) {
+            tenantQueue = new TenantQueue(ticket.tenant);
+            tenants.put(ticket.tenant, tenantQueue);
+            tenantRing.addLast(tenantQueue);
+        }
+        Deque<Ticket> tickets = tenantQueue.users.get(ticket.userId);
+        if (tickets == null) {
+            tickets = new ArrayDeque<>();
+            tenantQueue.users.put(ticket.userId, tickets);
+            tenantQueue.userRing.addLast(ticket.userId);
+        }
+        tickets.addLast(ticket);
+        waitingCount++;
+    }
+
+    private void remove(Ticket ticket) {
+        TenantQueue tenantQueue = tenants.get(ticket.tenant);
+        if (tenantQueue == null) {
+            return;
+        }
+        Deque<Ticket> tickets = tenantQueue.users.get(ticket.userId);
+        if (tickets != null && tickets.remove(ticket)) {
+            waitingCount--;
+            if (tickets.isEmpty()) {
+                tenantQueue.users.remove(ticket.userId);
+                tenantQueue.userRing.remove(ticket.userId);
+            }
+            if (tenantQueue.users.isEmpty()) {
+                tenants.remove(ticket.tenant);
+                tenantRing.remove(tenantQueue);
+            }
+            // 队头被移除后后面的请求可能放得下
+            dispatch();
+        }
+    }
+
+    /**
+     * 按轮转顺序放行排队的请求，直到队头放不下
+     */
+    private void dispatch() {
+        boolean granted = false;
+        while (!tenantRing.isEmpty()) {
+            TenantQueue tenantQueue = tenantRing.peekFirst();
+            String userId = tenantQueue.userRing.peekFirst();
+            Deque<Ticket> tickets = tenantQueue.users.get(userId);
+            Ticket ticket = tickets.peekFirst();
+            if (!fits(ticket)) {
+                break;
+            }
+            tickets.pollFirst();
+            waitingCount--;
+            grant(ticket);
+            granted = true;
+
+            // 本轮已放行的用户和系统移到队尾
+            tenantQueue.userRing.pollFirst();
+            if (tickets.isEmpty()) {
+                tenantQueue.users.remove(userId);
+            } else {
+                tenantQueue.userRing.addLast(userId);
+            }
+            tenantRing.pollFirst();
+            if (tenantQueue.users.isEmpty()) {
+                tenants.remove(ticket.tenant);
+            } else {
+                tenantRing.addLast(tenantQueue);
+            }
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    private void grant(Ticket ticket) {
+        ticket.granted = true;
+        inFlightCpu += ticket.cpu;
+        inFlightMemoryMb += ticket.memoryMb;
+        inFlightCount++;
+        inFlightByExp.merge(ticket.expId, 1, Integer::sum);
+        admittedCount.incrementAndGet();
+    }
+
+    private boolean fits(Ticket ticket) {
+        if (cpuCapacity <= 0 || memoryCapacityMb <= 0) {
+            // 容量未知时保守处理，一次只放行一个
+            return inFlightCount == 0;
+        }
+        // 单个环境超过整机容量时按整机计算，只要没有其他占用就放行，避免永远排队
+        double cpuAllowed = cpuCapacity * cpuOvercommit;
+        double memoryAllowed = Math.max(0, memoryCapacityMb - reservedMemoryMb) * memoryOvercommit;
+        double cpu = Math.min(ticket.cpu, cpuAllowed);
+        double memory = Math.min(ticket.memoryMb, memoryAllowed);
+        return committedCpu + inFlightCpu + cpu <= cpuAllowed
+            && committedMemoryMb + inFlightMemoryMb + memory <= memoryAllowed;
+    }
+
+    private void checkRate(String userKey) {
+        if (userRatePerMinute <= 0) {
+            return;
+        }
+        RateBucket bucket = rateBuckets.computeIfAbsent(userKey, k -> new RateBucket(userRatePerMinute));
+        if (!bucket.tryConsume(userRatePerMinute)) {
+            rateLimitedCount.incrementAndGet();
+            log.warn("创建请求过于频繁，拒绝: {}", userKey);
+            throw new EnvException(ERROR_CODE_RATE_LIMITED,
+                String.format("创建请求过于频繁（每分钟最多 %.0f 次），请稍后重试", userRatePerMinute));
+        }
+    }
+
+    private Footprint footprint(String expId) {
+        return footprints.computeIfAbsent(expId, this::loadFootprint);
+    }
+
+    private Footprint loadFootprint(String expId) {
+        ExperimentMetadata metadata = envManagerService.readExperimentMetadata(expId);
+        Footprint footprint = new Footprint();
+        footprint.cpu = metadata.getCpuCores() != null && metadata.getCpuCores() > 0
+            ? metadata.getCpuCores() : defaultCpu;
+        footprint.memoryMb = metadata.getMemoryMb() != null && metadata.getMemoryMb() > 0
+            ? metadata.getMemoryMb() : defaultMemoryMb;
+        return footprint;
+    }
+
+    /**
+     * 读取实验资源声明失败（实验已删除、metadata.json 损坏）时按默认占用统计，不影响其他实验
+     */
+    private Footprint footprintOrDefault(String expId) {
+        try {
+            return footprint(expId);
+        } catch (Exception e) {
+            log.warn("读取实验资源声明失败，按默认占用统计: expId={}, {}", expId, e.getMessage());
+            Footprint footprint = new Footprint();
+            footprint.cpu = defaultCpu;
+            footprint.memoryMb = defaultMemoryMb;
+            return footprint;
+        }
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("刷新主机资源占用失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 重新统计已占用资源（数据库中的运行中/已冻结/预热/过渡状态的环境），并放行排队的请求
+     * 创建中、启动中的环境扣除本进程持有凭证的部分（已计入进行中），其余（如重启前中断的创建）计入已占用
+     */
+    private void refresh() {
+        if (cpuCapacity <= 0 || memoryCapacityMb <= 0) {
+            detectCapacity();
+        }
+        footprints.clear();
+        rateBuckets.values().removeIf(bucket -> bucket.isFull(userRatePerMinute));
+
+        double cpu = 0;
+        double memory = 0;
+        Map<String, Long> starting = new HashMap<>();
+        for (Map<String, Object> row : virtualEnvMapper.countActiveByExpAndStatus()) {
+            String expId = String.valueOf(row.get("exp_id"));
+            String status = String.valueOf(row.get("status"));
+            long count = ((Number) row.get("cnt")).longValue();
+            if (EnvManagerService.CREATING_STATUS.equals(status) || EnvManagerService.STARTING_STATUS.equals(status)) {
+                starting.merge(expId, count, Long::sum);
+                continue;
+            }
+            Footprint footprint = footprintOrDefault(expId);
+            // 冻结的环境不占 CPU，但内存仍保留
+            if (!EnvManagerService.PAUSED_STATUS.equals(status)) {
+                cpu += footprint.cpu * count;
+            }
+            memory += footprint.memoryMb * count;
+        }
+        Map<String, Footprint> startingFootprints = new HashMap<>();
+        starting.keySet().forEach(expId -> startingFootprints.put(expId, footprintOrDefault(expId)));
+        synchronized (this) {
+            for (Map.Entry<String, Long> entry : starting.entrySet()) {
+                long untracked = entry.getValue() - inFlightByExp.getOrDefault(entry.getKey(), 0);
+                if (untracked > 0) {
+                    Footprint footprint = startingFootprints.get(entry.getKey());
+                    cpu += footprint.cpu * untracked;
+                    memory += footprint.memoryMb * untracked;
+                }
+            }
+            committedCpu = cpu;
+            committedMemoryMb = memory;
+            dispatch();
+        }
+    }
+
+    /**
+     * 检测主机容量：配置优先，其次 Docker 守护进程信息（容器实际运行的主机），最后取本机
+     */
+    private void detectCapacity() {
+        double cpu = cpuCapacityConfig;
+        long memory = memoryCapacityConfig;
+        if (cpu <= 0 || memory <= 0) {
+            try {
+                Info info = dockerClient.infoCmd().exec();
+                if (cpu <= 0 && info.getNCPU() != null) {
+                    cpu = info.getNCPU();
+                }
+                if (memory <= 0 && info.getMemTotal() != null) {
+                    memory = info.getMemTotal() / (1024 * 1024);
+                }
+            } catch (Exception e) {
+                log.debug("从 Docker 获取主机容量失败，使用本机信息: {}", e.getMessage());
+            }
+        }
+        if (cpu <= 0) {
+            cpu = Runtime.getRuntime().availableProcessors();
+        }
+        if (memory <= 0) {
+            OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+            if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+                memory = ((com.sun.management.OperatingSystemMXBean) osBean).getTotalPhysicalMemorySize() / (1024 * 1024);
+            }
+        }
+        cpuCapacity = cpu;
+        memoryCapacityMb = memory;
+        log.info("主机容量: cpu={}核, memory={}MB", cpu, memory);
+    }
+
+    private void recordWait(long waitMs) {
+        totalWaitMs.addAndGet(waitMs);
+        if (waitMs > maxWaitMs) {
+            maxWaitMs = waitMs;
+        }
+    }
+
+    /**
+     * 准入控制指标（容量、已占用、启动中、排队情况、拒绝/超时次数、等待耗时）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("cpuCapacity", cpuCapacity);
+        stats.put("memoryCapacityMb", memoryCapacityMb);
+        stats.put("cpuAllowed", cpuCapacity * cpuOvercommit);
+        stats.put("memoryAllowedMb", Math.max(0, memoryCapacityMb - reservedMemoryMb) * memoryOvercommit);
+        synchronized (this) {
+            stats.put("committedCpu", Math.round(committedCpu * 10) / 10.0);
+            stats.put("committedMemoryMb", Math.round(committedMemoryMb));
+            stats.put("inFlight", inFlightCount);
+            stats.put("inFlightCpu", Math.round(inFlightCpu * 10) / 10.0);
+            stats.put("inFlightMemoryMb", Math.round(inFlightMemoryMb));
+            stats.put("waiting", waitingCount);
+            Map<String, Integer> waitingBySystem = new LinkedHashMap<>();
+            for (TenantQueue tenantQueue : tenantRing) {
+                int count = 0;
+                for (Deque<Ticket> tickets : tenantQueue.users.values()) {
+                    count += tickets.size();
+                }
+                waitingBySystem.put(tenantQueue.tenant.isEmpty() ? "(default)" : tenantQueue.tenant, count);
+            }
+            stats.put("waitingBySystem", waitingBySystem);
+        }
+        long admitted = admittedCount.get();
+        stats.put("admitted", admitted);
+        stats.put("queued", queuedCount.get());
+        stats.put("rateLimited", rateLimitedCount.get());
+        stats.put("queueFull", queueFullCount.get());
+        stats.put("timeouts", timeoutCount.get());
+        stats.put("avgWaitMs", admitted == 0 ? 0 : totalWaitMs.get() / admitted);
+        stats.put("maxWaitMs", maxWaitMs);
+        return stats;
+    }
+
+    /**
+     * 准入凭证
+     */
+    public static final class Ticket {
+        private final String tenant;
+        private final String userId;
+        private final String expId;
+        private final double cpu;
+        private final double memoryMb;
+        private final long enqueuedAt = System.currentTimeMillis();
+        private volatile boolean granted;
+        private boolean released;
+
+        private Ticket(String tenant, String userId, String expId, Footprint footprint) {
+            this.tenant = tenant;
+            this.userId = userId;
+            this.expId = expId;
+            this.cpu = footprint.cpu;
+            this.memoryMb = footprint.memoryMb;
+        }
+    }
+
+    /**
+     * 实验的资源占用
+     */
+    private static class Footprint {
+        private double cpu;
+        private double memoryMb;
+    }
+
+    /**
+     * 同一系统下的排队请求（按用户轮转）
+     */
+    private static class TenantQueue {
+        private final String tenant;
+        private final Map<String, Deque<Ticket>> users = new HashMap<>();
+        private final Deque<String> userRing = new ArrayDeque<>();
+
+        TenantQueue(String tenant) {
+            this.tenant = tenant;
+        }
+    }
+
+    /**
+     * 用户创建频率令牌桶（容量和每分钟补充量都为 user-rate-per-minute）
+     */
+    private static class RateBucket {
+        private double tokens;
+        private long lastRefill = System.currentTimeMillis();
+
+        RateBucket(double capacity) {
+            this.tokens = capacity;
+        }
+
+        synchronized boolean tryConsume(double ratePerMinute) {
+            refill(ratePerMinute);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized boolean isFull(double ratePerMinute) {
+            refill(ratePerMinute);
+            return tokens >= ratePerMinute;
+        }
+
+        private void refill(double ratePerMinute) {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(ratePerMinute, tokens + (now - lastRefill) * ratePerMinute / 60000.0);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.dockerenvs.service;
+
+import com.github.dockerjava.api.DockerClient;
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.exception.ContainerException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Docker 守护进程健康监控（熔断器）
+ * 后台定时 ping 守护进程并缓存健康状态和延迟，业务操作前只读缓存状态，不再每次探测：
+ * - CLOSED：守护进程正常，放行所有操作
+ * - OPEN：连续失败达到阈值后打开，操作直接抛出 ContainerException 快速失败
+ * - HALF_OPEN：打开一段时间后由后台探测决定恢复（成功则 CLOSED，失败则重新 OPEN）
+ */
+@Slf4j
+@Service
+public class DockerHealthMonitor {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @Autowired
+    private DockerClient dockerClient;
+
+    @Value("${env.docker.health.enabled:true}")
+    private boolean enabled;
+
+    @Value("${env.docker.health.interval-ms:5000}")
+    private long intervalMs;
+
+    @Value("${env.docker.health.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${env.docker.health.open-duration-ms:10000}")
+    private long openDurationMs;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "docker-health-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private volatile int consecutiveFailures;
+    private volatile String lastError;
+    private volatile LocalDateTime lastCheckTime;
+    private volatile long lastLatencyMs = -1;
+    private volatile double avgLatencyMs = -1;
+    private volatile long maxLatencyMs;
+
+    private final AtomicLong pingCount = new AtomicLong();
+    private final AtomicLong pingFailures = new AtomicLong();
+    private final AtomicLong openCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("Docker 健康监控已禁用");
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::check, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 守护进程当前是否可用（熔断器关闭）
+     */
+    public boolean isAvailable() {
+        return !enabled || state == State.CLOSED;
+    }
+
+    /**
+     * 操作前检查：熔断器未关闭时直接抛出异常，不再访问守护进程
+     */
+    public void ensureAvailable() {
+        if (isAvailable()) {
+            return;
+        }
+        rejectedCount.incrementAndGet();
+        throw new ContainerException(ContainerException.ERROR_CODE_DOCKER_UNAVAILABLE,
+            "Docker 不可用（熔断器状态: " + state + "）。请确保 Docker 已启动并正在运行。"
+                + (lastError != null ? "\n最近错误: " + lastError : ""));
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 执行一次探测并推进熔断器状态
+     */
+    private void check() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                return;
+            }
+            state = State.HALF_OPEN;
+            log.info("Docker 熔断器进入半开状态，开始探测");
+        }
+
+        long start = System.nanoTime();
+        boolean success;
+        try {
+            dockerClient.pingCmd().exec();
+            success = true;
+        } catch (Exception e) {
+            success = false;
+            lastError = e.getMessage();
+        }
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        lastCheckTime = LocalDateTime.now();
+        pingCount.incrementAndGet();
+
+        if (success) {
+            recordLatency(latencyMs);
+            consecutiveFailures = 0;
+            if (state != State.CLOSED) {
+                log.info("Docker 守护进程已恢复，熔断器关闭，ping延迟={}ms", latencyMs);
+            }
+            state = State.CLOSED;
+            lastError = null;
+            return;
+        }
+
+        pingFailures.incrementAndGet();
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                openCount.incrementAndGet();
+                log.warn("Docker 守护进程不可用，熔断器打开: consecutiveFailures={}, error={}",
+                    consecutiveFailures, lastError);
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        } else {
+            log.warn("Docker ping 失败: consecutiveFailures={}, error={}", consecutiveFailures, lastError);
+        }
+    }
+
+    private void recordLatency(long latencyMs) {
+        lastLatencyMs = latencyMs;
+        maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+        // 指数加权平均，平滑偶发抖动
+        avgLatencyMs = avgLatencyMs < 0 ? latencyMs : avgLatencyMs * 0.8 + latencyMs * 0.2;
+    }
+
+    /**
+     * 监控指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("state", state.name());
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("lastLatencyMs", lastLatencyMs);
+        stats.put("avgLatencyMs", avgLatencyMs < 0 ? -1 : Math.round(avgLatencyMs * 10) / 10.0);
+        stats.put("maxLatencyMs", maxLatencyMs);
+        stats.put("pingCount", pingCount.get());
+        stats.put("pingFailures", pingFailures.get());
+        stats.put("openCount", openCount.get());
+        stats.put("rejectedCount", rejectedCount.get());
+        stats.put("lastCheckTime", lastCheckTime);
+        stats.put("lastError", lastError);
+        return stats;
+    }
+}
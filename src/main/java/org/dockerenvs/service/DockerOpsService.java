@@ -1,39 +1,190 @@
 package org.dockerenvs.service;
 
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.HealthState;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.command.InspectVolumeResponse;
+import com.github.dockerjava.api.exception.ConflictException;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.exception.NotModifiedException;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.ExposedPort;
+import com.github.dockerjava.api.model.InternetProtocol;
+import com.github.dockerjava.api.model.Network;
+import com.github.dockerjava.api.model.NetworkSettings;
+import com.github.dockerjava.api.model.Ports;
+import com.github.dockerjava.api.model.StatisticNetworksConfig;
+import com.github.dockerjava.api.model.Statistics;
 import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dto.CommandResult;
+import org.dockerenvs.dto.ComposeServiceSpec;
+import org.dockerenvs.dto.ComposeSpec;
+import org.dockerenvs.dto.ContainerUsage;
+import org.dockerenvs.dto.EnvRuntime;
+import org.dockerenvs.dto.ProjectResources;
+import org.dockerenvs.dto.VolumeConfig;
 import org.dockerenvs.exception.ContainerException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 /**
  * Docker操作服务
+ * 默认通过 DockerClient 直接访问守护进程（engine=api），
+ * 配置 env.docker.engine=cli 时回退为调用 docker 命令行
  */
 @Slf4j
 @Service
 public class DockerOpsService {
     
+    /**
+     * docker compose 为容器、网络、数据卷打上的项目标签
+     */
+    private static final String COMPOSE_PROJECT_LABEL = "com.docker.compose.project";
+    private static final String COMPOSE_SERVICE_LABEL = "com.docker.compose.service";
+    private static final String APP_SERVICE_NAME = "app";
+    
+    /**
+     * 单次资源使用采样的等待上限（守护进程需要约1秒采集两次 CPU 数据）
+     */
+    private static final long STATS_TIMEOUT_SECONDS = 5;
+    
+    /**
+     * 环境容器标签（创建时打上，用于按标签批量查询和对账）
+     */
+    public static final String ENV_ID_LABEL = "org.dockerenvs.env-id";
+    public static final String USER_ID_LABEL = "org.dockerenvs.user-id";
+    public static final String EXP_ID_LABEL = "org.dockerenvs.exp-id";
+    /**
+     * 应用监听的容器端口（网关直连容器时使用）
+     */
+    public static final String CONTAINER_PORT_LABEL = "org.dockerenvs.container-port";
+    
+    @Autowired
+    private DockerClient dockerClient;
+    
+    @Autowired
+    private DockerStateCache dockerStateCache;
+    
+    @Autowired
+    private NativeComposeService nativeComposeService;
+    
+    @Autowired
+    private DockerHealthMonitor dockerHealthMonitor;
+    
+    @Autowired
+    private ProcessRunner processRunner;
+    
+    @Autowired
+    private EnvRuntimeRegistry envRuntimeRegistry;
+    
+    @Value("${env.docker.engine:api}")
+    private String dockerEngine;
+    
+    @Value("${env.compose.engine:native}")
+    private String composeEngine;
+    
+    @Value("${env.process.compose-timeout-seconds:300}")
+    private long composeTimeoutSeconds;
+    
+    /**
+     * 销毁环境时并发删除容器、网络、数据卷的线程数
+     */
+    @Value("${env.destroy.docker-parallelism:16}")
+    private int removalParallelism;
+    
+    private ExecutorService removalExecutor;
+    
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        removalExecutor = new ThreadPoolExecutor(removalParallelism, removalParallelism, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "docker-remove-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        ((ThreadPoolExecutor) removalExecutor).allowCoreThreadTimeOut(true);
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        removalExecutor.shutdownNow();
+    }
+    
+    /**
+     * 是否使用 DockerClient API（否则使用 docker 命令行）
+     */
+    private boolean useApiEngine() {
+        return !"cli".equalsIgnoreCase(dockerEngine);
+    }
+    
     /**
      * 检查 Docker 是否可用
      */
     public boolean isDockerAvailable() {
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder("docker", "ps");
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-            int exitCode = process.waitFor();
-            return exitCode == 0;
-        } catch (Exception e) {
-            log.warn("检查 Docker 可用性失败", e);
-            return false;
+        if (dockerHealthMonitor.isEnabled()) {
+            return dockerHealthMonitor.isAvailable();
+        }
+        if (useApiEngine()) {
+            try {
+                dockerClient.pingCmd().exec();
+                return true;
+            } catch (Exception e) {
+                log.warn("检查 Docker 可用性失败: {}", e.getMessage());
+                return false;
+            }
+        }
+        // 只查询守护进程版本，不列出容器
+        CommandResult result = processRunner.run(10, "docker", "version", "--format", "{{.Server.Version}}");
+        if (!result.isSuccess()) {
+            log.warn("检查 Docker 可用性失败: {}", result.getOutput());
+        }
+        return result.isSuccess();
+    }
+    
+    /**
+     * 操作前检查 Docker 是否可用
+     * 启用健康监控时只读取熔断器状态（不可用时快速失败），否则实时探测
+     */
+    private void ensureDockerAvailable() {
+        if (dockerHealthMonitor.isEnabled()) {
+            dockerHealthMonitor.ensureAvailable();
+            return;
+        }
+        if (!isDockerAvailable()) {
+            String errorMsg = "Docker 不可用。请确保 Docker Desktop 已启动并正在运行。";
+            log.error(errorMsg);
+            throw new ContainerException(ContainerException.ERROR_CODE_DOCKER_UNAVAILABLE,
+                parseDockerError(errorMsg));
         }
     }
     
@@ -97,454 +248,1294 @@ public class DockerOpsService {
     }
     
     /**
-     * 启动容器（使用docker-compose）
+     * 启动容器（使用docker-compose）
+     */
+    public String startContainer(String envDir) {
+        return startContainer(envDir, true);
+    }
+
+    /**
+     * 按编排模型启动容器
+     * env.compose.engine=native 时直接通过 Docker API 并行创建各服务，否则回退为 docker compose up
+     * @param envDir 环境目录（docker-compose.yml 所在目录）
+     * @param spec 编排模型，为null时使用 compose 文件
+     * @param waitForHealthy 是否等待健康检查完成
+     */
+    public String startContainer(String envDir, ComposeSpec spec, boolean waitForHealthy) {
+        if (spec == null || !useApiEngine() || !"native".equalsIgnoreCase(composeEngine)) {
+            if (spec == null) {
+                return startContainer(envDir, waitForHealthy);
+            }
+            // 先记录项目名称，docker compose 命令直接使用，不再从 compose 文件推导
+            recordRuntime(spec, Collections.emptyMap(), null);
+            String containerId = startContainer(envDir, waitForHealthy);
+            recordRuntime(spec, null, containerId);
+            return containerId;
+        }
+        ensureDockerAvailable();
+        
+        Map<String, String> containerIds;
+        try {
+            containerIds = nativeComposeService.up(spec);
+        } catch (ContainerException e) {
+            throw new ContainerException(e.getErrorCode(), parseDockerError(e.getMessage()), e);
+        } catch (Exception e) {
+            log.error("启动容器失败: projectName={}", spec.getProjectName(), e);
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "启动容器失败: " + parseDockerError(e.getMessage()), e);
+        }
+        
+        String containerId = containerIds.get(APP_SERVICE_NAME);
+        if (containerId == null) {
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "无法获取容器ID，项目: " + spec.getProjectName());
+        }
+        recordRuntime(spec, containerIds, containerId);
+        log.info("容器启动成功，容器ID: {}", containerId);
+        
+        if (waitForHealthy) {
+            waitForContainerHealthy(containerId, 30);
+        } else {
+            log.info("跳过健康检查等待: containerId={}", containerId);
+        }
+        return containerId;
+    }
+    
+    /**
+     * 启动容器（使用docker-compose）
+     * @param envDir 环境目录
+     * @param waitForHealthy 是否等待健康检查完成
+     */
+    public String startContainer(String envDir, boolean waitForHealthy) {
+        // 先检查 Docker 是否可用
+        ensureDockerAvailable();
+        
+        CommandResult result = runCompose(envDir, "up", "-d");
+        if (!result.isSuccess()) {
+            String errorMsg = result.getOutput();
+            log.error("Docker Compose启动失败，退出码: {}, 输出: {}", result.getExitCode(), errorMsg);
+            String friendlyError = parseDockerError(errorMsg);
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "启动容器失败，退出码: " + result.getExitCode() + "\n" + friendlyError);
+        }
+        
+        // 获取容器ID（应用容器）
+        String containerId = getContainerId(envDir);
+        if (containerId == null || containerId.trim().isEmpty()) {
+            log.error("无法获取容器ID，Docker Compose输出: {}", result.getOutput());
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "无法获取容器ID，请检查Docker Compose输出: " + result.getOutput());
+        }
+        
+        log.info("容器启动成功，容器ID: {}", containerId);
+        
+        if (waitForHealthy) {
+            // 等待容器健康检查
+            waitForContainerHealthy(containerId, 30);
+        } else {
+            log.info("跳过健康检查等待: containerId={}", containerId);
+        }
+        
+        return containerId;
+    }
+    
+    /**
+     * 按编排模型增量更新已有项目：重建变化的服务和缺少容器的服务，删除模型中已没有的服务，
+     * 其余服务原地重启（restartUnchanged=true）或确保在运行
+     * 使用命令行方式时由 docker compose up 按自身的配置摘要决定重建哪些服务
+     * @param changed 模型变化、需要重建的服务名称
+     * @param restartUnchanged 未变化的服务是否重启（重置时重启以重新加载程序包）
+     * @return 应用容器ID
+     */
+    public String updateContainers(String envDir, ComposeSpec spec, Set<String> changed,
+                                   boolean restartUnchanged, boolean waitForHealthy) {
+        ensureDockerAvailable();
+        String containerId = useApiEngine() && "native".equalsIgnoreCase(composeEngine)
+            ? updateProjectByApi(spec, changed, restartUnchanged)
+            : updateProjectByCompose(envDir, spec, changed, restartUnchanged);
+        recordRuntime(spec, null, containerId);
+        if (waitForHealthy) {
+            waitForContainerHealthy(containerId, 30);
+        }
+        return containerId;
+    }
+    
+    private String updateProjectByApi(ComposeSpec spec, Set<String> changed, boolean restartUnchanged) {
+        String projectName = spec.getProjectName();
+        Set<String> recreate = new LinkedHashSet<>(changed);
+        Map<String, Container> existing = new HashMap<>();
+        try {
+            for (Container container : listProjectContainers(projectName, true)) {
+                String service = container.getLabels() != null ? container.getLabels().get(COMPOSE_SERVICE_LABEL) : null;
+                if (spec.getServices().stream().anyMatch(declared -> declared.getName().equals(service))) {
+                    existing.put(service, container);
+                    continue;
+                }
+                // 模型中已没有的服务
+                try {
+                    dockerClient.removeContainerCmd(container.getId()).withForce(true).exec();
+                    dockerStateCache.evictContainer(container.getId());
+                    log.info("删除已移除服务的容器: projectName={}, service={}", projectName, service);
+                } catch (NotFoundException e) {
+                    log.debug("容器已不存在: {}", container.getId());
+                }
+            }
+            spec.getServices().stream()
+                .filter(service -> !existing.containsKey(service.getName()))
+                .forEach(service -> recreate.add(service.getName()));
+            
+            Map<String, String> containerIds = new HashMap<>();
+            if (!recreate.isEmpty()) {
+                containerIds.putAll(nativeComposeService.up(spec, recreate));
+            }
+            for (Map.Entry<String, Container> entry : existing.entrySet()) {
+                if (recreate.contains(entry.getKey())) {
+                    continue;
+                }
+                String id = entry.getValue().getId();
+                if (restartUnchanged) {
+                    dockerClient.restartContainerCmd(id).exec();
+                } else if (!"running".equals(entry.getValue().getState())) {
+                    try {
+                        dockerClient.startContainerCmd(id).exec();
+                    } catch (NotModifiedException e) {
+                        log.debug("容器已在运行: {}", id);
+                    }
+                }
+                dockerStateCache.recordContainerState(id, "running");
+                containerIds.put(entry.getKey(), id);
+            }
+            log.info("项目增量更新完成: projectName={}, 重建={}, {}={}", projectName, recreate,
+                restartUnchanged ? "重启" : "启动", existing.keySet().stream()
+                    .filter(service -> !recreate.contains(service)).collect(Collectors.toList()));
+            
+            String containerId = containerIds.get(APP_SERVICE_NAME);
+            if (containerId == null) {
+                throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                    "无法获取容器ID，项目: " + projectName);
+            }
+            return containerId;
+        } catch (ContainerException e) {
+            throw new ContainerException(e.getErrorCode(), parseDockerError(e.getMessage()), e);
+        } catch (Exception e) {
+            log.error("更新项目容器失败: projectName={}", projectName, e);
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "启动容器失败: " + parseDockerError(e.getMessage()), e);
+        }
+    }
+    
+    private String updateProjectByCompose(String envDir, ComposeSpec spec, Set<String> changed,
+                                          boolean restartUnchanged) {
+        // compose 按配置摘要只重建变化的服务，缺少的容器会被创建，已移除的服务随 --remove-orphans 删除
+        CommandResult result = runCompose(envDir, "up", "-d", "--remove-orphans");
+        if (!result.isSuccess()) {
+            log.error("Docker Compose启动失败，退出码: {}, 输出: {}", result.getExitCode(), result.getOutput());
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "启动容器失败，退出码: " + result.getExitCode() + "\n" + parseDockerError(result.getOutput()));
+        }
+        List<String> unchanged = spec.getServices().stream()
+            .map(ComposeServiceSpec::getName)
+            .filter(name -> !changed.contains(name))
+            .collect(Collectors.toList());
+        if (restartUnchanged && !unchanged.isEmpty()) {
+            List<String> args = new ArrayList<>();
+            args.add("restart");
+            args.addAll(unchanged);
+            CommandResult restart = runCompose(envDir, args.toArray(new String[0]));
+            if (!restart.isSuccess()) {
+                throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                    "重启容器失败: " + parseDockerError(restart.getOutput()));
+            }
+        }
+        String containerId = getContainerId(envDir);
+        if (containerId == null || containerId.trim().isEmpty()) {
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "无法获取容器ID，请检查Docker Compose输出: " + result.getOutput());
+        }
+        return containerId;
+    }
+    
+    /**
+     * 停止容器
+     * @param envDir 环境目录
+     * @param removeVolumes 是否删除命名volume（true=删除，false=保留）
+     */
+    public void stopContainer(String envDir, boolean removeVolumes) {
+        envRuntimeRegistry.clearContainers(envDir);
+        if (useApiEngine()) {
+            removeProjectByApi(projectName(envDir), removeVolumes);
+            return;
+        }
+        CommandResult result;
+        if (removeVolumes) {
+            // 删除容器和命名volume（只删除项目相关的volume，不会删除共享数据库的volume）
+            // 因为共享数据库是独立创建的，不在docker-compose项目中
+            log.info("停止容器并删除项目相关的volume: envDir={}", envDir);
+            log.debug("注意：共享数据库的volume（shared-mysql-data）不会被删除，因为它是独立管理的");
+            result = runCompose(envDir, "down", "-v");
+        } else {
+            // 只删除容器，保留volume
+            log.info("停止容器（保留volume）: envDir={}", envDir);
+            result = runCompose(envDir, "down");
+        }
+        
+        if (result.isTimedOut() || result.isRejected() || result.getErrorMessage() != null) {
+            log.error("停止容器失败: {}", result.getOutput());
+            throw new ContainerException(ContainerException.ERROR_CODE_STOP_FAILED,
+                "停止容器失败: " + result.getOutput());
+        }
+        if (!result.isSuccess()) {
+            log.warn("停止容器可能失败，退出码: {}, 输出: {}", result.getExitCode(), result.getOutput());
+        } else {
+            log.info("容器停止成功");
+        }
+    }
+    
+    /**
+     * 按环境ID删除编排项目的全部容器和网络（不依赖环境目录中的 compose 文件）
+     * 用于同一环境目录已被其他环境的 compose 文件覆盖时，精确清理指定环境
+     * @param envId 环境ID
+     * @param removeVolumes 是否删除项目的命名volume
+     */
+    public void removeEnvProject(String envId, boolean removeVolumes) {
+        String projectName = projectNameOf(envId);
+        envRuntimeRegistry.remove(envId);
+        if (useApiEngine()) {
+            removeProjectByApi(projectName, removeVolumes);
+            return;
+        }
+        CommandResult result = removeVolumes
+            ? processRunner.run(composeTimeoutSeconds, "docker", "compose", "-p", projectName, "down", "-v")
+            : processRunner.run(composeTimeoutSeconds, "docker", "compose", "-p", projectName, "down");
+        if (!result.isSuccess()) {
+            log.warn("删除环境项目可能失败: projectName={}, 输出: {}", projectName, result.getOutput());
+        }
+    }
+    
+    /**
+     * 环境的编排项目名称（Docker Compose 项目名称只能包含小写字母、数字、下划线和连字符）
+     */
+    public static String projectNameOf(String envId) {
+        return ("env-" + envId).toLowerCase().replaceAll("[^a-z0-9_-]", "_");
+    }
+    
+    /**
+     * 快速销毁环境的编排项目：按项目标签找出容器、网络、数据卷后并发强制删除（不依赖环境目录中的 compose 文件）
+     * 记录中的容器ID（旧版本创建的容器可能不带项目标签）一并强制删除；使用命令行方式时等价于 compose down -v 加 rm -f
+     * @param listed 批量销毁时预先列出的全部项目资源，为null时单独查询该项目
+     */
+    public void destroyEnvProject(String envId, String containerId, Map<String, ProjectResources> listed) {
+        envRuntimeRegistry.remove(envId);
+        if (!useApiEngine()) {
+            removeEnvProject(envId, true);
+            removeContainer(containerId);
+            return;
+        }
+        String projectName = projectNameOf(envId);
+        if (listed == null) {
+            listed = collectProjectResources(Collections.singletonList(COMPOSE_PROJECT_LABEL + "=" + projectName));
+        }
+        ProjectResources resources = listed.get(projectName);
+        if (resources == null) {
+            resources = new ProjectResources();
+            resources.setProjectName(projectName);
+        }
+        if (containerId != null && !containerId.trim().isEmpty()
+                && resources.getContainerIds().stream().noneMatch(id -> id.startsWith(containerId))) {
+            resources.getContainerIds().add(containerId);
+        }
+        removeProjectResources(resources);
+    }
+    
+    /**
+     * 一次列出全部编排项目的容器、网络、数据卷，按项目名分组（批量销毁时避免每个环境各查三次）
+     * @return 项目名到资源的映射；使用命令行方式时返回null
+     */
+    public Map<String, ProjectResources> listProjectResources() {
+        if (!useApiEngine()) {
+            return null;
+        }
+        return collectProjectResources(Collections.singletonList(COMPOSE_PROJECT_LABEL));
+    }
+    
+    /**
+     * 按标签过滤列出容器、网络、数据卷，按项目名分组
+     */
+    private Map<String, ProjectResources> collectProjectResources(List<String> labelFilter) {
+        Map<String, ProjectResources> byProject = new HashMap<>();
+        for (Container container : dockerClient.listContainersCmd()
+                .withShowAll(true).withLabelFilter(labelFilter).exec()) {
+            String projectName = container.getLabels() != null ? container.getLabels().get(COMPOSE_PROJECT_LABEL) : null;
+            if (projectName != null) {
+                projectResources(byProject, projectName).getContainerIds().add(container.getId());
+            }
+        }
+        for (Network network : dockerClient.listNetworksCmd().withFilter("label", labelFilter).exec()) {
+            String projectName = network.getLabels() != null ? network.getLabels().get(COMPOSE_PROJECT_LABEL) : null;
+            if (projectName != null) {
+                projectResources(byProject, projectName).getNetworkIds().add(network.getId());
+            }
+        }
+        List<InspectVolumeResponse> volumes =
+            dockerClient.listVolumesCmd().withFilter("label", labelFilter).exec().getVolumes();
+        if (volumes != null) {
+            for (InspectVolumeResponse volume : volumes) {
+                String projectName = volume.getLabels() != null ? volume.getLabels().get(COMPOSE_PROJECT_LABEL) : null;
+                if (projectName != null) {
+                    projectResources(byProject, projectName).getVolumeNames().add(volume.getName());
+                }
+            }
+        }
+        return byProject;
+    }
+    
+    private ProjectResources projectResources(Map<String, ProjectResources> byProject, String projectName) {
+        return byProject.computeIfAbsent(projectName, name -> {
+            ProjectResources resources = new ProjectResources();
+            resources.setProjectName(name);
+            return resources;
+        });
+    }
+    
+    /**
+     * 并发强制删除项目的全部容器（含匿名数据卷），再并发删除网络和命名数据卷（二者在容器删除前仍被占用）
+     * 已不存在的资源直接跳过
+     */
+    public void removeProjectResources(ProjectResources resources) {
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (String containerId : resources.getContainerIds()) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        dockerClient.removeContainerCmd(containerId)
+                            .withForce(true)
+                            .withRemoveVolumes(true)
+                            .exec();
+                        dockerStateCache.evictContainer(containerId);
+                    } catch (NotFoundException e) {
+                        log.debug("容器已不存在: {}", containerId);
+                    }
+                }, removalExecutor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            
+            futures.clear();
+            for (String networkId : resources.getNetworkIds()) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        dockerClient.removeNetworkCmd(networkId).exec();
+                    } catch (NotFoundException e) {
+                        log.debug("网络已不存在: {}", networkId);
+                    }
+                }, removalExecutor));
+            }
+            // 只删除项目相关的volume，共享数据库的volume不带项目标签，不会被删除
+            for (String volumeName : resources.getVolumeNames()) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        dockerClient.removeVolumeCmd(volumeName).exec();
+                    } catch (NotFoundException e) {
+                        log.debug("数据卷已不存在: {}", volumeName);
+                    }
+                }, removalExecutor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            log.info("项目资源删除成功: projectName={}, 容器={}, 网络={}, 数据卷={}", resources.getProjectName(),
+                resources.getContainerIds().size(), resources.getNetworkIds().size(), resources.getVolumeNames().size());
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.error("删除项目资源失败: projectName={}", resources.getProjectName(), cause);
+            throw new ContainerException(ContainerException.ERROR_CODE_STOP_FAILED,
+                "删除项目资源失败: " + cause.getMessage(), cause);
+        }
+    }
+    
+    /**
+     * 停止容器（保留volume，向后兼容）
+     */
+    public void stopContainer(String envDir) {
+        stopContainer(envDir, false);
+    }
+    
+    /**
+     * 只停止容器，不删除（用于停止/启动操作）
+     * @param envDir 环境目录
+     */
+    public void stopContainerOnly(String envDir) {
+        if (useApiEngine()) {
+            EnvRuntime runtime = envRuntimeRegistry.get(envDir);
+            if (runtime == null || runtime.getContainers().isEmpty() || !stopContainersByApi(runtime)) {
+                stopProjectByApi(projectName(envDir));
+            }
+            return;
+        }
+        CommandResult result = runCompose(envDir, "stop");
+        if (result.isTimedOut() || result.isRejected() || result.getErrorMessage() != null) {
+            log.error("停止容器失败: {}", result.getOutput());
+            throw new ContainerException(ContainerException.ERROR_CODE_STOP_FAILED,
+                "停止容器失败: " + result.getOutput());
+        }
+        if (!result.isSuccess()) {
+            log.warn("停止容器可能失败，退出码: {}, 输出: {}", result.getExitCode(), result.getOutput());
+        } else {
+            log.info("容器停止成功（保留容器）");
+        }
+    }
+    
+    /**
+     * 启动已存在的容器（用于停止/启动操作）
+     * @param envDir 环境目录
+     * @return 容器ID
+     */
+    public String startContainerOnly(String envDir) {
+        ensureDockerAvailable();
+        
+        if (useApiEngine()) {
+            return startProjectByApi(projectName(envDir));
+        }
+        
+        CommandResult result = runCompose(envDir, "start");
+        if (!result.isSuccess()) {
+            String errorMsg = result.getOutput();
+            log.error("Docker Compose启动失败，退出码: {}, 输出: {}", result.getExitCode(), errorMsg);
+            String friendlyError = parseDockerError(errorMsg);
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "启动容器失败，退出码: " + result.getExitCode() + "\n" + friendlyError);
+        }
+        
+        // 获取容器ID
+        String containerId = getContainerId(envDir);
+        if (containerId == null || containerId.trim().isEmpty()) {
+            log.error("无法获取容器ID，Docker Compose输出: {}", result.getOutput());
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "无法获取容器ID，请检查Docker Compose输出: " + result.getOutput());
+        }
+        
+        log.info("容器启动成功（使用已存在的容器），容器ID: {}", containerId);
+        
+        // 验证容器是否真的存在
+        if (!containerExists(containerId)) {
+            log.error("容器启动后不存在: containerId={}", containerId);
+            throw new ContainerException(ContainerException.ERROR_CODE_NOT_FOUND,
+                "容器启动后不存在，容器ID: " + containerId);
+        }
+        
+        return containerId;
+    }
+    
+    /**
+     * 冻结容器进程（docker pause，基于 cgroup freezer），容器和内存中的应用状态都保留
+     * @param envDir 环境目录
+     */
+    public void pauseContainerOnly(String envDir) {
+        ensureDockerAvailable();
+        
+        if (useApiEngine()) {
+            pauseProjectByApi(projectName(envDir), true);
+            return;
+        }
+        CommandResult result = runCompose(envDir, "pause");
+        if (!result.isSuccess()) {
+            log.error("冻结容器失败: {}", result.getOutput());
+            throw new ContainerException(ContainerException.ERROR_CODE_STOP_FAILED,
+                "冻结容器失败: " + result.getOutput());
+        }
+        log.info("容器冻结成功");
+    }
+    
+    /**
+     * 解冻容器进程（docker unpause），毫秒级恢复
+     * @param envDir 环境目录
+     */
+    public void unpauseContainerOnly(String envDir) {
+        ensureDockerAvailable();
+        
+        if (useApiEngine()) {
+            pauseProjectByApi(projectName(envDir), false);
+            return;
+        }
+        CommandResult result = runCompose(envDir, "unpause");
+        if (!result.isSuccess()) {
+            log.error("解冻容器失败: {}", result.getOutput());
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "解冻容器失败: " + result.getOutput());
+        }
+        log.info("容器解冻成功");
+    }
+    
+    /**
+     * 获取容器ID（返回第一个容器，通常是应用容器）
+     */
+    private String getContainerId(String envDir) {
+        if (useApiEngine()) {
+            return findAppContainerId(projectName(envDir));
+        }
+        CommandResult result = runCompose(envDir, "ps", "-q");
+        if (!result.isSuccess()) {
+            log.warn("获取容器ID失败: {}", result.getOutput());
+            return null;
+        }
+        return result.getFirstLine();
+    }
+    
+    
+    /**
+     * 等待容器健康（默认超时30秒）
+     * 用于调用方先启动容器、再单独等待健康检查的场景（如异步创建任务需要分阶段上报进度）
+     */
+    public void waitForContainerHealthy(String containerId) {
+        waitForContainerHealthy(containerId, 30);
+    }
+    
+    /**
+     * 等待容器健康
+     */
+    private void waitForContainerHealthy(String containerId, int timeoutSeconds) {
+        if (containerId == null) {
+            return;
+        }
+        
+        long startTime = System.currentTimeMillis();
+        while (System.currentTimeMillis() - startTime < timeoutSeconds * 1000) {
+            if (isContainerHealthy(containerId)) {
+                log.info("容器健康检查通过: {}", containerId);
+                return;
+            }
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        log.warn("容器健康检查超时: {}", containerId);
+    }
+    
+    /**
+     * 等待容器完全就绪：配置了健康检查时必须为 healthy（starting 不算），否则必须处于运行状态
+     * 用于预热环境，保证交给用户时应用已可访问
+     * @return 是否在期限内就绪
+     */
+    public boolean waitForContainerReady(String containerId, int timeoutSeconds) {
+        if (containerId == null) {
+            return false;
+        }
+        long startTime = System.currentTimeMillis();
+        while (System.currentTimeMillis() - startTime < timeoutSeconds * 1000L) {
+            String status = inspectReadiness(containerId);
+            if ("healthy".equals(status) || "running".equals(status)) {
+                log.info("容器已就绪: containerId={}, status={}", containerId, status);
+                return true;
+            }
+            if (status == null || "unhealthy".equals(status) || "exited".equals(status) || "dead".equals(status)) {
+                log.warn("容器未能就绪: containerId={}, status={}", containerId, status);
+                return false;
+            }
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        log.warn("等待容器就绪超时: {}", containerId);
+        return false;
+    }
+    
+    /**
+     * 查询容器就绪状态：配置了健康检查时返回健康状态（healthy/starting/unhealthy），否则返回运行状态
+     * 容器不存在或查询失败时返回null
+     */
+    private String inspectReadiness(String containerId) {
+        if (useApiEngine()) {
+            try {
+                InspectContainerResponse.ContainerState state =
+                    dockerClient.inspectContainerCmd(containerId).exec().getState();
+                HealthState health = state.getHealth();
+                if (health != null && health.getStatus() != null) {
+                    return health.getStatus();
+                }
+                return state.getStatus();
+            } catch (NotFoundException e) {
+                return null;
+            } catch (Exception e) {
+                log.warn("查询容器就绪状态失败: {}", containerId, e);
+                return null;
+            }
+        }
+        CommandResult result = processRunner.run(10, "docker", "inspect", "--format",
+            "{{if .State.Health}}{{.State.Health.Status}}{{else}}{{.State.Status}}{{end}}", containerId);
+        return result.isSuccess() ? result.getFirstLine() : null;
+    }
+    
+    /**
+     * 检查容器是否健康
+     */
+    private boolean isContainerHealthy(String containerId) {
+        Boolean cached = dockerStateCache.isContainerHealthy(containerId);
+        if (cached != null) {
+            return cached;
+        }
+        if (useApiEngine()) {
+            try {
+                InspectContainerResponse.ContainerState state =
+                    dockerClient.inspectContainerCmd(containerId).exec().getState();
+                HealthState health = state.getHealth();
+                if (health == null || health.getStatus() == null) {
+                    // 未配置健康检查，以运行状态为准
+                    return Boolean.TRUE.equals(state.getRunning());
+                }
+                return "healthy".equals(health.getStatus()) || "starting".equals(health.getStatus());
+            } catch (NotFoundException e) {
+                return false;
+            } catch (Exception e) {
+                log.warn("检查容器健康状态失败: {}", containerId, e);
+                return false;
+            }
+        }
+        CommandResult result = processRunner.run(10,
+            "docker", "inspect", "--format", "{{.State.Health.Status}}", containerId);
+        if (!result.isSuccess()) {
+            // 如果没有健康检查配置，检查容器是否运行
+            return isContainerRunning(containerId);
+        }
+        String status = result.getFirstLine();
+        return "healthy".equals(status) || "starting".equals(status);
+    }
+    
+    /**
+     * 检查容器是否运行
+     */
+    private boolean isContainerRunning(String containerId) {
+        Boolean cached = dockerStateCache.isContainerRunning(containerId);
+        if (cached != null) {
+            return cached;
+        }
+        if (useApiEngine()) {
+            try {
+                InspectContainerResponse.ContainerState state =
+                    dockerClient.inspectContainerCmd(containerId).exec().getState();
+                return Boolean.TRUE.equals(state.getRunning());
+            } catch (NotFoundException e) {
+                return false;
+            } catch (Exception e) {
+                log.warn("检查容器运行状态失败", e);
+                return false;
+            }
+        }
+        CommandResult result = processRunner.run(10,
+            "docker", "ps", "--filter", "id=" + containerId, "--format", "{{.ID}}");
+        if (!result.isSuccess()) {
+            log.warn("检查容器运行状态失败: {}", result.getOutput());
+            return false;
+        }
+        return result.getFirstLine() != null;
+    }
+    
+    /**
+     * 采样容器资源使用计数（累计 CPU 时间和网络收发字节数）
+     * 只在 API 方式下支持，命令行方式或采样失败时返回null
+     */
+    public ContainerUsage sampleContainerUsage(String containerId) {
+        if (containerId == null || !useApiEngine()) {
+            return null;
+        }
+        AtomicReference<Statistics> holder = new AtomicReference<>();
+        ResultCallback.Adapter<Statistics> callback = new ResultCallback.Adapter<Statistics>() {
+            @Override
+            public void onNext(Statistics statistics) {
+                holder.compareAndSet(null, statistics);
+            }
+        };
+        try {
+            dockerClient.statsCmd(containerId).withNoStream(true).exec(callback)
+                .awaitCompletion(STATS_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            log.debug("采样容器资源使用失败: {}, {}", containerId, e.getMessage());
+            return null;
+        } finally {
+            try {
+                callback.close();
+            } catch (IOException ignored) {
+                // 关闭失败不影响结果
+            }
+        }
+        
+        Statistics statistics = holder.get();
+        if (statistics == null) {
+            return null;
+        }
+        ContainerUsage usage = new ContainerUsage();
+        if (statistics.getCpuStats() != null && statistics.getCpuStats().getCpuUsage() != null
+                && statistics.getCpuStats().getCpuUsage().getTotalUsage() != null) {
+            usage.setCpuTotalNanos(statistics.getCpuStats().getCpuUsage().getTotalUsage());
+        }
+        long networkBytes = 0;
+        if (statistics.getNetworks() != null) {
+            for (StatisticNetworksConfig network : statistics.getNetworks().values()) {
+                networkBytes += network.getRxBytes() != null ? network.getRxBytes() : 0;
+                networkBytes += network.getTxBytes() != null ? network.getTxBytes() : 0;
+            }
+        }
+        usage.setNetworkBytes(networkBytes);
+        usage.setSampledAt(System.currentTimeMillis());
+        return usage;
+    }
+    
+    /**
+     * 读取容器端口实际发布到的宿主机端口（发布时宿主机端口为空，由守护进程分配）
+     * @param containerPort 容器端口（TCP），为null时取第一个发布的端口
+     * @return 宿主机端口，未发布或查询失败时返回null
+     */
+    public Integer getPublishedPort(String containerId, Integer containerPort) {
+        if (useApiEngine()) {
+            try {
+                NetworkSettings settings = dockerClient.inspectContainerCmd(containerId).exec().getNetworkSettings();
+                if (settings == null || settings.getPorts() == null) {
+                    return null;
+                }
+                for (Map.Entry<ExposedPort, Ports.Binding[]> entry : settings.getPorts().getBindings().entrySet()) {
+                    boolean matches = containerPort == null
+                        || (entry.getKey().getPort() == containerPort
+                            && entry.getKey().getProtocol() == InternetProtocol.TCP);
+                    if (!matches || entry.getValue() == null) {
+                        continue;
+                    }
+                    for (Ports.Binding binding : entry.getValue()) {
+                        Integer port = parseHostPort(binding.getHostPortSpec());
+                        if (port != null) {
+                            return port;
+                        }
+                    }
+                }
+                return null;
+            } catch (NotFoundException e) {
+                return null;
+            } catch (Exception e) {
+                log.warn("查询容器端口映射失败: {}", containerId, e);
+                return null;
+            }
+        }
+        // 输出形如 0.0.0.0:49153（指定容器端口）或 8080/tcp -> 0.0.0.0:49153
+        CommandResult result = containerPort != null
+            ? processRunner.run(10, "docker", "port", containerId, containerPort + "/tcp")
+            : processRunner.run(10, "docker", "port", containerId);
+        if (!result.isSuccess()) {
+            log.warn("查询容器端口映射失败: {}, {}", containerId, result.getOutput());
+            return null;
+        }
+        for (String line : result.getStdoutLines()) {
+            Integer port = parseHostPort(line.substring(line.lastIndexOf(':') + 1).trim());
+            if (port != null) {
+                return port;
+            }
+        }
+        return null;
+    }
+    
+    private Integer parseHostPort(String hostPortSpec) {
+        if (hostPortSpec == null || hostPortSpec.isEmpty()) {
+            return null;
+        }
+        try {
+            int port = Integer.parseInt(hostPortSpec);
+            return port > 0 ? port : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 查询运行中容器在 Docker 网络中的地址（网关直连容器端口，不经过宿主机端口）
+     * 端口取容器端口标签，旧容器没有标签时取第一个暴露的 TCP 端口；名称包含 preferredNetwork 的网络优先
+     * @return host:port，容器不存在、未运行或查询失败时返回null
+     */
+    public String getContainerAddress(String containerId, String preferredNetwork) {
+        String port;
+        Map<String, String> addressByNetwork = new LinkedHashMap<>();
+        if (useApiEngine()) {
+            try {
+                InspectContainerResponse response = dockerClient.inspectContainerCmd(containerId).exec();
+                if (!Boolean.TRUE.equals(response.getState().getRunning())) {
+                    return null;
+                }
+                Map<String, String> labels = response.getConfig().getLabels();
+                port = labels != null ? labels.get(CONTAINER_PORT_LABEL) : null;
+                ExposedPort[] exposedPorts = response.getConfig().getExposedPorts();
+                if (port == null && exposedPorts != null) {
+                    for (ExposedPort exposedPort : exposedPorts) {
+                        if (exposedPort.getProtocol() == InternetProtocol.TCP) {
+                            port = String.valueOf(exposedPort.getPort());
+                            break;
+                        }
+                    }
+                }
+                if (response.getNetworkSettings() != null && response.getNetworkSettings().getNetworks() != null) {
+                    response.getNetworkSettings().getNetworks().forEach((name, network) ->
+                        addressByNetwork.put(name, network.getIpAddress()));
+                }
+            } catch (NotFoundException e) {
+                return null;
+            } catch (Exception e) {
+                log.warn("查询容器网络地址失败: {}", containerId, e);
+                return null;
+            }
+        } else {
+            // 输出形如 true|8080|8080/tcp,|net-a=172.18.0.2,net-b=172.19.0.3,
+            CommandResult result = processRunner.run(10, "docker", "inspect", "--format",
+                "{{.State.Running}}|{{index .Config.Labels \"" + CONTAINER_PORT_LABEL + "\"}}|"
+                    + "{{range $p, $v := .Config.ExposedPorts}}{{$p}},{{end}}|"
+                    + "{{range $k, $v := .NetworkSettings.Networks}}{{$k}}={{$v.IPAddress}},{{end}}",
+                containerId);
+            String line = result.isSuccess() ? result.getFirstLine() : null;
+            String[] fields = line != null ? line.split("\\|", -1) : new String[0];
+            if (fields.length < 4 || !"true".equals(fields[0])) {
+                return null;
+            }
+            port = fields[1].isEmpty() || "<no value>".equals(fields[1]) ? null : fields[1];
+            for (String exposed : fields[2].split(",")) {
+                if (port == null && exposed.endsWith("/tcp")) {
+                    port = exposed.substring(0, exposed.indexOf('/'));
+                }
+            }
+            for (String entry : fields[3].split(",")) {
+                int eq = entry.indexOf('=');
+                if (eq > 0) {
+                    addressByNetwork.put(entry.substring(0, eq), entry.substring(eq + 1));
+                }
+            }
+        }
+        if (port == null) {
+            return null;
+        }
+        String address = null;
+        for (Map.Entry<String, String> entry : addressByNetwork.entrySet()) {
+            String ip = entry.getValue();
+            if (ip == null || ip.isEmpty()) {
+                continue;
+            }
+            if (preferredNetwork != null && entry.getKey().contains(preferredNetwork)) {
+                return ip + ":" + port;
+            }
+            if (address == null) {
+                address = ip + ":" + port;
+            }
+        }
+        return address;
+    }
+    
+    /**
+     * 检查容器是否存在（通过容器ID）
+     */
+    public boolean containerExists(String containerId) {
+        if (containerId == null) {
+            return false;
+        }
+        return isContainerRunning(containerId);
+    }
+    
+    /**
+     * 检查容器是否存在（通过容器名称）
      */
-    public String startContainer(String envDir) {
-        return startContainer(envDir, true);
+    public boolean containerExistsByName(String containerName) {
+        if (containerName == null || containerName.trim().isEmpty()) {
+            return false;
+        }
+        if (Boolean.TRUE.equals(dockerStateCache.containerExistsByName(containerName))) {
+            return true;
+        }
+        if (useApiEngine()) {
+            return findContainerByName(containerName, true) != null;
+        }
+        CommandResult result = processRunner.run(10,
+            "docker", "ps", "-a", "--filter", "name=" + containerName, "--format", "{{.Names}}");
+        if (!result.isSuccess()) {
+            log.warn("检查容器是否存在失败: {}, {}", containerName, result.getOutput());
+            return false;
+        }
+        return result.getStdoutLines().stream().anyMatch(name -> name.trim().equals(containerName));
     }
-
+    
     /**
-     * 启动容器（使用docker-compose）
-     * @param envDir 环境目录
-     * @param waitForHealthy 是否等待健康检查完成
+     * 检查容器是否运行（通过容器名称）
      */
+    public boolean isContainerRunningByName(String containerName) {
+        if (containerName == null || containerName.trim().isEmpty()) {
+            return false;
+        }
+        Boolean cached = dockerStateCache.isContainerRunningByName(containerName);
+        if (cached != null) {
+            return cached;
+        }
+        if (useApiEngine()) {
+            return findContainerByName(containerName, false) != null;
+        }
+        CommandResult result = processRunner.run(10,
+            "docker", "ps", "--filter", "name=" + containerName, "--format", "{{.Names}}");
+        if (!result.isSuccess()) {
+            log.warn("检查容器运行状态失败: {}, {}", containerName, result.getOutput());
+            return false;
+        }
+        return result.getStdoutLines().stream().anyMatch(name -> name.trim().equals(containerName));
+    }
+    
     /**
-     * 启动容器（使用docker-compose）
-     * @param envDir 环境目录
-     * @param waitForHealthy 是否等待健康检查完成
+     * 强制删除容器（容器不存在时忽略）
      */
-    public String startContainer(String envDir, boolean waitForHealthy) {
-        // 先检查 Docker 是否可用
-        if (!isDockerAvailable()) {
-            String errorMsg = "Docker 不可用。请确保 Docker Desktop 已启动并正在运行。";
-            log.error(errorMsg);
-            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
-                parseDockerError(errorMsg));
+    public void removeContainer(String containerId) {
+        if (containerId == null || containerId.trim().isEmpty()) {
+            return;
         }
-        
-        try {
-            Path composeFile = Paths.get(envDir, "docker-compose.yml");
-            Path composeDir = Paths.get(envDir);
-            String projectName = extractProjectNameFromEnvDir(envDir);
-            
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "compose", "-f", composeFile.toString(), 
-                "-p", projectName, "up", "-d"
-            );
-            processBuilder.directory(composeDir.toFile());
-            processBuilder.redirectErrorStream(true);
-            
-            Process process = processBuilder.start();
-            
-            // 读取输出
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                    log.info("Docker Compose: {}", line);
-                }
-            }
-            
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                String errorMsg = output.toString();
-                log.error("Docker Compose启动失败，退出码: {}, 输出: {}", exitCode, errorMsg);
-                String friendlyError = parseDockerError(errorMsg);
-                throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
-                    "启动容器失败，退出码: " + exitCode + "\n" + friendlyError);
-            }
-            
-            // 获取容器ID（应用容器）
-            String containerId = getContainerId(envDir);
-            if (containerId == null || containerId.trim().isEmpty()) {
-                log.error("无法获取容器ID，Docker Compose输出: {}", output.toString());
-                throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
-                    "无法获取容器ID，请检查Docker Compose输出: " + output.toString());
-            }
-            
-            log.info("容器启动成功，容器ID: {}", containerId);
-            
-            if (waitForHealthy) {
-                // 等待容器健康检查
-                waitForContainerHealthy(containerId, 30);
-            } else {
-                log.info("跳过健康检查等待: containerId={}", containerId);
-            }
-            
-            return containerId;
-            
-        } catch (ContainerException e) {
-            throw e;
-        } catch (IOException | InterruptedException e) {
-            log.error("启动容器失败", e);
-            if (e instanceof InterruptedException) {
-                Thread.currentThread().interrupt();
+        if (useApiEngine()) {
+            try {
+                dockerClient.removeContainerCmd(containerId).withForce(true).exec();
+                dockerStateCache.evictContainer(containerId);
+                log.info("强制删除容器: {}", containerId);
+            } catch (NotFoundException e) {
+                log.debug("容器不存在，无需删除: {}", containerId);
+            } catch (Exception e) {
+                log.warn("强制删除容器失败: {}", containerId, e);
             }
-            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
-                "启动容器失败: " + e.getMessage(), e);
+            return;
+        }
+        CommandResult result = processRunner.run(30, "docker", "rm", "-f", containerId);
+        if (result.isSuccess()) {
+            log.info("强制删除容器: {}", containerId);
+        } else {
+            log.warn("强制删除容器失败: {}, {}", containerId, result.getOutput());
         }
     }
     
     /**
-     * 停止容器
-     * @param envDir 环境目录
-     * @param removeVolumes 是否删除命名volume（true=删除，false=保留）
+     * 一次性列出所有 compose 项目的应用容器（含已停止的），用于环境状态批量对账
+     * 同时返回带环境标签的容器和旧版本创建的无标签容器，调用方按 envId 标签或容器ID关联
+     * @return 应用容器列表；使用命令行方式时返回null（不支持批量对账）
      */
-    public void stopContainer(String envDir, boolean removeVolumes) {
-        try {
-            Path composeFile = Paths.get(envDir, "docker-compose.yml");
-            Path composeDir = Paths.get(envDir);
-            
-            String projectName = extractProjectNameFromEnvDir(envDir);
-            
-            ProcessBuilder processBuilder;
-            if (removeVolumes) {
-                // 删除容器和命名volume（只删除项目相关的volume，不会删除共享数据库的volume）
-                // 因为共享数据库是独立创建的，不在docker-compose项目中
-                processBuilder = new ProcessBuilder(
-                    "docker", "compose", "-f", composeFile.toString(), 
-                    "-p", projectName, "down", "-v"
-                );
-                log.info("停止容器并删除项目相关的volume: envDir={}, projectName={}", envDir, projectName);
-                log.debug("注意：共享数据库的volume（shared-mysql-data）不会被删除，因为它是独立管理的");
-            } else {
-                // 只删除容器，保留volume
-                processBuilder = new ProcessBuilder(
-                    "docker", "compose", "-f", composeFile.toString(), 
-                    "-p", projectName, "down"
-                );
-                log.info("停止容器（保留volume）: envDir={}", envDir);
-            }
-            
-            processBuilder.directory(composeDir.toFile());
-            processBuilder.redirectErrorStream(true);
-            
-            Process process = processBuilder.start();
-            
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                    log.info("Docker Compose: {}", line);
-                }
-            }
-            
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                log.warn("停止容器可能失败，退出码: {}, 输出: {}", exitCode, output.toString());
-            } else {
-                log.info("容器停止成功");
-            }
-            
-        } catch (IOException | InterruptedException e) {
-            log.error("停止容器失败", e);
-            if (e instanceof InterruptedException) {
-                Thread.currentThread().interrupt();
-            }
-            throw new ContainerException(ContainerException.ERROR_CODE_STOP_FAILED,
-                "停止容器失败: " + e.getMessage(), e);
+    public List<Container> listAppContainers() {
+        if (!useApiEngine()) {
+            return null;
         }
+        return dockerClient.listContainersCmd()
+            .withShowAll(true)
+            .withLabelFilter(Collections.singletonMap(COMPOSE_SERVICE_LABEL, APP_SERVICE_NAME))
+            .exec();
     }
     
     /**
-     * 停止容器（保留volume，向后兼容）
+     * 列出 compose 项目下的容器
      */
-    public void stopContainer(String envDir) {
-        stopContainer(envDir, false);
+    private List<Container> listProjectContainers(String projectName, boolean showAll) {
+        return dockerClient.listContainersCmd()
+            .withShowAll(showAll)
+            .withLabelFilter(Collections.singletonMap(COMPOSE_PROJECT_LABEL, projectName))
+            .exec();
     }
     
     /**
-     * 只停止容器，不删除（用于停止/启动操作）
-     * @param envDir 环境目录
+     * 查找 compose 项目的应用容器ID（优先 app 服务，否则返回第一个容器）
      */
-    public void stopContainerOnly(String envDir) {
+    private String findAppContainerId(String projectName) {
         try {
-            Path composeFile = Paths.get(envDir, "docker-compose.yml");
-            Path composeDir = Paths.get(envDir);
-            
-            String projectName = extractProjectNameFromEnvDir(envDir);
-            
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "compose", "-f", composeFile.toString(), 
-                "-p", projectName, "stop"
-            );
-            processBuilder.directory(composeDir.toFile());
-            processBuilder.redirectErrorStream(true);
-            
-            Process process = processBuilder.start();
-            
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                    log.info("Docker Compose: {}", line);
+            List<Container> containers = listProjectContainers(projectName, true);
+            for (Container container : containers) {
+                if (container.getLabels() != null
+                        && APP_SERVICE_NAME.equals(container.getLabels().get(COMPOSE_SERVICE_LABEL))) {
+                    return container.getId();
                 }
             }
-            
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                log.warn("停止容器可能失败，退出码: {}, 输出: {}", exitCode, output.toString());
-            } else {
-                log.info("容器停止成功（保留容器）");
-            }
-            
-        } catch (IOException | InterruptedException e) {
-            log.error("停止容器失败", e);
-            if (e instanceof InterruptedException) {
-                Thread.currentThread().interrupt();
+            return containers.isEmpty() ? null : containers.get(0).getId();
+        } catch (Exception e) {
+            log.warn("获取容器ID失败: projectName={}", projectName, e);
+            return null;
+        }
+    }
+    
+    /**
+     * 按名称精确查找容器（Docker 的 name 过滤是模糊匹配，需要再比对一次）
+     */
+    private Container findContainerByName(String containerName, boolean showAll) {
+        try {
+            List<Container> containers = dockerClient.listContainersCmd()
+                .withShowAll(showAll)
+                .withNameFilter(Collections.singletonList(containerName))
+                .exec();
+            for (Container container : containers) {
+                if (container.getNames() == null) {
+                    continue;
+                }
+                for (String name : container.getNames()) {
+                    if (("/" + containerName).equals(name) || containerName.equals(name)) {
+                        return container;
+                    }
+                }
             }
-            throw new ContainerException(ContainerException.ERROR_CODE_STOP_FAILED,
-                "停止容器失败: " + e.getMessage(), e);
+        } catch (Exception e) {
+            log.warn("按名称查询容器失败: {}", containerName, e);
         }
+        return null;
     }
     
     /**
-     * 启动已存在的容器（用于停止/启动操作）
-     * @param envDir 环境目录
-     * @return 容器ID
+     * 启动 compose 项目下已存在的容器（等价于 docker compose start）
      */
-    public String startContainerOnly(String envDir) {
-        if (!isDockerAvailable()) {
-            String errorMsg = "Docker 不可用。请确保 Docker Desktop 已启动并正在运行。";
-            log.error(errorMsg);
+    private String startProjectByApi(String projectName) {
+        List<Container> containers;
+        try {
+            containers = listProjectContainers(projectName, true);
+        } catch (Exception e) {
+            log.error("查询项目容器失败: projectName={}", projectName, e);
             throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
-                parseDockerError(errorMsg));
+                "启动容器失败: " + parseDockerError(e.getMessage()), e);
+        }
+        if (containers.isEmpty()) {
+            log.error("项目下没有容器: projectName={}", projectName);
+            throw new ContainerException(ContainerException.ERROR_CODE_NOT_FOUND,
+                "容器不存在，项目: " + projectName + "。如果容器已被删除，请使用重置功能。");
         }
         
-        try {
-            Path composeFile = Paths.get(envDir, "docker-compose.yml");
-            Path composeDir = Paths.get(envDir);
-            
-            String projectName = extractProjectNameFromEnvDir(envDir);
-            
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "compose", "-f", composeFile.toString(), 
-                "-p", projectName, "start"
-            );
-            processBuilder.directory(composeDir.toFile());
-            processBuilder.redirectErrorStream(true);
-            
-            Process process = processBuilder.start();
-            
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                    log.info("Docker Compose: {}", line);
-                }
-            }
-            
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                String errorMsg = output.toString();
-                log.error("Docker Compose启动失败，退出码: {}, 输出: {}", exitCode, errorMsg);
-                String friendlyError = parseDockerError(errorMsg);
-                throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
-                    "启动容器失败，退出码: " + exitCode + "\n" + friendlyError);
+        for (Container container : containers) {
+            if ("running".equals(container.getState())) {
+                continue;
             }
-            
-            // 获取容器ID
-            String containerId = getContainerId(envDir);
-            if (containerId == null || containerId.trim().isEmpty()) {
-                log.error("无法获取容器ID，Docker Compose输出: {}", output.toString());
+            try {
+                dockerClient.startContainerCmd(container.getId()).exec();
+                dockerStateCache.recordContainerState(container.getId(), "running");
+            } catch (NotModifiedException e) {
+                log.debug("容器已在运行: {}", container.getId());
+            } catch (Exception e) {
+                log.error("启动容器失败: containerId={}", container.getId(), e);
                 throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
-                    "无法获取容器ID，请检查Docker Compose输出: " + output.toString());
-            }
-            
-            log.info("容器启动成功（使用已存在的容器），容器ID: {}", containerId);
-            
-            // 验证容器是否真的存在
-            if (!containerExists(containerId)) {
-                log.error("容器启动后不存在: containerId={}", containerId);
-                throw new ContainerException(ContainerException.ERROR_CODE_NOT_FOUND,
-                    "容器启动后不存在，容器ID: " + containerId);
-            }
-            
-            return containerId;
-            
-        } catch (ContainerException e) {
-            // 直接抛出容器异常
-            throw e;
-        } catch (IOException | InterruptedException e) {
-            log.error("启动容器失败", e);
-            if (e instanceof InterruptedException) {
-                Thread.currentThread().interrupt();
+                    "启动容器失败: " + parseDockerError(e.getMessage()), e);
             }
+        }
+        
+        String containerId = findAppContainerId(projectName);
+        if (containerId == null) {
             throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
-                "启动容器失败: " + e.getMessage(), e);
+                "无法获取容器ID，项目: " + projectName);
         }
+        log.info("容器启动成功（使用已存在的容器），容器ID: {}", containerId);
+        return containerId;
     }
     
     /**
-     * 获取容器ID（返回第一个容器，通常是应用容器）
+     * 冻结/解冻 compose 项目下运行中的容器（等价于 docker compose pause / unpause）
      */
-    private String getContainerId(String envDir) {
+    private void pauseProjectByApi(String projectName, boolean pause) {
+        List<Container> containers;
         try {
-            Path composeFile = Paths.get(envDir, "docker-compose.yml");
-            Path composeDir = Paths.get(envDir);
-            
-            String projectName = extractProjectNameFromEnvDir(envDir);
-            
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "compose", "-f", composeFile.toString(), 
-                "-p", projectName, "ps", "-q"
-            );
-            processBuilder.directory(composeDir.toFile());
-            
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String containerId = reader.readLine();
-                if (containerId != null && !containerId.trim().isEmpty()) {
-                    return containerId.trim();
+            containers = listProjectContainers(projectName, false);
+        } catch (Exception e) {
+            log.error("查询项目容器失败: projectName={}", projectName, e);
+            throw new ContainerException(pause ? ContainerException.ERROR_CODE_STOP_FAILED
+                : ContainerException.ERROR_CODE_START_FAILED,
+                (pause ? "冻结" : "解冻") + "容器失败: " + parseDockerError(e.getMessage()), e);
+        }
+        if (containers.isEmpty()) {
+            throw new ContainerException(ContainerException.ERROR_CODE_NOT_RUNNING,
+                "项目下没有运行中的容器: " + projectName);
+        }
+        
+        for (Container container : containers) {
+            boolean paused = "paused".equals(container.getState());
+            if (paused == pause) {
+                continue;
+            }
+            try {
+                if (pause) {
+                    dockerClient.pauseContainerCmd(container.getId()).exec();
+                    dockerStateCache.recordContainerState(container.getId(), "paused");
+                } else {
+                    dockerClient.unpauseContainerCmd(container.getId()).exec();
+                    dockerStateCache.recordContainerState(container.getId(), "running");
                 }
+            } catch (ConflictException | NotModifiedException e) {
+                log.debug("容器状态已变化: {}, {}", container.getId(), e.getMessage());
+            } catch (Exception e) {
+                log.error("{}容器失败: containerId={}", pause ? "冻结" : "解冻", container.getId(), e);
+                throw new ContainerException(pause ? ContainerException.ERROR_CODE_STOP_FAILED
+                    : ContainerException.ERROR_CODE_START_FAILED,
+                    (pause ? "冻结" : "解冻") + "容器失败: " + parseDockerError(e.getMessage()), e);
             }
-            
-            process.waitFor();
-            return null;
-            
-        } catch (Exception e) {
-            log.warn("获取容器ID失败", e);
-            return null;
         }
+        log.info("容器{}成功: projectName={}", pause ? "冻结" : "解冻", projectName);
     }
     
-    
     /**
-     * 等待容器健康
+     * 按运行时描述中的容器ID直接停止容器（不再按项目标签查询）
+     * @return 记录的容器已不存在（被外部删除或重建）时返回false，由调用方按项目标签重新查询
      */
-    private void waitForContainerHealthy(String containerId, int timeoutSeconds) {
-        if (containerId == null) {
-            return;
-        }
-        
-        long startTime = System.currentTimeMillis();
-        while (System.currentTimeMillis() - startTime < timeoutSeconds * 1000) {
-            if (isContainerHealthy(containerId)) {
-                log.info("容器健康检查通过: {}", containerId);
-                return;
-            }
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
+    private boolean stopContainersByApi(EnvRuntime runtime) {
+        try {
+            for (String containerId : runtime.getContainers().values()) {
+                try {
+                    dockerClient.stopContainerCmd(containerId).exec();
+                    dockerStateCache.recordContainerState(containerId, "exited");
+                } catch (NotModifiedException e) {
+                    log.debug("容器已停止: {}", containerId);
+                }
             }
+            log.info("容器停止成功（保留容器）: projectName={}", runtime.getProjectName());
+            return true;
+        } catch (NotFoundException e) {
+            log.debug("记录的容器已不存在，按项目标签查询: projectName={}", runtime.getProjectName());
+            return false;
+        } catch (Exception e) {
+            log.error("停止容器失败: projectName={}", runtime.getProjectName(), e);
+            throw new ContainerException(ContainerException.ERROR_CODE_STOP_FAILED,
+                "停止容器失败: " + e.getMessage(), e);
         }
-        log.warn("容器健康检查超时: {}", containerId);
     }
     
     /**
-     * 检查容器是否健康
+     * 停止 compose 项目下的容器，不删除（等价于 docker compose stop）
      */
-    private boolean isContainerHealthy(String containerId) {
+    private void stopProjectByApi(String projectName) {
         try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "inspect", "--format", "{{.State.Health.Status}}", containerId
-            );
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String status = reader.readLine();
-                process.waitFor();
-                return "healthy".equals(status) || "starting".equals(status);
+            for (Container container : listProjectContainers(projectName, false)) {
+                try {
+                    dockerClient.stopContainerCmd(container.getId()).exec();
+                    dockerStateCache.recordContainerState(container.getId(), "exited");
+                } catch (NotModifiedException | NotFoundException e) {
+                    log.debug("容器已停止或不存在: {}", container.getId());
+                }
             }
+            log.info("容器停止成功（保留容器）: projectName={}", projectName);
         } catch (Exception e) {
-            // 如果没有健康检查配置，检查容器是否运行
-            return isContainerRunning(containerId);
+            log.error("停止容器失败: projectName={}", projectName, e);
+            throw new ContainerException(ContainerException.ERROR_CODE_STOP_FAILED,
+                "停止容器失败: " + e.getMessage(), e);
         }
     }
     
     /**
-     * 检查容器是否运行
+     * 删除 compose 项目下的容器、网络，可选删除数据卷（等价于 docker compose down [-v]）
      */
-    private boolean isContainerRunning(String containerId) {
+    private void removeProjectByApi(String projectName, boolean removeVolumes) {
         try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "ps", "--filter", "id=" + containerId, "--format", "{{.ID}}"
-            );
-            Process process = processBuilder.start();
+            for (Container container : listProjectContainers(projectName, true)) {
+                try {
+                    dockerClient.removeContainerCmd(container.getId())
+                        .withForce(true)
+                        .withRemoveVolumes(removeVolumes)
+                        .exec();
+                    dockerStateCache.evictContainer(container.getId());
+                } catch (NotFoundException e) {
+                    log.debug("容器已不存在: {}", container.getId());
+                }
+            }
+            
+            List<String> labelFilter = Collections.singletonList(COMPOSE_PROJECT_LABEL + "=" + projectName);
+            for (Network network : dockerClient.listNetworksCmd().withFilter("label", labelFilter).exec()) {
+                try {
+                    dockerClient.removeNetworkCmd(network.getId()).exec();
+                } catch (NotFoundException e) {
+                    log.debug("网络已不存在: {}", network.getName());
+                }
+            }
             
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String id = reader.readLine();
-                process.waitFor();
-                return id != null && !id.trim().isEmpty();
+            if (removeVolumes) {
+                // 只删除项目相关的volume，共享数据库的volume不带项目标签，不会被删除
+                List<InspectVolumeResponse> volumes =
+                    dockerClient.listVolumesCmd().withFilter("label", labelFilter).exec().getVolumes();
+                if (volumes != null) {
+                    for (InspectVolumeResponse volume : volumes) {
+                        try {
+                            dockerClient.removeVolumeCmd(volume.getName()).exec();
+                        } catch (NotFoundException e) {
+                            log.debug("数据卷已不存在: {}", volume.getName());
+                        }
+                    }
+                }
             }
+            log.info("容器删除成功: projectName={}, removeVolumes={}", projectName, removeVolumes);
         } catch (Exception e) {
-            log.warn("检查容器运行状态失败", e);
-            return false;
+            log.error("停止容器失败: projectName={}", projectName, e);
+            throw new ContainerException(ContainerException.ERROR_CODE_STOP_FAILED,
+                "停止容器失败: " + e.getMessage(), e);
         }
     }
     
     /**
-     * 检查容器是否存在（通过容器ID）
+     * 在环境目录下执行 docker compose 命令（输出逐行记录日志）
      */
-    public boolean containerExists(String containerId) {
-        if (containerId == null) {
-            return false;
-        }
-        return isContainerRunning(containerId);
+    private CommandResult runCompose(String envDir, String... args) {
+        Path composeFile = Paths.get(envDir, "docker-compose.yml");
+        String projectName = projectName(envDir);
+        
+        List<String> command = new ArrayList<>(Arrays.asList(
+            "docker", "compose", "-f", composeFile.toString(), "-p", projectName));
+        command.addAll(Arrays.asList(args));
+        return processRunner.run(command, Paths.get(envDir).toFile(), composeTimeoutSeconds,
+            line -> log.info("Docker Compose: {}", line));
     }
     
     /**
-     * 检查容器是否存在（通过容器名称）
+     * 环境的编排项目名称：优先使用运行时描述，没有描述的旧环境从 compose 文件推导一次后记入索引
      */
-    public boolean containerExistsByName(String containerName) {
-        if (containerName == null || containerName.trim().isEmpty()) {
-            return false;
+    private String projectName(String envDir) {
+        EnvRuntime runtime = envRuntimeRegistry.get(envDir);
+        if (runtime != null) {
+            return runtime.getProjectName();
         }
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "ps", "-a", "--filter", "name=" + containerName, "--format", "{{.Names}}"
-            );
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String result = reader.readLine();
-                process.waitFor();
-                return result != null && result.trim().equals(containerName);
-            }
-        } catch (Exception e) {
-            log.warn("检查容器是否存在失败: {}", containerName, e);
-            return false;
+        String projectName = extractProjectNameFromEnvDir(envDir);
+        if (projectName.startsWith("env-")) {
+            envRuntimeRegistry.registerDerived(envDir, projectName);
         }
+        return projectName;
     }
     
     /**
-     * 检查容器是否运行（通过容器名称）
+     * 记录环境运行时描述（项目名称、各服务容器ID、网络、命名数据卷），之后的操作直接使用
+     * @param containerIds 服务名称 -> 容器ID，为null时按项目标签查询（命令行方式只记录应用容器）
      */
-    public boolean isContainerRunningByName(String containerName) {
-        if (containerName == null || containerName.trim().isEmpty()) {
-            return false;
+    private void recordRuntime(ComposeSpec spec, Map<String, String> containerIds, String appContainerId) {
+        String envId = spec.getLabels().get(ENV_ID_LABEL);
+        if (envId == null) {
+            return;
         }
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "ps", "--filter", "name=" + containerName, "--format", "{{.Names}}"
-            );
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String result = reader.readLine();
-                process.waitFor();
-                return result != null && result.trim().equals(containerName);
+        EnvRuntime runtime = new EnvRuntime();
+        runtime.setProjectName(spec.getProjectName());
+        runtime.setEnvDir(spec.getWorkingDir());
+        if (containerIds != null) {
+            runtime.getContainers().putAll(containerIds);
+        } else if (useApiEngine()) {
+            try {
+                for (Container container : listProjectContainers(spec.getProjectName(), true)) {
+                    String service = container.getLabels() != null ? container.getLabels().get(COMPOSE_SERVICE_LABEL) : null;
+                    if (service != null) {
+                        runtime.getContainers().put(service, container.getId());
+                    }
+                }
+            } catch (Exception e) {
+                log.debug("查询项目容器失败，只记录应用容器: projectName={}", spec.getProjectName());
             }
-        } catch (Exception e) {
-            log.warn("检查容器运行状态失败: {}", containerName, e);
-            return false;
         }
+        if (appContainerId != null) {
+            runtime.getContainers().put(APP_SERVICE_NAME, appContainerId);
+        }
+        for (String network : spec.getNetworks()) {
+            runtime.getNetworks().add(spec.resolveNetworkName(network));
+        }
+        for (String network : spec.getExternalNetworks()) {
+            if (!runtime.getNetworks().contains(network)) {
+                runtime.getNetworks().add(network);
+            }
+        }
+        for (ComposeServiceSpec service : spec.getServices()) {
+            for (VolumeConfig volume : service.getVolumes()) {
+                String source = volume.getHostPath();
+                // 不是路径的挂载源为命名数据卷，compose 以项目名称为前缀
+                if (source != null && !source.isEmpty() && !source.startsWith("/")
+                        && !source.startsWith(".") && !source.startsWith("~")) {
+                    runtime.getVolumes().add(spec.getProjectName() + "_" + source);
+                }
+            }
+        }
+        envRuntimeRegistry.register(envId, runtime);
     }
     
     /**
@@ -620,9 +1611,8 @@ public class DockerOpsService {
      * 从 docker-compose.yml 文件中提取 container_name
      */
     private String extractContainerNameFromCompose(Path composeFile) {
-        try {
-            org.yaml.snakeyaml.Yaml yaml = new org.yaml.snakeyaml.Yaml();
-            Map<String, Object> compose = yaml.load(Files.newInputStream(composeFile));
+        try (InputStream in = Files.newInputStream(composeFile)) {
+            Map<String, Object> compose = new org.yaml.snakeyaml.Yaml().load(in);
             
             if (compose != null && compose.containsKey("services")) {
                 @SuppressWarnings("unchecked")
@@ -0,0 +1,498 @@
+package org.dockerenvs.service;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.InspectVolumeResponse;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventType;
+import com.github.dockerjava.api.model.Network;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Docker 状态缓存
+ * 启动时通过一次 list 调用建立容器/网络/数据卷快照，之后订阅守护进程事件流增量更新，
+ * 存在性、运行状态、健康状态查询直接从内存返回；事件流断开后自动重新同步。
+ *
+ * 查询方法返回 null 表示缓存无法给出确定答案（未就绪或没有该对象的记录），调用方应回退到直接查询守护进程。
+ */
+@Slf4j
+@Service
+public class DockerStateCache {
+
+    @Autowired
+    private DockerClient dockerClient;
+
+    @Autowired
+    @Qualifier("dockerEventsClient")
+    private DockerClient dockerEventsClient;
+
+    @Value("${env.docker.state-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${env.docker.state-cache.resync-delay-ms:5000}")
+    private long resyncDelayMs;
+
+    private final Map<String, ContainerState> containersById = new ConcurrentHashMap<>();
+    private final Map<String, String> containerIdsByName = new ConcurrentHashMap<>();
+    private final Set<String> networkNames = ConcurrentHashMap.newKeySet();
+    private final Set<String> volumeNames = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "docker-state-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean ready = false;
+    private volatile boolean shuttingDown = false;
+    private volatile Closeable eventSubscription;
+    private volatile long lastSyncTime = 0;
+    private int consecutiveFailures = 0;
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong resyncCount = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("Docker 状态缓存已禁用");
+            return;
+        }
+        executor.execute(this::resync);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        shuttingDown = true;
+        ready = false;
+        closeSubscription();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 缓存是否可用（已完成快照且事件流在线）
+     */
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * 容器是否存在（通过容器ID，支持短ID前缀）
+     */
+    public Boolean containerExists(String containerId) {
+        ContainerState state = findById(containerId);
+        return state != null ? Boolean.TRUE : null;
+    }
+
+    /**
+     * 容器是否运行（通过容器ID）
+     */
+    public Boolean isContainerRunning(String containerId) {
+        ContainerState state = findById(containerId);
+        return state != null ? state.isRunning() : null;
+    }
+
+    /**
+     * 容器是否健康：配置了健康检查时以 healthy/starting 为准，否则以运行状态为准
+     */
+    public Boolean isContainerHealthy(String containerId) {
+        ContainerState state = findById(containerId);
+        if (state == null) {
+            return null;
+        }
+        if (state.health == null) {
+            return state.isRunning();
+        }
+        return "healthy".equals(state.health) || "starting".equals(state.health);
+    }
+
+    /**
+     * 容器是否存在（通过容器名称）
+     */
+    public Boolean containerExistsByName(String containerName) {
+        return findByName(containerName) != null ? Boolean.TRUE : null;
+    }
+
+    /**
+     * 容器是否运行（通过容器名称）
+     */
+    public Boolean isContainerRunningByName(String containerName) {
+        ContainerState state = findByName(containerName);
+        return state != null ? state.isRunning() : null;
+    }
+
+    /**
+     * 网络是否存在
+     */
+    public Boolean networkExists(String networkName) {
+        if (!isReady() || networkName == null) {
+            return null;
+        }
+        return networkNames.contains(networkName) ? Boolean.TRUE : null;
+    }
+
+    /**
+     * 数据卷是否存在
+     */
+    public Boolean volumeExists(String volumeName) {
+        if (!isReady() || volumeName == null) {
+            return null;
+        }
+        return volumeNames.contains(volumeName) ? Boolean.TRUE : null;
+    }
+
+    /**
+     * 写穿：本服务自己启动/停止/检查过容器后立即更新缓存，避免等待事件到达前读到旧状态
+     */
+    public void recordContainerState(String containerId, String state) {
+        if (!isReady() || containerId == null) {
+            return;
+        }
+        ContainerState cached = findById(containerId);
+        if (cached != null) {
+            cached.state = state;
+        }
+    }
+
+    /**
+     * 写穿：容器已被删除
+     */
+    public void evictContainer(String containerId) {
+        ContainerState cached = findById(containerId);
+        if (cached != null) {
+            removeContainer(cached.id);
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        stats.put("containers", containersById.size());
+        stats.put("networks", networkNames.size());
+        stats.put("volumes", volumeNames.size());
+        stats.put("eventsReceived", eventsReceived.get());
+        stats.put("resyncCount", resyncCount.get());
+        stats.put("lastSyncTime", lastSyncTime);
+        return stats;
+    }
+
+    /**
+     * 重新同步：拉取一次快照，然后从快照时间点开始订阅事件流
+     */
+    private void resync() {
+        if (shuttingDown) {
+            return;
+        }
+        ready = false;
+        closeSubscription();
+        resyncCount.incrementAndGet();
+        try {
+            // 先记录时间点再拉快照，事件从该时间点重放，保证快照与事件流之间没有空隙
+            long since = Instant.now().getEpochSecond();
+
+            List<Container> containers = dockerClient.listContainersCmd().withShowAll(true).exec();
+            List<Network> networks = dockerClient.listNetworksCmd().exec();
+            List<InspectVolumeResponse> volumes = dockerClient.listVolumesCmd().exec().getVolumes();
+
+            containersById.clear();
+            containerIdsByName.clear();
+            networkNames.clear();
+            volumeNames.clear();
+            for (Container container : containers) {
+                ContainerState state = new ContainerState(container.getId());
+                state.name = primaryName(container.getNames());
+                state.state = container.getState();
+                state.health = parseHealth(container.getStatus());
+                state.labels = container.getLabels() != null ? container.getLabels() : Collections.emptyMap();
+                putContainer(state);
+            }
+            for (Network network : networks) {
+                networkNames.add(network.getName());
+            }
+            if (volumes != null) {
+                for (InspectVolumeResponse volume : volumes) {
+                    volumeNames.add(volume.getName());
+                }
+            }
+
+            // 先登记回调再订阅，保证订阅过程中立即出错也能触发重新同步
+            EventCallback callback = new EventCallback();
+            eventSubscription = callback;
+            dockerEventsClient.eventsCmd()
+                .withSince(String.valueOf(since))
+                .withEventTypeFilter(EventType.CONTAINER, EventType.NETWORK, EventType.VOLUME)
+                .exec(callback);
+
+            lastSyncTime = System.currentTimeMillis();
+            consecutiveFailures = 0;
+            ready = true;
+            log.info("Docker 状态缓存同步完成: containers={}, networks={}, volumes={}",
+                containersById.size(), networkNames.size(), volumeNames.size());
+        } catch (Exception e) {
+            consecutiveFailures++;
+            log.warn("Docker 状态缓存同步失败，稍后重试: {}", e.getMessage());
+            scheduleResync();
+        }
+    }
+
+    /**
+     * 按失败次数退避（最长1分钟）后重新同步
+     */
+    private void scheduleResync() {
+        if (shuttingDown) {
+            return;
+        }
+        long delay = Math.min(resyncDelayMs * Math.max(1, consecutiveFailures), 60_000L);
+        try {
+            executor.schedule(this::resync, delay, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.debug("调度缓存重新同步失败: {}", e.getMessage());
+        }
+    }
+
+    private void closeSubscription() {
+        Closeable subscription = eventSubscription;
+        eventSubscription = null;
+        if (subscription != null) {
+            try {
+                subscription.close();
+            } catch (Exception e) {
+                log.debug("关闭事件流失败", e);
+            }
+        }
+    }
+
+    /**
+     * 应用一条守护进程事件
+     */
+    private void applyEvent(Event event) {
+        eventsReceived.incrementAndGet();
+        if (event.getType() == null || event.getActor() == null) {
+            return;
+        }
+        String actorId = event.getActor().getId();
+        Map<String, String> attributes = event.getActor().getAttributes() != null
+            ? event.getActor().getAttributes() : Collections.emptyMap();
+        String action = event.getAction() != null ? event.getAction() : event.getStatus();
+        if (action == null || actorId == null) {
+            return;
+        }
+
+        if (event.getType() == EventType.CONTAINER) {
+            applyContainerEvent(actorId, action, attributes);
+        } else if (event.getType() == EventType.NETWORK) {
+            String name = attributes.get("name");
+            if ("create".equals(action) && name != null) {
+                networkNames.add(name);
+            } else if ("destroy".equals(action) && name != null) {
+                networkNames.remove(name);
+            }
+        } else if (event.getType() == EventType.VOLUME) {
+            if ("create".equals(action)) {
+                volumeNames.add(actorId);
+            } else if ("destroy".equals(action)) {
+                volumeNames.remove(actorId);
+            }
+        }
+    }
+
+    private void applyContainerEvent(String containerId, String action, Map<String, String> attributes) {
+        if ("destroy".equals(action)) {
+            removeContainer(containerId);
+            return;
+        }
+
+        ContainerState state = containersById.get(containerId);
+        if (state == null) {
+            state = new ContainerState(containerId);
+            state.state = "created";
+            // 事件属性中除 name/image 等固定字段外都是容器标签
+            Map<String, String> labels = new HashMap<>(attributes);
+            labels.remove("name");
+            labels.remove("image");
+            labels.remove("exitCode");
+            state.labels = labels;
+        }
+        String name = attributes.get("name");
+        if (name != null && !name.equals(state.name)) {
+            if (state.name != null) {
+                containerIdsByName.remove(state.name, containerId);
+            }
+            state.name = name;
+        }
+
+        if (action.startsWith("health_status")) {
+            // 形如 "health_status: healthy"
+            int idx = action.indexOf(':');
+            state.health = idx >= 0 ? action.substring(idx + 1).trim() : state.health;
+        } else {
+            switch (action) {
+                case "start":
+                case "restart":
+                case "unpause":
+                    state.state = "running";
+                    break;
+                case "die":
+                case "stop":
+                case "oom":
+                    state.state = "exited";
+                    state.health = state.health != null ? "starting" : null;
+                    break;
+                case "pause":
+                    state.state = "paused";
+                    break;
+                case "create":
+                    state.state = "created";
+                    break;
+                default:
+                    break;
+            }
+        }
+        putContainer(state);
+    }
+
+    private void putContainer(ContainerState state) {
+        containersById.put(state.id, state);
+        if (state.name != null) {
+            containerIdsByName.put(state.name, state.id);
+        }
+    }
+
+    private void removeContainer(String containerId) {
+        ContainerState removed = containersById.remove(containerId);
+        if (removed != null && removed.name != null) {
+            containerIdsByName.remove(removed.name, containerId);
+        }
+    }
+
+    private ContainerState findById(String containerId) {
+        if (!isReady() || containerId == null || containerId.trim().isEmpty()) {
+            return null;
+        }
+        String id = containerId.trim();
+        ContainerState state = containersById.get(id);
+        if (state == null && id.length() < 64) {
+            for (ContainerState candidate : containersById.values()) {
+                if (candidate.id.startsWith(id)) {
+                    return candidate;
+                }
+            }
+        }
+        return state;
+    }
+
+    private ContainerState findByName(String containerName) {
+        if (!isReady() || containerName == null) {
+            return null;
+        }
+        String id = containerIdsByName.get(containerName);
+        return id != null ? containersById.get(id) : null;
+    }
+
+    private static String primaryName(String[] names) {
+        if (names == null || names.length == 0) {
+            return null;
+        }
+        String name = names[0];
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+
+    /**
+     * 从 list 接口的 Status 文本（如 "Up 2 minutes (healthy)"）中解析健康状态
+     */
+    private static String parseHealth(String status) {
+        if (status == null) {
+            return null;
+        }
+        if (status.contains("(healthy)")) {
+            return "healthy";
+        }
+        if (status.contains("(unhealthy)")) {
+            return "unhealthy";
+        }
+        if (status.contains("(health: starting)")) {
+            return "starting";
+        }
+        return null;
+    }
+
+    /**
+     * 事件流回调：断开或出错后触发重新同步
+     */
+    private class EventCallback extends ResultCallback.Adapter<Event> {
+
+        @Override
+        public void onNext(Event event) {
+            try {
+                applyEvent(event);
+            } catch (Exception e) {
+                log.warn("处理 Docker 事件失败: {}", event, e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (shuttingDown || eventSubscription != this) {
+                return;
+            }
+            log.warn("Docker 事件流中断，准备重新同步: {}", throwable.getMessage());
+            ready = false;
+            scheduleResync();
+        }
+
+        @Override
+        public void onComplete() {
+            if (shuttingDown || eventSubscription != this) {
+                return;
+            }
+            log.warn("Docker 事件流已结束，准备重新同步");
+            ready = false;
+            scheduleResync();
+        }
+    }
+
+    /**
+     * 缓存中的容器状态
+     */
+    private static class ContainerState {
+        private final String id;
+        private volatile String name;
+        private volatile String state;
+        private volatile String health;
+        private volatile Map<String, String> labels = Collections.emptyMap();
+
+        ContainerState(String id) {
+            this.id = id;
+        }
+
+        boolean isRunning() {
+            // paused 的容器仍占有进程，docker ps 也会列出
+            return "running".equals(state) || "paused".equals(state);
+        }
+    }
+}
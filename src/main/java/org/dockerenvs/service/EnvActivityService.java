@@ -0,0 +1,108 @@
+package org.dockerenvs.service;
+
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 环境活跃度跟踪
+ * 记录每个环境最近一次活跃的时间，供空闲回收判断：
+ * - 接口调用（启动、重置、心跳等）按环境ID记录
+ * - 终端会话按容器ID记录，会话打开期间始终视为活跃
+ * 只保存在内存中，由空闲回收任务定期批量写回 virtual_env.last_active_time
+ */
+@Service
+public class EnvActivityService {
+
+    private final Map<String, Long> lastActiveByEnv = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastActiveByContainer = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> terminalSessions = new ConcurrentHashMap<>();
+
+    /**
+     * 记录环境活跃（接口调用）
+     */
+    public void touchEnv(String envId) {
+        if (envId != null) {
+            lastActiveByEnv.put(envId, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 记录容器活跃（终端输入）
+     */
+    public void touchContainer(String containerId) {
+        if (containerId != null) {
+            lastActiveByContainer.put(containerId, System.currentTimeMillis());
+        }
+    }
+
+    public void terminalOpened(String containerId) {
+        if (containerId == null) {
+            return;
+        }
+        terminalSessions.computeIfAbsent(containerId, k -> new AtomicInteger()).incrementAndGet();
+        touchContainer(containerId);
+    }
+
+    public void terminalClosed(String containerId) {
+        if (containerId == null) {
+            return;
+        }
+        terminalSessions.computeIfPresent(containerId, (k, count) -> count.decrementAndGet() <= 0 ? null : count);
+        touchContainer(containerId);
+    }
+
+    /**
+     * 容器是否有打开的终端会话
+     */
+    public boolean hasOpenTerminal(String containerId) {
+        if (containerId == null) {
+            return false;
+        }
+        AtomicInteger count = terminalSessions.get(containerId);
+        return count != null && count.get() > 0;
+    }
+
+    /**
+     * 环境最近活跃时间（接口调用和终端输入取较晚者），没有记录时返回null
+     */
+    public LocalDateTime getLastActive(String envId, String containerId) {
+        Long byEnv = envId != null ? lastActiveByEnv.get(envId) : null;
+        Long byContainer = containerId != null ? lastActiveByContainer.get(containerId) : null;
+        Long latest = byEnv == null ? byContainer : (byContainer == null ? byEnv : Math.max(byEnv, byContainer));
+        if (latest == null) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(latest), ZoneId.systemDefault());
+    }
+
+    /**
+     * 环境销毁后清除记录
+     */
+    public void forget(String envId, String containerId) {
+        if (envId != null) {
+            lastActiveByEnv.remove(envId);
+        }
+        if (containerId != null) {
+            lastActiveByContainer.remove(containerId);
+            terminalSessions.remove(containerId);
+        }
+    }
+
+    /**
+     * 跟踪指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("trackedEnvs", lastActiveByEnv.size());
+        stats.put("trackedContainers", lastActiveByContainer.size());
+        stats.put("openTerminals", terminalSessions.values().stream().mapToInt(AtomicInteger::get).sum());
+        return stats;
+    }
+}
@@ -0,0 +1,266 @@
+package org.dockerenvs.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dao.mapper.VirtualEnvMapper;
+import org.dockerenvs.entity.VirtualEnv;
+import org.dockerenvs.exception.EnvException;
+import org.dockerenvs.exception.EnvNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 环境网关路由
+ * 内置网关通过服务自身的端口转发环境的 HTTP / WebSocket 请求，环境不再需要各自的宿主机端口：
+ * - 路径路由：/{envId}/... 转发到环境的 /...（envId 形如 env-xxxxxxxxxxxx，不与接口路径冲突）
+ * - 子域名路由：配置 env.gateway.domain 后，{envId}.{domain} 的全部请求转发到环境
+ * - 上游默认直连容器在 Docker 网络中的地址（upstream=container），管理服务无法访问容器网络时
+ *   （如 Docker Desktop）改用发布到宿主机的端口（upstream=published）
+ * 路由按环境短时缓存，上游连接失败时立即失效
+ */
+@Slf4j
+@Service
+public class EnvGatewayService {
+
+    public static final String ERROR_CODE_ENV_NOT_RUNNING = "ENV_NOT_RUNNING";
+    public static final String ERROR_CODE_NO_UPSTREAM = "ENV_NO_UPSTREAM";
+
+    private static final Pattern PATH_ROUTE = Pattern.compile("^/(env-[0-9a-f]{12})(/.*)?$");
+
+    @Autowired
+    private VirtualEnvMapper virtualEnvMapper;
+
+    @Autowired
+    private DockerOpsService dockerOpsService;
+
+    @Autowired
+    private PortManagerService portManagerService;
+
+    @Value("${env.gateway.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 环境访问地址的形式：path=服务地址/{envId}/，subdomain={envId}.{domain}
+     */
+    @Value("${env.gateway.routing:path}")
+    private String routing;
+
+    /**
+     * 网关对外地址（协议、主机、端口），生成环境访问地址时使用
+     */
+    @Value("${env.gateway.public-url:http://localhost:8080}")
+    private String publicUrl;
+
+    @Value("${env.gateway.domain:}")
+    private String domain;
+
+    /**
+     * 上游地址：container=容器网络地址，published=宿主机发布的端口
+     */
+    @Value("${env.gateway.upstream:container}")
+    private String upstream;
+
+    @Value("${env.gateway.published-host:127.0.0.1}")
+    private String publishedHost;
+
+    @Value("${env.gateway.route-ttl-ms:10000}")
+    private long routeTtlMs;
+
+    @Value("${env.server.host:localhost}")
+    private String serverHost;
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong webSocketCount = new AtomicLong();
+    private final AtomicInteger activeWebSockets = new AtomicInteger();
+    private final AtomicLong routeMisses = new AtomicLong();
+    private final AtomicLong upstreamErrors = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (!portManagerService.isPublishing() && !enabled) {
+            log.warn("未发布宿主机端口（env.port.mode=none）且网关未启用，环境将无法访问");
+        }
+        if (enabled && !portManagerService.isPublishing() && isPublishedUpstream()) {
+            log.warn("未发布宿主机端口时网关只能直连容器（env.gateway.upstream=container）");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private boolean isPublishedUpstream() {
+        return "published".equalsIgnoreCase(upstream);
+    }
+
+    /**
+     * 环境访问地址：启用网关时指向网关，否则为宿主机端口
+     * @return 访问地址，没有端口且未启用网关时返回null
+     */
+    public String envUrl(String envId, Integer port) {
+        if (enabled) {
+            if ("subdomain".equalsIgnoreCase(routing) && !domain.isEmpty()) {
+                URI base = URI.create(publicUrl);
+                return String.format("%s://%s.%s%s/", base.getScheme(), envId, domain,
+                    base.getPort() > 0 ? ":" + base.getPort() : "");
+            }
+            return trimTrailingSlash(publicUrl) + "/" + envId + "/";
+        }
+        return port != null ? String.format("http://%s:%d", serverHost, port) : null;
+    }
+
+    /**
+     * 按子域名或路径解析请求所属的环境
+     * @return 不是网关请求时返回null
+     */
+    public RouteMatch matchRequest(HttpServletRequest request) {
+        if (!enabled) {
+            return null;
+        }
+        String uri = request.getRequestURI();
+        String query = request.getQueryString() != null ? "?" + request.getQueryString() : "";
+        String host = request.getServerName();
+        if (!domain.isEmpty() && host != null && host.endsWith("." + domain)) {
+            String envId = host.substring(0, host.length() - domain.length() - 1);
+            if (envId.startsWith("env-") && envId.indexOf('.') < 0) {
+                return new RouteMatch(envId, uri + query, "");
+            }
+        }
+        Matcher matcher = PATH_ROUTE.matcher(uri);
+        if (matcher.matches()) {
+            String path = matcher.group(2);
+            return new RouteMatch(matcher.group(1), (path != null ? path : "") + query, "/" + matcher.group(1));
+        }
+        return null;
+    }
+
+    /**
+     * 解析环境的上游地址（host:port）
+     * @throws EnvNotFoundException 环境不存在或已销毁
+     * @throws EnvException 环境未运行（ENV_NOT_RUNNING）或无法确定上游地址（ENV_NO_UPSTREAM）
+     */
+    public String resolveUpstream(String envId) {
+        Route cached = routes.get(envId);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            return cached.address;
+        }
+        routeMisses.incrementAndGet();
+        VirtualEnv env = virtualEnvMapper.selectById(envId);
+        if (env == null || "DESTROYED".equals(env.getStatus())) {
+            routes.remove(envId);
+            throw new EnvNotFoundException(envId);
+        }
+        // 未被认领的预热环境不对外开放
+        if (!"RUNNING".equals(env.getStatus())) {
+            routes.remove(envId);
+            throw new EnvException(ERROR_CODE_ENV_NOT_RUNNING,
+                String.format("环境未运行: envId=%s, status=%s", envId, env.getStatus()));
+        }
+        String address;
+        if (isPublishedUpstream()) {
+            address = env.getPort() != null ? publishedHost + ":" + env.getPort() : null;
+        } else {
+            String container = env.getContainerId() != null ? env.getContainerId() : "env-" + envId;
+            address = dockerOpsService.getContainerAddress(container, envId);
+        }
+        if (address == null) {
+            throw new EnvException(ERROR_CODE_NO_UPSTREAM, "无法确定环境的访问地址: " + envId);
+        }
+        routes.put(envId, new Route(address, System.currentTimeMillis() + routeTtlMs));
+        return address;
+    }
+
+    /**
+     * 路由失效（上游连接失败、环境停止或销毁）
+     */
+    public void invalidate(String envId) {
+        routes.remove(envId);
+    }
+
+    public void recordRequest() {
+        requestCount.incrementAndGet();
+    }
+
+    public void recordRejected() {
+        rejectedCount.incrementAndGet();
+    }
+
+    public void recordUpstreamError(String envId) {
+        upstreamErrors.incrementAndGet();
+        invalidate(envId);
+    }
+
+    public void webSocketOpened() {
+        webSocketCount.incrementAndGet();
+        activeWebSockets.incrementAndGet();
+    }
+
+    public void webSocketClosed() {
+        activeWebSockets.decrementAndGet();
+    }
+
+    /**
+     * 网关指标（请求数、WebSocket 连接数、路由缓存、上游错误）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("routing", routing);
+        stats.put("upstream", upstream);
+        stats.put("requests", requestCount.get());
+        stats.put("webSockets", webSocketCount.get());
+        stats.put("activeWebSockets", activeWebSockets.get());
+        stats.put("cachedRoutes", routes.size());
+        stats.put("routeMisses", routeMisses.get());
+        stats.put("rejected", rejectedCount.get());
+        stats.put("upstreamErrors", upstreamErrors.get());
+        return stats;
+    }
+
+    private static String trimTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    /**
+     * 网关请求的路由结果
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class RouteMatch {
+        private final String envId;
+        /**
+         * 转发到上游的路径（含查询串），路径路由下根路径不带斜杠时为空串
+         */
+        private final String upstreamPath;
+        /**
+         * 路径路由的前缀（/{envId}），子域名路由为空串
+         */
+        private final String prefix;
+    }
+
+    private static class Route {
+        final String address;
+        final long expiresAt;
+
+        Route(String address, long expiresAt) {
+            this.address = address;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package org.dockerenvs.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dto.ApiResponse;
+import org.dockerenvs.dto.BatchStartRequest;
+import org.dockerenvs.dto.BatchStartResult;
+import org.dockerenvs.dto.EnvInfo;
+import org.dockerenvs.dto.EnvJob;
+import org.dockerenvs.dto.EnvJobStage;
+import org.dockerenvs.dto.StartEnvRequest;
+import org.dockerenvs.exception.EnvException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 环境异步创建任务服务
+ * 创建请求提交后立即返回 jobId，由固定大小的工作线程池执行创建流程：
+ * - 工作线程数即同时创建环境的上限，也限制了创建流程占用的数据库连接数
+ * - 等待队列有上限，队列满时直接拒绝，不占用 Web 容器线程排队
+ * - 客户端可轮询任务状态，或通过 SSE 订阅阶段进度
+ * - 已结束的任务在内存中保留一段时间后清除
+ * - 批量创建同样占用一个工作线程，结果通过 SSE 逐个推送
+ */
+@Slf4j
+@Service
+public class EnvJobService {
+
+    public static final String ERROR_CODE_QUEUE_FULL = "JOB_QUEUE_FULL";
+    public static final String ERROR_CODE_JOB_NOT_FOUND = "JOB_NOT_FOUND";
+
+    private static final String PROGRESS_EVENT = "progress";
+    private static final String RESULT_EVENT = "result";
+    private static final String DONE_EVENT = "done";
+    private static final String ERROR_EVENT = "error";
+
+    @Autowired
+    private EnvManagerService envManagerService;
+
+    @Autowired
+    private AdmissionControlService admissionControlService;
+
+    @Value("${env.job.workers:4}")
+    private int workers;
+
+    @Value("${env.job.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${env.job.retention-minutes:10}")
+    private long retentionMinutes;
+
+    @Value("${env.job.sse-timeout-ms:600000}")
+    private long sseTimeoutMs;
+
+    private ThreadPoolExecutor executor;
+
+    private final Map<String, EnvJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong succeededCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread thread = new Thread(r, "env-job-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交环境创建任务
+     * @return 新建的任务（阶段为 QUEUED）
+     */
+    public EnvJob submit(StartEnvRequest request) {
+        purgeFinishedJobs();
+
+        EnvJob job = new EnvJob();
+        job.setJobId("job-" + UUID.randomUUID().toString().replace("-", "").substring(0, 16));
+        job.setUserId(request.getUserId());
+        job.setSystemId(request.getSystemId());
+        job.setExpId(request.getExpId());
+        job.setStage(EnvJobStage.QUEUED);
+        job.setCreatedTime(LocalDateTime.now());
+        job.setUpdatedTime(job.getCreatedTime());
+        jobs.put(job.getJobId(), job);
+
+        try {
+            executor.execute(() -> runJob(job, request));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            rejectedCount.incrementAndGet();
+            log.warn("创建任务队列已满，拒绝请求: userId={}, expId={}", request.getUserId(), request.getExpId());
+            throw new EnvException(ERROR_CODE_QUEUE_FULL, "创建任务队列已满，请稍后重试");
+        }
+        submittedCount.incrementAndGet();
+        log.info("提交环境创建任务: jobId={}, userId={}, systemId={}, expId={}",
+            job.getJobId(), request.getUserId(), request.getSystemId(), request.getExpId());
+        return job;
+    }
+
+    /**
+     * 查询任务（等待主机资源时附带当前排队位置）
+     */
+    public EnvJob getJob(String jobId) {
+        EnvJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new EnvException(ERROR_CODE_JOB_NOT_FOUND, "任务不存在或已过期: " + jobId);
+        }
+        synchronized (job) {
+            job.setQueuePosition(job.getStage() == EnvJobStage.WAITING_ADMISSION
+                ? admissionControlService.getQueuePosition(job.getUserId(), job.getSystemId(), job.getExpId())
+                : null);
+        }
+        return job;
+    }
+
+    /**
+     * 订阅任务进度（SSE）
+     * 订阅时立即推送当前阶段；任务已结束时推送后直接关闭
+     */
+    public SseEmitter subscribe(String jobId) {
+        EnvJob job = getJob(jobId);
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        List<SseEmitter> list = emitters.computeIfAbsent(jobId, k -> new CopyOnWriteArrayList<>());
+        list.add(emitter);
+        emitter.onCompletion(() -> list.remove(emitter));
+        emitter.onTimeout(() -> list.remove(emitter));
+        emitter.onError(e -> list.remove(emitter));
+
+        // 先注册再推送，阶段更新与订阅并发时最多收到重复事件，不会漏掉结束事件
+        synchronized (job) {
+            send(emitter, job);
+            if (job.getStage().isFinished()) {
+                emitter.complete();
+            }
+        }
+        return emitter;
+    }
+
+    /**
+     * 提交批量创建（同一实验、多个用户），通过 SSE 逐个推送用户结果
+     * 事件：result（单个用户结果）、done（汇总：total/succeeded/failed）、error（整批失败）
+     */
+    public SseEmitter submitBatch(BatchStartRequest request) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        try {
+            executor.execute(() -> runBatch(request, emitter));
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            log.warn("创建任务队列已满，拒绝批量创建: expId={}", request.getExpId());
+            throw new EnvException(ERROR_CODE_QUEUE_FULL, "创建任务队列已满，请稍后重试");
+        }
+        submittedCount.incrementAndGet();
+        return emitter;
+    }
+
+    private void runBatch(BatchStartRequest request, SseEmitter emitter) {
+        try {
+            List<BatchStartResult> results = envManagerService.batchCreateEnvs(request,
+                result -> sendEvent(emitter, RESULT_EVENT, result));
+            long succeeded = results.stream().filter(BatchStartResult::isSuccess).count();
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("total", results.size());
+            summary.put("succeeded", succeeded);
+            summary.put("failed", results.size() - succeeded);
+            sendEvent(emitter, DONE_EVENT, summary);
+            succeededCount.incrementAndGet();
+        } catch (Exception e) {
+            log.error("批量创建失败: expId={}", request.getExpId(), e);
+            String errorCode = e instanceof EnvException ? ((EnvException) e).getErrorCode() : null;
+            sendEvent(emitter, ERROR_EVENT, ApiResponse.error(
+                errorCode != null ? errorCode : "ENV_OPERATION_FAILED", e.getMessage()));
+            failedCount.incrementAndGet();
+        }
+        emitter.complete();
+    }
+
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        // 批量结果由多个工作线程回调，发送需串行
+        synchronized (emitter) {
+            try {
+                emitter.send(SseEmitter.event().name(name).data(data));
+            } catch (IOException | IllegalStateException e) {
+                log.debug("推送批量创建结果失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void runJob(EnvJob job, StartEnvRequest request) {
+        try {
+            EnvInfo envInfo = envManagerService.createEnv(request, stage -> updateStage(job, stage, null));
+            synchronized (job) {
+                job.setEnv(envInfo);
+            }
+            updateStage(job, EnvJobStage.READY, "环境已就绪");
+            succeededCount.incrementAndGet();
+            log.info("环境创建任务完成: jobId={}, envId={}", job.getJobId(), envInfo.getEnvId());
+        } catch (Exception e) {
+            synchronized (job) {
+                job.setErrorCode(e instanceof EnvException ? ((EnvException) e).getErrorCode() : null);
+            }
+            updateStage(job, EnvJobStage.FAILED, e.getMessage());
+            failedCount.incrementAndGet();
+            log.error("环境创建任务失败: jobId={}", job.getJobId(), e);
+        }
+    }
+
+    private void updateStage(EnvJob job, EnvJobStage stage, String message) {
+        synchronized (job) {
+            job.setStage(stage);
+            job.setMessage(message);
+            job.setUpdatedTime(LocalDateTime.now());
+            log.debug("任务阶段更新: jobId={}, stage={}", job.getJobId(), stage);
+
+            List<SseEmitter> list = emitters.get(job.getJobId());
+            if (list == null) {
+                return;
+            }
+            for (SseEmitter emitter : list) {
+                send(emitter, job);
+                if (stage.isFinished()) {
+                    emitter.complete();
+                }
+            }
+            if (stage.isFinished()) {
+                emitters.remove(job.getJobId());
+            }
+        }
+    }
+
+    private void send(SseEmitter emitter, EnvJob job) {
+        try {
+            emitter.send(SseEmitter.event().name(PROGRESS_EVENT).data(job));
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开
+            log.debug("推送任务进度失败: jobId={}, {}", job.getJobId(), e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 清除超过保留时间的已结束任务
+     */
+    private void purgeFinishedJobs() {
+        LocalDateTime expireBefore = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(job -> job.getStage().isFinished()
+            && job.getUpdatedTime().isBefore(expireBefore));
+    }
+
+    /**
+     * 任务指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", workers);
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("submitted", submittedCount.get());
+        stats.put("succeeded", succeededCount.get());
+        stats.put("failed", failedCount.get());
+        stats.put("rejected", rejectedCount.get());
+        stats.put("tracked", jobs.size());
+        return stats;
+    }
+}
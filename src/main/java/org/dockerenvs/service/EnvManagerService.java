@@ -1,28 +1,60 @@
 package org.dockerenvs.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.model.Container;
 import lombok.extern.slf4j.Slf4j;
 import org.dockerenvs.dao.mapper.VirtualEnvMapper;
+import org.dockerenvs.dto.BatchStartRequest;
+import org.dockerenvs.dto.BatchStartResult;
+import org.dockerenvs.dto.ComposeSpec;
 import org.dockerenvs.dto.DatabaseConfig;
 import org.dockerenvs.dto.EnvInfo;
+import org.dockerenvs.dto.EnvJobStage;
 import org.dockerenvs.dto.ExperimentMetadata;
+import org.dockerenvs.dto.ProjectResources;
 import org.dockerenvs.dto.StartEnvRequest;
 import org.dockerenvs.entity.VirtualEnv;
 import org.dockerenvs.exception.ContainerException;
 import org.dockerenvs.exception.DatabaseException;
+import org.dockerenvs.exception.EnvException;
 import org.dockerenvs.exception.EnvNotFoundException;
 import org.dockerenvs.provider.DatabaseProvider;
-import org.dockerenvs.provider.ProviderManager;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -48,7 +80,10 @@ public class EnvManagerService {
     private DockerOpsService dockerOpsService;
     
     @Autowired
-    private ObjectMapper objectMapper;
+    private ExperimentMetadataService experimentMetadataService;
+    
+    @Autowired
+    private EnvRuntimeRegistry envRuntimeRegistry;
     
     // 注意：此字段已不再直接使用，数据库初始化已统一使用 DatabaseProvider
     // 保留此字段以保持向后兼容，但实际已通过 getEffectiveDatabaseConfig() 统一处理
@@ -57,16 +92,246 @@ public class EnvManagerService {
     private SharedMysqlService sharedMysqlService;
     
     @Autowired
-    private ProviderManager providerManager;
+    private WarmPoolService warmPoolService;
+    
+    @Autowired
+    private EnvActivityService envActivityService;
+    
+    @Autowired
+    private EnvGatewayService envGatewayService;
+    
+    @Autowired
+    private AdmissionControlService admissionControlService;
+    
+    @Value("${env.batch.parallelism:8}")
+    private int batchParallelism;
+    
+    @Value("${env.batch.max-users:300}")
+    private int batchMaxUsers;
+    
+    @Value("${env.destroy.parallelism:8}")
+    private int destroyParallelism;
+    
+    /**
+     * 停止方式：stop=停止容器，pause=冻结容器（docker pause）
+     */
+    @Value("${env.pause.stop-mode:stop}")
+    private String stopMode;
+    
+    /**
+     * 状态变更原因：用户操作
+     */
+    public static final String REASON_MANUAL = "MANUAL";
+    
+    /**
+     * 冻结状态：容器进程被冻结，内存保留，解冻只需毫秒
+     */
+    public static final String PAUSED_STATUS = "PAUSED";
+    
+    /**
+     * 过渡状态：创建中（记录已写入，正在准备数据库、生成编排文件）
+     */
+    public static final String CREATING_STATUS = "CREATING";
+    
+    /**
+     * 过渡状态：启动中（正在启动容器、等待健康检查）
+     */
+    public static final String STARTING_STATUS = "STARTING";
+    
+    /**
+     * 过渡状态：停止中（正在停止或冻结容器）
+     */
+    public static final String STOPPING_STATUS = "STOPPING";
     
-    @Value("${env.server.host:localhost}")
-    private String serverHost;
+    /**
+     * 状态变更原因：创建失败，补偿后标记为已销毁
+     */
+    public static final String REASON_CREATE_FAILED = "CREATE_FAILED";
+    
+    /**
+     * 状态变更原因：销毁失败，释放端口后直接标记为已销毁（容器可能残留，需按标签人工清理）
+     */
+    public static final String REASON_DESTROY_FAILED = "DESTROY_FAILED";
+    
+    /**
+     * 状态变更原因：停留在过渡状态过久（操作中断），被清理
+     */
+    public static final String REASON_STALE = "STALE";
+    
+    /**
+     * 错误码：环境正处于过渡状态，被其他操作占用
+     */
+    public static final String ERROR_CODE_ENV_BUSY = "ENV_BUSY";
+    
+    /**
+     * 批量创建启动容器的线程池（并行度即同时启动的容器数上限）
+     */
+    private ExecutorService batchExecutor;
+    
+    /**
+     * 批量销毁和后台删除环境目录的线程池
+     */
+    private ExecutorService destroyExecutor;
+    
+    /**
+     * 等待相同环境创建完成的最长时间（秒）
+     */
+    @Value("${env.create.coalesce-timeout-seconds:600}")
+    private long coalesceTimeoutSeconds;
+    
+    /**
+     * 进行中的创建请求，键为 userId|systemId|expId
+     */
+    private final Map<String, CompletableFuture<EnvInfo>> inFlightCreates = new ConcurrentHashMap<>();
+    
+    /**
+     * 被合并（等待其他请求结果）的创建请求数
+     */
+    private final AtomicLong coalescedCount = new AtomicLong();
+    
+    /**
+     * 重置方式计数：编排模型未变化时原地重启、部分服务变化时只重建变化的服务、全部重建
+     */
+    private final AtomicLong resetRestartedCount = new AtomicLong();
+    private final AtomicLong resetPartialCount = new AtomicLong();
+    private final AtomicLong resetRecreatedCount = new AtomicLong();
+    
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        batchExecutor = new ThreadPoolExecutor(batchParallelism, batchParallelism, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "env-batch-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        AtomicInteger destroyCounter = new AtomicInteger();
+        destroyExecutor = new ThreadPoolExecutor(destroyParallelism, destroyParallelism, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "env-destroy-" + destroyCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        ((ThreadPoolExecutor) destroyExecutor).allowCoreThreadTimeOut(true);
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        batchExecutor.shutdownNow();
+        destroyExecutor.shutdownNow();
+    }
     
     /**
      * 创建/启动环境
      */
-    @Transactional(rollbackFor = Exception.class)
     public EnvInfo createEnv(StartEnvRequest request) {
+        return createEnv(request, stage -> { });
+    }
+    
+    /**
+     * 创建/启动环境，并在进入各阶段时回调进度
+     * 同一 (userId, systemId, expId) 的并发请求合并为一次创建：首个请求执行创建，
+     * 其余请求等待并共享其结果（等待期间不占用数据库连接）
+     * @param progress 阶段回调（在调用线程中执行）
+     */
+    public EnvInfo createEnv(StartEnvRequest request, Consumer<EnvJobStage> progress) {
+        String key = createKey(request.getUserId(), request.getSystemId(), request.getExpId());
+        CompletableFuture<EnvInfo> inFlight = new CompletableFuture<>();
+        CompletableFuture<EnvInfo> existing = inFlightCreates.putIfAbsent(key, inFlight);
+        if (existing != null) {
+            log.info("相同环境正在创建中，等待其结果: key={}", key);
+            coalescedCount.incrementAndGet();
+            return awaitInFlightCreate(existing, key);
+        }
+        
+        AdmissionControlService.Ticket ticket = null;
+        try {
+            // 准入排队期间不占用数据库连接
+            ticket = acquireAdmission(request, progress);
+            // 创建的每一步各自提交，不在容器启动期间持有数据库连接；结果返回时记录已提交，等待方一定可查
+            EnvInfo envInfo = doCreateEnv(request, progress);
+            admissionControlService.release(ticket, true);
+            inFlight.complete(envInfo);
+            return envInfo;
+        } catch (RuntimeException | Error e) {
+            // Error 同样要结束等待中的合并请求，否则它们要等满合并超时
+            admissionControlService.release(ticket, false);
+            inFlight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightCreates.remove(key, inFlight);
+        }
+    }
+    
+    /**
+     * 创建前申请主机资源：已运行或已冻结的环境、可以从预热池认领的环境不需要新资源
+     * @return 准入凭证，不需要或准入控制禁用时返回null
+     */
+    private AdmissionControlService.Ticket acquireAdmission(StartEnvRequest request, Consumer<EnvJobStage> progress) {
+        if (!admissionControlService.isEnabled()) {
+            return null;
+        }
+        VirtualEnv existingEnv = findExistingEnv(request.getUserId(), request.getSystemId(), request.getExpId());
+        if (existingEnv != null && ("RUNNING".equals(existingEnv.getStatus())
+                || PAUSED_STATUS.equals(existingEnv.getStatus()))) {
+            return null;
+        }
+        if (warmPoolService.hasAvailable(request.getExpId())) {
+            return null;
+        }
+        return admissionControlService.acquire(request.getUserId(), request.getSystemId(), request.getExpId(),
+            () -> progress.accept(EnvJobStage.WAITING_ADMISSION));
+    }
+    
+    /**
+     * 等待进行中的创建请求
+     */
+    private EnvInfo awaitInFlightCreate(CompletableFuture<EnvInfo> inFlight, String key) {
+        try {
+            return inFlight.get(coalesceTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new EnvException("ENV_CREATE_FAILED", "环境创建失败: " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new EnvException("ENV_CREATE_TIMEOUT", "等待相同环境创建超时: " + key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EnvException("ENV_CREATE_FAILED", "等待相同环境创建被中断: " + key);
+        }
+    }
+    
+    /**
+     * 创建请求合并指标（进行中的创建数、被合并的请求数）
+     */
+    public Map<String, Object> getCreateStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", inFlightCreates.size());
+        stats.put("coalesced", coalescedCount.get());
+        return stats;
+    }
+    
+    /**
+     * 重置指标（原地重启、部分重建、全部重建的次数）
+     */
+    public Map<String, Object> getResetStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("restarted", resetRestartedCount.get());
+        stats.put("partial", resetPartialCount.get());
+        stats.put("recreated", resetRecreatedCount.get());
+        return stats;
+    }
+    
+    /**
+     * 创建请求的合并键，systemId 的规范化与 findExistingEnv 一致（空字符串视为无）
+     */
+    private String createKey(String userId, String systemId, String expId) {
+        String normalizedSystemId = (systemId != null && !systemId.trim().isEmpty()) ? systemId.trim() : "";
+        return userId + "|" + normalizedSystemId + "|" + expId;
+    }
+    
+    private EnvInfo doCreateEnv(StartEnvRequest request, Consumer<EnvJobStage> progress) {
         log.info("创建环境请求: userId={}, systemId={}, expId={}", 
             request.getUserId(), request.getSystemId(), request.getExpId());
         // 1. 检查环境是否已存在
@@ -81,28 +346,47 @@ public class EnvManagerService {
         
         if (existingEnv != null && "RUNNING".equals(existingEnv.getStatus())) {
             log.info("环境已存在且运行中: {}", existingEnv.getEnvId());
+            envActivityService.touchEnv(existingEnv.getEnvId());
             return convertToEnvInfo(existingEnv);
         }
         
-        // 2. 如果环境存在但已停止，直接启动它
-        if (existingEnv != null && "STOPPED".equals(existingEnv.getStatus())) {
-            log.info("环境已存在但已停止，启动已存在的环境: {}", existingEnv.getEnvId());
+        // 1.5 环境处于过渡状态：操作仍在进行则让调用方稍后重试，停留过久（进程中断）则清理后重建
+        if (existingEnv != null && isTransitional(existingEnv.getStatus())) {
+            if (!isStale(existingEnv)) {
+                throw busy(existingEnv.getEnvId(), existingEnv.getStatus());
+            }
+            log.warn("环境停留在过渡状态过久，视为中断的操作并清理: envId={}, status={}, updatedTime={}",
+                existingEnv.getEnvId(), existingEnv.getStatus(), existingEnv.getUpdatedTime());
+            destroyEnv(existingEnv.getEnvId(), REASON_STALE);
+            existingEnv = null;
+        }
+        
+        // 2. 如果环境存在但已停止（或已冻结），直接启动它
+        if (existingEnv != null && ("STOPPED".equals(existingEnv.getStatus())
+                || PAUSED_STATUS.equals(existingEnv.getStatus()))) {
+            log.info("环境已存在但未运行，启动已存在的环境: envId={}, status={}",
+                existingEnv.getEnvId(), existingEnv.getStatus());
+            progress.accept(EnvJobStage.STARTING);
             try {
                 startEnv(existingEnv.getEnvId());
                 // 重新查询环境信息（状态已更新为RUNNING）
                 VirtualEnv updatedEnv = virtualEnvMapper.selectById(existingEnv.getEnvId());
                 return convertToEnvInfo(updatedEnv);
             } catch (Exception e) {
+                if (isBusy(e)) {
+                    throw (EnvException) e;
+                }
                 log.error("启动已停止的环境失败: envId={}", existingEnv.getEnvId(), e);
                 // 如果启动失败（例如容器已被删除），继续创建新环境
                 log.info("启动失败，将销毁旧环境并创建新环境");
-                // 先释放端口，避免端口冲突
-                if (existingEnv.getPort() != null) {
+                // 先释放端口（多端口实验整组释放），避免端口冲突
+                List<Integer> existingPorts = PortManagerService.envPorts(existingEnv);
+                if (!existingPorts.isEmpty()) {
                     try {
-                        portManagerService.releasePort(existingEnv.getPort());
-                        log.info("释放旧环境端口: port={}", existingEnv.getPort());
+                        portManagerService.releasePorts(existingEnv.getEnvId(), existingPorts);
+                        log.info("释放旧环境端口: ports={}", existingPorts);
                     } catch (Exception ex) {
-                        log.warn("释放旧环境端口失败，继续销毁: port={}", existingEnv.getPort(), ex);
+                        log.warn("释放旧环境端口失败，继续销毁: ports={}", existingPorts, ex);
                     }
                 }
                 // 然后销毁环境
@@ -110,112 +394,471 @@ public class EnvManagerService {
             }
         }
         
-        // 3. 分配端口
-        String envId = generateEnvId();
-        log.info("生成新环境ID: {}", envId);
-        Integer port = portManagerService.assignPort(envId);
-        log.info("分配端口: {} 给环境: {}", port, envId);
-        
-        // 4. 生成环境目录
-        String envDir = fileManagerService.generateEnvDir(
-            request.getUserId(), request.getSystemId(), request.getExpId());
-        log.info("生成环境目录: {}", envDir);
+        // 2.5 优先认领预热环境
+        VirtualEnv warmEnv = warmPoolService.claim(request.getUserId(), request.getSystemId(), request.getExpId());
+        if (warmEnv != null) {
+            return convertToEnvInfo(warmEnv);
+        }
         
-        // 5. 读取实验元数据
-        ExperimentMetadata metadata = readExperimentMetadata(request.getExpId());
-        String runtimeType = metadata.getEffectiveRuntimeType();
+        return provisionEnv(request.getUserId(), request.getSystemId(), request.getExpId(), false, progress);
+    }
+    
+    /**
+     * 创建预热环境（不属于任何用户，状态为 WARM，等待被认领）
+     * 预热环境启动后要等到完全就绪（健康检查通过）才入池
+     */
+    public EnvInfo createWarmEnv(String expId) {
+        return provisionEnv(WarmPoolService.POOL_USER_ID, null, expId, true, stage -> { });
+    }
+    
+    /**
+     * 批量创建环境（同一实验、多个用户，如按班级名单开通）
+     * 实验元数据只读取一次、数据库只准备一次、端口在一个事务内批量分配、环境记录用一条语句批量插入，
+     * 容器按 env.batch.parallelism 并行启动，每个用户完成后立即回调结果，状态在环境完成后立即写回数据库（同时完成的环境合并为一条语句）
+     * @param listener 单个用户结果回调（在工作线程中调用，需线程安全）
+     * @return 全部用户的结果
+     */
+    public List<BatchStartResult> batchCreateEnvs(BatchStartRequest request, Consumer<BatchStartResult> listener) {
+        String expId = request.getExpId();
+        String systemId = request.getSystemId();
+        Set<String> userIds = new LinkedHashSet<>();
+        if (request.getUserIds() != null) {
+            for (String userId : request.getUserIds()) {
+                if (userId != null && !userId.trim().isEmpty()) {
+                    userIds.add(userId.trim());
+                }
+            }
+        }
+        if (expId == null || expId.trim().isEmpty() || userIds.isEmpty()) {
+            throw new EnvException("BAD_REQUEST", "expId 和 userIds 不能为空");
+        }
+        if (userIds.size() > batchMaxUsers) {
+            throw new EnvException("BATCH_TOO_LARGE",
+                String.format("单次批量创建最多 %d 个用户，本次 %d 个", batchMaxUsers, userIds.size()));
+        }
+        log.info("批量创建环境请求: systemId={}, expId={}, 用户数={}", systemId, expId, userIds.size());
         
-        // 5.1 获取实验程序包共享路径
-        String programPath = fileManagerService.getAppSourcePath(request.getExpId());
-        log.info("使用共享程序目录: {}", programPath);
+        List<BatchStartResult> results = Collections.synchronizedList(new ArrayList<>());
+        Consumer<BatchStartResult> report = result -> {
+            results.add(result);
+            listener.accept(result);
+        };
         
-        // 6.5. 处理数据库配置（统一使用新的配置化方式，getEffectiveDatabaseConfig已处理向后兼容）
-        DatabaseConfig dbConfig = metadata.getEffectiveDatabaseConfig();
-        DatabaseProvider dbProvider = null;
+        // 1. 一次查询这些用户已有的环境
+        Map<String, VirtualEnv> existingByUser = findExistingEnvs(userIds, systemId, expId);
+        List<String> newUsers = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (String userId : userIds) {
+            VirtualEnv existing = existingByUser.get(userId);
+            if (existing == null) {
+                newUsers.add(userId);
+            } else if ("RUNNING".equals(existing.getStatus())) {
+                report.accept(BatchStartResult.success(userId, convertToEnvInfo(existing), true));
+            } else {
+                // 已有但未运行的环境走单个创建流程（启动已停止的容器，失败则重建）
+                StartEnvRequest single = new StartEnvRequest();
+                single.setUserId(userId);
+                single.setSystemId(systemId);
+                single.setExpId(expId);
+                futures.add(batchExecutor.submit(() -> {
+                    try {
+                        report.accept(BatchStartResult.success(userId, createEnv(single), true));
+                    } catch (Exception e) {
+                        report.accept(failureResult(userId, e));
+                    }
+                }));
+            }
+        }
         
-        if (dbConfig != null && dbConfig.getEnabled()) {
-            log.info("实验需要数据库，配置: provider={}, type={}, name={}", 
-                dbConfig.getProvider(), dbConfig.getType(), dbConfig.getName());
-            try {
-                dbProvider = providerManager.getDatabaseProvider(dbConfig);
+        if (!newUsers.isEmpty()) {
+            // 2. 实验元数据只读取一次
+            ExperimentMetadata metadata = readExperimentMetadata(expId);
+            List<VirtualEnv> pendingUpdates = new ArrayList<>();
+            Lock flushLock = new ReentrantLock();
+            List<VirtualEnv> prepared = prepareBatchEnvs(newUsers, systemId, expId, metadata, report);
+            if (!prepared.isEmpty()) {
+                String programPath = experimentMetadataService.getAppSourcePath(expId);
+                DatabaseProvider dbProvider = batchDatabaseProvider(metadata);
+                String runtimeType = metadata.getEffectiveRuntimeType();
+                boolean waitForHealth = runtimeType == null || !runtimeType.equalsIgnoreCase("python");
                 if (dbProvider != null) {
-                    dbProvider.ensureDatabaseReady(dbConfig);
-                    log.info("数据库已就绪");
-                } else {
-                    log.warn("未找到数据库提供者，跳过数据库初始化");
+                    waitForHealth = waitForHealth && dbProvider.shouldWaitForAppHealthCheck();
+                }
+                boolean shouldVerify = dbProvider == null || dbProvider.shouldVerifyContainerExists();
+                boolean wait = waitForHealth;
+                for (VirtualEnv env : prepared) {
+                    futures.add(batchExecutor.submit(() -> startBatchEnv(env, metadata, programPath,
+                        wait, shouldVerify, pendingUpdates, flushLock, report)));
                 }
-            } catch (Exception e) {
-                log.error("数据库初始化失败", e);
-                // 释放端口
-                cleanupResources(null, port, null);
-                throw new DatabaseException(DatabaseException.ERROR_CODE_INIT_FAILED, 
-                    "数据库初始化失败: " + e.getMessage(), e);
             }
+            awaitAll(futures);
+            flushBatchUpdates(pendingUpdates, flushLock);
+        } else {
+            awaitAll(futures);
         }
         
-        // 决定是否等待健康检查（由数据库提供者和运行时类型决定）
-        boolean waitForHealth = (runtimeType == null || !runtimeType.equalsIgnoreCase("python"));
-        if (dbProvider != null) {
-            waitForHealth = waitForHealth && dbProvider.shouldWaitForAppHealthCheck();
+        long succeeded = results.stream().filter(BatchStartResult::isSuccess).count();
+        log.info("批量创建环境完成: expId={}, 成功={}, 失败={}", expId, succeeded, results.size() - succeeded);
+        return new ArrayList<>(results);
+    }
+    
+    /**
+     * 批量创建的准备阶段：准备数据库、批量分配端口、批量插入环境记录（状态 CREATING）
+     * 准备失败时所有新用户均回调失败结果
+     * @return 已插入记录的环境
+     */
+    private List<VirtualEnv> prepareBatchEnvs(List<String> userIds, String systemId, String expId,
+                                              ExperimentMetadata metadata, Consumer<BatchStartResult> report) {
+        Map<String, List<Integer>> ports = null;
+        try {
+            // 程序包不存在时整批失败，不分配任何资源
+            experimentMetadataService.getAppSourcePath(expId);
+            ExperimentMetadataService.Artifacts artifacts = experimentMetadataService.getArtifacts(metadata);
+            if (artifacts.getDatabaseProvider() != null) {
+                // 同一实验的数据库只需准备一次
+                artifacts.getDatabaseProvider().ensureDatabaseReady(artifacts.getDatabaseConfig());
+            }
+            
+            Map<String, String> userByEnvId = new LinkedHashMap<>();
+            for (String userId : userIds) {
+                userByEnvId.put(generateEnvId(), userId);
+            }
+            // 守护进程分配端口（容器启动后读回）或不发布端口时不预先分配；多端口实验每个环境分配一组
+            List<String> portSpecs = metadata.getEffectivePortSpecs();
+            ports = portManagerService.isAllocating()
+                ? portManagerService.assignPortBlocks(new ArrayList<>(userByEnvId.keySet()),
+                    Math.max(portSpecs.size(), 1), Boolean.TRUE.equals(metadata.getContiguousPorts()))
+                : Collections.emptyMap();
+            
+            LocalDateTime now = LocalDateTime.now();
+            List<VirtualEnv> envs = new ArrayList<>();
+            for (Map.Entry<String, String> entry : userByEnvId.entrySet()) {
+                List<Integer> block = ports.getOrDefault(entry.getKey(), Collections.emptyList());
+                Integer port = block.isEmpty() ? null : block.get(0);
+                VirtualEnv env = new VirtualEnv();
+                env.setEnvId(entry.getKey());
+                env.setUserId(entry.getValue());
+                env.setSystemId(systemId);
+                env.setExpId(expId);
+                env.setPort(port);
+                env.setExtraPorts(extraPorts(block, portSpecs));
+                env.setEnvDir(fileManagerService.generateEnvDir(entry.getValue(), systemId, expId));
+                env.setStatus(CREATING_STATUS);
+                env.setUrl(envUrl(entry.getKey(), port));
+                env.setLastActiveTime(now);
+                env.setCreatedTime(now);
+                env.setUpdatedTime(now);
+                envs.add(env);
+            }
+            return insertBatchEnvs(envs, report);
+        } catch (Exception e) {
+            log.error("批量创建准备失败: expId={}", expId, e);
+            if (ports != null) {
+                ports.forEach((envId, block) -> cleanupResources(envId, null, block, null));
+            }
+            for (String userId : userIds) {
+                report.accept(failureResult(userId, e));
+            }
+            return Collections.emptyList();
         }
-        
-        // 7. 生成docker-compose.yml文件
-        String containerName = "env-" + envId;
-        log.info("生成容器名称: {}", containerName);
-        
-        // 使用配置化方式生成docker-compose.yml
-        templateManagerService.generateComposeFile(envDir, programPath, metadata, envId, request.getUserId(), port);
-        
-        // 8. 启动容器
-        log.info("开始启动容器: envDir={}, containerName={}", envDir, containerName);
+    }
+    
+    /**
+     * 批量插入环境记录；与并发创建冲突（唯一约束）时逐条插入，冲突的用户返回已有环境
+     */
+    private List<VirtualEnv> insertBatchEnvs(List<VirtualEnv> envs, Consumer<BatchStartResult> report) {
+        try {
+            virtualEnvMapper.insertBatch(envs);
+            return envs;
+        } catch (DuplicateKeyException e) {
+            log.warn("批量插入与并发创建冲突，改为逐条插入: {}", e.getMessage());
+        }
+        List<VirtualEnv> inserted = new ArrayList<>();
+        for (VirtualEnv env : envs) {
+            try {
+                virtualEnvMapper.insert(env);
+                inserted.add(env);
+            } catch (DuplicateKeyException e) {
+                cleanupResources(env.getEnvId(), null, PortManagerService.envPorts(env), null);
+                VirtualEnv existing = findExistingEnv(env.getUserId(), env.getSystemId(), env.getExpId());
+                report.accept(existing != null
+                    ? BatchStartResult.success(env.getUserId(), convertToEnvInfo(existing), true)
+                    : BatchStartResult.failure(env.getUserId(), "ENV_CREATE_FAILED", "环境创建冲突，请重试"));
+            }
+        }
+        return inserted;
+    }
+    
+    /**
+     * 批量创建使用的数据库提供者（数据库已在准备阶段就绪，这里只用于决定健康检查和验证策略）
+     */
+    private DatabaseProvider batchDatabaseProvider(ExperimentMetadata metadata) {
+        return experimentMetadataService.getArtifacts(metadata).getDatabaseProvider();
+    }
+    
+    /**
+     * 批量创建中启动单个环境的容器
+     */
+    private void startBatchEnv(VirtualEnv env, ExperimentMetadata metadata, String programPath,
+                               boolean waitForHealth, boolean shouldVerify,
+                               List<VirtualEnv> pendingUpdates, Lock flushLock,
+                               Consumer<BatchStartResult> report) {
         String containerId = null;
+        AdmissionControlService.Ticket ticket = null;
         try {
-            containerId = dockerOpsService.startContainer(envDir, waitForHealth);
-            log.info("容器启动完成，容器ID: {}", containerId);
+            ticket = admissionControlService.acquire(env.getUserId(), env.getSystemId(), env.getExpId(), () -> { });
+            ComposeSpec composeSpec = templateManagerService.generateComposeFile(env.getEnvDir(), programPath,
+                metadata, env.getEnvId(), env.getUserId(), hostPorts(env));
+            env.setComposeFingerprint(TemplateManagerService.formatFingerprint(
+                templateManagerService.fingerprint(composeSpec)));
+            containerId = dockerOpsService.startContainer(env.getEnvDir(), composeSpec, waitForHealth);
+            if (shouldVerify && !dockerOpsService.containerExists(containerId)) {
+                throw new ContainerException(ContainerException.ERROR_CODE_NOT_FOUND,
+                    "容器验证失败，容器不存在: " + containerId);
+            }
+            applyPublishedPort(env, containerId, metadata.getEffectiveContainerPort());
+            env.setContainerId(containerId);
+            env.setRuntimeDescriptor(envRuntimeRegistry.descriptorOf(env.getEnvId()));
+            env.setStatus("RUNNING");
+            log.info("批量创建环境成功: envId={}, userId={}, port={}", env.getEnvId(), env.getUserId(), env.getPort());
+            admissionControlService.release(ticket, true);
+            report.accept(BatchStartResult.success(env.getUserId(), convertToEnvInfo(env), false));
         } catch (Exception e) {
-            log.error("容器启动失败: envId={}, envDir={}", envId, envDir, e);
-            // 清理已创建的资源
-            cleanupResources(envDir, port, containerId);
-            // 抛出更详细的错误信息
-            if (e instanceof ContainerException) {
-                throw e;
+            admissionControlService.release(ticket, false);
+            log.error("批量创建环境失败: envId={}, userId={}", env.getEnvId(), env.getUserId(), e);
+            cleanupResources(env.getEnvId(), env.getEnvDir(), PortManagerService.envPorts(env), containerId);
+            env.setContainerId(containerId);
+            env.setStatus("DESTROYED");
+            report.accept(failureResult(env.getUserId(), e));
+        }
+        synchronized (pendingUpdates) {
+            pendingUpdates.add(env);
+        }
+        flushBatchUpdates(pendingUpdates, flushLock);
+    }
+    
+    /**
+     * 把已完成的环境状态写回数据库：环境完成后立即写，不等待同批的其他环境
+     * 同一时间只有一个线程写库，写库期间完成的环境合并到下一条语句，由持有锁的线程写完后继续写回
+     */
+    private void flushBatchUpdates(List<VirtualEnv> pendingUpdates, Lock flushLock) {
+        while (true) {
+            synchronized (pendingUpdates) {
+                if (pendingUpdates.isEmpty()) {
+                    return;
+                }
+            }
+            if (!flushLock.tryLock()) {
+                return;
+            }
+            List<VirtualEnv> toFlush;
+            try {
+                synchronized (pendingUpdates) {
+                    toFlush = new ArrayList<>(pendingUpdates);
+                    pendingUpdates.clear();
+                }
+                if (!toFlush.isEmpty()) {
+                    virtualEnvMapper.batchUpdateRuntime(toFlush);
+                }
+            } catch (Exception e) {
+                log.error("批量更新环境状态失败", e);
+            } finally {
+                flushLock.unlock();
             }
-            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
-                "容器启动失败: " + e.getMessage(), e);
         }
+    }
+    
+    private void awaitAll(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                log.error("批量任务异常", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    private BatchStartResult failureResult(String userId, Exception e) {
+        String errorCode = e instanceof EnvException && ((EnvException) e).getErrorCode() != null
+            ? ((EnvException) e).getErrorCode() : "ENV_CREATE_FAILED";
+        return BatchStartResult.failure(userId, errorCode, e.getMessage());
+    }
+    
+    /**
+     * 分配端口、写入创建中的环境记录、生成编排文件并启动容器
+     * 每一步各自提交（不在容器启动期间持有数据库连接和行锁），失败时按已完成的步骤补偿：
+     * 停止容器、释放端口，并把环境记录标记为已销毁
+     * @param warm 是否为预热环境
+     */
+    private EnvInfo provisionEnv(String userId, String systemId, String expId, boolean warm,
+                                 Consumer<EnvJobStage> progress) {
+        // 3. 读取实验元数据，按声明的端口数分配端口（多端口实验整组分配）
+        String envId = generateEnvId();
+        log.info("生成新环境ID: {}", envId);
+        ExperimentMetadata metadata = readExperimentMetadata(expId);
+        progress.accept(EnvJobStage.ALLOCATING_PORT);
+        // 守护进程分配端口时容器启动后才能确定端口，不发布端口时没有端口
+        List<String> portSpecs = metadata.getEffectivePortSpecs();
+        List<Integer> ports = portManagerService.isAllocating()
+            ? portManagerService.assignPortBlock(envId, Math.max(portSpecs.size(), 1),
+                Boolean.TRUE.equals(metadata.getContiguousPorts()))
+            : Collections.emptyList();
+        Integer port = ports.isEmpty() ? null : ports.get(0);
+        log.info("分配端口: {} 给环境: {}", ports, envId);
         
-        // 9. 验证容器存在（由数据库提供者决定是否需要验证）
-        boolean shouldVerify = dbProvider == null || dbProvider.shouldVerifyContainerExists();
-        if (shouldVerify) {
-            if (!dockerOpsService.containerExists(containerId)) {
-                log.error("容器验证失败，容器不存在: envId={}, containerId={}", envId, containerId);
-                // 清理资源
-                cleanupResources(envDir, port, containerId);
-                throw new ContainerException(ContainerException.ERROR_CODE_NOT_FOUND,
-                    "容器验证失败，容器不存在: " + containerId);
+        // 4. 生成环境目录（预热环境还没有归属，按环境ID区分目录）
+        String envDir;
+        VirtualEnv virtualEnv = new VirtualEnv();
+        try {
+            progress.accept(EnvJobStage.RENDERING);
+            envDir = fileManagerService.generateEnvDir(userId, warm ? envId : systemId, expId);
+            log.info("生成环境目录: {}", envDir);
+            
+            // 5. 先写入创建中的环境记录，唯一约束在启动容器之前就拦住并发的重复创建
+            virtualEnv.setEnvId(envId);
+            virtualEnv.setUserId(userId);
+            virtualEnv.setSystemId(systemId);
+            virtualEnv.setExpId(expId);
+            virtualEnv.setPort(port);
+            virtualEnv.setExtraPorts(extraPorts(ports, portSpecs));
+            virtualEnv.setEnvDir(envDir);
+            virtualEnv.setStatus(CREATING_STATUS);
+            virtualEnv.setUrl(envUrl(envId, port));
+            virtualEnv.setLastActiveTime(LocalDateTime.now());
+            virtualEnv.setCreatedTime(LocalDateTime.now());
+            virtualEnv.setUpdatedTime(LocalDateTime.now());
+            virtualEnvMapper.insert(virtualEnv);
+        } catch (DuplicateKeyException e) {
+            // 唯一约束：同一用户/系统/实验只能有一个未销毁的环境（多实例并发创建时由数据库兜底）
+            log.warn("相同环境已被并发创建，释放本次分配的端口: envId={}, userId={}, systemId={}, expId={}",
+                envId, userId, systemId, expId);
+            cleanupResources(envId, null, ports, null);
+            VirtualEnv winner = findExistingEnv(userId, systemId, expId);
+            if (winner == null) {
+                throw new EnvException("ENV_CREATE_FAILED", "环境创建冲突，请重试", e);
             }
-        } else {
-            log.info("数据库提供者配置跳过容器存在验证");
+            if (isTransitional(winner.getStatus())) {
+                throw busy(winner.getEnvId(), winner.getStatus());
+            }
+            return convertToEnvInfo(winner);
+        } catch (RuntimeException e) {
+            // 环境记录还未写入，补偿只需退回本次分配的端口
+            log.error("写入环境记录前失败，释放本次分配的端口: envId={}, ports={}", envId, ports, e);
+            cleanupResources(envId, null, ports, null);
+            throw e;
+        }
+        
+        String containerId = null;
+        boolean rendered = false;
+        try {
+            String runtimeType = metadata.getEffectiveRuntimeType();
+            
+            // 6.1 获取实验程序包共享路径
+            String programPath = experimentMetadataService.getAppSourcePath(expId);
+            log.info("使用共享程序目录: {}", programPath);
+            
+            // 6.5. 处理数据库配置（统一使用新的配置化方式，getEffectiveDatabaseConfig已处理向后兼容）
+            ExperimentMetadataService.Artifacts artifacts = experimentMetadataService.getArtifacts(metadata);
+            DatabaseConfig dbConfig = artifacts.getDatabaseConfig();
+            DatabaseProvider dbProvider = null;
+            
+            if (dbConfig != null && dbConfig.getEnabled()) {
+                log.info("实验需要数据库，配置: provider={}, type={}, name={}", 
+                    dbConfig.getProvider(), dbConfig.getType(), dbConfig.getName());
+                try {
+                    dbProvider = artifacts.getDatabaseProvider();
+                    if (dbProvider != null) {
+                        dbProvider.ensureDatabaseReady(dbConfig);
+                        log.info("数据库已就绪");
+                    } else {
+                        log.warn("未找到数据库提供者，跳过数据库初始化");
+                    }
+                } catch (Exception e) {
+                    log.error("数据库初始化失败", e);
+                    throw new DatabaseException(DatabaseException.ERROR_CODE_INIT_FAILED, 
+                        "数据库初始化失败: " + e.getMessage(), e);
+                }
+            }
+            
+            // 决定是否等待健康检查（由数据库提供者和运行时类型决定）
+            boolean waitForHealth = (runtimeType == null || !runtimeType.equalsIgnoreCase("python"));
+            if (dbProvider != null) {
+                waitForHealth = waitForHealth && dbProvider.shouldWaitForAppHealthCheck();
+            }
+            
+            // 7. 生成docker-compose.yml文件
+            String containerName = "env-" + envId;
+            log.info("生成容器名称: {}", containerName);
+            
+            // 使用配置化方式生成docker-compose.yml
+            ComposeSpec composeSpec = templateManagerService.generateComposeFile(
+                envDir, programPath, metadata, envId, userId, ports);
+            rendered = true;
+            virtualEnv.setComposeFingerprint(TemplateManagerService.formatFingerprint(
+                templateManagerService.fingerprint(composeSpec)));
+            
+            // 8. 启动容器（进入启动中状态；记录已被销毁时条件更新失败，不再启动）
+            beginTransition(virtualEnv, STARTING_STATUS, CREATING_STATUS);
+            log.info("开始启动容器: envDir={}, containerName={}", envDir, containerName);
+            progress.accept(EnvJobStage.STARTING);
+            try {
+                containerId = dockerOpsService.startContainer(envDir, composeSpec, false);
+                log.info("容器启动完成，容器ID: {}", containerId);
+                if (warm) {
+                    // 预热环境必须完全就绪才能入池
+                    if (!dockerOpsService.waitForContainerReady(containerId, warmPoolService.getReadyTimeoutSeconds())) {
+                        throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                            "预热环境未能在期限内就绪: " + containerId);
+                    }
+                } else if (waitForHealth) {
+                    progress.accept(EnvJobStage.WAITING_HEALTH);
+                    dockerOpsService.waitForContainerHealthy(containerId);
+                }
+            } catch (Exception e) {
+                log.error("容器启动失败: envId={}, envDir={}", envId, envDir, e);
+                // 抛出更详细的错误信息
+                if (e instanceof ContainerException) {
+                    throw (ContainerException) e;
+                }
+                throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                    "容器启动失败: " + e.getMessage(), e);
+            }
+            
+            // 9. 验证容器存在（由数据库提供者决定是否需要验证）
+            boolean shouldVerify = dbProvider == null || dbProvider.shouldVerifyContainerExists();
+            if (shouldVerify) {
+                if (!dockerOpsService.containerExists(containerId)) {
+                    log.error("容器验证失败，容器不存在: envId={}, containerId={}", envId, containerId);
+                    throw new ContainerException(ContainerException.ERROR_CODE_NOT_FOUND,
+                        "容器验证失败，容器不存在: " + containerId);
+                }
+            } else {
+                log.info("数据库提供者配置跳过容器存在验证");
+            }
+            applyPublishedPort(virtualEnv, containerId, metadata.getEffectiveContainerPort());
+            
+            // 9.5 启动期间环境可能已被销毁，条件更新确认仍处于启动中
+            beginTransition(virtualEnv, warm ? WarmPoolService.WARM_STATUS : "RUNNING", STARTING_STATUS);
+        } catch (RuntimeException e) {
+            // 补偿：清理已创建的资源，环境记录标记为已销毁（释放唯一键，允许重新创建）
+            cleanupResources(envId, rendered ? envDir : null, ports, containerId);
+            virtualEnv.setContainerId(containerId);
+            compensate(virtualEnv, "DESTROYED", REASON_CREATE_FAILED);
+            throw e;
         }
         
         // 10. 保存环境信息
-        VirtualEnv virtualEnv = new VirtualEnv();
-        virtualEnv.setEnvId(envId);
-        virtualEnv.setUserId(request.getUserId());
-        virtualEnv.setSystemId(request.getSystemId());
-        virtualEnv.setExpId(request.getExpId());
-        virtualEnv.setPort(port);
         virtualEnv.setContainerId(containerId);
-        virtualEnv.setEnvDir(envDir);
-        virtualEnv.setStatus("RUNNING");
-        virtualEnv.setUrl(String.format("http://%s:%d", serverHost, port));
-        virtualEnv.setCreatedTime(LocalDateTime.now());
+        virtualEnv.setRuntimeDescriptor(envRuntimeRegistry.descriptorOf(envId));
+        virtualEnv.setLastActiveTime(LocalDateTime.now());
         virtualEnv.setUpdatedTime(LocalDateTime.now());
+        virtualEnvMapper.updateById(virtualEnv);
         
-        virtualEnvMapper.insert(virtualEnv);
-        
-        log.info("环境创建成功: envId={}, port={}, containerId={}, url={}", 
-            envId, port, containerId, virtualEnv.getUrl());
+        log.info("环境创建成功: envId={}, port={}, containerId={}, url={}, warm={}", 
+            envId, virtualEnv.getPort(), containerId, virtualEnv.getUrl(), warm);
         
         return convertToEnvInfo(virtualEnv);
     }
@@ -223,33 +866,121 @@ public class EnvManagerService {
     /**
      * 停止环境（保留容器，不删除）
      */
-    @Transactional(rollbackFor = Exception.class)
     public void stopEnv(String envId) {
+        stopEnv(envId, REASON_MANUAL);
+    }
+    
+    /**
+     * 停止环境（保留容器，不删除）
+     * 停止方式为 pause 时冻结运行中的环境，否则停止容器
+     * @param reason 停止原因（MANUAL / IDLE 等），记录到 status_reason
+     */
+    public void stopEnv(String envId, String reason) {
         VirtualEnv env = virtualEnvMapper.selectById(envId);
         if (env == null) {
             throw new EnvNotFoundException(envId);
         }
         
+        if ("pause".equalsIgnoreCase(stopMode) && "RUNNING".equals(env.getStatus())) {
+            pauseEnv(env, reason);
+            return;
+        }
+        haltEnv(env, reason);
+    }
+    
+    /**
+     * 真正停止环境（冻结的环境先解冻再停止），用于把冻结的环境降级以释放内存
+     * @param reason 停止原因，记录到 status_reason
+     */
+    public void haltEnv(String envId, String reason) {
+        VirtualEnv env = virtualEnvMapper.selectById(envId);
+        if (env == null) {
+            throw new EnvNotFoundException(envId);
+        }
+        haltEnv(env, reason);
+    }
+    
+    private void haltEnv(VirtualEnv env, String reason) {
+        String envId = env.getEnvId();
         if ("STOPPED".equals(env.getStatus())) {
             log.info("环境已停止: {}", envId);
             return;
         }
         
-        // 只停止容器，不删除（保留容器以便快速恢复）
-        dockerOpsService.stopContainerOnly(env.getEnvDir());
+        // 进入停止中状态，失败时恢复原状态
+        String previousStatus = env.getStatus();
+        beginTransition(env, STOPPING_STATUS, "RUNNING", PAUSED_STATUS);
+        try {
+            // 冻结的进程收不到停止信号，先解冻
+            if (PAUSED_STATUS.equals(previousStatus)) {
+                unpauseQuietly(env);
+            }
+            
+            // 只停止容器，不删除（保留容器以便快速恢复）
+            dockerOpsService.stopContainerOnly(env.getEnvDir());
+        } catch (RuntimeException e) {
+            log.error("停止环境失败，恢复原状态: envId={}, status={}", envId, previousStatus, e);
+            compensate(env, previousStatus, env.getStatusReason());
+            throw e;
+        }
         
         // 更新状态
-        env.setStatus("STOPPED");
-        env.setUpdatedTime(LocalDateTime.now());
-        virtualEnvMapper.updateById(env);
+        markStatus(env, "STOPPED", reason);
         
-        log.info("环境停止成功（容器已保留）: {}", envId);
+        log.info("环境停止成功（容器已保留）: envId={}, reason={}", envId, reason);
+    }
+    
+    /**
+     * 冻结环境（docker pause），容器进程暂停但内存保留，启动时毫秒级恢复
+     */
+    public void pauseEnv(String envId) {
+        VirtualEnv env = virtualEnvMapper.selectById(envId);
+        if (env == null) {
+            throw new EnvNotFoundException(envId);
+        }
+        pauseEnv(env, REASON_MANUAL);
+    }
+    
+    private void pauseEnv(VirtualEnv env, String reason) {
+        String envId = env.getEnvId();
+        if (PAUSED_STATUS.equals(env.getStatus())) {
+            log.info("环境已冻结: {}", envId);
+            return;
+        }
+        if (!"RUNNING".equals(env.getStatus())) {
+            throw new ContainerException(ContainerException.ERROR_CODE_NOT_RUNNING,
+                "只能冻结运行中的环境，当前状态: " + env.getStatus());
+        }
+        
+        beginTransition(env, STOPPING_STATUS, "RUNNING");
+        try {
+            dockerOpsService.pauseContainerOnly(env.getEnvDir());
+        } catch (RuntimeException e) {
+            log.error("冻结环境失败，恢复运行状态: envId={}", envId, e);
+            compensate(env, "RUNNING", env.getStatusReason());
+            throw e;
+        }
+        
+        markStatus(env, PAUSED_STATUS, reason);
+        
+        log.info("环境冻结成功: envId={}, reason={}", envId, reason);
+    }
+    
+    /**
+     * 解冻环境，失败只记录日志（用于停止、重置、销毁前的准备）
+     */
+    private void unpauseQuietly(VirtualEnv env) {
+        try {
+            dockerOpsService.unpauseContainerOnly(env.getEnvDir());
+        } catch (Exception e) {
+            log.warn("解冻环境失败，继续执行: envId={}, {}", env.getEnvId(), e.getMessage());
+        }
     }
     
     /**
      * 启动环境（启动已存在的容器）
+     * 先进入启动中状态并提交，启动容器和检查期间不持有数据库连接；失败时恢复为原状态
      */
-    @Transactional(rollbackFor = Exception.class)
     public void startEnv(String envId) {
         VirtualEnv env = virtualEnvMapper.selectById(envId);
         if (env == null) {
@@ -261,90 +992,296 @@ public class EnvManagerService {
             return;
         }
         
-        // 启动已存在的容器（如果容器不存在，会抛出异常）
-        String containerId = dockerOpsService.startContainerOnly(env.getEnvDir());
-        
-        // 验证容器ID是否有效
-        if (containerId == null || containerId.trim().isEmpty()) {
-            log.error("容器启动失败，无法获取容器ID: envId={}, envDir={}", envId, env.getEnvDir());
-            env.setStatus("STOPPED");
-            env.setUpdatedTime(LocalDateTime.now());
-            virtualEnvMapper.updateById(env);
-            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
-                "容器启动失败，无法获取容器ID。如果容器不存在，请使用重置功能。");
+        // 冻结的环境直接解冻，进程和内存状态都在，无需重新启动和等待健康检查
+        if (PAUSED_STATUS.equals(env.getStatus())) {
+            beginTransition(env, STARTING_STATUS, PAUSED_STATUS);
+            try {
+                dockerOpsService.unpauseContainerOnly(env.getEnvDir());
+            } catch (RuntimeException e) {
+                log.error("解冻环境失败，恢复冻结状态: envId={}", envId, e);
+                compensate(env, PAUSED_STATUS, env.getStatusReason());
+                throw e;
+            }
+            env.setLastActiveTime(LocalDateTime.now());
+            envActivityService.touchEnv(envId);
+            markStatus(env, "RUNNING", REASON_MANUAL);
+            log.info("环境解冻成功: {}", envId);
+            return;
         }
         
-        // 验证容器是否真的存在
-        if (!dockerOpsService.containerExists(containerId)) {
-            log.error("容器启动后不存在: envId={}, containerId={}", envId, containerId);
-            env.setStatus("STOPPED");
-            env.setUpdatedTime(LocalDateTime.now());
-            virtualEnvMapper.updateById(env);
-            throw new ContainerException(ContainerException.ERROR_CODE_NOT_FOUND,
-                "容器启动后不存在。如果容器已被删除，请使用重置功能。");
+        beginTransition(env, STARTING_STATUS, "STOPPED");
+        try {
+            // 启动已存在的容器（如果容器不存在，会抛出异常）；实验配置变化时只重建变化的服务
+            String containerId = startStoppedContainers(env);
+            
+            // 验证容器ID是否有效
+            if (containerId == null || containerId.trim().isEmpty()) {
+                log.error("容器启动失败，无法获取容器ID: envId={}, envDir={}", envId, env.getEnvDir());
+                throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                    "容器启动失败，无法获取容器ID。如果容器不存在，请使用重置功能。");
+            }
+            
+            // 验证容器是否真的存在
+            if (!dockerOpsService.containerExists(containerId)) {
+                log.error("容器启动后不存在: envId={}, containerId={}", envId, containerId);
+                throw new ContainerException(ContainerException.ERROR_CODE_NOT_FOUND,
+                    "容器启动后不存在。如果容器已被删除，请使用重置功能。");
+            }
+            // 守护进程分配的端口在容器重新启动后可能变化
+            applyPublishedPort(env, containerId, null);
+        } catch (RuntimeException e) {
+            compensate(env, "STOPPED", env.getStatusReason());
+            throw e;
         }
         
         // 更新状态（容器ID保持不变）
-        env.setStatus("RUNNING");
-        env.setUpdatedTime(LocalDateTime.now());
-        virtualEnvMapper.updateById(env);
+        env.setLastActiveTime(LocalDateTime.now());
+        envActivityService.touchEnv(envId);
+        markStatus(env, "RUNNING", REASON_MANUAL);
         
         log.info("环境启动成功（使用已存在的容器）: {}", envId);
     }
     
     /**
-     * 重置环境（删除并重建容器，确保配置变更生效）
+     * 启动已停止环境的容器：编排模型与记录的指纹一致时直接启动已存在的容器，
+     * 不一致时只重建模型变化的服务；没有记录指纹或无法生成模型时直接启动已存在的容器
+     * @return 应用容器ID
+     */
+    private String startStoppedContainers(VirtualEnv env) {
+        if (env.getComposeFingerprint() == null) {
+            return dockerOpsService.startContainerOnly(env.getEnvDir());
+        }
+        ComposeSpec composeSpec;
+        try {
+            composeSpec = templateManagerService.generateComposeFile(env.getEnvDir(),
+                experimentMetadataService.getAppSourcePath(env.getExpId()), readExperimentMetadata(env.getExpId()),
+                env.getEnvId(), env.getUserId(), hostPorts(env));
+        } catch (RuntimeException e) {
+            log.warn("生成编排模型失败，直接启动已存在的容器: envId={}, error={}", env.getEnvId(), e.getMessage());
+            return dockerOpsService.startContainerOnly(env.getEnvDir());
+        }
+        Map<String, String> fingerprints = templateManagerService.fingerprint(composeSpec);
+        String fingerprint = TemplateManagerService.formatFingerprint(fingerprints);
+        if (fingerprint.equals(env.getComposeFingerprint())) {
+            return dockerOpsService.startContainerOnly(env.getEnvDir());
+        }
+        Set<String> changed = changedServices(env.getComposeFingerprint(), fingerprints);
+        log.info("编排模型已变化，重建服务: envId={}, services={}", env.getEnvId(), changed);
+        String containerId = dockerOpsService.updateContainers(env.getEnvDir(), composeSpec, changed, false, false);
+        env.setComposeFingerprint(fingerprint);
+        env.setRuntimeDescriptor(envRuntimeRegistry.descriptorOf(env.getEnvId()));
+        return containerId;
+    }
+    
+    /**
+     * 与记录的指纹相比模型变化的服务（包括新增的服务）
+     */
+    static Set<String> changedServices(String recorded, Map<String, String> fingerprints) {
+        Map<String, String> previous = TemplateManagerService.parseFingerprint(recorded);
+        Set<String> changed = new LinkedHashSet<>();
+        for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * 重置环境（按当前实验配置重新部署）
+     * 重新生成编排模型并与记录的指纹比对：模型未变化的服务原地重启（重新加载挂载的程序包），
+     * 变化的服务删除并重建；没有记录指纹的环境删除并重建全部容器
+     * 先进入启动中状态并提交，重建容器期间不持有数据库连接；失败时标记为已停止
      */
-    @Transactional(rollbackFor = Exception.class)
     public void resetEnv(String envId) {
         VirtualEnv env = virtualEnvMapper.selectById(envId);
         if (env == null) {
             throw new EnvNotFoundException(envId);
         }
         
-        // 删除容器（使用 down，确保配置变更能生效）
-        dockerOpsService.stopContainer(env.getEnvDir());
-        
-        // 重新创建并启动容器（使用 up，创建新容器）
-        ExperimentMetadata metadata = readExperimentMetadata(env.getExpId());
-        String runtimeType = metadata.getEffectiveRuntimeType();
-        boolean waitForHealth = runtimeType == null || !runtimeType.equalsIgnoreCase("python");
-        String containerId = dockerOpsService.startContainer(env.getEnvDir(), waitForHealth);
-        
-        // 验证容器ID是否有效
-        if (containerId == null || containerId.trim().isEmpty()) {
-            log.error("容器启动失败，无法获取容器ID: envId={}, envDir={}", envId, env.getEnvDir());
-            env.setStatus("STOPPED");
-            env.setUpdatedTime(LocalDateTime.now());
-            virtualEnvMapper.updateById(env);
-            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
-                "容器启动失败，无法获取容器ID");
-        }
-        
-        // 验证容器是否真的存在
-        if (!dockerOpsService.containerExists(containerId)) {
-            log.error("容器启动后不存在: envId={}, containerId={}", envId, containerId);
-            env.setStatus("STOPPED");
-            env.setUpdatedTime(LocalDateTime.now());
-            virtualEnvMapper.updateById(env);
-            throw new ContainerException(ContainerException.ERROR_CODE_NOT_FOUND,
-                "容器启动后不存在");
+        String previousStatus = env.getStatus();
+        beginTransition(env, STARTING_STATUS, "RUNNING", "STOPPED", PAUSED_STATUS);
+        String containerId;
+        String fingerprint;
+        try {
+            if (PAUSED_STATUS.equals(previousStatus)) {
+                unpauseQuietly(env);
+            }
+            
+            ExperimentMetadata metadata = readExperimentMetadata(env.getExpId());
+            String runtimeType = metadata.getEffectiveRuntimeType();
+            boolean waitForHealth = runtimeType == null || !runtimeType.equalsIgnoreCase("python");
+            ComposeSpec composeSpec = templateManagerService.generateComposeFile(env.getEnvDir(),
+                experimentMetadataService.getAppSourcePath(env.getExpId()), metadata,
+                envId, env.getUserId(), hostPorts(env));
+            Map<String, String> fingerprints = templateManagerService.fingerprint(composeSpec);
+            fingerprint = TemplateManagerService.formatFingerprint(fingerprints);
+            
+            if (env.getComposeFingerprint() == null) {
+                // 没有记录指纹：删除容器（使用 down）后重新创建
+                dockerOpsService.stopContainer(env.getEnvDir());
+                containerId = dockerOpsService.startContainer(env.getEnvDir(), composeSpec, waitForHealth);
+                resetRecreatedCount.incrementAndGet();
+            } else {
+                Set<String> changed = changedServices(env.getComposeFingerprint(), fingerprints);
+                log.info("重置环境: envId={}, 重建服务={}", envId, changed);
+                containerId = dockerOpsService.updateContainers(env.getEnvDir(), composeSpec, changed,
+                    true, waitForHealth);
+                if (changed.isEmpty()) {
+                    resetRestartedCount.incrementAndGet();
+                } else if (changed.size() < fingerprints.size()) {
+                    resetPartialCount.incrementAndGet();
+                } else {
+                    resetRecreatedCount.incrementAndGet();
+                }
+            }
+            
+            // 验证容器ID是否有效
+            if (containerId == null || containerId.trim().isEmpty()) {
+                log.error("容器启动失败，无法获取容器ID: envId={}, envDir={}", envId, env.getEnvDir());
+                throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                    "容器启动失败，无法获取容器ID");
+            }
+            
+            // 验证容器是否真的存在
+            if (!dockerOpsService.containerExists(containerId)) {
+                log.error("容器启动后不存在: envId={}, containerId={}", envId, containerId);
+                throw new ContainerException(ContainerException.ERROR_CODE_NOT_FOUND,
+                    "容器启动后不存在");
+            }
+            applyPublishedPort(env, containerId, metadata.getEffectiveContainerPort());
+        } catch (RuntimeException e) {
+            compensate(env, "STOPPED", env.getStatusReason());
+            throw e;
         }
         
         // 更新状态
         env.setContainerId(containerId);
-        env.setStatus("RUNNING");
-        env.setUpdatedTime(LocalDateTime.now());
-        virtualEnvMapper.updateById(env);
+        env.setComposeFingerprint(fingerprint);
+        env.setRuntimeDescriptor(envRuntimeRegistry.descriptorOf(envId));
+        env.setLastActiveTime(LocalDateTime.now());
+        envActivityService.touchEnv(envId);
+        markStatus(env, "RUNNING", REASON_MANUAL);
         
         log.info("环境重置成功: {}", envId);
     }
     
+    /**
+     * 进入过渡状态：条件更新并立即提交，当前状态不在 fromStatuses 中（被其他操作占用）时抛出 ENV_BUSY
+     */
+    private void beginTransition(VirtualEnv env, String toStatus, String... fromStatuses) {
+        if (virtualEnvMapper.transitStatus(env.getEnvId(), Arrays.asList(fromStatuses), toStatus) == 0) {
+            VirtualEnv current = virtualEnvMapper.selectById(env.getEnvId());
+            throw busy(env.getEnvId(), current != null ? current.getStatus() : null);
+        }
+        // 停止、冻结、重建期间容器地址可能变化或被其他环境复用，网关重新解析
+        envGatewayService.invalidate(env.getEnvId());
+        env.setStatus(toStatus);
+        env.setUpdatedTime(LocalDateTime.now());
+    }
+    
+    /**
+     * 写入操作完成后的状态
+     */
+    private void markStatus(VirtualEnv env, String status, String reason) {
+        env.setStatus(status);
+        env.setStatusReason(reason);
+        env.setUpdatedTime(LocalDateTime.now());
+        virtualEnvMapper.updateById(env);
+    }
+    
+    /**
+     * 补偿：操作失败后写回状态，写入失败只记录日志（由状态对账修正），不掩盖原始异常
+     */
+    private void compensate(VirtualEnv env, String status, String reason) {
+        try {
+            markStatus(env, status, reason);
+        } catch (RuntimeException e) {
+            log.error("补偿环境状态失败: envId={}, status={}", env.getEnvId(), status, e);
+        }
+    }
+    
+    /**
+     * 守护进程分配端口模式下读取容器实际发布的宿主机端口，写入环境的端口和访问地址
+     * @param containerPort 容器端口，为null时取第一个发布的端口
+     */
+    private void applyPublishedPort(VirtualEnv env, String containerId, Integer containerPort) {
+        if (!portManagerService.isEphemeral()) {
+            return;
+        }
+        Integer port = dockerOpsService.getPublishedPort(containerId, containerPort);
+        if (port == null) {
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "无法读取容器发布的宿主机端口: " + containerId);
+        }
+        if (!port.equals(env.getPort())) {
+            log.info("守护进程分配端口: envId={}, port={}", env.getEnvId(), port);
+        }
+        env.setPort(port);
+        env.setUrl(envUrl(env.getEnvId(), port));
+    }
+    
+    private String envUrl(String envId, Integer port) {
+        return envGatewayService.envUrl(envId, port);
+    }
+    
+    /**
+     * 端口组中主端口以外的端口与容器端口的映射（宿主机端口:容器端口，逗号分隔），单端口时为null
+     */
+    private String extraPorts(List<Integer> ports, List<String> portSpecs) {
+        if (ports.size() <= 1) {
+            return null;
+        }
+        List<String> mappings = new ArrayList<>();
+        for (int i = 1; i < ports.size() && i < portSpecs.size(); i++) {
+            mappings.add(ports.get(i) + ":" + portSpecs.get(i));
+        }
+        return String.join(",", mappings);
+    }
+    
+    /**
+     * 重新生成 compose 文件时使用的宿主机端口组（与实验声明的容器端口顺序一致）
+     * 只有 range 模式按已分配端口固定映射；守护进程分配的端口与创建时一样不写入 compose 文件，
+     * 否则模型指纹与创建时不一致，每次启动/重置都会重建应用容器
+     */
+    private List<Integer> hostPorts(VirtualEnv env) {
+        return portManagerService.isAllocating() && env.getPort() != null ? PortManagerService.envPorts(env) : null;
+    }
+    
+    private boolean isTransitional(String status) {
+        return CREATING_STATUS.equals(status) || STARTING_STATUS.equals(status) || STOPPING_STATUS.equals(status);
+    }
+    
+    /**
+     * 过渡状态停留超过创建合并等待时间，视为操作已中断（如进程崩溃）
+     */
+    private boolean isStale(VirtualEnv env) {
+        return env.getUpdatedTime() == null
+            || env.getUpdatedTime().isBefore(LocalDateTime.now().minusSeconds(coalesceTimeoutSeconds));
+    }
+    
+    private boolean isBusy(Exception e) {
+        return e instanceof EnvException && ERROR_CODE_ENV_BUSY.equals(((EnvException) e).getErrorCode());
+    }
+    
+    private EnvException busy(String envId, String status) {
+        return new EnvException(ERROR_CODE_ENV_BUSY,
+            String.format("环境正在进行其他操作，请稍后重试: envId=%s, status=%s", envId, status));
+    }
+    
     /**
      * 销毁环境
      */
-    @Transactional(rollbackFor = Exception.class)
     public void destroyEnv(String envId) {
+        destroyEnv(envId, REASON_MANUAL);
+    }
+    
+    /**
+     * 销毁环境
+     * 并发强制删除环境的容器、网络、数据卷，环境目录移走后在后台删除，不在请求线程上等待
+     * @param reason 销毁原因（MANUAL / MAX_LIFETIME 等），记录到 status_reason
+     */
+    public void destroyEnv(String envId, String reason) {
         VirtualEnv env = virtualEnvMapper.selectById(envId);
         if (env == null) {
             log.warn("环境不存在: {}", envId);
@@ -354,73 +1291,25 @@ public class EnvManagerService {
         log.info("开始销毁环境: envId={}, containerId={}, envDir={}", 
             envId, env.getContainerId(), env.getEnvDir());
         
-        // 记录容器ID，用于后续验证
-        String containerId = env.getContainerId();
-        
-        // 停止容器并删除命名volume（销毁环境时需要完全清理）
-        if (env.getEnvDir() != null && !env.getEnvDir().isEmpty()) {
-            try {
-                dockerOpsService.stopContainer(env.getEnvDir(), true); // true表示删除volume
-                log.info("容器停止并删除volume成功: {}", envId);
-            } catch (Exception e) {
-                log.error("停止容器失败，继续销毁: {}", envId, e);
-                // 不抛出异常，继续执行删除操作
-            }
-        }
-        
-        // 释放端口（如果还未释放）
-        if (env.getPort() != null) {
-            try {
-                portManagerService.releasePort(env.getPort());
-                log.info("端口释放成功: port={}", env.getPort());
-            } catch (Exception e) {
-                log.error("释放端口失败: port={}", env.getPort(), e);
-            }
-        }
+        removeEnvContainers(env, null);
         
-        // 删除环境目录
-        if (env.getEnvDir() != null && !env.getEnvDir().isEmpty()) {
+        // 释放端口（如果还未释放，多端口实验整组释放）
+        List<Integer> envPorts = PortManagerService.envPorts(env);
+        if (!envPorts.isEmpty()) {
             try {
-                java.nio.file.Path envPath = java.nio.file.Paths.get(env.getEnvDir());
-                if (java.nio.file.Files.exists(envPath)) {
-                    fileManagerService.deleteDirectory(envPath);
-                    log.info("环境目录删除成功: {}", env.getEnvDir());
-                } else {
-                    log.warn("环境目录不存在，跳过删除: {}", env.getEnvDir());
-                }
+                portManagerService.releasePorts(envId, envPorts);
+                log.info("端口释放成功: ports={}", envPorts);
             } catch (Exception e) {
-                log.error("删除环境目录失败: {}", env.getEnvDir(), e);
-                // 记录详细错误信息
-                log.error("删除目录异常详情", e);
-                // 不抛出异常，继续更新数据库状态
+                log.error("释放端口失败: ports={}", envPorts, e);
             }
         }
         
-        // 验证容器是否真的被删除
-        if (containerId != null && !containerId.trim().isEmpty()) {
-            try {
-                if (dockerOpsService.containerExists(containerId)) {
-                    log.warn("容器仍然存在，尝试强制删除: containerId={}", containerId);
-                    // 尝试强制删除容器
-                    try {
-                        ProcessBuilder pb = new ProcessBuilder("docker", "rm", "-f", containerId);
-                        Process p = pb.start();
-                        p.waitFor();
-                        log.info("强制删除容器: {}", containerId);
-                    } catch (Exception e) {
-                        log.warn("强制删除容器失败: {}", containerId, e);
-                    }
-                } else {
-                    log.info("容器已成功删除: containerId={}", containerId);
-                }
-            } catch (Exception e) {
-                log.warn("验证容器删除状态时出错: {}", containerId, e);
-            }
-        }
+        discardEnvDir(env.getEnvDir());
         
-        // 更新状态（必须执行，即使删除目录失败）
+        // 更新状态（必须执行，即使删除容器失败）
         try {
             env.setStatus("DESTROYED");
+            env.setStatusReason(reason);
             env.setUpdatedTime(LocalDateTime.now());
             int updateCount = virtualEnvMapper.updateById(env);
             if (updateCount > 0) {
@@ -434,7 +1323,138 @@ public class EnvManagerService {
             log.warn("数据库状态更新失败，但环境已销毁: envId={}", envId);
         }
         
-        log.info("环境销毁完成: envId={}, containerId={}", envId, containerId);
+        envActivityService.forget(envId, env.getContainerId());
+        log.info("环境销毁完成: envId={}, containerId={}, reason={}", envId, env.getContainerId(), reason);
+    }
+    
+    /**
+     * 批量销毁环境（如学期结束按实验/用户/系统清理）
+     * 一次列出全部编排项目资源，按 env.destroy.parallelism 并行删除各环境的容器，
+     * 端口和环境状态各用一条语句批量写回数据库，环境目录在后台删除
+     * @param expId 实验ID（可选）
+     * @param userId 用户ID（可选）
+     * @param systemId 系统ID（可选）
+     * @param reason 销毁原因，记录到 status_reason
+     * @return 匹配数、容器删除失败数、耗时
+     */
+    public Map<String, Object> destroyEnvs(String expId, String userId, String systemId, String reason) {
+        if (isBlank(expId) && isBlank(userId) && isBlank(systemId)) {
+            throw new EnvException("BAD_REQUEST", "expId、userId、systemId 至少指定一个");
+        }
+        long startTime = System.currentTimeMillis();
+        LambdaQueryWrapper<VirtualEnv> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(!isBlank(expId), VirtualEnv::getExpId, expId);
+        queryWrapper.eq(!isBlank(userId), VirtualEnv::getUserId, userId);
+        queryWrapper.eq(!isBlank(systemId), VirtualEnv::getSystemId, systemId);
+        // 预热环境由预热池管理，不随批量销毁删除
+        queryWrapper.notIn(VirtualEnv::getStatus, "DESTROYED", WarmPoolService.WARM_STATUS);
+        List<VirtualEnv> envs = virtualEnvMapper.selectList(queryWrapper);
+        log.info("批量销毁环境: expId={}, userId={}, systemId={}, 环境数={}", expId, userId, systemId, envs.size());
+        
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("matched", envs.size());
+        if (envs.isEmpty()) {
+            summary.put("failed", 0);
+            summary.put("elapsedMs", System.currentTimeMillis() - startTime);
+            return summary;
+        }
+        
+        // 1. 一次列出全部编排项目资源，列出失败时各环境单独查询
+        Map<String, ProjectResources> listed = null;
+        try {
+            listed = dockerOpsService.listProjectResources();
+        } catch (Exception e) {
+            log.warn("批量列出项目资源失败，改为逐个环境查询: {}", e.getMessage());
+        }
+        
+        // 2. 并行删除容器、网络、数据卷
+        AtomicInteger failed = new AtomicInteger();
+        Map<String, ProjectResources> snapshot = listed;
+        List<Future<?>> futures = new ArrayList<>();
+        for (VirtualEnv env : envs) {
+            futures.add(destroyExecutor.submit(() -> {
+                if (!removeEnvContainers(env, snapshot)) {
+                    failed.incrementAndGet();
+                }
+                discardEnvDir(env.getEnvDir());
+            }));
+        }
+        awaitAll(futures);
+        
+        // 3. 端口和状态各一条语句写回
+        try {
+            portManagerService.releaseEnvPorts(envs);
+        } catch (Exception e) {
+            log.error("批量释放端口失败: {} 个环境", envs.size(), e);
+        }
+        List<String> envIds = envs.stream().map(VirtualEnv::getEnvId).collect(Collectors.toList());
+        virtualEnvMapper.batchMarkDestroyed(envIds, reason);
+        for (VirtualEnv env : envs) {
+            envActivityService.forget(env.getEnvId(), env.getContainerId());
+        }
+        
+        long elapsed = System.currentTimeMillis() - startTime;
+        log.info("批量销毁环境完成: 环境数={}, 容器删除失败={}, 耗时={}ms", envs.size(), failed.get(), elapsed);
+        summary.put("failed", failed.get());
+        summary.put("elapsedMs", elapsed);
+        return summary;
+    }
+    
+    /**
+     * 删除环境的容器、网络、数据卷（冻结的环境先解冻），失败只记录日志，不阻止销毁流程
+     * @param listed 批量销毁时预先列出的项目资源，为null时单独查询
+     * @return 是否删除成功
+     */
+    private boolean removeEnvContainers(VirtualEnv env, Map<String, ProjectResources> listed) {
+        envGatewayService.invalidate(env.getEnvId());
+        if (PAUSED_STATUS.equals(env.getStatus())) {
+            unpauseQuietly(env);
+        }
+        try {
+            dockerOpsService.destroyEnvProject(env.getEnvId(), env.getContainerId(), listed);
+            log.info("容器、网络、数据卷删除成功: {}", env.getEnvId());
+            return true;
+        } catch (Exception e) {
+            log.error("删除容器失败，继续销毁: {}", env.getEnvId(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * 移走环境目录并在后台删除（删除 Windows 下被占用的文件可能需要多次重试，不阻塞销毁流程）
+     * 移走失败时同步删除
+     */
+    private void discardEnvDir(String envDir) {
+        if (envDir == null || envDir.isEmpty()) {
+            return;
+        }
+        Path detached;
+        try {
+            detached = fileManagerService.detachDirectory(Paths.get(envDir));
+        } catch (Exception e) {
+            log.warn("移走环境目录失败，同步删除: {}, {}", envDir, e.getMessage());
+            try {
+                fileManagerService.deleteDirectory(Paths.get(envDir));
+            } catch (Exception ex) {
+                log.error("删除环境目录失败: {}", envDir, ex);
+            }
+            return;
+        }
+        if (detached == null) {
+            log.warn("环境目录不存在，跳过删除: {}", envDir);
+            return;
+        }
+        destroyExecutor.execute(() -> {
+            try {
+                fileManagerService.deleteDirectory(detached);
+            } catch (Exception e) {
+                log.error("后台删除环境目录失败: {}", detached, e);
+            }
+        });
+    }
+    
+    private boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
     }
     
     /**
@@ -447,11 +1467,18 @@ public class EnvManagerService {
         }
         
         // 检查容器实际状态
-        if ("RUNNING".equals(env.getStatus()) && env.getContainerId() != null) {
+        if (("RUNNING".equals(env.getStatus()) || PAUSED_STATUS.equals(env.getStatus()))
+                && env.getContainerId() != null) {
+            // 条件更新：读取后已进入启停等过渡状态的环境不被改回
             if (!dockerOpsService.containerExists(env.getContainerId())) {
-                env.setStatus("STOPPED");
-                env.setUpdatedTime(LocalDateTime.now());
-                virtualEnvMapper.updateById(env);
+                if (virtualEnvMapper.transitStatus(envId, Arrays.asList("RUNNING", PAUSED_STATUS), "STOPPED") > 0) {
+                    env.setStatus("STOPPED");
+                } else {
+                    env = virtualEnvMapper.selectById(envId);
+                    if (env == null) {
+                        return null;
+                    }
+                }
             }
         }
         
@@ -468,6 +1495,7 @@ public class EnvManagerService {
         queryWrapper.orderByDesc(VirtualEnv::getCreatedTime);
         
         List<VirtualEnv> envs = virtualEnvMapper.selectList(queryWrapper);
+        reconcileStatuses(envs);
         return envs.stream()
             .map(this::convertToEnvInfo)
             .collect(Collectors.toList());
@@ -478,15 +1506,80 @@ public class EnvManagerService {
      */
     public List<EnvInfo> getAllEnvs() {
         LambdaQueryWrapper<VirtualEnv> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.ne(VirtualEnv::getStatus, "DESTROYED");
+        queryWrapper.notIn(VirtualEnv::getStatus, "DESTROYED", WarmPoolService.WARM_STATUS);
         queryWrapper.orderByDesc(VirtualEnv::getCreatedTime);
         
         List<VirtualEnv> envs = virtualEnvMapper.selectList(queryWrapper);
+        reconcileStatuses(envs);
         return envs.stream()
             .map(this::convertToEnvInfo)
             .collect(Collectors.toList());
     }
     
+    /**
+     * 批量对账环境状态
+     * 一次列出所有应用容器（一次 Docker 请求），按 envId 标签（旧容器按容器ID）与数据库记录关联，
+     * 状态不一致的记录按读取时的状态分组批量条件更新，读取后已被启停等操作改变状态的记录保持不变
+     */
+    private void reconcileStatuses(List<VirtualEnv> envs) {
+        if (envs.isEmpty()) {
+            return;
+        }
+        List<Container> containers;
+        try {
+            containers = dockerOpsService.listAppContainers();
+        } catch (Exception e) {
+            log.warn("批量查询容器状态失败，返回数据库中的状态: {}", e.getMessage());
+            return;
+        }
+        if (containers == null) {
+            return;
+        }
+        
+        Map<String, Container> containersByEnvId = new HashMap<>();
+        Map<String, Container> containersById = new HashMap<>();
+        for (Container container : containers) {
+            containersById.put(container.getId(), container);
+            String envId = container.getLabels() != null
+                ? container.getLabels().get(DockerOpsService.ENV_ID_LABEL) : null;
+            if (envId != null) {
+                containersByEnvId.put(envId, container);
+            }
+        }
+        
+        Map<String, List<VirtualEnv>> driftedByStatus = new HashMap<>();
+        for (VirtualEnv env : envs) {
+            // 只对账稳定状态，创建中的环境由创建流程负责
+            if (!"RUNNING".equals(env.getStatus()) && !"STOPPED".equals(env.getStatus())
+                    && !PAUSED_STATUS.equals(env.getStatus())) {
+                continue;
+            }
+            Container container = containersByEnvId.get(env.getEnvId());
+            if (container == null && env.getContainerId() != null) {
+                container = containersById.get(env.getContainerId());
+            }
+            String actualStatus = "STOPPED";
+            if (container != null && "running".equals(container.getState())) {
+                actualStatus = "RUNNING";
+            } else if (container != null && "paused".equals(container.getState())) {
+                actualStatus = PAUSED_STATUS;
+            }
+            if (!actualStatus.equals(env.getStatus())) {
+                log.info("环境状态与容器不一致，修正: envId={}, {} -> {}", env.getEnvId(), env.getStatus(), actualStatus);
+                driftedByStatus.computeIfAbsent(env.getStatus(), k -> new ArrayList<>()).add(env);
+                env.setStatus(actualStatus);
+            }
+        }
+        
+        int fixed = 0;
+        for (Map.Entry<String, List<VirtualEnv>> entry : driftedByStatus.entrySet()) {
+            fixed += virtualEnvMapper.batchTransitStatus(entry.getValue(), entry.getKey());
+        }
+        if (!driftedByStatus.isEmpty()) {
+            log.info("批量修正环境状态: {} 条", fixed);
+        }
+    }
+    
     /**
      * 查找已存在的环境
      */
@@ -526,40 +1619,38 @@ public class EnvManagerService {
     }
     
     /**
-     * 读取实验元数据
+     * 批量查找多个用户已存在的环境（一次查询）
+     * @return userId 到最近创建的未销毁环境的映射
      */
-    private ExperimentMetadata readExperimentMetadata(String expId) {
-        try {
-            String metadataJson = fileManagerService.readExperimentMetadata(expId);
-            if (metadataJson != null) {
-                ExperimentMetadata metadata = objectMapper.readValue(metadataJson, ExperimentMetadata.class);
-                // 确保数据库相关字段有默认值（如果 JSON 中没有这些字段，Jackson 会使用 DTO 中的默认值）
-                if (metadata.getNeedsDatabase() == null) {
-                    metadata.setNeedsDatabase(false);
-                }
-                if (metadata.getDatabaseName() == null || metadata.getDatabaseName().trim().isEmpty()) {
-                    metadata.setDatabaseName("test_db");
-                }
-                if (metadata.getDatabasePassword() == null || metadata.getDatabasePassword().trim().isEmpty()) {
-                    metadata.setDatabasePassword("123456");
-                }
-                return metadata;
-            }
-        } catch (Exception e) {
-            log.warn("读取实验元数据失败，使用默认值: {}", expId, e);
+    private Map<String, VirtualEnv> findExistingEnvs(Collection<String> userIds, String systemId, String expId) {
+        LambdaQueryWrapper<VirtualEnv> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.in(VirtualEnv::getUserId, userIds);
+        String normalizedSystemId = (systemId != null && !systemId.trim().isEmpty()) ? systemId.trim() : null;
+        if (normalizedSystemId != null) {
+            queryWrapper.eq(VirtualEnv::getSystemId, normalizedSystemId);
+        } else {
+            queryWrapper.and(wrapper -> wrapper
+                .isNull(VirtualEnv::getSystemId)
+                .or()
+                .eq(VirtualEnv::getSystemId, "")
+            );
         }
+        queryWrapper.eq(VirtualEnv::getExpId, expId);
+        queryWrapper.notIn(VirtualEnv::getStatus, "DESTROYED", WarmPoolService.WARM_STATUS);
+        queryWrapper.orderByDesc(VirtualEnv::getCreatedTime);
         
-        // 默认元数据
-        ExperimentMetadata metadata = new ExperimentMetadata();
-        metadata.setExpId(expId);
-        metadata.setType("java");
-        metadata.setBaseImage("java-base:latest");
-        metadata.setStartCommand("java -jar /app/program/app.jar");
-        metadata.setPort(8080);
-        metadata.setNeedsDatabase(false);
-        metadata.setDatabaseName("test_db");
-        metadata.setDatabasePassword("123456");
-        return metadata;
+        Map<String, VirtualEnv> envsByUser = new HashMap<>();
+        for (VirtualEnv env : virtualEnvMapper.selectList(queryWrapper)) {
+            envsByUser.putIfAbsent(env.getUserId(), env);
+        }
+        return envsByUser;
+    }
+    
+    /**
+     * 读取实验元数据（按实验缓存，metadata.json 修改后自动失效）
+     */
+    public ExperimentMetadata readExperimentMetadata(String expId) {
+        return experimentMetadataService.getMetadata(expId);
     }
     
     /**
@@ -576,23 +1667,26 @@ public class EnvManagerService {
         EnvInfo info = new EnvInfo();
         BeanUtils.copyProperties(env, info);
         info.setContainerName("env-" + env.getEnvId());
+        Map<String, Integer> extraPorts = PortManagerService.parseExtraPorts(env.getExtraPorts());
+        if (!extraPorts.isEmpty()) {
+            info.setExtraPorts(extraPorts);
+        }
+        if (envGatewayService.isEnabled()) {
+            // 启用网关前创建的环境也通过网关访问
+            info.setUrl(envGatewayService.envUrl(env.getEnvId(), env.getPort()));
+        }
         return info;
     }
     
-    /**
-     * 清理资源（停止容器、释放端口）
-     * 用于错误处理时的资源清理
-     * @param envDir 环境目录
-     * @param port 端口号
-     */
     /**
      * 清理资源（容器、端口、目录）
+     * @param envId 环境ID（只释放仍属于该环境的端口）
      * @param envDir 环境目录
-     * @param port 端口号
+     * @param ports 环境的端口组（多端口实验整组释放）
      * @param containerId 容器ID（可选，用于日志）
      */
-    private void cleanupResources(String envDir, Integer port, String containerId) {
-        log.info("开始清理资源: envDir={}, port={}, containerId={}", envDir, port, containerId);
+    private void cleanupResources(String envId, String envDir, List<Integer> ports, String containerId) {
+        log.info("开始清理资源: envId={}, envDir={}, ports={}, containerId={}", envId, envDir, ports, containerId);
         
         // 1. 停止并删除容器（如果存在）
         if (envDir != null && !envDir.isEmpty()) {
@@ -607,12 +1701,12 @@ public class EnvManagerService {
         }
         
         // 2. 释放端口
-        if (port != null) {
+        if (ports != null && !ports.isEmpty()) {
             try {
-                portManagerService.releasePort(port);
-                log.info("端口释放成功: port={}", port);
+                portManagerService.releasePorts(envId, ports);
+                log.info("端口释放成功: ports={}", ports);
             } catch (Exception ex) {
-                log.warn("释放端口失败: port={}", port, ex);
+                log.warn("释放端口失败: ports={}", ports, ex);
                 // 继续清理其他资源
             }
         }
@@ -621,7 +1715,7 @@ public class EnvManagerService {
         // 注意：通常不删除目录，保留日志和配置文件用于排查问题
         // 如果需要完全清理，可以调用 fileManagerService.deleteDirectory()
         
-        log.info("资源清理完成: envDir={}, port={}", envDir, port);
+        log.info("资源清理完成: envDir={}, ports={}", envDir, ports);
     }
 }
 
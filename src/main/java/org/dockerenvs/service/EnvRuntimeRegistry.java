@@ -0,0 +1,161 @@
+package org.dockerenvs.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dao.mapper.VirtualEnvMapper;
+import org.dockerenvs.dto.EnvRuntime;
+import org.dockerenvs.entity.VirtualEnv;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 环境运行时描述索引
+ * 容器启动后记录项目名称、容器ID、网络和数据卷（同时以 JSON 写入 virtual_env.runtime_descriptor），
+ * 之后按环境目录或环境ID直接查到，不再每次解析 compose 文件；启动时从数据库加载
+ * 升级前创建、没有描述的环境首次操作时推导一次项目名称并记入索引
+ */
+@Slf4j
+@Service
+public class EnvRuntimeRegistry {
+
+    @Autowired
+    private VirtualEnvMapper virtualEnvMapper;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, EnvRuntime> runtimesByEnvId = new ConcurrentHashMap<>();
+    private final Map<String, EnvRuntime> runtimesByEnvDir = new ConcurrentHashMap<>();
+
+    private final AtomicLong loadedCount = new AtomicLong();
+    private final AtomicLong registeredCount = new AtomicLong();
+    private final AtomicLong derivedCount = new AtomicLong();
+
+    @PostConstruct
+    public void load() {
+        try {
+            List<VirtualEnv> envs = virtualEnvMapper.selectList(new LambdaQueryWrapper<VirtualEnv>()
+                .select(VirtualEnv::getEnvId, VirtualEnv::getEnvDir, VirtualEnv::getRuntimeDescriptor)
+                .ne(VirtualEnv::getStatus, "DESTROYED")
+                .isNotNull(VirtualEnv::getRuntimeDescriptor));
+            for (VirtualEnv env : envs) {
+                EnvRuntime runtime = parse(env.getRuntimeDescriptor());
+                if (runtime != null) {
+                    runtime.setEnvDir(env.getEnvDir());
+                    index(env.getEnvId(), runtime);
+                    loadedCount.incrementAndGet();
+                }
+            }
+            log.info("加载环境运行时描述: {} 个", envs.size());
+        } catch (Exception e) {
+            log.warn("加载环境运行时描述失败，首次操作时再推导: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按环境目录查询（容器操作的入口都以环境目录标识环境）
+     * @return 没有记录时返回null
+     */
+    public EnvRuntime get(String envDir) {
+        return envDir != null ? runtimesByEnvDir.get(envDir) : null;
+    }
+
+    public EnvRuntime getByEnvId(String envId) {
+        return envId != null ? runtimesByEnvId.get(envId) : null;
+    }
+
+    /**
+     * 记录容器启动后的运行时描述（替换旧记录）
+     */
+    public void register(String envId, EnvRuntime runtime) {
+        index(envId, runtime);
+        registeredCount.incrementAndGet();
+    }
+
+    /**
+     * 记录从 compose 文件推导出的项目名称（没有描述的旧环境，只推导一次）
+     */
+    public void registerDerived(String envDir, String projectName) {
+        EnvRuntime runtime = new EnvRuntime();
+        runtime.setProjectName(projectName);
+        runtime.setEnvDir(envDir);
+        runtimesByEnvDir.putIfAbsent(envDir, runtime);
+        derivedCount.incrementAndGet();
+    }
+
+    /**
+     * 项目的容器已删除（compose down），保留项目名称、网络等其余描述，重新启动后再记录容器ID
+     */
+    public void clearContainers(String envDir) {
+        EnvRuntime runtime = get(envDir);
+        if (runtime != null && !runtime.getContainers().isEmpty()) {
+            runtime.setContainers(new LinkedHashMap<>());
+        }
+    }
+
+    public void remove(String envId) {
+        EnvRuntime runtime = runtimesByEnvId.remove(envId);
+        if (runtime != null && runtime.getEnvDir() != null) {
+            runtimesByEnvDir.remove(runtime.getEnvDir(), runtime);
+        } else if (runtime == null) {
+            // 推导出的记录只按环境目录索引
+            String projectName = DockerOpsService.projectNameOf(envId);
+            runtimesByEnvDir.values().removeIf(derived -> projectName.equals(derived.getProjectName()));
+        }
+    }
+
+    /**
+     * 环境运行时描述的存储格式（JSON），没有记录时返回null
+     */
+    public String descriptorOf(String envId) {
+        EnvRuntime runtime = getByEnvId(envId);
+        if (runtime == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(runtime);
+        } catch (JsonProcessingException e) {
+            log.warn("序列化环境运行时描述失败: envId={}", envId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 运行时描述索引指标（索引数、启动时加载数、启动容器后记录数、从 compose 文件推导数）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("indexed", runtimesByEnvDir.size());
+        stats.put("loaded", loadedCount.get());
+        stats.put("registered", registeredCount.get());
+        stats.put("derived", derivedCount.get());
+        return stats;
+    }
+
+    private void index(String envId, EnvRuntime runtime) {
+        EnvRuntime previous = runtimesByEnvId.put(envId, runtime);
+        if (previous != null && previous.getEnvDir() != null && !previous.getEnvDir().equals(runtime.getEnvDir())) {
+            runtimesByEnvDir.remove(previous.getEnvDir(), previous);
+        }
+        if (runtime.getEnvDir() != null) {
+            runtimesByEnvDir.put(runtime.getEnvDir(), runtime);
+        }
+    }
+
+    private EnvRuntime parse(String descriptor) {
+        try {
+            return objectMapper.readValue(descriptor, EnvRuntime.class);
+        } catch (Exception e) {
+            log.warn("环境运行时描述格式错误: {}", descriptor);
+            return null;
+        }
+    }
+}
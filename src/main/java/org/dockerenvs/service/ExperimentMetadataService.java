@@ -0,0 +1,689 @@
+package org.dockerenvs.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dto.DatabaseConfig;
+import org.dockerenvs.dto.ExperimentMetadata;
+import org.dockerenvs.dto.ExperimentSummary;
+import org.dockerenvs.dto.HealthCheckConfig;
+import org.dockerenvs.dto.VolumeConfig;
+import org.dockerenvs.provider.DatabaseProvider;
+import org.dockerenvs.provider.ProviderManager;
+import org.dockerenvs.provider.RuntimeStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 实验元数据缓存与实验目录
+ * 按实验缓存解析、校验后的 metadata.json、程序目录、数据库初始化脚本等资源路径，以及据此预先计算的
+ * 运行时策略、基础镜像、默认数据卷、健康检查和数据库配置，创建/重置环境时不再重复读取、解析和推导：
+ * - 启动时扫描 apps 目录加载全部实验，实验列表（GET /api/experiments）直接从内存返回并带 ETag
+ * - 监听 apps 目录（WatchService），实验目录或其 db 目录有变化时使对应实验的缓存失效并重新加载
+ * - 无法监听（目录不存在、文件系统不支持）或关闭监听时，每次读取前按 metadata.json 的修改时间和大小校验
+ * - 可通过 POST /api/ops/experiments/reload 显式重新加载
+ */
+@Slf4j
+@Service
+public class ExperimentMetadataService {
+
+    private static final String METADATA_FILE = "metadata.json";
+    private static final String DB_DIR = "db";
+    private static final String INIT_SQL_FILE = "init.sql";
+
+    /**
+     * 预先计算的默认数据卷中环境目录的占位符，创建环境时替换为实际目录
+     */
+    private static final String ENV_DIR_PLACEHOLDER = "${ENV_DIR}";
+
+    @Autowired
+    private FileManagerService fileManagerService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ProviderManager providerManager;
+
+    @Value("${env.apps.base-path:/opt/apps}")
+    private String appsBasePath;
+
+    @Value("${env.apps.metadata-cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${env.apps.metadata-cache.watch:true}")
+    private boolean watchEnabled;
+
+    /**
+     * 启动时加载全部实验、目录变化后立即重新加载（否则在首次使用时加载）
+     */
+    @Value("${env.apps.metadata-cache.preload:true}")
+    private boolean preloadEnabled;
+
+    private final Map<String, CachedExperiment> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 失效计数：加载期间发生过失效时不写入缓存，避免旧内容覆盖失效
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * 实验列表快照，任一实验失效时清空，下次查询时重建
+     */
+    private volatile Catalog catalog;
+
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private volatile WatchService watchService;
+    private Thread watcher;
+    private Path basePath;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong watchEventCount = new AtomicLong();
+    private final AtomicLong catalogBuildCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        basePath = Paths.get(appsBasePath).toAbsolutePath().normalize();
+        if (cacheEnabled && watchEnabled) {
+            startWatching();
+        }
+        if (cacheEnabled && preloadEnabled) {
+            long startTime = System.currentTimeMillis();
+            Catalog loaded = getCatalog();
+            log.info("加载实验目录: {} 个实验，耗时 {}ms", loaded.getExperiments().size(),
+                System.currentTimeMillis() - startTime);
+        }
+    }
+
+    private void startWatching() {
+        if (!Files.isDirectory(basePath)) {
+            log.warn("实验目录不存在，元数据缓存改为按修改时间校验: {}", basePath);
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            register(basePath);
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(basePath, Files::isDirectory)) {
+                for (Path dir : dirs) {
+                    registerExperiment(dir);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("监听实验目录失败，元数据缓存改为按修改时间校验: {}", e.getMessage());
+            closeWatchService();
+            return;
+        }
+        watcher = new Thread(this::watchLoop, "experiment-metadata-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("监听实验目录: {}（{} 个目录）", basePath, watchedDirs.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        closeWatchService();
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    /**
+     * 实验元数据（metadata.json 不存在或解析失败时返回默认元数据）
+     */
+    public ExperimentMetadata getMetadata(String expId) {
+        return get(expId).metadata;
+    }
+
+    /**
+     * 实验的预计算结果（运行时策略、数据卷、健康检查、数据库配置）
+     * @param metadata 通过 {@link #getMetadata(String)} 取得的元数据直接返回缓存的结果，其他元数据现场计算
+     */
+    public Artifacts getArtifacts(ExperimentMetadata metadata) {
+        if (metadata.getExpId() != null) {
+            CachedExperiment cached = cache.get(metadata.getExpId());
+            if (cached != null && cached.metadata == metadata) {
+                return cached.artifacts;
+            }
+        }
+        return buildArtifacts(metadata, null);
+    }
+
+    /**
+     * 实验列表（按实验ID排序），目录未变化时返回同一快照
+     */
+    public Catalog getCatalog() {
+        Catalog current = catalog;
+        if (current != null && (isWatching() || current.isCurrent())) {
+            return current;
+        }
+        long buildGeneration = generation.get();
+        Catalog built = buildCatalog();
+        synchronized (cache) {
+            if (cacheEnabled && generation.get() == buildGeneration) {
+                catalog = built;
+            }
+        }
+        return built;
+    }
+
+    /**
+     * 单个实验的目录条目
+     * @return 实验目录不存在时返回null
+     */
+    public ExperimentSummary getSummary(String expId) {
+        if (!isExperimentName(expId) || !Files.isDirectory(basePath.resolve(expId))) {
+            return null;
+        }
+        return summarize(expId, get(expId));
+    }
+
+    /**
+     * 实验程序源目录（用于共享挂载）
+     */
+    public String getAppSourcePath(String expId) {
+        String appSourcePath = get(expId).appSourcePath;
+        if (appSourcePath == null) {
+            throw new RuntimeException("实验程序包不存在: " + basePath.resolve(expId));
+        }
+        return appSourcePath;
+    }
+
+    /**
+     * 数据库初始化脚本路径（apps/{expId}/db/init.sql），不存在时返回空字符串（MySQL容器会跳过初始化）
+     */
+    public String getInitSqlPath(String expId) {
+        return get(expId).initSqlPath;
+    }
+
+    /**
+     * 使实验的缓存失效并重新加载
+     * @return 重新加载的实验信息（路径、校验问题）
+     */
+    public Map<String, Object> reload(String expId) {
+        invalidate(expId);
+        return describe(expId, get(expId));
+    }
+
+    /**
+     * 使全部实验的缓存失效（下次读取时重新加载）
+     * @return 失效的实验数
+     */
+    public int reloadAll() {
+        int cleared;
+        synchronized (cache) {
+            generation.incrementAndGet();
+            cleared = cache.size();
+            cache.clear();
+            catalog = null;
+        }
+        invalidationCount.addAndGet(cleared);
+        log.info("实验元数据缓存已全部失效: {} 个", cleared);
+        return cleared;
+    }
+
+    public void invalidate(String expId) {
+        synchronized (cache) {
+            generation.incrementAndGet();
+            catalog = null;
+            if (cache.remove(expId) != null) {
+                invalidationCount.incrementAndGet();
+                log.info("实验元数据缓存失效: {}", expId);
+            }
+        }
+    }
+
+    private boolean isWatching() {
+        return watchService != null;
+    }
+
+    private CachedExperiment get(String expId) {
+        if (!cacheEnabled) {
+            return load(expId);
+        }
+        CachedExperiment cached = cache.get(expId);
+        // 监听中由文件事件负责失效，否则按 metadata.json 的修改时间和大小校验
+        if (cached != null && (isWatching() || cached.isCurrent())) {
+            hitCount.incrementAndGet();
+            return cached;
+        }
+        long loadGeneration = generation.get();
+        CachedExperiment loaded = load(expId);
+        synchronized (cache) {
+            if (generation.get() == loadGeneration) {
+                cache.put(expId, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 读取、解析并校验实验元数据，解析资源路径
+     */
+    private CachedExperiment load(String expId) {
+        loadCount.incrementAndGet();
+        Path expDir = basePath.resolve(expId);
+        Path metadataFile = expDir.resolve(METADATA_FILE);
+        // 先取文件状态再读内容：读取期间的修改会在下次校验时发现
+        CachedExperiment entry = new CachedExperiment(metadataFile, fileStamp(metadataFile));
+        entry.metadata = parseMetadata(expId);
+        entry.problems = validate(expId, entry.metadata);
+        if (!entry.problems.isEmpty()) {
+            log.warn("实验元数据校验未通过: expId={}, problems={}", expId, entry.problems);
+        }
+        // 目录名是实验的标准ID（校验已报告不一致），JSON 中缺少或写错 expId 时同样以目录名为准
+        entry.metadata.setExpId(expId);
+        entry.appSourcePath = Files.exists(expDir) ? expDir.toString() : null;
+        entry.artifacts = buildArtifacts(entry.metadata, entry.appSourcePath);
+        Path initSqlFile = expDir.resolve(DB_DIR).resolve(INIT_SQL_FILE);
+        if (Files.exists(initSqlFile)) {
+            entry.initSqlPath = initSqlFile.toString().replace("\\", "/");
+            log.info("找到数据库初始化脚本: {}", entry.initSqlPath);
+        } else {
+            entry.initSqlPath = "";
+        }
+        return entry;
+    }
+
+    private ExperimentMetadata parseMetadata(String expId) {
+        try {
+            String metadataJson = fileManagerService.readExperimentMetadata(expId);
+            if (metadataJson != null) {
+                ExperimentMetadata metadata = objectMapper.readValue(metadataJson, ExperimentMetadata.class);
+                // 确保数据库相关字段有默认值（如果 JSON 中没有这些字段，Jackson 会使用 DTO 中的默认值）
+                if (metadata.getNeedsDatabase() == null) {
+                    metadata.setNeedsDatabase(false);
+                }
+                if (metadata.getDatabaseName() == null || metadata.getDatabaseName().trim().isEmpty()) {
+                    metadata.setDatabaseName("test_db");
+                }
+                if (metadata.getDatabasePassword() == null || metadata.getDatabasePassword().trim().isEmpty()) {
+                    metadata.setDatabasePassword("123456");
+                }
+                return metadata;
+            }
+        } catch (Exception e) {
+            log.warn("读取实验元数据失败，使用默认值: {}", expId, e);
+        }
+
+        // 默认元数据
+        ExperimentMetadata metadata = new ExperimentMetadata();
+        metadata.setExpId(expId);
+        metadata.setType("java");
+        metadata.setBaseImage("java-base:latest");
+        metadata.setStartCommand("java -jar /app/program/app.jar");
+        metadata.setPort(8080);
+        metadata.setNeedsDatabase(false);
+        metadata.setDatabaseName("test_db");
+        metadata.setDatabasePassword("123456");
+        return metadata;
+    }
+
+    /**
+     * 校验元数据（只记录问题，不拒绝使用）
+     */
+    private List<String> validate(String expId, ExperimentMetadata metadata) {
+        List<String> problems = new ArrayList<>();
+        if (!Files.exists(basePath.resolve(expId).resolve(METADATA_FILE))) {
+            problems.add("缺少 " + METADATA_FILE + "，使用默认配置");
+        }
+        if (metadata.getExpId() != null && !expId.equals(metadata.getExpId())) {
+            problems.add("expId 与目录名不一致: " + metadata.getExpId());
+        }
+        if (metadata.getBaseImage() == null || metadata.getBaseImage().trim().isEmpty()) {
+            problems.add("未指定 baseImage");
+        }
+        Integer containerPort = metadata.getEffectiveContainerPort();
+        if (containerPort == null || containerPort < 1 || containerPort > 65535) {
+            problems.add("容器端口无效: " + containerPort);
+        }
+        for (String spec : metadata.getEffectivePortSpecs()) {
+            String port = spec.contains("/") ? spec.substring(0, spec.indexOf('/')) : spec;
+            try {
+                int value = Integer.parseInt(port);
+                if (value < 1 || value > 65535) {
+                    problems.add("端口超出范围: " + spec);
+                }
+            } catch (NumberFormatException e) {
+                problems.add("端口格式错误: " + spec);
+            }
+        }
+        DatabaseConfig dbConfig = metadata.getEffectiveDatabaseConfig();
+        if (dbConfig != null && dbConfig.getEnabled() && providerManager.getDatabaseProvider(dbConfig) == null) {
+            problems.add("没有可用的数据库提供者: " + dbConfig.getProvider() + ":" + dbConfig.getType());
+        }
+        return problems.isEmpty() ? Collections.emptyList() : problems;
+    }
+
+    /**
+     * 预先计算运行时策略、健康检查、数据库配置和默认数据卷（数据卷中的环境目录以占位符表示）
+     * @param appSourcePath 实验程序目录，为null时默认数据卷在创建环境时现场计算
+     */
+    private Artifacts buildArtifacts(ExperimentMetadata metadata, String appSourcePath) {
+        RuntimeStrategy strategy = providerManager.getRuntimeStrategy(metadata.getEffectiveRuntimeType());
+        HealthCheckConfig healthCheck = metadata.getHealthCheck() != null
+            ? metadata.getHealthCheck() : strategy.getDefaultHealthCheck(metadata.getEffectiveContainerPort());
+        DatabaseConfig dbConfig = metadata.getEffectiveDatabaseConfig();
+        DatabaseProvider dbProvider = providerManager.getDatabaseProvider(dbConfig);
+        List<VolumeConfig> volumes = metadata.getVolumes();
+        boolean declaredVolumes = volumes != null && !volumes.isEmpty();
+        if (!declaredVolumes && appSourcePath != null) {
+            volumes = strategy.getDefaultVolumes(ENV_DIR_PLACEHOLDER, appSourcePath);
+        }
+        return new Artifacts(strategy, healthCheck, dbConfig, dbProvider, declaredVolumes,
+            declaredVolumes ? null : appSourcePath, volumes);
+    }
+
+    private Catalog buildCatalog() {
+        catalogBuildCount.incrementAndGet();
+        TreeSet<String> expIds = new TreeSet<>();
+        if (Files.isDirectory(basePath)) {
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(basePath, Files::isDirectory)) {
+                for (Path dir : dirs) {
+                    String expId = dir.getFileName().toString();
+                    if (isExperimentName(expId)) {
+                        expIds.add(expId);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("扫描实验目录失败: {}, {}", basePath, e.getMessage());
+            }
+        }
+        List<ExperimentSummary> experiments = new ArrayList<>();
+        for (String expId : expIds) {
+            experiments.add(summarize(expId, get(expId)));
+        }
+        List<ExperimentSummary> snapshot = Collections.unmodifiableList(experiments);
+        return new Catalog(snapshot, etag(snapshot), fileStamp(basePath));
+    }
+
+    private ExperimentSummary summarize(String expId, CachedExperiment entry) {
+        ExperimentMetadata metadata = entry.metadata;
+        Artifacts artifacts = entry.artifacts;
+        ExperimentSummary summary = new ExperimentSummary();
+        summary.setExpId(expId);
+        summary.setName(metadata.getName());
+        summary.setRuntimeType(metadata.getEffectiveRuntimeType());
+        summary.setBaseImage(metadata.getBaseImage());
+        summary.setContainerPort(metadata.getEffectiveContainerPort());
+        summary.getPorts().addAll(metadata.getEffectivePortSpecs());
+        if (artifacts.getDatabaseProvider() != null) {
+            DatabaseConfig dbConfig = artifacts.getDatabaseConfig();
+            summary.setDatabase(dbConfig.getProvider() + ":" + dbConfig.getType());
+        }
+        summary.setHasInitSql(!entry.initSqlPath.isEmpty());
+        summary.setHealthCheck(artifacts.getHealthCheck() != null);
+        summary.setCpuCores(metadata.getCpuCores());
+        summary.setMemoryMb(metadata.getMemoryMb());
+        summary.getProblems().addAll(entry.problems);
+        return summary;
+    }
+
+    /**
+     * 实验列表内容的摘要（内容不变时 ETag 不变，服务重启后也一致）
+     */
+    private String etag(List<ExperimentSummary> experiments) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(experiments));
+            StringBuilder hex = new StringBuilder("\"");
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.append('"').toString();
+        } catch (Exception e) {
+            return "\"" + experiments.hashCode() + "\"";
+        }
+    }
+
+    private static boolean isExperimentName(String expId) {
+        return expId != null && !expId.isEmpty() && !expId.startsWith(".")
+            && !expId.contains("/") && !expId.contains("\\") && !"..".equals(expId);
+    }
+
+    private void register(Path dir) throws IOException {
+        WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedDirs.put(key, dir);
+    }
+
+    /**
+     * 监听实验目录及其 db 目录（init.sql）
+     */
+    private void registerExperiment(Path expDir) throws IOException {
+        register(expDir);
+        Path dbDir = expDir.resolve(DB_DIR);
+        if (Files.isDirectory(dbDir)) {
+            register(dbDir);
+        }
+    }
+
+    private void watchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = watchedDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                watchEventCount.incrementAndGet();
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                    // 事件丢失时无法确定变化的实验
+                    reloadAll();
+                    continue;
+                }
+                try {
+                    handleEvent(dir, dir.resolve((Path) event.context()), event.kind());
+                } catch (Exception e) {
+                    log.warn("处理实验目录变化失败: {}, {}", dir, e.getMessage());
+                }
+            }
+            if (!key.reset()) {
+                // 目录已删除
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    private void handleEvent(Path dir, Path child, WatchEvent.Kind<?> kind) throws IOException {
+        boolean created = kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child);
+        if (dir.equals(basePath)) {
+            // 新增或删除实验目录
+            if (created) {
+                registerExperiment(child);
+            }
+            refresh(child.getFileName().toString());
+            return;
+        }
+        Path relative = basePath.relativize(dir);
+        if (created && relative.getNameCount() == 1 && DB_DIR.equals(child.getFileName().toString())) {
+            register(child);
+        }
+        refresh(relative.getName(0).toString());
+    }
+
+    /**
+     * 目录变化后使实验失效，启用预加载时立即重新加载，创建环境时不用等待解析
+     */
+    private void refresh(String expId) {
+        invalidate(expId);
+        if (preloadEnabled && isExperimentName(expId) && Files.isDirectory(basePath.resolve(expId))) {
+            get(expId);
+        }
+    }
+
+    private void closeWatchService() {
+        WatchService service = watchService;
+        watchService = null;
+        watchedDirs.clear();
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                log.debug("关闭目录监听失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static String fileStamp(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis() + ":" + Files.size(file);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private Map<String, Object> describe(String expId, CachedExperiment entry) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("expId", expId);
+        info.put("appSourcePath", entry.appSourcePath);
+        info.put("initSqlPath", entry.initSqlPath);
+        info.put("problems", entry.problems);
+        return info;
+    }
+
+    /**
+     * 元数据缓存指标（缓存数、命中/加载/失效次数、监听状态、校验未通过的实验）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", cacheEnabled);
+        stats.put("watching", isWatching());
+        stats.put("watchedDirs", watchedDirs.size());
+        stats.put("cached", cache.size());
+        stats.put("hits", hitCount.get());
+        stats.put("loads", loadCount.get());
+        stats.put("invalidations", invalidationCount.get());
+        stats.put("watchEvents", watchEventCount.get());
+        stats.put("catalogBuilds", catalogBuildCount.get());
+        Catalog current = catalog;
+        stats.put("catalogEtag", current != null ? current.getEtag() : null);
+        Map<String, List<String>> problems = new LinkedHashMap<>();
+        cache.forEach((expId, entry) -> {
+            if (!entry.problems.isEmpty()) {
+                problems.put(expId, entry.problems);
+            }
+        });
+        stats.put("problems", problems);
+        return stats;
+    }
+
+    /**
+     * 实验的预计算结果（与缓存的元数据一起加载，共享给所有环境，调用方不能修改）
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Artifacts {
+        private final RuntimeStrategy strategy;
+        /**
+         * 元数据声明的健康检查，未声明时为运行时策略的默认健康检查（可能为null）
+         */
+        private final HealthCheckConfig healthCheck;
+        private final DatabaseConfig databaseConfig;
+        /**
+         * 数据库提供者，不需要数据库时为null
+         */
+        private final DatabaseProvider databaseProvider;
+        private final boolean declaredVolumes;
+        private final String programPath;
+        private final List<VolumeConfig> volumes;
+
+        /**
+         * 环境的数据卷：元数据声明的数据卷，或运行时策略的默认数据卷（替换环境目录）
+         */
+        public List<VolumeConfig> volumes(String envDir, String programPath) {
+            if (declaredVolumes) {
+                return volumes;
+            }
+            if (volumes == null || programPath == null || !programPath.equals(this.programPath)) {
+                return strategy.getDefaultVolumes(envDir, programPath);
+            }
+            List<VolumeConfig> resolved = new ArrayList<>(volumes.size());
+            for (VolumeConfig template : volumes) {
+                String hostPath = template.getHostPath();
+                if (hostPath == null || !hostPath.startsWith(ENV_DIR_PLACEHOLDER)) {
+                    resolved.add(template);
+                    continue;
+                }
+                VolumeConfig volume = new VolumeConfig();
+                volume.setHostPath(envDir + hostPath.substring(ENV_DIR_PLACEHOLDER.length()));
+                volume.setContainerPath(template.getContainerPath());
+                volume.setOptions(template.getOptions());
+                resolved.add(volume);
+            }
+            return resolved;
+        }
+    }
+
+    /**
+     * 实验列表快照
+     */
+    @Getter
+    public final class Catalog {
+        private final List<ExperimentSummary> experiments;
+        private final String etag;
+        private final String stamp;
+
+        private Catalog(List<ExperimentSummary> experiments, String etag, String stamp) {
+            this.experiments = experiments;
+            this.etag = etag;
+            this.stamp = stamp;
+        }
+
+        /**
+         * 未监听时判断是否过期：apps 目录的修改时间（增删实验）和各实验 metadata.json 的状态
+         */
+        private boolean isCurrent() {
+            return stamp.equals(fileStamp(basePath)) && cache.values().stream().allMatch(CachedExperiment::isCurrent);
+        }
+    }
+
+    /**
+     * 缓存的实验：元数据、校验问题、资源路径、预计算结果，以及加载时 metadata.json 的修改时间和大小
+     */
+    private static final class CachedExperiment {
+        private final Path metadataFile;
+        private final String stamp;
+        private ExperimentMetadata metadata;
+        private List<String> problems;
+        private String appSourcePath;
+        private String initSqlPath;
+        private Artifacts artifacts;
+
+        private CachedExperiment(Path metadataFile, String stamp) {
+            this.metadataFile = metadataFile;
+            this.stamp = stamp;
+        }
+
+        private boolean isCurrent() {
+            return stamp.equals(fileStamp(metadataFile));
+        }
+    }
+}
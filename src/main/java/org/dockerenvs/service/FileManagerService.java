@@ -52,6 +52,22 @@ public class FileManagerService {
         return sourcePath.toString();
     }
     
+    /**
+     * 把目录改名移到同级的待删除位置（同一文件系统内改名，立即完成），之后可在后台删除
+     * 原路径随即可被重新创建的环境使用
+     * @return 移动后的路径；目录不存在时返回null
+     */
+    public Path detachDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return null;
+        }
+        Path detached = directory.resolveSibling(
+            directory.getFileName() + ".destroyed-" + System.currentTimeMillis());
+        Files.move(directory, detached, StandardCopyOption.ATOMIC_MOVE);
+        log.info("移走目录: {} -> {}", directory, detached);
+        return detached;
+    }
+    
     /**
      * 删除目录（支持Windows系统，带重试机制）
      */
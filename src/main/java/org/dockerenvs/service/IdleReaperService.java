@@ -0,0 +1,316 @@
+package org.dockerenvs.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dao.mapper.VirtualEnvMapper;
+import org.dockerenvs.dto.ContainerUsage;
+import org.dockerenvs.dto.ExperimentMetadata;
+import org.dockerenvs.entity.VirtualEnv;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 空闲环境回收
+ * 定时检查运行中的环境，空闲超过实验配置的阈值（metadata.json 的 idleTimeoutMinutes）后停止，
+ * 超过最长保留时间（maxLifetimeHours）的环境直接销毁，原因记录到 status_reason：
+ * - 活跃信号：终端会话（打开期间始终活跃）、接口调用、容器 CPU/网络计数变化
+ * - 只有看起来已空闲的环境才采样容器计数，两次采样之间 CPU 或网络有明显变化视为仍在使用
+ * - 内存中的活跃时间每轮批量写回 virtual_env.last_active_time
+ * - 冻结（PAUSED）的环境仍占用内存，冻结超过期限或冻结环境数超过上限时降级为真正停止
+ */
+@Slf4j
+@Service
+public class IdleReaperService {
+
+    public static final String REASON_IDLE = "IDLE";
+    public static final String REASON_MAX_LIFETIME = "MAX_LIFETIME";
+    public static final String REASON_DEMOTED = "DEMOTED";
+
+    /**
+     * 活跃时间变化超过该值才写回数据库，减少无意义的更新
+     */
+    private static final long LAST_ACTIVE_FLUSH_SECONDS = 60;
+
+    @Autowired
+    private VirtualEnvMapper virtualEnvMapper;
+
+    @Autowired
+    private EnvManagerService envManagerService;
+
+    @Autowired
+    private EnvActivityService envActivityService;
+
+    @Autowired
+    private DockerOpsService dockerOpsService;
+
+    @Value("${env.idle.enabled:true}")
+    private boolean enabled;
+
+    @Value("${env.idle.check-interval-ms:300000}")
+    private long checkIntervalMs;
+
+    @Value("${env.idle.default-idle-minutes:120}")
+    private int defaultIdleMinutes;
+
+    @Value("${env.idle.default-max-lifetime-hours:0}")
+    private int defaultMaxLifetimeHours;
+
+    @Value("${env.idle.cpu-threshold-percent:2.0}")
+    private double cpuThresholdPercent;
+
+    @Value("${env.idle.network-threshold-bytes:65536}")
+    private long networkThresholdBytes;
+
+    @Value("${env.pause.max-paused-minutes:60}")
+    private int maxPausedMinutes;
+
+    @Value("${env.pause.max-paused-envs:0}")
+    private int maxPausedEnvs;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "idle-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 上一次采样的容器计数，按环境ID
+     */
+    private final Map<String, ContainerUsage> lastUsage = new ConcurrentHashMap<>();
+
+    private volatile LocalDateTime lastRunTime;
+    private volatile long lastRunMs;
+    private final AtomicLong checkedCount = new AtomicLong();
+    private final AtomicLong sampledCount = new AtomicLong();
+    private final AtomicLong activeByUsageCount = new AtomicLong();
+    private final AtomicLong stoppedIdleCount = new AtomicLong();
+    private final AtomicLong destroyedLifetimeCount = new AtomicLong();
+    private final AtomicLong demotedCount = new AtomicLong();
+    private volatile int pausedCount;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("空闲环境回收已禁用");
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::reapSafely, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void reapSafely() {
+        if (!dockerOpsService.isDockerAvailable()) {
+            log.debug("Docker 不可用，跳过空闲环境回收");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            reap();
+        } catch (Exception e) {
+            log.warn("空闲环境回收失败: {}", e.getMessage(), e);
+        } finally {
+            lastRunTime = LocalDateTime.now();
+            lastRunMs = System.currentTimeMillis() - start;
+        }
+    }
+
+    private void reap() {
+        LambdaQueryWrapper<VirtualEnv> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.in(VirtualEnv::getStatus, "RUNNING", "STOPPED", EnvManagerService.PAUSED_STATUS);
+        queryWrapper.ne(VirtualEnv::getUserId, WarmPoolService.POOL_USER_ID);
+        List<VirtualEnv> envs = virtualEnvMapper.selectList(queryWrapper);
+
+        Map<String, ExperimentMetadata> metadataByExp = new HashMap<>();
+        List<VirtualEnv> activeUpdates = new ArrayList<>();
+        List<VirtualEnv> pausedEnvs = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        for (VirtualEnv env : envs) {
+            checkedCount.incrementAndGet();
+            ExperimentMetadata metadata = metadataByExp.computeIfAbsent(env.getExpId(),
+                envManagerService::readExperimentMetadata);
+
+            int maxLifetimeHours = metadata.getMaxLifetimeHours() != null
+                ? metadata.getMaxLifetimeHours() : defaultMaxLifetimeHours;
+            if (maxLifetimeHours > 0 && env.getCreatedTime() != null
+                    && env.getCreatedTime().plusHours(maxLifetimeHours).isBefore(now)) {
+                log.info("环境超过最长保留时间，销毁: envId={}, createdTime={}, maxLifetimeHours={}",
+                    env.getEnvId(), env.getCreatedTime(), maxLifetimeHours);
+                try {
+                    envManagerService.destroyEnv(env.getEnvId(), REASON_MAX_LIFETIME);
+                    destroyedLifetimeCount.incrementAndGet();
+                } catch (Exception e) {
+                    log.warn("销毁超期环境失败: envId={}, {}", env.getEnvId(), e.getMessage());
+                }
+                lastUsage.remove(env.getEnvId());
+                continue;
+            }
+
+            if (EnvManagerService.PAUSED_STATUS.equals(env.getStatus())) {
+                pausedEnvs.add(env);
+                continue;
+            }
+            if (!"RUNNING".equals(env.getStatus())) {
+                continue;
+            }
+            int idleMinutes = metadata.getIdleTimeoutMinutes() != null
+                ? metadata.getIdleTimeoutMinutes() : defaultIdleMinutes;
+            if (idleMinutes <= 0) {
+                continue;
+            }
+
+            LocalDateTime lastActive = latestActivity(env);
+            boolean idle = lastActive.plusMinutes(idleMinutes).isBefore(now);
+            if (envActivityService.hasOpenTerminal(env.getContainerId())) {
+                lastActive = now;
+                idle = false;
+            } else if (idle) {
+                Boolean activeByUsage = checkUsage(env);
+                if (activeByUsage == null) {
+                    // 第一次采样只记录基线，下一轮再判断
+                    continue;
+                }
+                if (activeByUsage) {
+                    activeByUsageCount.incrementAndGet();
+                    envActivityService.touchEnv(env.getEnvId());
+                    lastActive = now;
+                    idle = false;
+                }
+            } else {
+                // 仍活跃的环境不保留旧基线，避免下次空闲时与很久以前的计数比较
+                lastUsage.remove(env.getEnvId());
+            }
+
+            if (idle) {
+                log.info("环境空闲超时，停止: envId={}, lastActive={}, idleMinutes={}",
+                    env.getEnvId(), lastActive, idleMinutes);
+                try {
+                    envManagerService.stopEnv(env.getEnvId(), REASON_IDLE);
+                    stoppedIdleCount.incrementAndGet();
+                } catch (Exception e) {
+                    log.warn("停止空闲环境失败: envId={}, {}", env.getEnvId(), e.getMessage());
+                }
+                lastUsage.remove(env.getEnvId());
+            } else if (env.getLastActiveTime() == null
+                    || lastActive.isAfter(env.getLastActiveTime().plusSeconds(LAST_ACTIVE_FLUSH_SECONDS))) {
+                env.setLastActiveTime(lastActive);
+                activeUpdates.add(env);
+            }
+        }
+
+        if (!activeUpdates.isEmpty()) {
+            virtualEnvMapper.batchUpdateLastActive(activeUpdates);
+        }
+        demotePausedEnvs(pausedEnvs, now);
+        log.debug("空闲环境回收完成: 检查 {} 个环境，更新活跃时间 {} 个", envs.size(), activeUpdates.size());
+    }
+
+    /**
+     * 冻结环境降级：冻结超过期限的，以及冻结环境数超过上限时最早冻结的，改为真正停止以释放内存
+     * 冻结时间取进入冻结状态时的更新时间
+     */
+    private void demotePausedEnvs(List<VirtualEnv> pausedEnvs, LocalDateTime now) {
+        pausedEnvs.sort(Comparator.comparing(VirtualEnv::getUpdatedTime,
+            Comparator.nullsFirst(Comparator.naturalOrder())));
+        int remaining = pausedEnvs.size();
+        for (VirtualEnv env : pausedEnvs) {
+            boolean expired = maxPausedMinutes > 0 && (env.getUpdatedTime() == null
+                || env.getUpdatedTime().plusMinutes(maxPausedMinutes).isBefore(now));
+            boolean overLimit = maxPausedEnvs > 0 && remaining > maxPausedEnvs;
+            if (!expired && !overLimit) {
+                continue;
+            }
+            log.info("冻结环境降级为停止: envId={}, pausedSince={}, expired={}, overLimit={}",
+                env.getEnvId(), env.getUpdatedTime(), expired, overLimit);
+            try {
+                envManagerService.haltEnv(env.getEnvId(), REASON_DEMOTED);
+                demotedCount.incrementAndGet();
+                remaining--;
+            } catch (Exception e) {
+                log.warn("冻结环境降级失败: envId={}, {}", env.getEnvId(), e.getMessage());
+            }
+        }
+        pausedCount = remaining;
+    }
+
+    /**
+     * 最近活跃时间：内存记录、数据库记录和最后更新时间中的最大值
+     */
+    private LocalDateTime latestActivity(VirtualEnv env) {
+        LocalDateTime latest = env.getLastActiveTime() != null ? env.getLastActiveTime() : env.getUpdatedTime();
+        if (latest == null) {
+            latest = env.getCreatedTime() != null ? env.getCreatedTime() : LocalDateTime.now();
+        }
+        LocalDateTime tracked = envActivityService.getLastActive(env.getEnvId(), env.getContainerId());
+        return tracked != null && tracked.isAfter(latest) ? tracked : latest;
+    }
+
+    /**
+     * 根据容器计数判断是否仍在使用
+     * @return true=两次采样之间 CPU 或网络有明显变化，false=无变化，null=没有可比较的基线
+     */
+    private Boolean checkUsage(VirtualEnv env) {
+        ContainerUsage current = dockerOpsService.sampleContainerUsage(env.getContainerId());
+        if (current == null) {
+            // 无法采样（命令行方式或采样失败）时只依据其他活跃信号
+            return false;
+        }
+        sampledCount.incrementAndGet();
+        ContainerUsage previous = lastUsage.put(env.getEnvId(), current);
+        if (previous == null) {
+            return null;
+        }
+        long elapsedMs = Math.max(1, current.getSampledAt() - previous.getSampledAt());
+        long cpuDelta = current.getCpuTotalNanos() - previous.getCpuTotalNanos();
+        double cpuPercent = cpuDelta * 100.0 / (elapsedMs * 1_000_000.0);
+        long networkDelta = current.getNetworkBytes() - previous.getNetworkBytes();
+        // 容器重启后计数归零，差值为负时视为活跃
+        return cpuDelta < 0 || networkDelta < 0
+            || cpuPercent > cpuThresholdPercent || networkDelta > networkThresholdBytes;
+    }
+
+    /**
+     * 回收指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("checkIntervalMs", checkIntervalMs);
+        stats.put("defaultIdleMinutes", defaultIdleMinutes);
+        stats.put("defaultMaxLifetimeHours", defaultMaxLifetimeHours);
+        stats.put("lastRunTime", lastRunTime);
+        stats.put("lastRunMs", lastRunMs);
+        stats.put("checked", checkedCount.get());
+        stats.put("sampled", sampledCount.get());
+        stats.put("activeByUsage", activeByUsageCount.get());
+        stats.put("stoppedIdle", stoppedIdleCount.get());
+        stats.put("destroyedMaxLifetime", destroyedLifetimeCount.get());
+        stats.put("paused", pausedCount);
+        stats.put("maxPausedMinutes", maxPausedMinutes);
+        stats.put("maxPausedEnvs", maxPausedEnvs);
+        stats.put("demoted", demotedCount.get());
+        stats.put("activity", envActivityService.getStats());
+        return stats;
+    }
+}
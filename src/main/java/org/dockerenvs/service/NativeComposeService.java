@@ -0,0 +1,442 @@
+package org.dockerenvs.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.CreateContainerCmd;
+import com.github.dockerjava.api.command.PullImageResultCallback;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.exception.NotModifiedException;
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.ContainerNetwork;
+import com.github.dockerjava.api.model.ExposedPort;
+import com.github.dockerjava.api.model.HealthCheck;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.Network;
+import com.github.dockerjava.api.model.PortBinding;
+import com.github.dockerjava.api.model.Ports;
+import com.github.dockerjava.api.model.RestartPolicy;
+import com.github.dockerjava.api.model.Volume;
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dto.ComposeServiceSpec;
+import org.dockerenvs.dto.ComposeSpec;
+import org.dockerenvs.dto.HealthCheckConfig;
+import org.dockerenvs.dto.VolumeConfig;
+import org.dockerenvs.exception.ContainerException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 原生编排服务
+ * 根据 ComposeSpec 直接通过 Docker API 创建网络和容器（等价于 docker compose up -d），
+ * 各服务并行创建、启动，省去 compose CLI 的进程启动和文件解析开销。
+ * 创建出的资源带有与 docker compose 相同的标签，停止/删除/查询逻辑可以通用。
+ */
+@Slf4j
+@Service
+public class NativeComposeService {
+
+    private static final String COMPOSE_PROJECT_LABEL = "com.docker.compose.project";
+    private static final String COMPOSE_SERVICE_LABEL = "com.docker.compose.service";
+    private static final String COMPOSE_NETWORK_LABEL = "com.docker.compose.network";
+
+    private static final Pattern DURATION_PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)?)(ns|us|ms|s|m|h)");
+
+    @Autowired
+    private DockerClient dockerClient;
+
+    @Autowired
+    private DockerStateCache dockerStateCache;
+
+    @Value("${env.compose.parallelism:4}")
+    private int parallelism;
+
+    @Value("${env.compose.pull-timeout-seconds:300}")
+    private long pullTimeoutSeconds;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "native-compose-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 创建并启动编排模型中的全部服务
+     * @return 服务名称 -> 容器ID
+     */
+    public Map<String, String> up(ComposeSpec spec) {
+        return up(spec, null);
+    }
+
+    /**
+     * 创建并启动编排模型中的指定服务（同名的旧容器先删除）
+     * @param serviceNames 服务名称，为null时为全部服务
+     * @return 服务名称 -> 容器ID
+     */
+    public Map<String, String> up(ComposeSpec spec, Set<String> serviceNames) {
+        long startTime = System.currentTimeMillis();
+        Map<String, String> networkNames = ensureNetworks(spec);
+
+        List<ComposeServiceSpec> services = spec.getServices().stream()
+            .filter(service -> serviceNames == null || serviceNames.contains(service.getName()))
+            .collect(Collectors.toList());
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (ComposeServiceSpec service : services) {
+            futures.add(CompletableFuture.supplyAsync(
+                () -> createAndStartService(spec, service, networkNames), executor));
+        }
+
+        Map<String, String> containerIds = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                containerIds.put(services.get(i).getName(), futures.get(i).join());
+            }
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof ContainerException) {
+                throw (ContainerException) cause;
+            }
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "启动容器失败: " + cause.getMessage(), cause);
+        }
+
+        log.info("原生编排启动完成: projectName={}, services={}, 耗时={}ms",
+            spec.getProjectName(), containerIds.keySet(), System.currentTimeMillis() - startTime);
+        return containerIds;
+    }
+
+    /**
+     * 创建项目网络，校验外部网络存在
+     * @return 网络键 -> 实际网络名称
+     */
+    private Map<String, String> ensureNetworks(ComposeSpec spec) {
+        Map<String, String> networkNames = new HashMap<>();
+        for (String network : spec.getExternalNetworks()) {
+            String name = spec.resolveNetworkName(network);
+            if (!networkExists(name)) {
+                throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                    "外部网络不存在: " + name);
+            }
+            networkNames.put(network, name);
+        }
+        for (String network : spec.getNetworks()) {
+            String name = spec.resolveNetworkName(network);
+            networkNames.put(network, name);
+            if (networkExists(name)) {
+                continue;
+            }
+            Map<String, String> labels = new HashMap<>();
+            labels.put(COMPOSE_PROJECT_LABEL, spec.getProjectName());
+            labels.put(COMPOSE_NETWORK_LABEL, network);
+            try {
+                dockerClient.createNetworkCmd()
+                    .withName(name)
+                    .withDriver("bridge")
+                    .withLabels(labels)
+                    .withCheckDuplicate(true)
+                    .exec();
+                log.info("创建网络: {}", name);
+            } catch (Exception e) {
+                // 并发创建时可能已被其他请求创建
+                if (!networkExists(name)) {
+                    throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                        "创建网络失败: " + name + ", " + e.getMessage(), e);
+                }
+            }
+        }
+        return networkNames;
+    }
+
+    private boolean networkExists(String name) {
+        Boolean cached = dockerStateCache.networkExists(name);
+        if (Boolean.TRUE.equals(cached)) {
+            return true;
+        }
+        for (Network network : dockerClient.listNetworksCmd().withNameFilter(name).exec()) {
+            if (name.equals(network.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 创建并启动单个服务的容器
+     */
+    private String createAndStartService(ComposeSpec spec, ComposeServiceSpec service,
+                                         Map<String, String> networkNames) {
+        removeStaleContainer(service.getContainerName());
+
+        String primaryNetwork = networkNames.get(service.getNetworks().get(0));
+        String containerId;
+        try {
+            containerId = buildCreateCmd(spec, service, primaryNetwork).exec().getId();
+        } catch (NotFoundException e) {
+            // 本地没有镜像，拉取后重试
+            pullImage(service.getImage());
+            containerId = buildCreateCmd(spec, service, primaryNetwork).exec().getId();
+        }
+
+        for (int i = 1; i < service.getNetworks().size(); i++) {
+            dockerClient.connectToNetworkCmd()
+                .withContainerId(containerId)
+                .withNetworkId(networkNames.get(service.getNetworks().get(i)))
+                .withContainerNetwork(new ContainerNetwork()
+                    .withAliases(Collections.singletonList(service.getName())))
+                .exec();
+        }
+
+        try {
+            dockerClient.startContainerCmd(containerId).exec();
+        } catch (NotModifiedException e) {
+            log.debug("容器已在运行: {}", containerId);
+        }
+        dockerStateCache.recordContainerState(containerId, "running");
+        log.info("服务启动成功: service={}, containerId={}", service.getName(), containerId);
+        return containerId;
+    }
+
+    private CreateContainerCmd buildCreateCmd(ComposeSpec spec, ComposeServiceSpec service, String primaryNetwork) {
+        Map<String, String> labels = new HashMap<>(spec.getLabels());
+        labels.put(COMPOSE_PROJECT_LABEL, spec.getProjectName());
+        labels.put(COMPOSE_SERVICE_LABEL, service.getName());
+        labels.put("com.docker.compose.oneoff", "False");
+        labels.put("com.docker.compose.container-number", "1");
+        labels.put("com.docker.compose.project.working_dir", spec.getWorkingDir());
+        labels.put("com.docker.compose.project.config_files",
+            Paths.get(spec.getWorkingDir(), "docker-compose.yml").toString());
+
+        List<ExposedPort> exposedPorts = new ArrayList<>();
+        Ports portBindings = new Ports();
+        for (String port : service.getPorts()) {
+            PortBinding binding = PortBinding.parse(port);
+            exposedPorts.add(binding.getExposedPort());
+            portBindings.add(binding);
+        }
+
+        List<Bind> binds = new ArrayList<>();
+        for (VolumeConfig volume : service.getVolumes()) {
+            binds.add(toBind(volume, spec.getWorkingDir()));
+        }
+
+        HostConfig hostConfig = HostConfig.newHostConfig()
+            .withPortBindings(portBindings)
+            .withBinds(binds)
+            .withNetworkMode(primaryNetwork)
+            .withRestartPolicy(RestartPolicy.parse(service.getRestart()));
+
+        List<String> env = new ArrayList<>();
+        service.getEnvironment().forEach((key, value) -> env.add(key + "=" + value));
+
+        CreateContainerCmd cmd = dockerClient.createContainerCmd(service.getImage())
+            .withName(service.getContainerName())
+            .withLabels(labels)
+            .withEnv(env)
+            .withExposedPorts(exposedPorts)
+            .withHostConfig(hostConfig)
+            .withAliases(service.getName())
+            .withTty(service.isTty())
+            .withStdinOpen(service.isStdinOpen());
+        if (StringUtils.hasText(service.getCommand())) {
+            cmd.withCmd(splitCommand(service.getCommand()));
+        }
+        if (StringUtils.hasText(service.getWorkingDir())) {
+            cmd.withWorkingDir(service.getWorkingDir());
+        }
+        if (service.getHealthCheck() != null && StringUtils.hasText(service.getHealthCheck().getTest())) {
+            cmd.withHealthcheck(toHealthCheck(service.getHealthCheck()));
+        }
+        return cmd;
+    }
+
+    /**
+     * 删除同名的残留容器（上次启动失败或目录被重建时可能存在）
+     */
+    private void removeStaleContainer(String containerName) {
+        if (!StringUtils.hasText(containerName)) {
+            return;
+        }
+        List<Container> containers = dockerClient.listContainersCmd()
+            .withShowAll(true)
+            .withNameFilter(Collections.singletonList(containerName))
+            .exec();
+        for (Container container : containers) {
+            if (container.getNames() == null) {
+                continue;
+            }
+            for (String name : container.getNames()) {
+                if (("/" + containerName).equals(name)) {
+                    try {
+                        dockerClient.removeContainerCmd(container.getId()).withForce(true).exec();
+                        dockerStateCache.evictContainer(container.getId());
+                        log.info("删除残留容器: name={}, containerId={}", containerName, container.getId());
+                    } catch (NotFoundException e) {
+                        log.debug("残留容器已不存在: {}", containerName);
+                    }
+                }
+            }
+        }
+    }
+
+    private void pullImage(String image) {
+        log.info("本地不存在镜像，开始拉取: {}", image);
+        try {
+            boolean completed = dockerClient.pullImageCmd(image)
+                .exec(new PullImageResultCallback())
+                .awaitCompletion(pullTimeoutSeconds, TimeUnit.SECONDS);
+            if (!completed) {
+                throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                    "拉取镜像超时: " + image);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                "拉取镜像被中断: " + image, e);
+        }
+    }
+
+    /**
+     * 将数据卷配置转换为 Bind（相对路径按 compose 规则相对于环境目录解析）
+     */
+    private Bind toBind(VolumeConfig volume, String workingDir) {
+        String hostPath = volume.getHostPath();
+        if (hostPath.startsWith(".")) {
+            hostPath = Paths.get(workingDir).resolve(hostPath).normalize().toAbsolutePath().toString();
+        }
+        AccessMode accessMode = AccessMode.rw;
+        String options = volume.getOptions();
+        if (options != null && options.replace(":", "").trim().startsWith("ro")) {
+            accessMode = AccessMode.ro;
+        }
+        return new Bind(hostPath, new Volume(volume.getContainerPath()), accessMode);
+    }
+
+    private HealthCheck toHealthCheck(HealthCheckConfig config) {
+        String test = config.getTest().trim();
+        List<String> testCmd;
+        if (test.startsWith("[")) {
+            try {
+                testCmd = objectMapper.readValue(test, new TypeReference<List<String>>() {});
+            } catch (Exception e) {
+                throw new ContainerException(ContainerException.ERROR_CODE_START_FAILED,
+                    "健康检查命令格式错误: " + test, e);
+            }
+        } else {
+            testCmd = new ArrayList<>();
+            testCmd.add("CMD-SHELL");
+            testCmd.add(test);
+        }
+        return new HealthCheck()
+            .withTest(testCmd)
+            .withInterval(parseDurationNanos(config.getInterval()))
+            .withTimeout(parseDurationNanos(config.getTimeout()))
+            .withRetries(config.getRetries())
+            .withStartPeriod(parseDurationNanos(config.getStartPeriod()));
+    }
+
+    /**
+     * 解析 compose 时长格式（如 30s、1m30s、500ms），返回纳秒
+     */
+    static Long parseDurationNanos(String duration) {
+        if (!StringUtils.hasText(duration)) {
+            return null;
+        }
+        Matcher matcher = DURATION_PATTERN.matcher(duration.trim());
+        double nanos = 0;
+        boolean matched = false;
+        while (matcher.find()) {
+            matched = true;
+            double value = Double.parseDouble(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "ns": nanos += value; break;
+                case "us": nanos += value * 1_000L; break;
+                case "ms": nanos += value * 1_000_000L; break;
+                case "s": nanos += value * 1_000_000_000L; break;
+                case "m": nanos += value * 60_000_000_000L; break;
+                default: nanos += value * 3_600_000_000_000L; break;
+            }
+        }
+        return matched ? (long) nanos : null;
+    }
+
+    /**
+     * 按 shell 规则拆分命令（与 compose 对字符串 command 的处理一致，支持引号和转义）
+     */
+    static List<String> splitCommand(String command) {
+        List<String> args = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inArg = false;
+        char quote = 0;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && quote == '"' && i + 1 < command.length()) {
+                    current.append(command.charAt(++i));
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inArg = true;
+            } else if (c == '\\' && i + 1 < command.length()) {
+                current.append(command.charAt(++i));
+                inArg = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArg) {
+                    args.add(current.toString());
+                    current.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                current.append(c);
+                inArg = true;
+            }
+        }
+        if (inArg) {
+            args.add(current.toString());
+        }
+        return args;
+    }
+}
@@ -0,0 +1,169 @@
+package org.dockerenvs.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dao.mapper.PortUsageMapper;
+import org.dockerenvs.entity.PortUsage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 端口租约清理
+ * 端口分配时授予租约（env.port.lease.ttl-seconds），释放失败（销毁流程只记录日志）的端口不再永久占用：
+ * - 每轮先为未销毁环境占用的端口续期（一条 UPDATE ... JOIN），启动对账完成后也会续期一次
+ * - 再回收租约已过期、且所属环境已销毁或不存在的端口（确认端口期间未被重新分配）
+ * - 统计回收数量和最近一小时的泄漏速率，以及当前空闲端口数
+ */
+@Slf4j
+@Service
+public class PortLeaseService {
+
+    private static final long LEAK_RATE_WINDOW_MS = TimeUnit.HOURS.toMillis(1);
+
+    @Autowired
+    private PortUsageMapper portUsageMapper;
+
+    @Autowired
+    private PortManagerService portManagerService;
+
+    @Value("${env.port.lease.enabled:true}")
+    private boolean enabled;
+
+    @Value("${env.port.lease.sweep-interval-ms:60000}")
+    private long sweepIntervalMs;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "port-lease-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 最近一小时内每次回收的时间和数量
+     */
+    private final Deque<long[]> recentReclaims = new ArrayDeque<>();
+
+    private volatile LocalDateTime lastSweepTime;
+    private volatile long lastSweepMs;
+    private volatile int lastRenewed;
+    private volatile int lastReclaimed;
+    private final AtomicLong sweepCount = new AtomicLong();
+    private final AtomicLong renewedCount = new AtomicLong();
+    private final AtomicLong reclaimedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("端口租约清理已禁用");
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::sweepSafely, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void sweepSafely() {
+        long start = System.currentTimeMillis();
+        try {
+            sweep();
+        } catch (Exception e) {
+            log.warn("端口租约清理失败: {}", e.getMessage(), e);
+        } finally {
+            lastSweepTime = LocalDateTime.now();
+            lastSweepMs = System.currentTimeMillis() - start;
+        }
+    }
+
+    private void sweep() {
+        sweepCount.incrementAndGet();
+        renewLeases();
+
+        List<PortUsage> expired = portUsageMapper.selectExpiredLeases(portManagerService.getLeaseTtlSeconds());
+        if (expired.isEmpty()) {
+            lastReclaimed = 0;
+            return;
+        }
+        int reclaimed = portManagerService.reclaimPorts(expired);
+        skippedCount.addAndGet(expired.size() - reclaimed);
+        reclaimedCount.addAndGet(reclaimed);
+        lastReclaimed = reclaimed;
+        synchronized (recentReclaims) {
+            recentReclaims.addLast(new long[]{System.currentTimeMillis(), reclaimed});
+        }
+        for (PortUsage usage : expired) {
+            log.info("回收租约过期的端口: port={}, envId={}, leaseExpiresTime={}",
+                usage.getPort(), usage.getEnvId(), usage.getLeaseExpiresTime());
+        }
+        log.warn("回收泄漏端口: {} 个（候选 {} 个）", reclaimed, expired.size());
+    }
+
+    /**
+     * 为未销毁环境占用的端口续期租约
+     * @return 续期的端口数
+     */
+    public int renewLeases() {
+        int renewed = portUsageMapper.renewLeases(portManagerService.getLeaseTtlSeconds());
+        renewedCount.addAndGet(renewed);
+        lastRenewed = renewed;
+        log.debug("端口租约续期: {} 个", renewed);
+        return renewed;
+    }
+
+    /**
+     * 最近一小时回收的泄漏端口数
+     */
+    private long reclaimedLastHour() {
+        long cutoff = System.currentTimeMillis() - LEAK_RATE_WINDOW_MS;
+        long total = 0;
+        synchronized (recentReclaims) {
+            while (!recentReclaims.isEmpty() && recentReclaims.peekFirst()[0] < cutoff) {
+                recentReclaims.pollFirst();
+            }
+            for (long[] entry : recentReclaims) {
+                total += entry[1];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 租约清理指标（续期/回收数量、泄漏速率、空闲端口数）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ttlSeconds", portManagerService.getLeaseTtlSeconds());
+        stats.put("sweepIntervalMs", sweepIntervalMs);
+        stats.put("lastSweepTime", lastSweepTime);
+        stats.put("lastSweepMs", lastSweepMs);
+        stats.put("sweeps", sweepCount.get());
+        stats.put("lastRenewed", lastRenewed);
+        stats.put("renewed", renewedCount.get());
+        stats.put("lastReclaimed", lastReclaimed);
+        stats.put("reclaimed", reclaimedCount.get());
+        stats.put("reclaimSkipped", skippedCount.get());
+        stats.put("leaksLastHour", reclaimedLastHour());
+        Map<String, Object> ports = portManagerService.getStats();
+        stats.put("freePorts", ports.get("free"));
+        stats.put("usedPorts", ports.get("used"));
+        return stats;
+    }
+}
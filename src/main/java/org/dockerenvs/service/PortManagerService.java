@@ -4,21 +4,55 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import lombok.extern.slf4j.Slf4j;
 import org.dockerenvs.dao.mapper.PortUsageMapper;
+import org.dockerenvs.dao.mapper.VirtualEnvMapper;
+import org.dockerenvs.dto.CommandResult;
 import org.dockerenvs.entity.PortUsage;
+import org.dockerenvs.entity.VirtualEnv;
 import org.dockerenvs.exception.PortException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
 /**
  * 端口管理服务
+ * 默认（env.port.allocator=bitmap）在内存位图中分配和释放端口：
+ * - 首次使用时按 port_usage 中的 USED 记录和未销毁环境记录中的端口重建位图，之后分配和释放只做一次 CAS，不访问数据库
+ * - 端口变更按端口合并后由后台线程批量写回 port_usage
+ * - 宿主机已监听的端口从 /proc/net/tcp(6) 一次读出并短时缓存，读不到时（非 Linux）只对候选端口尝试绑定
+ * 多个管理服务实例共享同一数据库时配置 env.port.allocator=db，逐个端口在数据库中条件抢占
+ * env.port.mode=ephemeral 时不再分配端口：编排文件只声明容器端口，宿主机端口由 Docker 守护进程分配，
+ * 容器启动后从端口映射读回；此时只有端口范围内（切换模式前分配）的端口仍由本服务释放
+ * env.port.mode=none 时不发布宿主机端口，环境只能通过内置网关访问
+ * 声明了多个端口的实验按环境分配一组端口（可要求连续），整组一起分配、一起释放
  */
 @Slf4j
 @Service
@@ -27,18 +61,206 @@ public class PortManagerService {
     @Autowired
     private PortUsageMapper portUsageMapper;
     
+    @Autowired
+    private VirtualEnvMapper virtualEnvMapper;
+    
+    @Autowired
+    private ProcessRunner processRunner;
+    
     @Value("${env.port.min:18000}")
     private Integer minPort;
     
     @Value("${env.port.max:19999}")
     private Integer maxPort;
     
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
     /**
-     * 分配端口（使用数据库锁保证并发安全）
+     * 分配方式：bitmap=内存位图（默认），db=数据库逐个抢占
+     */
+    @Value("${env.port.allocator:bitmap}")
+    private String allocator;
+    
+    /**
+     * 宿主机端口来源：range=在 [min, max] 范围内分配（默认），ephemeral=由 Docker 守护进程分配，none=不发布
+     */
+    @Value("${env.port.mode:range}")
+    private String mode;
+    
+    @Value("${env.port.flush-interval-ms:200}")
+    private long flushIntervalMs;
+    
+    @Value("${env.port.host-scan-interval-ms:5000}")
+    private long hostScanIntervalMs;
+    
+    /**
+     * 端口租约期限（秒）：分配时授予，由租约清理任务为未销毁的环境续期，过期且环境已不存在的端口被回收
+     */
+    @Value("${env.port.lease.ttl-seconds:1800}")
+    private long leaseTtlSeconds;
+    
+    /**
+     * 待写回数据库的端口变更（按端口合并，只保留最新状态），envId 为null表示释放
+     */
+    private final Map<Integer, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "port-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private PortBitmap bitmap;
+    
+    /**
+     * 位图中每个已分配端口所属的环境ID（回收租约时据此确认端口未被重新分配）
+     */
+    private AtomicReferenceArray<String> owners;
+    
+    /**
+     * 位图是否已从数据库重建（首次分配/释放时加载，数据库不可用时下次使用再重试）
+     */
+    private volatile boolean bitmapLoaded;
+    private final Object loadLock = new Object();
+    
+    /**
+     * 下一次分配的起始位置（轮转分配，刚释放的端口不会立即被复用）
+     */
+    private final AtomicInteger nextHint = new AtomicInteger();
+    
+    /**
+     * 宿主机正在监听的端口快照，null 表示无法读取 /proc/net/tcp
+     */
+    private volatile Set<Integer> hostListeners;
+    private volatile long hostScannedAt;
+    
+    private final AtomicLong allocatedCount = new AtomicLong();
+    private final AtomicLong releasedCount = new AtomicLong();
+    private final AtomicLong hostBusySkipped = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    
+    @PostConstruct
+    public void init() {
+        if (!useBitmap()) {
+            log.info("端口分配方式: db");
+            return;
+        }
+        bitmap = new PortBitmap(maxPort - minPort + 1);
+        owners = new AtomicReferenceArray<>(bitmap.size());
+        flushExecutor.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs,
+            TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        flushExecutor.shutdownNow();
+        if (useBitmap()) {
+            // 退出前写回剩余的端口变更
+            flushSafely();
+        }
+    }
+    
+    private boolean useBitmap() {
+        return !"db".equalsIgnoreCase(allocator);
+    }
+    
+    /**
+     * 首次使用位图前从数据库重建：port_usage 中的 USED 记录，加上未销毁环境记录中的主端口和附加端口
+     * 端口变更延迟写回，进程在写回前退出时端口表会缺少最近的分配，而环境记录在创建时同步写入；
+     * 这些端口按环境记录补记并排队写回，不等启动对账完成，分配时就不会把在用的端口交给新环境
+     */
+    private void ensureBitmapLoaded() {
+        if (bitmapLoaded) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (bitmapLoaded) {
+                return;
+            }
+            LambdaQueryWrapper<PortUsage> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.eq(PortUsage::getStatus, "USED");
+            for (PortUsage usage : portUsageMapper.selectList(queryWrapper)) {
+                Integer port = usage.getPort();
+                if (port != null && port >= minPort && port <= maxPort) {
+                    bitmap.trySet(port - minPort);
+                    owners.set(port - minPort, usage.getEnvId());
+                }
+            }
+            int recovered = 0;
+            List<VirtualEnv> envs = virtualEnvMapper.selectList(new LambdaQueryWrapper<VirtualEnv>()
+                .select(VirtualEnv::getEnvId, VirtualEnv::getPort, VirtualEnv::getExtraPorts)
+                .ne(VirtualEnv::getStatus, "DESTROYED"));
+            for (VirtualEnv env : envs) {
+                for (Integer port : envPorts(env)) {
+                    if (port < minPort || port > maxPort || env.getEnvId().equals(owners.get(port - minPort))) {
+                        continue;
+                    }
+                    bitmap.trySet(port - minPort);
+                    owners.set(port - minPort, env.getEnvId());
+                    enqueueWrite(port, env.getEnvId());
+                    recovered++;
+                }
+            }
+            bitmapLoaded = true;
+            log.info("端口位图已重建: 范围 [{}-{}], 已使用 {} 个, 按环境记录补记 {} 个",
+                minPort, maxPort, bitmap.cardinality(), recovered);
+        }
+    }
+    
+    /**
+     * 宿主机端口是否由 Docker 守护进程分配（创建环境时不分配端口，容器启动后读回实际端口）
+     */
+    public boolean isEphemeral() {
+        return "ephemeral".equalsIgnoreCase(mode);
+    }
+    
+    /**
+     * 是否发布宿主机端口（none 模式下环境只能通过网关访问）
+     */
+    public boolean isPublishing() {
+        return !"none".equalsIgnoreCase(mode);
+    }
+    
+    /**
+     * 创建环境时是否由本服务分配端口（range 模式）
+     */
+    public boolean isAllocating() {
+        return !isEphemeral() && isPublishing();
+    }
+    
+    /**
+     * 端口是否由本服务分配和释放（守护进程分配的端口不在端口表中）
+     */
+    public boolean isManagedPort(Integer port) {
+        return port != null && (isAllocating() || (port >= minPort && port <= maxPort));
+    }
+    
+    /**
+     * 分配端口
      */
-    @Transactional(rollbackFor = Exception.class)
     public Integer assignPort(String envId) {
-        // 1. 获取已使用的端口（在事务中查询，保证一致性）
+        if (useBitmap()) {
+            ensureBitmapLoaded();
+            Integer port = allocateFromBitmap(envId);
+            if (port == null) {
+                throw new PortException(PortException.ERROR_CODE_NO_AVAILABLE_PORT,
+                    String.format("没有可用的端口，端口范围 [%d-%d] 已用完", minPort, maxPort));
+            }
+            enqueueWrite(port, envId);
+            log.info("分配端口: {} 给环境: {}", port, envId);
+            return port;
+        }
+        return assignPortInDb(envId);
+    }
+    
+    /**
+     * 数据库方式分配端口（逐个端口条件更新/插入抢占，每次抢占单独提交，不在扫描端口期间持有事务）
+     */
+    private Integer assignPortInDb(String envId) {
+        // 1. 获取已使用的端口（仅用于跳过，最终以条件更新/主键插入的结果为准）
         Set<Integer> usedPorts = getUsedPorts();
         
         // 2. 从最小端口开始查找可用端口
@@ -65,7 +287,8 @@ public class PortManagerService {
                                      .eq(PortUsage::getStatus, "FREE")
                                      .set(PortUsage::getEnvId, envId)
                                      .set(PortUsage::getStatus, "USED")
-                                     .set(PortUsage::getAllocatedTime, java.time.LocalDateTime.now());
+                                     .set(PortUsage::getAllocatedTime, java.time.LocalDateTime.now())
+                                     .set(PortUsage::getLeaseExpiresTime, leaseExpiresTime());
                         
                         int updated = portUsageMapper.update(null, updateWrapper);
                         if (updated > 0) {
@@ -85,6 +308,7 @@ public class PortManagerService {
                     portUsage.setEnvId(envId);
                     portUsage.setStatus("USED");
                     portUsage.setAllocatedTime(java.time.LocalDateTime.now());
+                    portUsage.setLeaseExpiresTime(leaseExpiresTime());
                     
                     try {
                         portUsageMapper.insert(portUsage);
@@ -107,30 +331,627 @@ public class PortManagerService {
     }
     
     /**
-     * 释放端口
+     * 批量分配端口（全部分配成功或全部不分配）
+     * @param envIds 环境ID列表
+     * @return 环境ID到端口的映射（顺序与 envIds 一致）
+     */
+    public Map<String, Integer> assignPorts(List<String> envIds) {
+        Map<String, Integer> assigned = new LinkedHashMap<>();
+        if (envIds.isEmpty()) {
+            return assigned;
+        }
+        if (!useBitmap()) {
+            Set<Integer> hostBusy = hostBusySnapshot();
+            return transactionTemplate.execute(status -> assignPortsInDb(envIds, hostBusy));
+        }
+        ensureBitmapLoaded();
+        for (String envId : envIds) {
+            Integer port = allocateFromBitmap(envId);
+            if (port == null) {
+                for (Integer allocated : assigned.values()) {
+                    owners.set(allocated - minPort, null);
+                    bitmap.clear(allocated - minPort);
+                }
+                throw new PortException(PortException.ERROR_CODE_NO_AVAILABLE_PORT,
+                    String.format("可用端口不足，需要 %d 个，端口范围 [%d-%d] 内仅剩 %d 个",
+                        envIds.size(), minPort, maxPort, assigned.size()));
+            }
+            assigned.put(envId, port);
+        }
+        assigned.forEach((envId, port) -> enqueueWrite(port, envId));
+        log.info("批量分配端口: {} 个", assigned.size());
+        return assigned;
+    }
+    
+    /**
+     * 数据库方式批量分配端口（在事务内执行：锁定端口范围、挑选空闲端口、一条语句写入）
+     * @param hostBusy 事务开始前取得的宿主机占用端口快照，持有行锁期间不再逐个探测端口
+     */
+    private Map<String, Integer> assignPortsInDb(List<String> envIds, Set<Integer> hostBusy) {
+        Map<String, Integer> assigned = new LinkedHashMap<>();
+        Set<Integer> usedPorts = portUsageMapper.selectRangeForUpdate(minPort, maxPort).stream()
+            .filter(usage -> "USED".equals(usage.getStatus()))
+            .map(PortUsage::getPort)
+            .collect(Collectors.toSet());
+        
+        List<PortUsage> reserved = new ArrayList<>();
+        Iterator<String> pending = envIds.iterator();
+        for (int port = minPort; port <= maxPort && pending.hasNext(); port++) {
+            if (usedPorts.contains(port) || hostBusy.contains(port)) {
+                continue;
+            }
+            PortUsage portUsage = new PortUsage();
+            portUsage.setPort(port);
+            portUsage.setEnvId(pending.next());
+            reserved.add(portUsage);
+        }
+        if (pending.hasNext()) {
+            throw new PortException(PortException.ERROR_CODE_NO_AVAILABLE_PORT,
+                String.format("可用端口不足，需要 %d 个，端口范围 [%d-%d] 内仅剩 %d 个",
+                    envIds.size(), minPort, maxPort, reserved.size()));
+        }
+        
+        portUsageMapper.batchMarkUsed(reserved, leaseTtlSeconds);
+        for (PortUsage portUsage : reserved) {
+            assigned.put(portUsage.getEnvId(), portUsage.getPort());
+        }
+        log.info("批量分配端口: {} 个", reserved.size());
+        return assigned;
+    }
+    
+    /**
+     * 为环境分配一组端口（多端口实验的每个容器端口对应一个宿主机端口），全部分配成功或全部不分配
+     * @param count 端口数
+     * @param contiguous 是否要求端口连续
+     * @return 端口组（按分配顺序）
      */
-    @Transactional(rollbackFor = Exception.class)
-    public void releasePort(Integer port) {
+    public List<Integer> assignPortBlock(String envId, int count, boolean contiguous) {
+        if (count <= 1) {
+            return Collections.singletonList(assignPort(envId));
+        }
+        List<Integer> block = assignPortBlocks(Collections.singletonList(envId), count, contiguous).get(envId);
+        log.info("分配端口组: {} 给环境: {}", block, envId);
+        return block;
+    }
+    
+    /**
+     * 批量为环境分配端口组（全部分配成功或全部不分配）
+     * @param envIds 环境ID列表
+     * @param count 每个环境的端口数
+     * @param contiguous 同一环境的端口是否要求连续
+     * @return 环境ID到端口组的映射（顺序与 envIds 一致）
+     */
+    public Map<String, List<Integer>> assignPortBlocks(List<String> envIds, int count, boolean contiguous) {
+        Map<String, List<Integer>> assigned = new LinkedHashMap<>();
+        if (count <= 1) {
+            assignPorts(envIds).forEach((envId, port) -> assigned.put(envId, Collections.singletonList(port)));
+            return assigned;
+        }
+        if (envIds.isEmpty()) {
+            return assigned;
+        }
+        if (!useBitmap()) {
+            Set<Integer> hostBusy = hostBusySnapshot();
+            return transactionTemplate.execute(status -> assignPortBlocksInDb(envIds, count, contiguous, hostBusy));
+        }
+        ensureBitmapLoaded();
+        for (String envId : envIds) {
+            List<Integer> block = contiguous
+                ? allocateRunFromBitmap(envId, count) : allocateBlockFromBitmap(envId, count);
+            if (block == null) {
+                for (List<Integer> allocated : assigned.values()) {
+                    allocated.forEach(port -> {
+                        owners.set(port - minPort, null);
+                        bitmap.clear(port - minPort);
+                    });
+                }
+                throw new PortException(PortException.ERROR_CODE_NO_AVAILABLE_PORT,
+                    String.format("可用端口不足，需要 %d 组%s端口（每组 %d 个），端口范围 [%d-%d] 内仅能分配 %d 组",
+                        envIds.size(), contiguous ? "连续" : "", count, minPort, maxPort, assigned.size()));
+            }
+            assigned.put(envId, block);
+        }
+        assigned.forEach((envId, block) -> block.forEach(port -> enqueueWrite(port, envId)));
+        log.info("批量分配端口组: {} 组，每组 {} 个", assigned.size(), count);
+        return assigned;
+    }
+    
+    /**
+     * 数据库方式批量分配端口组（在事务内执行：锁定端口范围、按顺序挑选空闲端口、一条语句写入）
+     * 要求连续时遇到不可用的端口即重新开始凑组
+     * @param hostBusy 事务开始前取得的宿主机占用端口快照
+     */
+    private Map<String, List<Integer>> assignPortBlocksInDb(List<String> envIds, int count, boolean contiguous,
+                                                            Set<Integer> hostBusy) {
+        Map<String, List<Integer>> assigned = new LinkedHashMap<>();
+        Set<Integer> usedPorts = portUsageMapper.selectRangeForUpdate(minPort, maxPort).stream()
+            .filter(usage -> "USED".equals(usage.getStatus()))
+            .map(PortUsage::getPort)
+            .collect(Collectors.toSet());
+        
+        List<PortUsage> reserved = new ArrayList<>();
+        Iterator<String> pending = envIds.iterator();
+        String envId = pending.next();
+        List<Integer> block = new ArrayList<>();
+        for (int port = minPort; port <= maxPort && envId != null; port++) {
+            if (usedPorts.contains(port) || hostBusy.contains(port)) {
+                if (contiguous) {
+                    block.clear();
+                }
+                continue;
+            }
+            block.add(port);
+            if (block.size() < count) {
+                continue;
+            }
+            for (Integer blockPort : block) {
+                PortUsage portUsage = new PortUsage();
+                portUsage.setPort(blockPort);
+                portUsage.setEnvId(envId);
+                reserved.add(portUsage);
+            }
+            assigned.put(envId, block);
+            block = new ArrayList<>();
+            envId = pending.hasNext() ? pending.next() : null;
+        }
+        if (envId != null) {
+            throw new PortException(PortException.ERROR_CODE_NO_AVAILABLE_PORT,
+                String.format("可用端口不足，需要 %d 组%s端口（每组 %d 个），端口范围 [%d-%d] 内仅能分配 %d 组",
+                    envIds.size(), contiguous ? "连续" : "", count, minPort, maxPort, assigned.size()));
+        }
+        
+        portUsageMapper.batchMarkUsed(reserved, leaseTtlSeconds);
+        log.info("批量分配端口组: {} 组，每组 {} 个", assigned.size(), count);
+        return assigned;
+    }
+    
+    /**
+     * 释放端口（仅当端口仍属于该环境时释放，已被重新分配给其他环境的端口保持不变）
+     */
+    public void releasePort(String envId, Integer port) {
         if (port == null) {
             log.warn("端口号为空，无法释放");
             return;
         }
-        
+        releasePorts(envId, Collections.singletonList(port));
+    }
+    
+    /**
+     * 批量释放环境的端口（一条 UPDATE 语句），仅释放仍属于该环境的端口：
+     * 重复或迟到的销毁不会释放已重新分配给其他环境的端口
+     * @return 释放的端口数
+     */
+    public int releasePorts(String envId, Collection<Integer> ports) {
+        List<PortUsage> owned = new ArrayList<>();
+        for (Integer port : ports) {
+            owned.add(portOf(envId, port));
+        }
+        return releaseOwnedPorts(owned);
+    }
+    
+    /**
+     * 批量释放多个环境的端口（一条 UPDATE 语句），仅释放仍属于对应环境的端口
+     * @return 释放的端口数
+     */
+    public int releaseEnvPorts(Collection<VirtualEnv> envs) {
+        List<PortUsage> owned = new ArrayList<>();
+        for (VirtualEnv env : envs) {
+            for (Integer port : envPorts(env)) {
+                owned.add(portOf(env.getEnvId(), port));
+            }
+        }
+        return releaseOwnedPorts(owned);
+    }
+    
+    private static PortUsage portOf(String envId, Integer port) {
+        PortUsage usage = new PortUsage();
+        usage.setPort(port);
+        usage.setEnvId(envId);
+        return usage;
+    }
+    
+    private int releaseOwnedPorts(List<PortUsage> ports) {
+        if (!isAllocating()) {
+            ports = ports.stream().filter(usage -> isManagedPort(usage.getPort())).collect(Collectors.toList());
+        }
+        if (ports.isEmpty()) {
+            return 0;
+        }
+        if (useBitmap()) {
+            int released = freeOwnedInBitmap(ports);
+            log.info("批量释放端口: {} 个", released);
+            return released;
+        }
         try {
-            PortUsage portUsage = portUsageMapper.selectById(port);
-            if (portUsage != null) {
-                portUsage.setStatus("FREE");
-                portUsage.setEnvId(null); // 清空环境ID
-                portUsageMapper.updateById(portUsage);
-                log.info("释放端口: {}", port);
+            int released = portUsageMapper.reclaimLeases(ports);
+            log.info("批量释放端口: {} 个", released);
+            return released;
+        } catch (Exception e) {
+            log.error("批量释放端口失败: {} 个", ports.size(), e);
+            throw new PortException(PortException.ERROR_CODE_PORT_RELEASE_FAILED,
+                "批量释放端口失败: " + ports.size() + " 个", e);
+        }
+    }
+    
+    /**
+     * 把端口标记为已被指定环境占用（用于对账补记）
+     * @param ports 端口及其所属环境ID
+     */
+    public void markPortsUsed(List<PortUsage> ports) {
+        if (ports.isEmpty()) {
+            return;
+        }
+        if (useBitmap()) {
+            ensureBitmapLoaded();
+            for (PortUsage usage : ports) {
+                if (usage.getPort() >= minPort && usage.getPort() <= maxPort) {
+                    bitmap.trySet(usage.getPort() - minPort);
+                    owners.set(usage.getPort() - minPort, usage.getEnvId());
+                }
+                enqueueWrite(usage.getPort(), usage.getEnvId());
+            }
+            return;
+        }
+        portUsageMapper.batchMarkUsed(ports, leaseTtlSeconds);
+    }
+    
+    /**
+     * 回收租约已过期的泄漏端口：仅当端口仍属于记录中的环境（期间未被重新分配）时才释放
+     * @param leaked 端口及其记录中的环境ID
+     * @return 回收的端口数
+     */
+    public int reclaimPorts(List<PortUsage> leaked) {
+        if (leaked.isEmpty()) {
+            return 0;
+        }
+        if (!useBitmap()) {
+            return portUsageMapper.reclaimLeases(leaked);
+        }
+        return freeOwnedInBitmap(leaked);
+    }
+    
+    public long getLeaseTtlSeconds() {
+        return leaseTtlSeconds;
+    }
+    
+    private LocalDateTime leaseExpiresTime() {
+        return LocalDateTime.now().plusSeconds(leaseTtlSeconds);
+    }
+    
+    /**
+     * 从位图中分配一个空闲且未被宿主机占用的端口
+     * @return 端口，无可用端口时返回null
+     */
+    private Integer allocateFromBitmap(String envId) {
+        int size = bitmap.size();
+        int start = Math.floorMod(nextHint.get(), size);
+        Set<Integer> listeners = hostListeners();
+        // 先从起始位置找到末尾，再从头找到起始位置
+        for (int pass = 0; pass < 2; pass++) {
+            int from = pass == 0 ? start : 0;
+            int to = pass == 0 ? size : start;
+            int index = bitmap.nextClear(from, to);
+            while (index >= 0) {
+                int port = minPort + index;
+                boolean hostBusy = listeners != null ? listeners.contains(port) : !isPortAvailable(port);
+                if (hostBusy) {
+                    hostBusySkipped.incrementAndGet();
+                } else if (bitmap.trySet(index)) {
+                    owners.set(index, envId);
+                    nextHint.set(index + 1);
+                    allocatedCount.incrementAndGet();
+                    return port;
+                }
+                index = bitmap.nextClear(index + 1, to);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 从位图中逐个分配一组端口（不要求连续），不足时退回本组已分配的端口
+     * @return 端口组，可用端口不足时返回null
+     */
+    private List<Integer> allocateBlockFromBitmap(String envId, int count) {
+        List<Integer> block = new ArrayList<>(count);
+        while (block.size() < count) {
+            Integer port = allocateFromBitmap(envId);
+            if (port == null) {
+                for (Integer allocated : block) {
+                    owners.set(allocated - minPort, null);
+                    bitmap.clear(allocated - minPort);
+                }
+                allocatedCount.addAndGet(-block.size());
+                return null;
+            }
+            block.add(port);
+        }
+        return block;
+    }
+    
+    /**
+     * 从位图中分配一段连续的空闲端口（从轮转位置开始查找，找不到时从头查找）
+     * 整段空闲时逐位置位，置位途中被并发抢占则退回已置位的部分，从冲突位置之后继续查找
+     * @return 端口组，没有足够长的连续空闲段时返回null
+     */
+    private List<Integer> allocateRunFromBitmap(String envId, int count) {
+        int size = bitmap.size();
+        int start = Math.floorMod(nextHint.get(), size);
+        Set<Integer> listeners = hostListeners();
+        for (int pass = 0; pass < 2; pass++) {
+            int from = pass == 0 ? start : 0;
+            int to = pass == 0 ? size : start;
+            int index = bitmap.nextClear(from, to);
+            while (index >= 0 && index + count <= size) {
+                int blocked = -1;
+                for (int i = index; i < index + count; i++) {
+                    int port = minPort + i;
+                    if (bitmap.isSet(i)) {
+                        blocked = i;
+                        break;
+                    }
+                    if (listeners != null ? listeners.contains(port) : !isPortAvailable(port)) {
+                        hostBusySkipped.incrementAndGet();
+                        blocked = i;
+                        break;
+                    }
+                }
+                if (blocked < 0) {
+                    for (int i = index; i < index + count; i++) {
+                        if (!bitmap.trySet(i)) {
+                            blocked = i;
+                            for (int j = index; j < i; j++) {
+                                bitmap.clear(j);
+                            }
+                            break;
+                        }
+                    }
+                }
+                if (blocked < 0) {
+                    List<Integer> block = new ArrayList<>(count);
+                    for (int i = index; i < index + count; i++) {
+                        owners.set(i, envId);
+                        block.add(minPort + i);
+                    }
+                    nextHint.set(index + count);
+                    allocatedCount.addAndGet(count);
+                    return block;
+                }
+                index = bitmap.nextClear(blocked + 1, to);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 环境占用的全部宿主机端口：主端口加附加端口（多端口实验的整组端口一起释放）
+     */
+    public static List<Integer> envPorts(VirtualEnv env) {
+        List<Integer> ports = new ArrayList<>();
+        if (env.getPort() != null) {
+            ports.add(env.getPort());
+        }
+        ports.addAll(parseExtraPorts(env.getExtraPorts()).values());
+        return ports;
+    }
+    
+    /**
+     * 解析附加端口映射（格式: "18001:9090,18002:9091/udp"，宿主机端口:容器端口）
+     * @return 容器端口到宿主机端口的映射
+     */
+    public static Map<String, Integer> parseExtraPorts(String extraPorts) {
+        Map<String, Integer> mappings = new LinkedHashMap<>();
+        if (extraPorts == null || extraPorts.trim().isEmpty()) {
+            return mappings;
+        }
+        for (String mapping : extraPorts.split(",")) {
+            int colon = mapping.indexOf(':');
+            if (colon > 0) {
+                try {
+                    mappings.put(mapping.substring(colon + 1).trim(), Integer.valueOf(mapping.substring(0, colon).trim()));
+                } catch (NumberFormatException e) {
+                    log.warn("附加端口映射格式错误: {}", mapping);
+                }
+            }
+        }
+        return mappings;
+    }
+    
+    /**
+     * 在位图中释放仍属于记录中环境的端口并排队写回
+     * 端口所属环境以 CAS 清空，期间已被重新分配给其他环境（或已释放）的端口跳过，不写回
+     * @return 释放的端口数
+     */
+    private int freeOwnedInBitmap(List<PortUsage> ports) {
+        ensureBitmapLoaded();
+        int released = 0;
+        for (PortUsage usage : ports) {
+            Integer port = usage.getPort();
+            if (port == null) {
+                continue;
+            }
+            if (port >= minPort && port <= maxPort) {
+                int index = port - minPort;
+                // 已被重新分配给其他环境（写回前数据库仍是旧记录）时跳过；CAS 按引用比较，用读到的所属环境
+                String owner = owners.get(index);
+                if (!bitmap.isSet(index) || !Objects.equals(owner, usage.getEnvId())
+                    || !owners.compareAndSet(index, owner, null)) {
+                    continue;
+                }
+                bitmap.clear(index);
+                released++;
+            }
+            // 范围外的端口（范围配置调整过）也写回数据库
+            enqueueWrite(port, null);
+        }
+        releasedCount.addAndGet(released);
+        return released;
+    }
+    
+    private void enqueueWrite(Integer port, String envId) {
+        pendingWrites.put(port, new PendingWrite(envId));
+    }
+    
+    private void flushSafely() {
+        try {
+            flushWrites();
+        } catch (Exception e) {
+            log.warn("端口变更写回失败: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 把合并后的端口变更批量写回数据库：占用用一条 INSERT ... ON DUPLICATE KEY UPDATE，释放用一条 UPDATE
+     * 写入失败时放回队列（期间有更新的变更则以更新的为准），下个周期重试
+     */
+    private void flushWrites() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        Map<Integer, PendingWrite> batch = new LinkedHashMap<>();
+        for (Integer port : new ArrayList<>(pendingWrites.keySet())) {
+            PendingWrite write = pendingWrites.remove(port);
+            if (write != null) {
+                batch.put(port, write);
+            }
+        }
+        List<PortUsage> used = new ArrayList<>();
+        List<Integer> freed = new ArrayList<>();
+        batch.forEach((port, write) -> {
+            if (write.envId != null) {
+                PortUsage usage = new PortUsage();
+                usage.setPort(port);
+                usage.setEnvId(write.envId);
+                used.add(usage);
             } else {
-                log.warn("端口记录不存在，无法释放: {}", port);
+                freed.add(port);
+            }
+        });
+        try {
+            if (!used.isEmpty()) {
+                portUsageMapper.batchMarkUsed(used, leaseTtlSeconds);
+            }
+            if (!freed.isEmpty()) {
+                LambdaUpdateWrapper<PortUsage> updateWrapper = new LambdaUpdateWrapper<>();
+                updateWrapper.in(PortUsage::getPort, freed)
+                             .set(PortUsage::getStatus, "FREE")
+                             .set(PortUsage::getEnvId, null);
+                portUsageMapper.update(null, updateWrapper);
             }
+            flushCount.incrementAndGet();
+            flushedRows.addAndGet(batch.size());
         } catch (Exception e) {
-            log.error("释放端口失败: port={}", port, e);
-            throw new PortException(PortException.ERROR_CODE_PORT_RELEASE_FAILED,
-                "释放端口失败: " + port, e);
+            flushFailures.incrementAndGet();
+            batch.forEach(pendingWrites::putIfAbsent);
+            throw e;
+        }
+    }
+    
+    /**
+     * 宿主机正在监听的端口（快照超过 host-scan-interval-ms 后重新读取）
+     * @return 端口集合；无法读取 /proc/net/tcp 时返回null
+     */
+    private Set<Integer> hostListeners() {
+        long now = System.currentTimeMillis();
+        if (now - hostScannedAt > hostScanIntervalMs) {
+            synchronized (this) {
+                if (now - hostScannedAt > hostScanIntervalMs) {
+                    hostListeners = scanHostListeners();
+                    hostScannedAt = System.currentTimeMillis();
+                }
+            }
+        }
+        return hostListeners;
+    }
+    
+    /**
+     * 宿主机占用端口的快照（在锁定端口范围的事务之外取得）：优先读取 /proc/net 监听表，
+     * 不可读时逐个探测端口范围内未记录为 USED 的端口
+     */
+    private Set<Integer> hostBusySnapshot() {
+        Set<Integer> listeners = hostListeners();
+        if (listeners != null) {
+            return listeners;
+        }
+        Set<Integer> usedPorts = getUsedPorts();
+        Set<Integer> busy = new HashSet<>();
+        for (int port = minPort; port <= maxPort; port++) {
+            if (!usedPorts.contains(port) && !isPortAvailable(port)) {
+                busy.add(port);
+            }
+        }
+        return busy;
+    }
+    
+    /**
+     * 从 /proc/net/tcp 和 /proc/net/tcp6 读出处于 LISTEN 状态（st=0A）的本地端口
+     */
+    private Set<Integer> scanHostListeners() {
+        Set<Integer> listeners = new HashSet<>();
+        boolean readable = false;
+        for (String file : new String[]{"/proc/net/tcp", "/proc/net/tcp6"}) {
+            Path path = Paths.get(file);
+            if (!Files.isReadable(path)) {
+                continue;
+            }
+            try {
+                List<String> lines = Files.readAllLines(path);
+                readable = true;
+                listeners.addAll(parseListenerPorts(lines));
+            } catch (IOException | NumberFormatException e) {
+                log.warn("读取宿主机监听端口失败: {}, {}", file, e.getMessage());
+            }
+        }
+        return readable ? listeners : null;
+    }
+    
+    /**
+     * 解析 /proc/net/tcp 格式的内容，返回处于 LISTEN 状态的本地端口
+     */
+    static Set<Integer> parseListenerPorts(List<String> lines) {
+        Set<Integer> listeners = new HashSet<>();
+        // 第一行是表头：sl local_address rem_address st ...
+        for (int i = 1; i < lines.size(); i++) {
+            String[] fields = lines.get(i).trim().split("\\s+");
+            if (fields.length < 4 || !"0A".equals(fields[3])) {
+                continue;
+            }
+            String localAddress = fields[1];
+            int colon = localAddress.lastIndexOf(':');
+            if (colon >= 0) {
+                listeners.add(Integer.parseInt(localAddress.substring(colon + 1), 16));
+            }
+        }
+        return listeners;
+    }
+    
+    /**
+     * 端口分配指标（分配方式、范围、已用/空闲数、待写回数、写回次数与失败数）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", isAllocating() ? "range" : isEphemeral() ? "ephemeral" : "none");
+        stats.put("allocator", useBitmap() ? "bitmap" : "db");
+        stats.put("minPort", minPort);
+        stats.put("maxPort", maxPort);
+        if (useBitmap()) {
+            int used = bitmap.cardinality();
+            stats.put("loaded", bitmapLoaded);
+            stats.put("used", used);
+            stats.put("free", bitmap.size() - used);
+            Set<Integer> listeners = hostListeners;
+            stats.put("hostListenerScan", listeners != null);
+            stats.put("allocated", allocatedCount.get());
+            stats.put("released", releasedCount.get());
+            stats.put("hostBusySkipped", hostBusySkipped.get());
+            stats.put("pendingWrites", pendingWrites.size());
+            stats.put("flushes", flushCount.get());
+            stats.put("flushedRows", flushedRows.get());
+            stats.put("flushFailures", flushFailures.get());
+        } else {
+            stats.put("used", getUsedPorts().size());
         }
+        return stats;
     }
     
     /**
@@ -168,28 +989,104 @@ public class PortManagerService {
      * 检查端口是否被Docker占用
      */
     public boolean isPortUsedByDocker(int port) {
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "ps", "--format", "{{.Ports}}"
-            );
-            Process process = processBuilder.start();
-            
-            java.io.BufferedReader reader = new java.io.BufferedReader(
-                new java.io.InputStreamReader(process.getInputStream()));
-            
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.contains(":" + port + "->")) {
+        CommandResult result = processRunner.run(10, "docker", "ps", "--format", "{{.Ports}}");
+        if (!result.isSuccess()) {
+            log.warn("检查Docker端口占用失败: {}", result.getOutput());
+            return false;
+        }
+        return result.getStdoutLines().stream().anyMatch(line -> line.contains(":" + port + "->"));
+    }
+    
+    /**
+     * 待写回的端口变更
+     */
+    private static final class PendingWrite {
+        private final String envId;
+        
+        private PendingWrite(String envId) {
+            this.envId = envId;
+        }
+    }
+    
+    /**
+     * 无锁端口位图（每位对应范围内的一个端口，置位表示已分配）
+     */
+    static final class PortBitmap {
+        private final AtomicLongArray words;
+        private final int size;
+        
+        PortBitmap(int size) {
+            this.size = size;
+            this.words = new AtomicLongArray((size + 63) >>> 6);
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        /**
+         * 置位
+         * @return 是否由本次调用置位（已置位时返回false）
+         */
+        boolean trySet(int index) {
+            int w = index >>> 6;
+            long mask = 1L << index;
+            while (true) {
+                long word = words.get(w);
+                if ((word & mask) != 0) {
+                    return false;
+                }
+                if (words.compareAndSet(w, word, word | mask)) {
+                    return true;
+                }
+            }
+        }
+        
+        /**
+         * 清位
+         * @return 清位前是否已置位
+         */
+        boolean clear(int index) {
+            int w = index >>> 6;
+            long mask = 1L << index;
+            while (true) {
+                long word = words.get(w);
+                if ((word & mask) == 0) {
+                    return false;
+                }
+                if (words.compareAndSet(w, word, word & ~mask)) {
                     return true;
                 }
             }
-            
-            process.waitFor();
-            return false;
-        } catch (Exception e) {
-            log.warn("检查Docker端口占用失败", e);
-            return false;
+        }
+        
+        /**
+         * 查找 [from, to) 内第一个未置位的位置（按 64 位字跳过已满的部分）
+         * @return 位置，没有时返回 -1
+         */
+        int nextClear(int from, int to) {
+            int index = from;
+            while (index < to) {
+                long free = ~words.get(index >>> 6) & (-1L << index);
+                if (free != 0) {
+                    int found = ((index >>> 6) << 6) + Long.numberOfTrailingZeros(free);
+                    return found < to ? found : -1;
+                }
+                index = ((index >>> 6) + 1) << 6;
+            }
+            return -1;
+        }
+        
+        boolean isSet(int index) {
+            return (words.get(index >>> 6) & (1L << index)) != 0;
+        }
+        
+        int cardinality() {
+            int count = 0;
+            for (int i = 0; i < words.length(); i++) {
+                count += Long.bitCount(words.get(i));
+            }
+            return count;
         }
     }
 }
-
@@ -0,0 +1,347 @@
+package org.dockerenvs.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dto.CommandResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 外部命令执行服务
+ * 统一执行 docker 等外部命令：
+ * - 每条命令有执行期限，超时后终止进程（先 destroy，再 destroyForcibly）
+ * - 并发命令数有上限，超出时排队，排队超时则拒绝
+ * - 标准输出和错误输出都由后台线程持续读取，避免管道写满导致进程阻塞
+ * - 输出只保留最后 N 行（环形缓冲），单行长度有上限
+ * - 按命令统计次数、失败、超时和耗时
+ */
+@Slf4j
+@Service
+public class ProcessRunner {
+
+    @Value("${env.process.default-timeout-seconds:60}")
+    private long defaultTimeoutSeconds;
+
+    @Value("${env.process.max-concurrent:16}")
+    private int maxConcurrent;
+
+    @Value("${env.process.queue-timeout-seconds:30}")
+    private long queueTimeoutSeconds;
+
+    @Value("${env.process.max-output-lines:2000}")
+    private int maxOutputLines;
+
+    @Value("${env.process.max-line-length:4096}")
+    private int maxLineLength;
+
+    private Semaphore permits;
+
+    /**
+     * 读取进程输出的线程池（每个进程两个读取任务，线程按需创建）
+     */
+    private ExecutorService ioExecutor;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final Map<String, CommandStats> statsByCommand = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent, true);
+        AtomicInteger counter = new AtomicInteger();
+        ioExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), r -> {
+                Thread thread = new Thread(r, "process-io-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        ioExecutor.shutdownNow();
+    }
+
+    /**
+     * 使用默认超时执行命令
+     */
+    public CommandResult run(String... command) {
+        return run(Arrays.asList(command), null, defaultTimeoutSeconds, null);
+    }
+
+    /**
+     * 使用指定超时执行命令
+     */
+    public CommandResult run(long timeoutSeconds, String... command) {
+        return run(Arrays.asList(command), null, timeoutSeconds, null);
+    }
+
+    /**
+     * 执行命令
+     * @param command 命令及参数
+     * @param workDir 工作目录（可为null）
+     * @param timeoutSeconds 执行期限（秒），超时后终止进程
+     * @param lineListener 逐行输出回调（标准输出和错误输出，可为null），在读取线程中调用
+     * @return 执行结果；超时、被拒绝或启动失败时 exitCode 为 -1，不抛出异常
+     */
+    public CommandResult run(List<String> command, File workDir, long timeoutSeconds, Consumer<String> lineListener) {
+        CommandResult result = new CommandResult();
+        CommandStats stats = statsByCommand.computeIfAbsent(commandKey(command), k -> new CommandStats());
+
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(queueTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (!acquired) {
+            rejectedCount.incrementAndGet();
+            stats.rejected.incrementAndGet();
+            result.setRejected(true);
+            log.warn("外部命令排队超时被拒绝: {}", commandKey(command));
+            return result;
+        }
+
+        running.incrementAndGet();
+        long start = System.nanoTime();
+        Process process = null;
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            if (workDir != null) {
+                processBuilder.directory(workDir);
+            }
+            process = processBuilder.start();
+            // 不向命令提供输入，避免读取标准输入的命令挂起
+            process.getOutputStream().close();
+
+            LineRingBuffer stdout = new LineRingBuffer(maxOutputLines);
+            LineRingBuffer stderr = new LineRingBuffer(maxOutputLines);
+            LineRingBuffer combined = new LineRingBuffer(maxOutputLines);
+            Process current = process;
+            Future<?> outFuture = ioExecutor.submit(() -> pump(current.getInputStream(), stdout, combined, lineListener));
+            Future<?> errFuture = ioExecutor.submit(() -> pump(current.getErrorStream(), stderr, combined, lineListener));
+
+            boolean finished = process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+            if (!finished) {
+                result.setTimedOut(true);
+                stats.timeouts.incrementAndGet();
+                log.warn("外部命令超时（{}秒），终止进程: {}", timeoutSeconds, commandKey(command));
+                terminate(process);
+            } else {
+                result.setExitCode(process.exitValue());
+            }
+
+            // 超时终止后子进程可能仍持有管道，只做短暂等待
+            long pumpWaitMs = finished ? 2000 : 200;
+            awaitPump(outFuture, current.getInputStream(), pumpWaitMs);
+            awaitPump(errFuture, current.getErrorStream(), pumpWaitMs);
+            result.setStdoutLines(stdout.snapshot());
+            result.setStderrLines(stderr.snapshot());
+            result.setOutputLines(combined.snapshot());
+            result.setTruncated(stdout.dropped > 0 || stderr.dropped > 0);
+        } catch (IOException e) {
+            result.setErrorMessage("命令启动失败: " + e.getMessage());
+            log.warn("外部命令启动失败: {}, {}", commandKey(command), e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.setErrorMessage("命令执行被中断");
+            if (process != null) {
+                terminate(process);
+            }
+        } finally {
+            long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            result.setDurationMs(durationMs);
+            stats.record(durationMs, result.isSuccess());
+            running.decrementAndGet();
+            permits.release();
+        }
+        return result;
+    }
+
+    /**
+     * 终止进程：先正常结束，2秒内未退出则强制结束
+     */
+    private void terminate(Process process) {
+        process.destroy();
+        try {
+            if (!process.waitFor(2, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                process.waitFor(2, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * 等待输出读取完成；子进程可能继承管道导致迟迟读不到结尾，超时后关闭流
+     */
+    private void awaitPump(Future<?> pump, InputStream stream, long waitMs) {
+        try {
+            pump.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // 关闭失败不影响结果
+            }
+            pump.cancel(true);
+        }
+    }
+
+    private void pump(InputStream stream, LineRingBuffer buffer, LineRingBuffer combined, Consumer<String> lineListener) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > maxLineLength) {
+                    line = line.substring(0, maxLineLength) + "...";
+                }
+                buffer.add(line);
+                combined.add(line);
+                if (lineListener != null) {
+                    lineListener.accept(line);
+                }
+            }
+        } catch (IOException e) {
+            // 进程被终止或流被关闭
+            log.debug("读取命令输出结束: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 统计用的命令名称，如 "docker compose up"、"docker exec"
+     */
+    private String commandKey(List<String> command) {
+        if (command.isEmpty()) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder(new File(command.get(0)).getName());
+        if (command.size() < 2) {
+            return key.toString();
+        }
+        String sub = command.get(1);
+        key.append(' ').append(sub);
+        if ("compose".equals(sub) || "network".equals(sub) || "volume".equals(sub)) {
+            // 子命令前可能有 -f file / -p project 等选项
+            for (int i = 2; i < command.size(); i++) {
+                String token = command.get(i);
+                if (token.startsWith("-")) {
+                    if ("-f".equals(token) || "-p".equals(token) || "--file".equals(token)
+                            || "--project-name".equals(token)) {
+                        i++;
+                    }
+                    continue;
+                }
+                key.append(' ').append(token);
+                break;
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * 执行指标（全局并发情况和按命令统计的次数、失败、超时、耗时）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("running", running.get());
+        stats.put("waiting", waiting.get());
+        stats.put("rejected", rejectedCount.get());
+        Map<String, Object> commands = new LinkedHashMap<>();
+        statsByCommand.forEach((key, value) -> commands.put(key, value.toMap()));
+        stats.put("commands", commands);
+        return stats;
+    }
+
+    /**
+     * 只保留最后 N 行的环形缓冲
+     */
+    private static class LineRingBuffer {
+        private final int capacity;
+        private final Deque<String> lines = new ArrayDeque<>();
+        private long dropped;
+
+        LineRingBuffer(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void add(String line) {
+            if (lines.size() >= capacity) {
+                lines.pollFirst();
+                dropped++;
+            }
+            lines.addLast(line);
+        }
+
+        synchronized List<String> snapshot() {
+            return new ArrayList<>(lines);
+        }
+    }
+
+    /**
+     * 单个命令的执行统计
+     */
+    private static class CommandStats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong totalMs = new AtomicLong();
+        private volatile long maxMs;
+
+        void record(long durationMs, boolean success) {
+            count.incrementAndGet();
+            if (!success) {
+                failures.incrementAndGet();
+            }
+            totalMs.addAndGet(durationMs);
+            if (durationMs > maxMs) {
+                maxMs = durationMs;
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            long total = count.get();
+            map.put("count", total);
+            map.put("failures", failures.get());
+            map.put("timeouts", timeouts.get());
+            map.put("rejected", rejected.get());
+            map.put("avgMs", total == 0 ? 0 : totalMs.get() / total);
+            map.put("maxMs", maxMs);
+            return map;
+        }
+    }
+}
@@ -1,14 +1,13 @@
 package org.dockerenvs.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dto.CommandResult;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +25,13 @@ public class SharedMysqlService {
     private static final String SHARED_MYSQL_VOLUME_NAME = "shared-mysql-data";
     private static final String MYSQL_IMAGE = "mysql:8.0";
     
+    /**
+     * 外部命令执行期限（秒）：创建容器可能需要拉取镜像
+     */
+    private static final long CREATE_TIMEOUT_SECONDS = 600;
+    private static final long DEFAULT_TIMEOUT_SECONDS = 60;
+    private static final long PING_TIMEOUT_SECONDS = 10;
+    
     @Value("${shared.mysql.root.password:123456}")
     private String rootPassword;
     
@@ -35,6 +41,12 @@ public class SharedMysqlService {
     @Autowired
     private DockerOpsService dockerOpsService;
     
+    @Autowired
+    private DockerStateCache dockerStateCache;
+    
+    @Autowired
+    private ProcessRunner processRunner;
+    
     /**
      * 检查共享MySQL容器是否可用（不自动创建）
      * 用于环境创建时的检查，确保数据库容器已就绪
@@ -139,66 +151,39 @@ public class SharedMysqlService {
      * 创建共享MySQL容器
      */
     private void createSharedMysql() {
-        try {
-            // 1. 创建网络（如果不存在）
-            createNetworkIfNotExists(SHARED_MYSQL_NETWORK_NAME);
-            
-            // 2. 创建MySQL容器
-            // 注意：不映射端口到主机，因为应用容器通过Docker网络直接连接
-            // 这样可以避免与主机上可能运行的MySQL服务冲突
-            // 显式配置MySQL监听所有接口的3306端口
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "run", "-d",
-                "--name", SHARED_MYSQL_CONTAINER_NAME,
-                "--network", SHARED_MYSQL_NETWORK_NAME,
-                "--restart", "unless-stopped",
-                "-e", "MYSQL_ROOT_PASSWORD=" + rootPassword,
-                "-e", "MYSQL_ALLOW_EMPTY_PASSWORD=no",
-                "-v", SHARED_MYSQL_VOLUME_NAME + ":/var/lib/mysql",
-                MYSQL_IMAGE,
-                "--character-set-server=utf8mb4",
-                "--collation-server=utf8mb4_unicode_ci",
-                "--default-authentication-plugin=mysql_native_password",
-                "--bind-address=0.0.0.0",
-                "--port=3306"
-            );
-            
-            Process process = processBuilder.start();
-            
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                    log.info("Docker: {}", line);
-                }
-            }
-            
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                // 读取错误输出
-                try (BufferedReader errorReader = new BufferedReader(
-                        new InputStreamReader(process.getErrorStream()))) {
-                    StringBuilder errorOutput = new StringBuilder();
-                    String line;
-                    while ((line = errorReader.readLine()) != null) {
-                        errorOutput.append(line).append("\n");
-                    }
-                    log.error("创建共享MySQL容器失败，退出码: {}, 错误: {}", exitCode, errorOutput.toString());
-                }
-                throw new RuntimeException("创建共享MySQL容器失败，退出码: " + exitCode);
-            }
-            
-            log.info("共享MySQL容器创建成功: {}", SHARED_MYSQL_CONTAINER_NAME);
-            
-            // 等待MySQL启动
-            waitForMysqlReady(30);
-            
-        } catch (IOException | InterruptedException e) {
-            log.error("创建共享MySQL容器失败", e);
-            throw new RuntimeException("创建共享MySQL容器失败", e);
+        // 1. 创建网络（如果不存在）
+        createNetworkIfNotExists(SHARED_MYSQL_NETWORK_NAME);
+        
+        // 2. 创建MySQL容器
+        // 注意：不映射端口到主机，因为应用容器通过Docker网络直接连接
+        // 这样可以避免与主机上可能运行的MySQL服务冲突
+        // 显式配置MySQL监听所有接口的3306端口
+        // 本地没有镜像时 docker run 会先拉取镜像，使用较长的超时
+        CommandResult result = processRunner.run(Arrays.asList(
+            "docker", "run", "-d",
+            "--name", SHARED_MYSQL_CONTAINER_NAME,
+            "--network", SHARED_MYSQL_NETWORK_NAME,
+            "--restart", "unless-stopped",
+            "-e", "MYSQL_ROOT_PASSWORD=" + rootPassword,
+            "-e", "MYSQL_ALLOW_EMPTY_PASSWORD=no",
+            "-v", SHARED_MYSQL_VOLUME_NAME + ":/var/lib/mysql",
+            MYSQL_IMAGE,
+            "--character-set-server=utf8mb4",
+            "--collation-server=utf8mb4_unicode_ci",
+            "--default-authentication-plugin=mysql_native_password",
+            "--bind-address=0.0.0.0",
+            "--port=3306"
+        ), null, CREATE_TIMEOUT_SECONDS, line -> log.info("Docker: {}", line));
+        
+        if (!result.isSuccess()) {
+            log.error("创建共享MySQL容器失败，退出码: {}, 错误: {}", result.getExitCode(), result.getOutput());
+            throw new RuntimeException("创建共享MySQL容器失败，退出码: " + result.getExitCode());
         }
+        
+        log.info("共享MySQL容器创建成功: {}", SHARED_MYSQL_CONTAINER_NAME);
+        
+        // 等待MySQL启动
+        waitForMysqlReady(30);
     }
     
     /**
@@ -214,52 +199,25 @@ public class SharedMysqlService {
             log.info("检查数据库是否存在: {}", databaseName);
             
             // 检查数据库是否存在
-            ProcessBuilder checkBuilder = new ProcessBuilder(
-                "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
-                "mysql", "-uroot", "-p" + rootPassword, "-e",
+            CommandResult checkResult = execMysql(
                 "SELECT SCHEMA_NAME FROM INFORMATION_SCHEMA.SCHEMATA WHERE SCHEMA_NAME = '" + databaseName + "';",
-                "-h", "localhost", "-s", "-N"
-            );
-            Process checkProcess = checkBuilder.start();
-            
-            StringBuilder checkOutput = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(checkProcess.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    checkOutput.append(line);
-                }
-            }
-            checkProcess.waitFor();
+                true);
             
             // 如果数据库已存在
-            if (checkOutput.toString().trim().equals(databaseName)) {
+            if (databaseName.equals(checkResult.getFirstLine())) {
                 log.info("数据库已存在: {}", databaseName);
                 return;
             }
             
             // 数据库不存在，创建它
             log.info("数据库不存在，正在创建: {}", databaseName);
-            ProcessBuilder createBuilder = new ProcessBuilder(
-                "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
-                "mysql", "-uroot", "-p" + rootPassword, "-e",
+            CommandResult createResult = execMysql(
                 "CREATE DATABASE IF NOT EXISTS `" + databaseName + "` CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;",
-                "-h", "localhost"
-            );
-            Process createProcess = createBuilder.start();
+                false);
             
-            int exitCode = createProcess.waitFor();
-            if (exitCode != 0) {
-                // 读取错误输出
-                StringBuilder errorOutput = new StringBuilder();
-                try (BufferedReader errorReader = new BufferedReader(
-                        new InputStreamReader(createProcess.getErrorStream()))) {
-                    String line;
-                    while ((line = errorReader.readLine()) != null) {
-                        errorOutput.append(line).append("\n");
-                    }
-                }
-                log.error("创建数据库失败: {}, 退出码: {}, 错误: {}", databaseName, exitCode, errorOutput.toString());
+            if (!createResult.isSuccess()) {
+                log.error("创建数据库失败: {}, 退出码: {}, 错误: {}",
+                    databaseName, createResult.getExitCode(), createResult.getOutput());
                 throw new RuntimeException("创建数据库失败: " + databaseName);
             }
             
@@ -275,116 +233,63 @@ public class SharedMysqlService {
      * 创建网络（如果不存在）
      */
     private void createNetworkIfNotExists(String networkName) {
-        try {
-            // 检查网络是否存在
-            ProcessBuilder checkBuilder = new ProcessBuilder(
-                "docker", "network", "ls", "--filter", "name=" + networkName, "--format", "{{.Name}}"
-            );
-            Process checkProcess = checkBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(checkProcess.getInputStream()))) {
-                String result = reader.readLine();
-                checkProcess.waitFor();
-                
-                if (result != null && result.trim().equals(networkName)) {
-                    log.info("网络已存在: {}", networkName);
-                    return;
-                }
-            }
-            
-            // 网络不存在，创建它
-            log.info("创建网络: {}", networkName);
-            ProcessBuilder createBuilder = new ProcessBuilder(
-                "docker", "network", "create", networkName
-            );
-            Process createProcess = createBuilder.start();
-            
-            int exitCode = createProcess.waitFor();
-            if (exitCode != 0) {
-                log.error("创建网络失败: {}, 退出码: {}", networkName, exitCode);
-                throw new RuntimeException("创建网络失败: " + networkName);
-            }
-            
-            log.info("网络创建成功: {}", networkName);
-            
-        } catch (IOException | InterruptedException e) {
-            log.error("创建网络失败: {}", networkName, e);
-            throw new RuntimeException("创建网络失败: " + networkName, e);
+        if (Boolean.TRUE.equals(dockerStateCache.networkExists(networkName))) {
+            log.info("网络已存在: {}", networkName);
+            return;
         }
+        // 检查网络是否存在
+        CommandResult checkResult = processRunner.run(
+            "docker", "network", "ls", "--filter", "name=" + networkName, "--format", "{{.Name}}");
+        if (checkResult.getStdoutLines().stream().anyMatch(name -> name.trim().equals(networkName))) {
+            log.info("网络已存在: {}", networkName);
+            return;
+        }
+        
+        // 网络不存在，创建它
+        log.info("创建网络: {}", networkName);
+        CommandResult createResult = processRunner.run("docker", "network", "create", networkName);
+        if (!createResult.isSuccess()) {
+            log.error("创建网络失败: {}, 退出码: {}, 输出: {}",
+                networkName, createResult.getExitCode(), createResult.getOutput());
+            throw new RuntimeException("创建网络失败: " + networkName);
+        }
+        
+        log.info("网络创建成功: {}", networkName);
     }
     
     /**
      * 启动容器
      */
     private void startContainer(String containerName) {
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "start", containerName
-            );
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-            
-            // 读取输出和错误
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                    log.info("Docker start: {}", line);
-                }
-            }
-            
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                String errorMsg = output.toString();
-                log.error("启动容器失败: {}, 退出码: {}, 错误: {}", containerName, exitCode, errorMsg);
-                
-                // 如果启动失败，尝试删除容器并重新创建
-                log.warn("容器启动失败，尝试删除并重新创建: {}", containerName);
-                removeContainer(containerName);
-                createSharedMysql();
-                return;
-            }
-            
-            log.info("容器启动成功: {}", containerName);
-            
-            // 等待MySQL启动
-            waitForMysqlReady(30);
+        CommandResult result = processRunner.run(Arrays.asList("docker", "start", containerName),
+            null, DEFAULT_TIMEOUT_SECONDS, line -> log.info("Docker start: {}", line));
+        
+        if (!result.isSuccess()) {
+            log.error("启动容器失败: {}, 退出码: {}, 错误: {}", containerName, result.getExitCode(), result.getOutput());
             
-        } catch (IOException | InterruptedException e) {
-            log.error("启动容器失败: {}", containerName, e);
             // 如果启动失败，尝试删除容器并重新创建
-            try {
-                log.warn("容器启动异常，尝试删除并重新创建: {}", containerName);
-                removeContainer(containerName);
-                createSharedMysql();
-            } catch (Exception ex) {
-                log.error("删除并重新创建容器失败", ex);
-                throw new RuntimeException("启动容器失败: " + containerName, e);
-            }
+            log.warn("容器启动失败，尝试删除并重新创建: {}", containerName);
+            removeContainer(containerName);
+            createSharedMysql();
+            return;
         }
+        
+        log.info("容器启动成功: {}", containerName);
+        
+        // 等待MySQL启动
+        waitForMysqlReady(30);
     }
     
     /**
      * 删除容器
      */
     private void removeContainer(String containerName) {
-        try {
-            log.info("删除容器: {}", containerName);
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "rm", "-f", containerName
-            );
-            Process process = processBuilder.start();
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                log.warn("删除容器失败: {}, 退出码: {}", containerName, exitCode);
-            } else {
-                log.info("容器删除成功: {}", containerName);
-            }
-        } catch (Exception e) {
-            log.warn("删除容器异常: {}", containerName, e);
+        log.info("删除容器: {}", containerName);
+        CommandResult result = processRunner.run("docker", "rm", "-f", containerName);
+        if (!result.isSuccess()) {
+            log.warn("删除容器失败: {}, 退出码: {}, 输出: {}", containerName, result.getExitCode(), result.getOutput());
+        } else {
+            log.info("容器删除成功: {}", containerName);
         }
     }
     
@@ -415,42 +320,20 @@ public class SharedMysqlService {
      * 检查MySQL是否就绪
      */
     private boolean isMysqlReady() {
-        try {
-            // 使用 mysqladmin ping 检查MySQL服务是否响应
-            // 这是最可靠的检查方式，如果 ping 成功说明 MySQL 已经就绪
-            ProcessBuilder pingBuilder = new ProcessBuilder(
-                "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
-                "mysqladmin", "ping", "-h", "localhost", "-uroot", "-p" + rootPassword
-            );
-            // 合并错误流到标准输出，避免错误信息干扰
-            pingBuilder.redirectErrorStream(true);
-            Process pingProcess = pingBuilder.start();
-            
-            // 读取输出（包括错误输出）
-            StringBuilder pingOutput = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(pingProcess.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    pingOutput.append(line).append("\n");
-                }
-            }
-            
-            int pingExitCode = pingProcess.waitFor();
-            
-            if (pingExitCode != 0) {
-                log.debug("MySQL ping 失败，退出码: {}, 输出: {}", pingExitCode, pingOutput.toString());
-                return false;
-            }
-            
-            // mysqladmin ping 成功说明 MySQL 已经就绪
-            log.debug("MySQL已就绪（mysqladmin ping 成功）");
-            return true;
-            
-        } catch (Exception e) {
-            log.debug("检查MySQL就绪状态失败: {}", e.getMessage());
+        // 使用 mysqladmin ping 检查MySQL服务是否响应
+        // 这是最可靠的检查方式，如果 ping 成功说明 MySQL 已经就绪
+        CommandResult result = processRunner.run(PING_TIMEOUT_SECONDS,
+            "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
+            "mysqladmin", "ping", "-h", "localhost", "-uroot", "-p" + rootPassword);
+        
+        if (!result.isSuccess()) {
+            log.debug("MySQL ping 失败，退出码: {}, 输出: {}", result.getExitCode(), result.getOutput());
             return false;
         }
+        
+        // mysqladmin ping 成功说明 MySQL 已经就绪
+        log.debug("MySQL已就绪（mysqladmin ping 成功）");
+        return true;
     }
     
     /**
@@ -473,13 +356,15 @@ public class SharedMysqlService {
             }
             result.append("✅ 容器正在运行\n");
             
-            // 3. 检查网络
-            ProcessBuilder networkBuilder = new ProcessBuilder(
-                "docker", "network", "inspect", SHARED_MYSQL_NETWORK_NAME, "--format", "{{.Name}}"
-            );
-            Process networkProcess = networkBuilder.start();
-            int networkExitCode = networkProcess.waitFor();
-            if (networkExitCode == 0) {
+            // 3. 检查网络（优先使用状态缓存）
+            boolean networkExists;
+            if (Boolean.TRUE.equals(dockerStateCache.networkExists(SHARED_MYSQL_NETWORK_NAME))) {
+                networkExists = true;
+            } else {
+                networkExists = processRunner.run(
+                    "docker", "network", "inspect", SHARED_MYSQL_NETWORK_NAME, "--format", "{{.Name}}").isSuccess();
+            }
+            if (networkExists) {
                 result.append("✅ 网络存在: ").append(SHARED_MYSQL_NETWORK_NAME).append("\n");
             } else {
                 result.append("❌ 网络不存在: ").append(SHARED_MYSQL_NETWORK_NAME).append("\n");
@@ -493,34 +378,16 @@ public class SharedMysqlService {
             }
             
             // 5. 检查端口监听（通过MySQL命令）
-            ProcessBuilder portBuilder = new ProcessBuilder(
-                "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
-                "mysql", "-uroot", "-p" + rootPassword, "-e", "SHOW VARIABLES LIKE 'port';", "-h", "localhost", "-s", "-N"
-            );
-            Process portProcess = portBuilder.start();
-            StringBuilder portOutput = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(portProcess.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    portOutput.append(line);
-                }
-            }
-            portProcess.waitFor();
+            String portOutput = execMysql("SHOW VARIABLES LIKE 'port';", true).getStdout();
             
-            if (portOutput.toString().contains("3306")) {
+            if (portOutput.contains("3306")) {
                 result.append("✅ MySQL监听端口: 3306\n");
             } else {
                 result.append("⚠️  无法确认端口配置\n");
             }
             
             // 6. 测试数据库连接
-            ProcessBuilder testBuilder = new ProcessBuilder(
-                "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
-                "mysql", "-uroot", "-p" + rootPassword, "-e", "SELECT 1;", "-h", "localhost"
-            );
-            Process testProcess = testBuilder.start();
-            int testExitCode = testProcess.waitFor();
+            int testExitCode = execMysql("SELECT 1;", false).getExitCode();
             if (testExitCode == 0) {
                 result.append("✅ 数据库连接测试成功\n");
             } else {
@@ -576,30 +443,15 @@ public class SharedMysqlService {
             return;
         }
         
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "stop", SHARED_MYSQL_CONTAINER_NAME
-            );
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    log.info("Docker stop: {}", line);
-                }
-            }
-            
-            int exitCode = process.waitFor();
-            if (exitCode == 0) {
-                log.info("共享MySQL容器已停止");
-            } else {
-                log.warn("停止共享MySQL容器失败，退出码: {}", exitCode);
-            }
-        } catch (Exception e) {
-            log.error("停止共享MySQL容器失败", e);
-            throw new RuntimeException("停止共享MySQL容器失败", e);
+        CommandResult result = processRunner.run(Arrays.asList("docker", "stop", SHARED_MYSQL_CONTAINER_NAME),
+            null, DEFAULT_TIMEOUT_SECONDS, line -> log.info("Docker stop: {}", line));
+        if (result.isSuccess()) {
+            log.info("共享MySQL容器已停止");
+        } else if (result.getExitCode() >= 0) {
+            log.warn("停止共享MySQL容器失败，退出码: {}", result.getExitCode());
+        } else {
+            log.error("停止共享MySQL容器失败: {}", result.getOutput());
+            throw new RuntimeException("停止共享MySQL容器失败: " + result.getOutput());
         }
     }
     
@@ -612,57 +464,25 @@ public class SharedMysqlService {
         
         // 1. 停止并删除容器
         if (dockerOpsService.containerExistsByName(SHARED_MYSQL_CONTAINER_NAME)) {
-            try {
-                ProcessBuilder processBuilder = new ProcessBuilder(
-                    "docker", "rm", "-f", "-v", SHARED_MYSQL_CONTAINER_NAME
-                );
-                processBuilder.redirectErrorStream(true);
-                Process process = processBuilder.start();
-                
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        log.info("Docker rm: {}", line);
-                    }
-                }
-                
-                int exitCode = process.waitFor();
-                if (exitCode == 0) {
-                    log.info("共享MySQL容器已删除");
-                } else {
-                    log.warn("删除共享MySQL容器失败，退出码: {}", exitCode);
-                }
-            } catch (Exception e) {
-                log.error("删除共享MySQL容器失败", e);
+            CommandResult result = processRunner.run(
+                Arrays.asList("docker", "rm", "-f", "-v", SHARED_MYSQL_CONTAINER_NAME),
+                null, DEFAULT_TIMEOUT_SECONDS, line -> log.info("Docker rm: {}", line));
+            if (result.isSuccess()) {
+                log.info("共享MySQL容器已删除");
+            } else {
+                log.warn("删除共享MySQL容器失败，退出码: {}, 输出: {}", result.getExitCode(), result.getOutput());
             }
         }
         
         // 2. 删除volume（如果容器删除时没有自动删除）
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "volume", "rm", SHARED_MYSQL_VOLUME_NAME
-            );
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    log.info("Docker volume rm: {}", line);
-                }
-            }
-            
-            int exitCode = process.waitFor();
-            if (exitCode == 0) {
-                log.info("共享MySQL volume已删除: {}", SHARED_MYSQL_VOLUME_NAME);
-            } else {
-                // volume可能不存在或已被删除，这是正常的
-                log.debug("删除共享MySQL volume失败或volume不存在，退出码: {}", exitCode);
-            }
-        } catch (Exception e) {
-            log.warn("删除共享MySQL volume失败: {}", e.getMessage());
+        CommandResult volumeResult = processRunner.run(
+            Arrays.asList("docker", "volume", "rm", SHARED_MYSQL_VOLUME_NAME),
+            null, DEFAULT_TIMEOUT_SECONDS, line -> log.info("Docker volume rm: {}", line));
+        if (volumeResult.isSuccess()) {
+            log.info("共享MySQL volume已删除: {}", SHARED_MYSQL_VOLUME_NAME);
+        } else {
+            // volume可能不存在或已被删除，这是正常的
+            log.debug("删除共享MySQL volume失败或volume不存在，退出码: {}", volumeResult.getExitCode());
         }
         
         // 3. 删除网络（可选，因为网络可能被其他容器使用）
@@ -676,34 +496,21 @@ public class SharedMysqlService {
      */
     public List<String> getDatabases() {
         List<String> databases = new ArrayList<>();
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
-                "mysql", "-uroot", "-p" + rootPassword, "-e",
-                "SHOW DATABASES;",
-                "-h", "localhost", "-s", "-N"
-            );
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String db = line.trim();
-                    // 过滤系统数据库
-                    if (!db.isEmpty() && 
-                        !db.equals("information_schema") && 
-                        !db.equals("performance_schema") && 
-                        !db.equals("mysql") && 
-                        !db.equals("sys")) {
-                        databases.add(db);
-                    }
-                }
+        CommandResult result = execMysql("SHOW DATABASES;", true);
+        if (!result.isSuccess()) {
+            log.error("获取数据库列表失败: {}", result.getOutput());
+            throw new RuntimeException("获取数据库列表失败: " + result.getOutput());
+        }
+        for (String line : result.getStdoutLines()) {
+            String db = line.trim();
+            // 过滤系统数据库
+            if (!db.isEmpty() && 
+                !db.equals("information_schema") && 
+                !db.equals("performance_schema") && 
+                !db.equals("mysql") && 
+                !db.equals("sys")) {
+                databases.add(db);
             }
-            process.waitFor();
-        } catch (Exception e) {
-            log.error("获取数据库列表失败", e);
-            throw new RuntimeException("获取数据库列表失败", e);
         }
         return databases;
     }
@@ -713,29 +520,16 @@ public class SharedMysqlService {
      */
     public List<String> getTables(String databaseName) {
         List<String> tables = new ArrayList<>();
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
-                "mysql", "-uroot", "-p" + rootPassword, "-e",
-                "USE `" + databaseName + "`; SHOW TABLES;",
-                "-h", "localhost", "-s", "-N"
-            );
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String table = line.trim();
-                    if (!table.isEmpty()) {
-                        tables.add(table);
-                    }
-                }
+        CommandResult result = execMysql("USE `" + databaseName + "`; SHOW TABLES;", true);
+        if (!result.isSuccess()) {
+            log.error("获取表列表失败: {}, {}", databaseName, result.getOutput());
+            throw new RuntimeException("获取表列表失败: " + databaseName);
+        }
+        for (String line : result.getStdoutLines()) {
+            String table = line.trim();
+            if (!table.isEmpty()) {
+                tables.add(table);
             }
-            process.waitFor();
-        } catch (Exception e) {
-            log.error("获取表列表失败: {}", databaseName, e);
-            throw new RuntimeException("获取表列表失败: " + databaseName, e);
         }
         return tables;
     }
@@ -745,57 +539,45 @@ public class SharedMysqlService {
      */
     public List<Map<String, String>> getTableStructure(String databaseName, String tableName) {
         List<Map<String, String>> columns = new ArrayList<>();
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
-                "mysql", "-uroot", "-p" + rootPassword, "-e",
-                "USE `" + databaseName + "`; DESCRIBE `" + tableName + "`;",
-                "-h", "localhost"
-            );
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                boolean isFirstLine = true;
-                while ((line = reader.readLine()) != null) {
-                    if (isFirstLine) {
-                        isFirstLine = false;
-                        continue; // 跳过表头
-                    }
-                    line = line.trim();
-                    if (line.isEmpty()) {
-                        continue;
-                    }
-                    
-                    // DESCRIBE 输出格式：Field Type Null Key Default Extra
-                    // 尝试按制表符分割，如果失败则按多个空格分割
-                    String[] parts;
-                    if (line.contains("\t")) {
-                        parts = line.split("\\t");
-                    } else {
-                        // 按多个空格分割
-                        parts = line.split("\\s{2,}");
-                    }
-                    
-                    if (parts.length >= 4) {
-                        Map<String, String> column = new HashMap<>();
-                        column.put("field", parts[0].trim());
-                        column.put("type", parts.length > 1 ? parts[1].trim() : "");
-                        column.put("null", parts.length > 2 ? parts[2].trim() : "");
-                        column.put("key", parts.length > 3 ? parts[3].trim() : "");
-                        column.put("default", parts.length > 4 ? parts[4].trim() : "");
-                        column.put("extra", parts.length > 5 ? parts[5].trim() : "");
-                        columns.add(column);
-                    } else {
-                        log.warn("无法解析表结构行: {}", line);
-                    }
-                }
+        CommandResult result = execMysql("USE `" + databaseName + "`; DESCRIBE `" + tableName + "`;", false);
+        if (!result.isSuccess()) {
+            log.error("获取表结构失败: {}.{}, {}", databaseName, tableName, result.getOutput());
+            throw new RuntimeException("获取表结构失败: " + databaseName + "." + tableName);
+        }
+        
+        boolean isFirstLine = true;
+        for (String line : result.getStdoutLines()) {
+            if (isFirstLine) {
+                isFirstLine = false;
+                continue; // 跳过表头
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            
+            // DESCRIBE 输出格式：Field Type Null Key Default Extra
+            // 尝试按制表符分割，如果失败则按多个空格分割
+            String[] parts;
+            if (line.contains("\t")) {
+                parts = line.split("\\t");
+            } else {
+                // 按多个空格分割
+                parts = line.split("\\s{2,}");
+            }
+            
+            if (parts.length >= 4) {
+                Map<String, String> column = new HashMap<>();
+                column.put("field", parts[0].trim());
+                column.put("type", parts.length > 1 ? parts[1].trim() : "");
+                column.put("null", parts.length > 2 ? parts[2].trim() : "");
+                column.put("key", parts.length > 3 ? parts[3].trim() : "");
+                column.put("default", parts.length > 4 ? parts[4].trim() : "");
+                column.put("extra", parts.length > 5 ? parts[5].trim() : "");
+                columns.add(column);
+            } else {
+                log.warn("无法解析表结构行: {}", line);
             }
-            process.waitFor();
-        } catch (Exception e) {
-            log.error("获取表结构失败: {}.{}", databaseName, tableName, e);
-            throw new RuntimeException("获取表结构失败: " + databaseName + "." + tableName, e);
         }
         return columns;
     }
@@ -828,32 +610,26 @@ public class SharedMysqlService {
             result.put("columns", columns);
             
             // 查询数据
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
-                "mysql", "-uroot", "-p" + rootPassword, "-e",
+            CommandResult queryResult = execMysql(
                 "USE `" + databaseName + "`; SELECT * FROM `" + tableName + "` LIMIT " + pageSize + " OFFSET " + offset + ";",
-                "-h", "localhost"
-            );
-            Process process = processBuilder.start();
+                false);
+            if (!queryResult.isSuccess()) {
+                throw new RuntimeException(queryResult.getOutput());
+            }
             
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                boolean isFirstLine = true;
-                while ((line = reader.readLine()) != null) {
-                    if (isFirstLine) {
-                        isFirstLine = false;
-                        continue; // 跳过表头
-                    }
-                    String[] values = line.split("\\t");
-                    Map<String, String> row = new HashMap<>();
-                    for (int i = 0; i < columns.size() && i < values.length; i++) {
-                        row.put(columns.get(i), values[i].trim());
-                    }
-                    rows.add(row);
+            boolean isFirstLine = true;
+            for (String line : queryResult.getStdoutLines()) {
+                if (isFirstLine) {
+                    isFirstLine = false;
+                    continue; // 跳过表头
+                }
+                String[] values = line.split("\\t");
+                Map<String, String> row = new HashMap<>();
+                for (int i = 0; i < columns.size() && i < values.length; i++) {
+                    row.put(columns.get(i), values[i].trim());
                 }
+                rows.add(row);
             }
-            process.waitFor();
             
             result.put("rows", rows);
         } catch (Exception e) {
@@ -868,28 +644,18 @@ public class SharedMysqlService {
      */
     private List<String> getTableColumns(String databaseName, String tableName) {
         List<String> columns = new ArrayList<>();
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
-                "mysql", "-uroot", "-p" + rootPassword, "-e",
-                "USE `" + databaseName + "`; SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = '" + databaseName + "' AND TABLE_NAME = '" + tableName + "' ORDER BY ORDINAL_POSITION;",
-                "-h", "localhost", "-s", "-N"
-            );
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String col = line.trim();
-                    if (!col.isEmpty()) {
-                        columns.add(col);
-                    }
-                }
+        CommandResult result = execMysql(
+            "USE `" + databaseName + "`; SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = '" + databaseName + "' AND TABLE_NAME = '" + tableName + "' ORDER BY ORDINAL_POSITION;",
+            true);
+        if (!result.isSuccess()) {
+            log.error("获取表列名失败: {}.{}, {}", databaseName, tableName, result.getOutput());
+            return columns;
+        }
+        for (String line : result.getStdoutLines()) {
+            String col = line.trim();
+            if (!col.isEmpty()) {
+                columns.add(col);
             }
-            process.waitFor();
-        } catch (Exception e) {
-            log.error("获取表列名失败: {}.{}", databaseName, tableName, e);
         }
         return columns;
     }
@@ -898,27 +664,32 @@ public class SharedMysqlService {
      * 获取表的记录总数
      */
     private int getTableCount(String databaseName, String tableName) {
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
-                "mysql", "-uroot", "-p" + rootPassword, "-e",
-                "USE `" + databaseName + "`; SELECT COUNT(*) FROM `" + tableName + "`;",
-                "-h", "localhost", "-s", "-N"
-            );
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line = reader.readLine();
-                if (line != null) {
-                    return Integer.parseInt(line.trim());
-                }
+        CommandResult result = execMysql("USE `" + databaseName + "`; SELECT COUNT(*) FROM `" + tableName + "`;", true);
+        String line = result.getFirstLine();
+        if (result.isSuccess() && line != null) {
+            try {
+                return Integer.parseInt(line);
+            } catch (NumberFormatException e) {
+                log.error("获取表记录数失败: {}.{}, 输出: {}", databaseName, tableName, line);
             }
-            process.waitFor();
-        } catch (Exception e) {
-            log.error("获取表记录数失败: {}.{}", databaseName, tableName, e);
+        } else {
+            log.error("获取表记录数失败: {}.{}, {}", databaseName, tableName, result.getOutput());
         }
         return 0;
     }
+    
+    /**
+     * 在共享MySQL容器中执行SQL
+     * @param silent 是否使用 -s -N（不输出表头和表格边框）
+     */
+    private CommandResult execMysql(String sql, boolean silent) {
+        List<String> command = new ArrayList<>(Arrays.asList(
+            "docker", "exec", SHARED_MYSQL_CONTAINER_NAME,
+            "mysql", "-uroot", "-p" + rootPassword, "-e", sql, "-h", "localhost"));
+        if (silent) {
+            command.add("-s");
+            command.add("-N");
+        }
+        return processRunner.run(command, null, DEFAULT_TIMEOUT_SECONDS, null);
+    }
 }
-
@@ -0,0 +1,407 @@
+package org.dockerenvs.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.ContainerPort;
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dao.mapper.PortUsageMapper;
+import org.dockerenvs.dao.mapper.VirtualEnvMapper;
+import org.dockerenvs.entity.PortUsage;
+import org.dockerenvs.entity.VirtualEnv;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 启动时状态对账
+ * 管理服务或主机重启后，数据库中的环境状态和端口占用可能与守护进程不一致（容器已不存在但记录仍为 RUNNING，
+ * 环境已不存在但端口仍为 USED）。应用就绪后在后台执行一次对账，不阻塞启动：
+ * - 一次按标签列出全部应用容器，与数据库查询并行执行
+ * - RUNNING / PAUSED / STOPPED 以及停留过久的过渡状态按容器实际状态修正（预热环境由预热池清理），
+ *   状态按扫描时的值条件更新，扫描后完成的操作不会被覆盖；停留过久的 CREATING 环境没有容器时
+ *   创建已中断、无法再启动，标记为已销毁并释放端口
+ * - 没有对应未销毁环境的 USED 端口释放，未销毁环境占用但记录为空闲的端口重新标记为 USED
+ * - 守护进程分配端口模式下，运行中环境的端口按容器当前发布的端口修正（守护进程重启后端口会变化）
+ * - 修正按批写回数据库，结果通过 getStats() 报告
+ */
+@Slf4j
+@Service
+public class StartupReconcileService {
+
+    /**
+     * 报告中保留的修正明细条数上限
+     */
+    private static final int MAX_REPORTED_FIXES = 100;
+
+    @Autowired
+    private VirtualEnvMapper virtualEnvMapper;
+
+    @Autowired
+    private PortUsageMapper portUsageMapper;
+
+    @Autowired
+    private PortManagerService portManagerService;
+
+    @Autowired
+    private DockerOpsService dockerOpsService;
+
+    @Autowired
+    private PortLeaseService portLeaseService;
+
+    @Autowired
+    private EnvGatewayService envGatewayService;
+
+    @Value("${env.reconcile.enabled:true}")
+    private boolean enabled;
+
+    @Value("${env.reconcile.batch-size:500}")
+    private int batchSize;
+
+    @Value("${env.reconcile.stale-seconds:600}")
+    private long staleSeconds;
+
+    @Value("${env.reconcile.port-grace-seconds:60}")
+    private long portGraceSeconds;
+
+    @Value("${env.reconcile.retry-delay-ms:10000}")
+    private long retryDelayMs;
+
+    @Value("${env.reconcile.max-attempts:30}")
+    private int maxAttempts;
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    /**
+     * 一个线程执行对账，一个线程并行列出容器
+     */
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "startup-reconcile-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile String state = "PENDING";
+    private volatile int attempts;
+    private volatile String lastError;
+    private volatile LocalDateTime finishedTime;
+    private volatile long durationMs;
+    private volatile int envsChecked;
+    private volatile int containersListed = -1;
+    private volatile int statusFixed;
+    private volatile int portsReleased;
+    private volatile int portsReclaimed;
+    private volatile int portConflicts;
+    private final List<String> fixes = Collections.synchronizedList(new ArrayList<>());
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            state = "DISABLED";
+            log.info("启动状态对账已禁用");
+            return;
+        }
+        executor.execute(this::reconcileSafely);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 执行对账，守护进程不可用或失败时延迟重试
+     */
+    private void reconcileSafely() {
+        attempts++;
+        if (!dockerOpsService.isDockerAvailable()) {
+            retryLater("Docker 不可用");
+            return;
+        }
+        state = "RUNNING";
+        long start = System.currentTimeMillis();
+        try {
+            reconcile();
+            durationMs = System.currentTimeMillis() - start;
+            finishedTime = LocalDateTime.now();
+            state = "DONE";
+            log.info("启动状态对账完成: 环境={}, 容器={}, 状态修正={}, 释放端口={}, 补记端口={}, 端口冲突={}, 耗时={}ms",
+                envsChecked, containersListed, statusFixed, portsReleased, portsReclaimed, portConflicts, durationMs);
+        } catch (Exception e) {
+            log.warn("启动状态对账失败: {}", e.getMessage(), e);
+            retryLater(e.getMessage());
+        }
+    }
+
+    private void retryLater(String reason) {
+        lastError = reason;
+        if (attempts >= maxAttempts) {
+            state = "FAILED";
+            log.error("启动状态对账放弃，已尝试 {} 次: {}", attempts, reason);
+            return;
+        }
+        state = "PENDING";
+        log.info("启动状态对账延迟重试（第 {} 次）: {}", attempts, reason);
+        executor.schedule(this::reconcileSafely, retryDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconcile() {
+        statusFixed = 0;
+        portsReleased = 0;
+        portsReclaimed = 0;
+        portConflicts = 0;
+        fixes.clear();
+        // 端口宽限期：刚分配、环境记录尚未写入的端口不视为泄漏
+        LocalDateTime portCutoff = LocalDateTime.now().minusSeconds(portGraceSeconds);
+
+        // 1. 容器列表、端口表与环境表并行查询
+        CompletableFuture<List<Container>> containersFuture =
+            CompletableFuture.supplyAsync(dockerOpsService::listAppContainers, executor);
+        LambdaQueryWrapper<VirtualEnv> envQuery = new LambdaQueryWrapper<>();
+        envQuery.ne(VirtualEnv::getStatus, "DESTROYED");
+        List<VirtualEnv> envs = virtualEnvMapper.selectList(envQuery);
+        List<PortUsage> portUsages = portUsageMapper.selectList(new LambdaQueryWrapper<>());
+        List<Container> containers = containersFuture.join();
+        envsChecked = envs.size();
+
+        // 2. 环境状态
+        Set<String> abandoned = Collections.emptySet();
+        if (containers != null) {
+            containersListed = containers.size();
+            abandoned = reconcileStatuses(envs, containers);
+        } else {
+            log.info("命令行方式不支持批量列出容器，跳过环境状态对账");
+        }
+
+        // 3. 端口占用（已标记为销毁的环境不再占用端口）
+        Set<String> destroyed = abandoned;
+        List<VirtualEnv> activeEnvs = envs.stream()
+            .filter(env -> !destroyed.contains(env.getEnvId()))
+            .collect(Collectors.toList());
+        reconcilePorts(activeEnvs, portUsages, portCutoff, destroyed);
+
+        // 4. 停机期间可能已到期的端口租约续期
+        portLeaseService.renewLeases();
+    }
+
+    /**
+     * @return 创建中断、标记为已销毁的环境ID
+     */
+    private Set<String> reconcileStatuses(List<VirtualEnv> envs, List<Container> containers) {
+        Map<String, Container> containersByEnvId = new HashMap<>();
+        Map<String, Container> containersById = new HashMap<>();
+        for (Container container : containers) {
+            containersById.put(container.getId(), container);
+            String envId = container.getLabels() != null
+                ? container.getLabels().get(DockerOpsService.ENV_ID_LABEL) : null;
+            if (envId != null) {
+                containersByEnvId.put(envId, container);
+            }
+        }
+
+        LocalDateTime staleCutoff = LocalDateTime.now().minusSeconds(staleSeconds);
+        Map<String, List<VirtualEnv>> driftedByStatus = new LinkedHashMap<>();
+        List<VirtualEnv> abandoned = new ArrayList<>();
+        List<VirtualEnv> portDrifted = new ArrayList<>();
+        for (VirtualEnv env : envs) {
+            String status = env.getStatus();
+            boolean stable = "RUNNING".equals(status) || "STOPPED".equals(status)
+                || EnvManagerService.PAUSED_STATUS.equals(status);
+            // 过渡状态停留过久说明操作随进程重启中断；仍在进行的操作由其自身完成
+            boolean staleTransition = (EnvManagerService.CREATING_STATUS.equals(status)
+                || EnvManagerService.STARTING_STATUS.equals(status)
+                || EnvManagerService.STOPPING_STATUS.equals(status))
+                && (env.getUpdatedTime() == null || env.getUpdatedTime().isBefore(staleCutoff));
+            if (!stable && !staleTransition) {
+                continue;
+            }
+            Container container = containersByEnvId.get(env.getEnvId());
+            if (container == null && env.getContainerId() != null) {
+                container = containersById.get(env.getContainerId());
+            }
+            if (container == null && EnvManagerService.CREATING_STATUS.equals(status)) {
+                // 创建在启动容器前中断，没有可启动的容器
+                recordFix(String.format("env %s: %s -> DESTROYED (创建中断，容器不存在)", env.getEnvId(), status));
+                abandoned.add(env);
+                continue;
+            }
+            String actualStatus = "STOPPED";
+            if (container != null && "running".equals(container.getState())) {
+                actualStatus = "RUNNING";
+            } else if (container != null && "paused".equals(container.getState())) {
+                actualStatus = EnvManagerService.PAUSED_STATUS;
+            }
+            if (!actualStatus.equals(status)) {
+                recordFix(String.format("env %s: %s -> %s%s", env.getEnvId(), status, actualStatus,
+                    container == null ? " (容器不存在)" : ""));
+                driftedByStatus.computeIfAbsent(status, k -> new ArrayList<>()).add(env);
+                env.setStatus(actualStatus);
+            }
+            if (container != null && "RUNNING".equals(actualStatus) && portManagerService.isEphemeral()) {
+                Integer published = publishedPort(container);
+                if (published != null && !published.equals(env.getPort())) {
+                    recordFix(String.format("env %s: port %s -> %d", env.getEnvId(), env.getPort(), published));
+                    env.setPort(published);
+                    env.setUrl(envGatewayService.envUrl(env.getEnvId(), published));
+                    portDrifted.add(env);
+                }
+            }
+        }
+
+        int fixed = 0;
+        for (Map.Entry<String, List<VirtualEnv>> entry : driftedByStatus.entrySet()) {
+            for (List<VirtualEnv> batch : partition(entry.getValue())) {
+                fixed += virtualEnvMapper.batchTransitStatus(batch, entry.getKey());
+            }
+        }
+        for (List<VirtualEnv> batch : partition(portDrifted)) {
+            virtualEnvMapper.batchUpdateRuntime(batch);
+        }
+        // 逐条更新，只释放确实标记为销毁的环境的端口
+        Set<String> destroyed = new HashSet<>();
+        for (VirtualEnv env : abandoned) {
+            env.setStatus("DESTROYED");
+            env.setStatusReason(EnvManagerService.REASON_STALE);
+            if (virtualEnvMapper.batchTransitStatus(Collections.singletonList(env),
+                    EnvManagerService.CREATING_STATUS) > 0) {
+                destroyed.add(env.getEnvId());
+                fixed++;
+            }
+        }
+        statusFixed = fixed;
+        return destroyed;
+    }
+
+    /**
+     * 容器发布的第一个 TCP 宿主机端口
+     */
+    private Integer publishedPort(Container container) {
+        if (container.getPorts() == null) {
+            return null;
+        }
+        for (ContainerPort port : container.getPorts()) {
+            if (port.getPublicPort() != null && "tcp".equals(port.getType())) {
+                return port.getPublicPort();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param destroyedEnvIds 本次对账标记为已销毁的环境，其端口不受宽限期限制直接释放
+     */
+    private void reconcilePorts(List<VirtualEnv> envs, List<PortUsage> portUsages, LocalDateTime portCutoff,
+                                Set<String> destroyedEnvIds) {
+        Map<Integer, String> envIdByPort = new HashMap<>();
+        for (VirtualEnv env : envs) {
+            // 守护进程分配的端口不在端口表中；多端口实验的附加端口同样属于该环境
+            for (Integer port : PortManagerService.envPorts(env)) {
+                if (portManagerService.isManagedPort(port)) {
+                    envIdByPort.put(port, env.getEnvId());
+                }
+            }
+        }
+        Map<Integer, PortUsage> usageByPort = new HashMap<>();
+        for (PortUsage usage : portUsages) {
+            usageByPort.put(usage.getPort(), usage);
+        }
+
+        // 没有对应未销毁环境的 USED 端口
+        List<PortUsage> leaked = new ArrayList<>();
+        for (PortUsage usage : portUsages) {
+            if (!"USED".equals(usage.getStatus()) || envIdByPort.containsKey(usage.getPort())) {
+                continue;
+            }
+            if (!destroyedEnvIds.contains(usage.getEnvId())
+                && usage.getAllocatedTime() != null && usage.getAllocatedTime().isAfter(portCutoff)) {
+                continue;
+            }
+            recordFix(String.format("port %d: 释放（环境 %s 已不存在）", usage.getPort(), usage.getEnvId()));
+            leaked.add(usage);
+        }
+
+        // 未销毁环境占用、但端口表记录为空闲或缺失的端口
+        List<PortUsage> unrecorded = new ArrayList<>();
+        for (Map.Entry<Integer, String> entry : envIdByPort.entrySet()) {
+            PortUsage usage = usageByPort.get(entry.getKey());
+            if (usage != null && "USED".equals(usage.getStatus())) {
+                if (!entry.getValue().equals(usage.getEnvId())) {
+                    portConflicts++;
+                    log.warn("端口记录与环境不一致，保持不变: port={}, 端口表envId={}, 环境envId={}",
+                        entry.getKey(), usage.getEnvId(), entry.getValue());
+                }
+                continue;
+            }
+            PortUsage reclaimed = new PortUsage();
+            reclaimed.setPort(entry.getKey());
+            reclaimed.setEnvId(entry.getValue());
+            recordFix(String.format("port %d: 补记为环境 %s 占用", entry.getKey(), entry.getValue()));
+            unrecorded.add(reclaimed);
+        }
+
+        for (List<PortUsage> batch : partition(leaked)) {
+            // 只释放仍属于记录中环境的端口，对账期间重新分配给新环境的端口保持不变
+            portsReleased += portManagerService.reclaimPorts(batch);
+        }
+        for (List<PortUsage> batch : partition(unrecorded)) {
+            portManagerService.markPortsUsed(batch);
+        }
+        portsReclaimed = unrecorded.size();
+    }
+
+    private <T> List<List<T>> partition(List<T> items) {
+        List<List<T>> batches = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += batchSize) {
+            batches.add(items.subList(i, Math.min(i + batchSize, items.size())));
+        }
+        return batches;
+    }
+
+    private void recordFix(String fix) {
+        log.info("启动对账修正: {}", fix);
+        if (fixes.size() < MAX_REPORTED_FIXES) {
+            fixes.add(fix);
+        }
+    }
+
+    /**
+     * 对账状态和修正结果
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("state", state);
+        stats.put("attempts", attempts);
+        stats.put("lastError", lastError);
+        stats.put("finishedTime", finishedTime);
+        stats.put("durationMs", durationMs);
+        stats.put("envsChecked", envsChecked);
+        stats.put("containersListed", containersListed);
+        stats.put("statusFixed", statusFixed);
+        stats.put("portsReleased", portsReleased);
+        stats.put("portsReclaimed", portsReclaimed);
+        stats.put("portConflicts", portConflicts);
+        synchronized (fixes) {
+            stats.put("fixes", new ArrayList<>(fixes));
+        }
+        return stats;
+    }
+}
@@ -1,15 +1,20 @@
 package org.dockerenvs.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
 import com.github.mustachejava.MustacheFactory;
 import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dto.ComposeServiceSpec;
+import org.dockerenvs.dto.ComposeSpec;
 import org.dockerenvs.dto.DatabaseConfig;
 import org.dockerenvs.dto.ExperimentMetadata;
 import org.dockerenvs.dto.HealthCheckConfig;
 import org.dockerenvs.dto.VolumeConfig;
 import org.dockerenvs.provider.DatabaseProvider;
-import org.dockerenvs.provider.ProviderManager;
 import org.dockerenvs.provider.RuntimeStrategy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -22,6 +27,8 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -35,40 +42,79 @@ public class TemplateManagerService {
     @Value("${env.server.host:localhost}")
     private String serverHost;
     
-    @Value("${env.apps.base-path:/opt/apps}")
-    private String appsBasePath;
+    @Autowired
+    private PortManagerService portManagerService;
     
     @Autowired
-    private ProviderManager providerManager;
+    private ExperimentMetadataService experimentMetadataService;
     
     private final MustacheFactory mustacheFactory = new DefaultMustacheFactory();
     
+    /**
+     * compose 为未声明 networks 的服务创建的默认网络键
+     */
+    private static final String DEFAULT_NETWORK = "default";
+    
+    private static final String SERVICE_SPECS_KEY = "serviceSpecs";
+    
+    private static final String LABELS_KEY = "labels";
+    
+    /**
+     * 指纹摘要取 SHA-256 的前 8 字节
+     */
+    private static final int FINGERPRINT_BYTES = 8;
+    
+    /**
+     * 计算指纹用的序列化（属性和 Map 键排序，保证同一模型的结果稳定）
+     */
+    private static final ObjectMapper FINGERPRINT_MAPPER = new ObjectMapper()
+        .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+        .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    
     /**
      * 生成docker-compose.yml文件（使用Mustache模板）
+     * @return 与文件内容同源的编排模型（供原生编排引擎直接创建容器）
      */
-    public void generateComposeFile(String envDir, String programPath, ExperimentMetadata metadata, 
+    public ComposeSpec generateComposeFile(String envDir, String programPath, ExperimentMetadata metadata, 
                                        String envId, String userId, Integer hostPort) {
+        return generateComposeFile(envDir, programPath, metadata, envId, userId,
+            hostPort != null ? Collections.singletonList(hostPort) : null);
+    }
+    
+    /**
+     * 生成docker-compose.yml文件（多端口实验）
+     * @param hostPorts 分配的宿主机端口组，与 {@link ExperimentMetadata#getEffectivePortSpecs()} 按顺序一一对应；
+     *                  为空表示由守护进程分配或不发布
+     * @return 与文件内容同源的编排模型（供原生编排引擎直接创建容器）
+     */
+    public ComposeSpec generateComposeFile(String envDir, String programPath, ExperimentMetadata metadata,
+                                       String envId, String userId, List<Integer> hostPorts) {
         try {
             // 读取Mustache模板
             Mustache mustache = mustacheFactory.compile("templates/docker-compose.mustache");
             
-            // 获取运行时策略
-            String runtimeType = metadata.getEffectiveRuntimeType();
-            RuntimeStrategy strategy = providerManager.getRuntimeStrategy(runtimeType);
+            // 预先计算的运行时策略、数据卷、健康检查和数据库配置
+            ExperimentMetadataService.Artifacts artifacts = experimentMetadataService.getArtifacts(metadata);
             
             // 构建模板上下文
-            Map<String, Object> context = buildMustacheContext(metadata, envId, userId, hostPort, envDir, programPath, strategy);
+            Map<String, Object> context = buildMustacheContext(metadata, envId, userId, hostPorts, envDir, programPath, artifacts);
             
             // 渲染模板
             StringWriter writer = new StringWriter();
             mustache.execute(writer, context);
             String content = writer.toString();
             
-            // 写入文件
+            // 写入文件（内容未变化时不重写）
             Path composeFile = Paths.get(envDir, "docker-compose.yml");
-            Files.write(composeFile, content.getBytes(StandardCharsets.UTF_8));
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            if (Files.exists(composeFile) && Arrays.equals(Files.readAllBytes(composeFile), bytes)) {
+                log.debug("docker-compose.yml 未变化: {}", composeFile);
+            } else {
+                Files.write(composeFile, bytes);
+                log.info("生成docker-compose.yml: {}", composeFile);
+            }
             
-            log.info("生成docker-compose.yml: {}", composeFile);
+            return buildComposeSpec(context, envDir);
             
         } catch (IOException e) {
             log.error("生成docker-compose.yml失败", e);
@@ -76,23 +122,80 @@ public class TemplateManagerService {
         }
     }
     
+    /**
+     * 编排模型指纹：每个服务一个摘要（服务定义加项目的网络和标签），重置/启动时据此判断哪些服务需要重建
+     * @return 服务名称 -> 摘要（按服务顺序）
+     */
+    public Map<String, String> fingerprint(ComposeSpec spec) {
+        Map<String, Object> project = new LinkedHashMap<>();
+        project.put("networks", spec.getNetworks());
+        project.put("externalNetworks", spec.getExternalNetworks());
+        project.put("labels", spec.getLabels());
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] projectBytes = FINGERPRINT_MAPPER.writeValueAsBytes(project);
+            for (ComposeServiceSpec service : spec.getServices()) {
+                digest.update(projectBytes);
+                byte[] hash = digest.digest(FINGERPRINT_MAPPER.writeValueAsBytes(service));
+                StringBuilder hex = new StringBuilder();
+                for (int i = 0; i < FINGERPRINT_BYTES; i++) {
+                    hex.append(String.format("%02x", hash[i]));
+                }
+                fingerprints.put(service.getName(), hex.toString());
+            }
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("计算编排模型指纹失败", e);
+        }
+        return fingerprints;
+    }
+    
+    /**
+     * 指纹的存储格式: "app=1a2b3c...,db=4d5e6f..."
+     */
+    public static String formatFingerprint(Map<String, String> fingerprints) {
+        return fingerprints.entrySet().stream()
+            .map(e -> e.getKey() + "=" + e.getValue())
+            .collect(Collectors.joining(","));
+    }
+    
+    public static Map<String, String> parseFingerprint(String value) {
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        if (value == null || value.isEmpty()) {
+            return fingerprints;
+        }
+        for (String entry : value.split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq > 0) {
+                fingerprints.put(entry.substring(0, eq), entry.substring(eq + 1));
+            }
+        }
+        return fingerprints;
+    }
+    
     /**
      * 构建Mustache模板上下文
      */
     private Map<String, Object> buildMustacheContext(ExperimentMetadata metadata, 
                                                      String envId, String userId, 
-                                                     Integer hostPort, String envDir,
+                                                     List<Integer> hostPorts, String envDir,
                                                      String programPath,
-                                                     RuntimeStrategy strategy) {
+                                                     ExperimentMetadataService.Artifacts artifacts) {
+        RuntimeStrategy strategy = artifacts.getStrategy();
         Map<String, Object> context = new HashMap<>();
         
         // 基本信息
         context.put("baseImage", metadata.getBaseImage());
         context.put("containerName", "env-" + envId);
         
+        // 宿主机端口由守护进程分配（hostPort 为空）时容器启动后才能确定，APP_PORT 取容器端口
+        Integer containerPort = metadata.getEffectiveContainerPort();
+        Integer hostPort = hostPorts != null && !hostPorts.isEmpty() ? hostPorts.get(0) : null;
+        Integer appPort = hostPort != null ? hostPort : containerPort;
+        
         // 启动命令
         Map<String, String> variables = new HashMap<>();
-        variables.put("APP_PORT", String.valueOf(hostPort));
+        variables.put("APP_PORT", String.valueOf(appPort));
         variables.put("CONTAINER_PORT", String.valueOf(metadata.getEffectiveContainerPort()));
         variables.put("USER_ID", userId);
         variables.put("EXP_ID", metadata.getExpId());
@@ -103,20 +206,32 @@ public class TemplateManagerService {
             context.put("startCommand", startCommand);
         }
         
-        // 端口映射
-        Integer containerPort = metadata.getEffectiveContainerPort();
-        if (metadata.getHostPorts() != null && !metadata.getHostPorts().isEmpty()) {
-            context.put("ports", metadata.getHostPorts());
-        } else {
-            context.put("hostPort", String.valueOf(hostPort));
-            context.put("containerPort", String.valueOf(containerPort));
+        // 端口映射（不发布端口时环境只能通过网关访问）
+        context.put("hostPort", String.valueOf(appPort));
+        context.put("containerPort", String.valueOf(containerPort));
+        List<String> portSpecs = metadata.getEffectivePortSpecs();
+        if (hostPort == null && portManagerService.isPublishing()) {
+            // 只声明容器端口，发布到守护进程分配的宿主机端口
+            context.put("publishPorts", true);
+            context.put("ports", portSpecs.isEmpty() ? Collections.singletonList(String.valueOf(containerPort)) : portSpecs);
+        } else if (hostPort != null) {
+            context.put("publishPorts", true);
+            if (portSpecs.size() > 1) {
+                // 多端口实验：每个容器端口映射到端口组中对应位置的宿主机端口
+                List<String> ports = new ArrayList<>();
+                for (int i = 0; i < portSpecs.size(); i++) {
+                    if (i >= hostPorts.size()) {
+                        throw new IllegalArgumentException(String.format("宿主机端口不足: 需要 %d 个，分配了 %d 个",
+                            portSpecs.size(), hostPorts.size()));
+                    }
+                    ports.add(hostPorts.get(i) + ":" + portSpecs.get(i));
+                }
+                context.put("ports", ports);
+            }
         }
         
         // 数据卷
-        List<VolumeConfig> volumes = metadata.getVolumes();
-        if (volumes == null || volumes.isEmpty()) {
-            volumes = strategy.getDefaultVolumes(envDir, programPath);
-        }
+        List<VolumeConfig> volumes = artifacts.volumes(envDir, programPath);
         List<Map<String, String>> volumeList = volumes.stream().map(v -> {
             Map<String, String> vol = new HashMap<>();
             vol.put("hostPath", v.getHostPath());
@@ -127,7 +242,7 @@ public class TemplateManagerService {
         context.put("volumes", volumeList);
         
         // 环境变量
-        Map<String, String> env = strategy.getDefaultEnvironment(metadata, hostPort);
+        Map<String, String> env = strategy.getDefaultEnvironment(metadata, appPort);
         if (metadata.getEnv() != null) {
             // 安全地合并环境变量，确保所有值都是字符串
             // 即使 ExperimentMetadata.env 声明为 Map<String, String>，
@@ -140,12 +255,10 @@ public class TemplateManagerService {
         }
         
         // 数据库环境变量
-        DatabaseConfig dbConfig = metadata.getEffectiveDatabaseConfig();
-        if (dbConfig != null && dbConfig.getEnabled()) {
-            DatabaseProvider dbProvider = providerManager.getDatabaseProvider(dbConfig);
-            if (dbProvider != null) {
-                env.putAll(dbProvider.getEnvironmentVariables(dbConfig));
-            }
+        DatabaseConfig dbConfig = artifacts.getDatabaseConfig();
+        DatabaseProvider dbProvider = artifacts.getDatabaseProvider();
+        if (dbProvider != null) {
+            env.putAll(dbProvider.getEnvironmentVariables(dbConfig));
         }
         
         // 构建环境变量列表，确保所有值都是字符串（双重保险）
@@ -164,24 +277,35 @@ public class TemplateManagerService {
             context.put("environment", envList);
         }
         
+        // 环境标签（用于按标签批量查询容器状态）
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put(DockerOpsService.ENV_ID_LABEL, envId);
+        labels.put(DockerOpsService.USER_ID_LABEL, userId);
+        labels.put(DockerOpsService.EXP_ID_LABEL, metadata.getExpId());
+        if (containerPort != null) {
+            labels.put(DockerOpsService.CONTAINER_PORT_LABEL, String.valueOf(containerPort));
+        }
+        context.put(LABELS_KEY, labels);
+        // userId / expId 来自请求，以 YAML 双引号字符串写入，避免特殊字符破坏文件或注入其他字段
+        context.put("labelList", labels.entrySet().stream()
+            .map(e -> quoteComposeString(e.getKey() + "=" + e.getValue()))
+            .collect(Collectors.toList()));
+        
         // 网络
         String networkName = "env-" + envId + "-net";
         context.put("networkName", networkName);
         
         // 数据库网络配置
-        if (dbConfig != null && dbConfig.getEnabled()) {
-            DatabaseProvider dbProvider = providerManager.getDatabaseProvider(dbConfig);
-            if (dbProvider != null) {
-                String dbNetwork = dbProvider.getNetworkConfig();
-                if (dbNetwork != null && !dbNetwork.trim().isEmpty()) {
-                    // 提取网络名称（从 "      - network-name" 格式中提取）
-                    String networkNameFromConfig = dbNetwork.replaceAll("^\\s*-\\s*", "").trim();
-                    context.put("databaseNetwork", networkNameFromConfig);
-                }
-                String dbNetworkDef = dbProvider.getNetworkDefinition();
-                if (dbNetworkDef != null && !dbNetworkDef.trim().isEmpty()) {
-                    context.put("databaseNetworkDef", dbNetworkDef);
-                }
+        if (dbProvider != null) {
+            String dbNetwork = dbProvider.getNetworkConfig();
+            if (dbNetwork != null && !dbNetwork.trim().isEmpty()) {
+                // 提取网络名称（从 "      - network-name" 格式中提取）
+                String networkNameFromConfig = dbNetwork.replaceAll("^\\s*-\\s*", "").trim();
+                context.put("databaseNetwork", networkNameFromConfig);
+            }
+            String dbNetworkDef = dbProvider.getNetworkDefinition();
+            if (dbNetworkDef != null && !dbNetworkDef.trim().isEmpty()) {
+                context.put("databaseNetworkDef", dbNetworkDef);
             }
         }
         
@@ -208,10 +332,7 @@ public class TemplateManagerService {
         }
         
         // 健康检查
-        HealthCheckConfig healthCheck = metadata.getHealthCheck();
-        if (healthCheck == null) {
-            healthCheck = strategy.getDefaultHealthCheck(containerPort);
-        }
+        HealthCheckConfig healthCheck = artifacts.getHealthCheck();
         if (healthCheck != null) {
             context.put("healthCheck", true);
             context.put("healthCheckTest", healthCheck.getTest());
@@ -223,6 +344,7 @@ public class TemplateManagerService {
         
         // 附加服务
         List<String> additionalServices = new ArrayList<>();
+        List<ComposeServiceSpec> serviceSpecs = new ArrayList<>();
         
         // 添加用户定义的服务
         if (metadata.getServices() != null && !metadata.getServices().isEmpty()) {
@@ -230,45 +352,170 @@ public class TemplateManagerService {
                 // 这里可以构建服务配置的YAML字符串
                 // 简化处理，直接添加服务名称
                 additionalServices.add("  " + service.getName() + ":\n    image: " + service.getImage());
+                
+                ComposeServiceSpec serviceSpec = new ComposeServiceSpec();
+                serviceSpec.setName(service.getName());
+                serviceSpec.setImage(service.getImage());
+                // 未声明 networks 的服务在 compose 中加入项目默认网络
+                serviceSpec.getNetworks().add(DEFAULT_NETWORK);
+                serviceSpecs.add(serviceSpec);
             }
         }
         
         // 添加数据库提供者定义的服务（由提供者自己决定是否需要）
-        if (dbConfig != null && dbConfig.getEnabled()) {
-            DatabaseProvider dbProvider = providerManager.getDatabaseProvider(dbConfig);
-            if (dbProvider != null) {
-                // 构建模板上下文
-                Map<String, Object> dbContext = new HashMap<>();
-                dbContext.put("containerName", "env-" + envId);
-                dbContext.put("networkName", networkName);
-                dbContext.put("envDir", envDir);
-                dbContext.put("initSqlPath", findInitSqlPath(metadata.getExpId(), envDir));
-                
-                String serviceConfig = dbProvider.getServiceConfig(dbConfig, dbContext);
-                if (serviceConfig != null && !serviceConfig.trim().isEmpty()) {
-                    additionalServices.add(serviceConfig);
-                }
+        if (dbProvider != null) {
+            // 构建模板上下文
+            Map<String, Object> dbContext = new HashMap<>();
+            dbContext.put("containerName", "env-" + envId);
+            dbContext.put("networkName", networkName);
+            dbContext.put("envDir", envDir);
+            dbContext.put("initSqlPath", experimentMetadataService.getInitSqlPath(metadata.getExpId()));
+            dbContext.put("labels", labels);
+            
+            String serviceConfig = dbProvider.getServiceConfig(dbConfig, dbContext);
+            if (serviceConfig != null && !serviceConfig.trim().isEmpty()) {
+                additionalServices.add(serviceConfig);
+            }
+            ComposeServiceSpec serviceSpec = dbProvider.getServiceSpec(dbConfig, dbContext);
+            if (serviceSpec != null) {
+                serviceSpecs.add(serviceSpec);
             }
         }
         
         if (!additionalServices.isEmpty()) {
             context.put("additionalServices", additionalServices);
         }
+        // 结构化的附加服务定义（模板不使用，仅供 buildComposeSpec）
+        context.put(SERVICE_SPECS_KEY, serviceSpecs);
         
         // 附加数据卷（由数据库提供者决定是否需要）
-        if (dbConfig != null && dbConfig.getEnabled()) {
-            DatabaseProvider dbProvider = providerManager.getDatabaseProvider(dbConfig);
-            if (dbProvider != null) {
-                String volumeConfig = dbProvider.getVolumeConfig();
-                if (volumeConfig != null && !volumeConfig.trim().isEmpty()) {
-                    context.put("additionalVolumes", Collections.singletonList(volumeConfig));
-                }
+        if (dbProvider != null) {
+            String volumeConfig = dbProvider.getVolumeConfig();
+            if (volumeConfig != null && !volumeConfig.trim().isEmpty()) {
+                context.put("additionalVolumes", Collections.singletonList(volumeConfig));
             }
         }
         
         return context;
     }
     
+    /**
+     * 从模板上下文构建编排模型，与 docker-compose.mustache 的渲染结果保持一致
+     */
+    @SuppressWarnings("unchecked")
+    private ComposeSpec buildComposeSpec(Map<String, Object> context, String envDir) {
+        String containerName = (String) context.get("containerName");
+        String networkName = (String) context.get("networkName");
+        String databaseNetwork = (String) context.get("databaseNetwork");
+        
+        ComposeSpec spec = new ComposeSpec();
+        // 与 DockerOpsService 从 container_name 推导项目名称的规则一致
+        spec.setProjectName(containerName.toLowerCase().replaceAll("[^a-z0-9_-]", "_"));
+        spec.setWorkingDir(envDir);
+        spec.getLabels().putAll((Map<String, String>) context.get(LABELS_KEY));
+        spec.getNetworks().add(networkName);
+        if (databaseNetwork != null) {
+            spec.getExternalNetworks().add(databaseNetwork);
+        }
+        
+        ComposeServiceSpec app = new ComposeServiceSpec();
+        app.setName("app");
+        app.setImage((String) context.get("baseImage"));
+        app.setContainerName(containerName);
+        app.setCommand((String) context.get("startCommand"));
+        
+        List<String> ports = (List<String>) context.get("ports");
+        if (ports != null) {
+            app.getPorts().addAll(ports);
+        } else if (context.containsKey("publishPorts")) {
+            app.getPorts().add(context.get("hostPort") + ":" + context.get("containerPort"));
+        }
+        
+        for (Map<String, String> vol : (List<Map<String, String>>) context.get("volumes")) {
+            VolumeConfig volume = new VolumeConfig();
+            volume.setHostPath(vol.get("hostPath"));
+            volume.setContainerPath(vol.get("containerPath"));
+            volume.setOptions(vol.get("options"));
+            app.getVolumes().add(volume);
+        }
+        
+        List<Map<String, String>> envList = (List<Map<String, String>>) context.get("environment");
+        if (envList != null) {
+            for (Map<String, String> envVar : envList) {
+                app.getEnvironment().put(envVar.get("key"), envVar.get("value"));
+            }
+        } else {
+            app.getEnvironment().put("APP_PORT", String.valueOf(context.get("hostPort")));
+            app.getEnvironment().put("CONTAINER_PORT", String.valueOf(context.get("containerPort")));
+        }
+        
+        app.setWorkingDir((String) context.get("workingDir"));
+        app.getNetworks().add(networkName);
+        if (databaseNetwork != null) {
+            app.getNetworks().add(databaseNetwork);
+        }
+        app.setTty(context.containsKey("ttyEnabled"));
+        app.setStdinOpen(context.containsKey("stdinOpen"));
+        
+        if (context.containsKey("healthCheck")) {
+            HealthCheckConfig healthCheck = new HealthCheckConfig();
+            healthCheck.setTest((String) context.get("healthCheckTest"));
+            healthCheck.setInterval((String) context.get("healthCheckInterval"));
+            healthCheck.setTimeout((String) context.get("healthCheckTimeout"));
+            String retries = (String) context.get("healthCheckRetries");
+            healthCheck.setRetries("null".equals(retries) ? null : Integer.valueOf(retries));
+            healthCheck.setStartPeriod((String) context.get("healthCheckStartPeriod"));
+            app.setHealthCheck(healthCheck);
+        }
+        spec.getServices().add(app);
+        
+        for (ComposeServiceSpec service : (List<ComposeServiceSpec>) context.get(SERVICE_SPECS_KEY)) {
+            if (service.getNetworks().contains(DEFAULT_NETWORK) && !spec.getNetworks().contains(DEFAULT_NETWORK)) {
+                spec.getNetworks().add(DEFAULT_NETWORK);
+            }
+            spec.getServices().add(service);
+        }
+        return spec;
+    }
+    
+    /**
+     * 转为 compose 文件中的 YAML 双引号字符串：转义反斜杠、双引号和控制字符，
+     * $ 写成 $$，避免被 compose 当作变量插值
+     */
+    public static String quoteComposeString(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                case '$':
+                    quoted.append("$$");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x7f) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+    
     /**
      * 将环境变量值安全地转换为字符串
      * 
@@ -298,27 +545,4 @@ public class TemplateManagerService {
             return String.valueOf(value);
         }
     }
-    
-    /**
-     * 查找数据库初始化SQL文件路径
-     * 优先级：
-     * 1. apps/{expId}/db/init.sql（实验目录下的初始化脚本）
-     * 2. 如果不存在，返回空字符串（MySQL容器会跳过初始化）
-     */
-    private String findInitSqlPath(String expId, String envDir) {
-        // 优先查找实验目录下的 db/init.sql
-        String initSqlPath = appsBasePath + "/" + expId + "/db/init.sql";
-        Path initSqlFile = Paths.get(initSqlPath);
-        
-        if (Files.exists(initSqlFile)) {
-            String normalizedPath = initSqlFile.toAbsolutePath().toString().replace("\\", "/");
-            log.info("找到数据库初始化脚本: {}", normalizedPath);
-            return normalizedPath;
-        } else {
-            log.warn("未找到数据库初始化脚本: {}，MySQL容器将使用默认初始化", initSqlPath);
-            // 返回空字符串，MySQL容器会跳过初始化脚本挂载
-            return "";
-        }
-    }
 }
-
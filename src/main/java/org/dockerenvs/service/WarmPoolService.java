@@ -0,0 +1,377 @@
+package org.dockerenvs.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.dao.mapper.VirtualEnvMapper;
+import org.dockerenvs.entity.VirtualEnv;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预热环境池
+ * 按实验维护一定数量已启动、健康检查已通过、尚未分配给用户的环境（状态 WARM），
+ * 创建环境时优先认领池中的环境，只需一次条件 UPDATE 即可绑定到用户，省去编排、启动和健康检查等待：
+ * - 池大小按实验配置（env.warm-pool.sizes），未配置的实验不预热
+ * - 后台补充线程定期把各池补充到目标大小，清理已失效的预热环境，并回收超出目标的部分
+ * - 预热环境的容器环境变量和标签中的用户ID为池占位用户，只适合不依赖用户ID启动的实验
+ * - 补充只使用主机空闲容量（准入控制），有用户请求排队时暂停补充
+ */
+@Slf4j
+@Service
+public class WarmPoolService {
+
+    /**
+     * 预热环境的占位用户ID
+     */
+    public static final String POOL_USER_ID = "__warm_pool__";
+
+    /**
+     * 预热环境状态
+     */
+    public static final String WARM_STATUS = "WARM";
+
+    /**
+     * 认领时最多尝试的候选环境数
+     */
+    private static final int CLAIM_CANDIDATES = 5;
+
+    @Autowired
+    private VirtualEnvMapper virtualEnvMapper;
+
+    @Autowired
+    private DockerOpsService dockerOpsService;
+    
+    @Autowired
+    private AdmissionControlService admissionControlService;
+    
+    @Autowired
+    private PortManagerService portManagerService;
+
+    // 与 EnvManagerService 互相依赖（认领/创建），延迟注入
+    @Lazy
+    @Autowired
+    private EnvManagerService envManagerService;
+
+    @Value("${env.warm-pool.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 各实验的池大小，格式：expId:size,expId:size
+     */
+    @Value("${env.warm-pool.sizes:}")
+    private String sizesConfig;
+
+    @Value("${env.warm-pool.refill-interval-ms:10000}")
+    private long refillIntervalMs;
+
+    @Value("${env.warm-pool.ready-timeout-seconds:180}")
+    private int readyTimeoutSeconds;
+
+    private final Map<String, Integer> targetSizes = new LinkedHashMap<>();
+    private final Map<String, PoolStats> statsByExp = new ConcurrentHashMap<>();
+    private final AtomicBoolean refillPending = new AtomicBoolean();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "warm-pool-refiller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        if (sizesConfig == null || sizesConfig.trim().isEmpty()) {
+            return;
+        }
+        for (String item : sizesConfig.split(",")) {
+            String[] parts = item.trim().split(":");
+            if (parts.length != 2 || parts[0].trim().isEmpty()) {
+                log.warn("忽略无效的预热池配置项: {}", item);
+                continue;
+            }
+            try {
+                targetSizes.put(parts[0].trim(), Math.max(0, Integer.parseInt(parts[1].trim())));
+            } catch (NumberFormatException e) {
+                log.warn("忽略无效的预热池配置项: {}", item);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("预热环境池已禁用");
+            return;
+        }
+        log.info("预热环境池已启用: sizes={}", targetSizes);
+        executor.scheduleWithFixedDelay(this::refillSafely, 0, refillIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    public int getReadyTimeoutSeconds() {
+        return readyTimeoutSeconds;
+    }
+
+    /**
+     * 池中是否可能有可认领的环境（按最近一次补充后的统计，不查询数据库）
+     */
+    public boolean hasAvailable(String expId) {
+        if (!enabled || !targetSizes.containsKey(expId)) {
+            return false;
+        }
+        PoolStats stats = statsByExp.get(expId);
+        return stats != null && stats.available > 0;
+    }
+    
+    /**
+     * 认领预热环境并绑定到用户
+     * @return 认领到的环境（状态已为 RUNNING），池中没有可用环境时返回null
+     */
+    public VirtualEnv claim(String userId, String systemId, String expId) {
+        if (!enabled || !targetSizes.containsKey(expId)) {
+            return null;
+        }
+        PoolStats stats = stats(expId);
+
+        LambdaQueryWrapper<VirtualEnv> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(VirtualEnv::getExpId, expId);
+        queryWrapper.eq(VirtualEnv::getStatus, WARM_STATUS);
+        queryWrapper.orderByAsc(VirtualEnv::getCreatedTime);
+        queryWrapper.last("LIMIT " + CLAIM_CANDIDATES);
+        List<VirtualEnv> candidates = virtualEnvMapper.selectList(queryWrapper);
+
+        for (VirtualEnv candidate : candidates) {
+            // 容器已失效的留给补充线程清理
+            if (!dockerOpsService.containerExists(candidate.getContainerId())) {
+                continue;
+            }
+            try {
+                if (virtualEnvMapper.claimWarmEnv(candidate.getEnvId(), userId, systemId) == 0) {
+                    // 已被并发请求认领
+                    continue;
+                }
+            } catch (DuplicateKeyException e) {
+                // 该用户已有同一实验的环境（并发创建），由创建流程返回已有环境
+                log.info("用户已有相同环境，放弃认领预热环境: userId={}, expId={}", userId, expId);
+                return null;
+            }
+            candidate.setUserId(userId);
+            candidate.setSystemId(systemId);
+            candidate.setStatus("RUNNING");
+            candidate.setLastActiveTime(LocalDateTime.now());
+            candidate.setUpdatedTime(candidate.getLastActiveTime());
+            stats.hits.incrementAndGet();
+            stats.available = Math.max(0, stats.available - 1);
+            log.info("认领预热环境: envId={}, userId={}, expId={}", candidate.getEnvId(), userId, expId);
+            requestRefill();
+            return candidate;
+        }
+
+        stats.misses.incrementAndGet();
+        log.info("预热池无可用环境，走冷启动: expId={}", expId);
+        requestRefill();
+        return null;
+    }
+
+    /**
+     * 请求尽快补充一次（已有待执行的补充时忽略）
+     */
+    private void requestRefill() {
+        if (refillPending.compareAndSet(false, true)) {
+            executor.execute(this::refillSafely);
+        }
+    }
+
+    private void refillSafely() {
+        refillPending.set(false);
+        if (!dockerOpsService.isDockerAvailable()) {
+            log.debug("Docker 不可用，跳过预热池补充");
+            return;
+        }
+        try {
+            refill();
+        } catch (Exception e) {
+            log.warn("预热池补充失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 清理失效和多余的预热环境，并把各池补充到目标大小
+     */
+    private void refill() {
+        LambdaQueryWrapper<VirtualEnv> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(VirtualEnv::getStatus, WARM_STATUS);
+        queryWrapper.orderByAsc(VirtualEnv::getCreatedTime);
+        List<VirtualEnv> warmEnvs = virtualEnvMapper.selectList(queryWrapper);
+
+        Map<String, List<VirtualEnv>> envsByExp = new HashMap<>();
+        for (VirtualEnv env : warmEnvs) {
+            envsByExp.computeIfAbsent(env.getExpId(), k -> new ArrayList<>()).add(env);
+        }
+        Set<String> expIds = new HashSet<>(envsByExp.keySet());
+        expIds.addAll(targetSizes.keySet());
+
+        for (String expId : expIds) {
+            int target = targetSizes.getOrDefault(expId, 0);
+            List<VirtualEnv> alive = new ArrayList<>();
+            for (VirtualEnv env : envsByExp.getOrDefault(expId, new ArrayList<>())) {
+                if (dockerOpsService.containerExists(env.getContainerId())) {
+                    alive.add(env);
+                } else {
+                    log.warn("预热环境容器已失效，销毁: envId={}, expId={}", env.getEnvId(), expId);
+                    destroyQuietly(env.getEnvId());
+                }
+            }
+
+            // 回收超出目标的部分（配置调小或实验不再预热）
+            while (alive.size() > target) {
+                VirtualEnv extra = alive.remove(alive.size() - 1);
+                log.info("回收多余的预热环境: envId={}, expId={}", extra.getEnvId(), expId);
+                destroyQuietly(extra.getEnvId());
+            }
+
+            PoolStats stats = stats(expId);
+            stats.available = alive.size();
+            for (int i = alive.size(); i < target; i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                // 只用空闲容量补充，有用户请求排队时让路
+                AdmissionControlService.Ticket ticket = admissionControlService.tryAcquire(expId);
+                if (ticket == null) {
+                    log.debug("主机容量不足，暂停补充预热池: expId={}", expId);
+                    break;
+                }
+                long start = System.currentTimeMillis();
+                try {
+                    String envId = envManagerService.createWarmEnv(expId).getEnvId();
+                    admissionControlService.release(ticket, true);
+                    long durationMs = System.currentTimeMillis() - start;
+                    stats.recordRefill(durationMs);
+                    stats.available++;
+                    log.info("预热环境已入池: envId={}, expId={}, 耗时={}ms", envId, expId, durationMs);
+                } catch (Exception e) {
+                    admissionControlService.release(ticket, false);
+                    stats.refillFailures.incrementAndGet();
+                    log.warn("创建预热环境失败，下个周期重试: expId={}, {}", expId, e.getMessage());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 销毁预热环境：先以条件更新 WARM -> STOPPING 占用，避免销毁刚被用户认领的环境
+     * 销毁失败时释放端口并标记为已销毁，不留下占用端口、预热池和回收都不再处理的记录
+     */
+    private void destroyQuietly(String envId) {
+        if (virtualEnvMapper.transitStatus(envId, Collections.singletonList(WARM_STATUS),
+                EnvManagerService.STOPPING_STATUS) == 0) {
+            return;
+        }
+        try {
+            envManagerService.destroyEnv(envId);
+        } catch (Exception e) {
+            log.warn("销毁预热环境失败，释放端口并标记为已销毁: envId={}, {}", envId, e.getMessage());
+            try {
+                VirtualEnv env = virtualEnvMapper.selectById(envId);
+                if (env != null) {
+                    portManagerService.releasePorts(envId, PortManagerService.envPorts(env));
+                }
+                virtualEnvMapper.batchMarkDestroyed(Collections.singletonList(envId),
+                    EnvManagerService.REASON_DESTROY_FAILED);
+            } catch (Exception ex) {
+                log.error("标记预热环境为已销毁失败: envId={}", envId, ex);
+            }
+        }
+    }
+
+    private PoolStats stats(String expId) {
+        return statsByExp.computeIfAbsent(expId, k -> new PoolStats());
+    }
+
+    /**
+     * 预热池指标（按实验统计目标大小、可用数、命中/未命中、补充次数与耗时）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        Map<String, Object> pools = new LinkedHashMap<>();
+        Set<String> expIds = new HashSet<>(targetSizes.keySet());
+        expIds.addAll(statsByExp.keySet());
+        for (String expId : expIds) {
+            Map<String, Object> pool = stats(expId).toMap();
+            pool.put("targetSize", targetSizes.getOrDefault(expId, 0));
+            pools.put(expId, pool);
+        }
+        stats.put("pools", pools);
+        return stats;
+    }
+
+    /**
+     * 单个实验的预热池统计
+     */
+    private static class PoolStats {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong refills = new AtomicLong();
+        private final AtomicLong refillFailures = new AtomicLong();
+        private final AtomicLong totalRefillMs = new AtomicLong();
+        private volatile long lastRefillMs;
+        private volatile long maxRefillMs;
+        private volatile int available;
+
+        void recordRefill(long durationMs) {
+            refills.incrementAndGet();
+            totalRefillMs.addAndGet(durationMs);
+            lastRefillMs = durationMs;
+            if (durationMs > maxRefillMs) {
+                maxRefillMs = durationMs;
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            long hitCount = hits.get();
+            long missCount = misses.get();
+            long refillCount = refills.get();
+            map.put("available", available);
+            map.put("hits", hitCount);
+            map.put("misses", missCount);
+            map.put("hitRate", hitCount + missCount == 0 ? 0
+                : Math.round(hitCount * 1000.0 / (hitCount + missCount)) / 1000.0);
+            map.put("refills", refillCount);
+            map.put("refillFailures", refillFailures.get());
+            map.put("lastRefillMs", lastRefillMs);
+            map.put("avgRefillMs", refillCount == 0 ? 0 : totalRefillMs.get() / refillCount);
+            map.put("maxRefillMs", maxRefillMs);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.dockerenvs.socket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.service.EnvActivityService;
+import org.dockerenvs.service.EnvGatewayService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 网关 WebSocket 转发：浏览器连接由网关过滤器完成握手，这里再连接环境容器，双向转发消息
+ * 消息按分片转发（不在内存中拼接完整消息），两端发送各自排队，慢的一端超过发送期限或缓冲上限时断开
+ */
+@Slf4j
+@Component
+public class EnvGatewayWebSocketHandler extends AbstractWebSocketHandler {
+
+    /**
+     * 网关过滤器写入请求属性、握手时复制到会话属性的上游地址和环境ID
+     */
+    public static final String UPSTREAM_URI_ATTRIBUTE = "gateway.upstreamUri";
+    public static final String ENV_ID_ATTRIBUTE = "gateway.envId";
+
+    private static final String UPSTREAM_SESSION_ATTRIBUTE = "gateway.upstreamSession";
+
+    /**
+     * 握手时转发给上游的请求头
+     */
+    private static final List<String> FORWARDED_HEADERS = Arrays.asList("Cookie", "Authorization", "Origin", "User-Agent");
+
+    private final EnvGatewayService envGatewayService;
+    private final EnvActivityService envActivityService;
+    private final StandardWebSocketClient client = new StandardWebSocketClient();
+
+    @Value("${env.gateway.connect-timeout-ms:3000}")
+    private long connectTimeoutMs;
+
+    @Value("${env.gateway.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${env.gateway.websocket.buffer-size-limit:1048576}")
+    private int bufferSizeLimit;
+
+    public EnvGatewayWebSocketHandler(EnvGatewayService envGatewayService, EnvActivityService envActivityService) {
+        this.envGatewayService = envGatewayService;
+        this.envActivityService = envActivityService;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        URI upstreamUri = (URI) session.getAttributes().get(UPSTREAM_URI_ATTRIBUTE);
+        String envId = (String) session.getAttributes().get(ENV_ID_ATTRIBUTE);
+        envGatewayService.webSocketOpened();
+        WebSocketSession downstream = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, bufferSizeLimit);
+
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        for (String name : FORWARDED_HEADERS) {
+            List<String> values = session.getHandshakeHeaders().get(name);
+            if (values != null) {
+                headers.put(name, values);
+            }
+        }
+        if (StringUtils.hasText(session.getAcceptedProtocol())) {
+            headers.setSecWebSocketProtocol(session.getAcceptedProtocol());
+        }
+
+        try {
+            // 在建立连接的回调中等待上游握手，完成前浏览器的消息不会被分发
+            WebSocketSession upstream = client.doHandshake(new UpstreamHandler(downstream), headers, upstreamUri)
+                .get(connectTimeoutMs, TimeUnit.MILLISECONDS);
+            session.getAttributes().put(UPSTREAM_SESSION_ATTRIBUTE,
+                new ConcurrentWebSocketSessionDecorator(upstream, sendTimeLimitMs, bufferSizeLimit));
+            log.debug("网关 WebSocket 已连接: envId={}, upstream={}", envId, upstreamUri);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("网关 WebSocket 连接上游失败: envId={}, upstream={}, error={}", envId, upstreamUri, e.getMessage());
+            envGatewayService.recordUpstreamError(envId);
+            closeQuietly(session, new CloseStatus(1014, "upstream unavailable"));
+        }
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        if (!(message instanceof TextMessage) && !(message instanceof BinaryMessage)) {
+            // ping/pong 由容器各自应答
+            return;
+        }
+        WebSocketSession upstream = (WebSocketSession) session.getAttributes().get(UPSTREAM_SESSION_ATTRIBUTE);
+        if (upstream != null && upstream.isOpen()) {
+            upstream.sendMessage(message);
+            envActivityService.touchEnv((String) session.getAttributes().get(ENV_ID_ATTRIBUTE));
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.debug("网关 WebSocket 传输错误: {}", exception.getMessage());
+        closeQuietly(session, CloseStatus.SERVER_ERROR);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        envGatewayService.webSocketClosed();
+        WebSocketSession upstream = (WebSocketSession) session.getAttributes().remove(UPSTREAM_SESSION_ATTRIBUTE);
+        if (upstream != null) {
+            closeQuietly(upstream, sendable(status));
+        }
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        return true;
+    }
+
+    /**
+     * 1005/1006/1015 只用于表示连接状态，不能在关闭帧中发送
+     */
+    private static CloseStatus sendable(CloseStatus status) {
+        int code = status.getCode();
+        return code == 1005 || code == 1006 || code == 1015 ? CloseStatus.GOING_AWAY : status;
+    }
+
+    private static void closeQuietly(WebSocketSession session, CloseStatus status) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.debug("关闭 WebSocket 失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 上游连接：消息转发给浏览器，上游关闭时关闭浏览器连接
+     */
+    private static class UpstreamHandler extends AbstractWebSocketHandler {
+
+        private final WebSocketSession downstream;
+
+        UpstreamHandler(WebSocketSession downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+            if ((message instanceof TextMessage || message instanceof BinaryMessage) && downstream.isOpen()) {
+                downstream.sendMessage(message);
+            }
+        }
+
+        @Override
+        public void handleTransportError(WebSocketSession session, Throwable exception) {
+            closeQuietly(downstream, CloseStatus.SERVER_ERROR);
+        }
+
+        @Override
+        public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+            closeQuietly(downstream, sendable(status));
+        }
+
+        @Override
+        public boolean supportsPartialMessages() {
+            return true;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.github.dockerjava.api.command.ExecCreateCmdResponse;
 import com.github.dockerjava.api.exception.NotFoundException;
 import com.github.dockerjava.api.model.Frame;
 import lombok.extern.slf4j.Slf4j;
+import org.dockerenvs.service.EnvActivityService;
 import org.springframework.stereotype.Component;
 import org.springframework.util.MultiValueMap;
 import org.springframework.util.StringUtils;
@@ -32,11 +33,13 @@ import java.util.concurrent.*;
 public class TerminalWebSocketHandler extends TextWebSocketHandler {
 
     private final DockerClient dockerClient;
+    private final EnvActivityService envActivityService;
     private final ExecutorService executorService = Executors.newCachedThreadPool();
     private final Map<String, TerminalSessionContext> sessionContexts = new ConcurrentHashMap<>();
 
-    public TerminalWebSocketHandler(DockerClient dockerClient) {
+    public TerminalWebSocketHandler(DockerClient dockerClient, EnvActivityService envActivityService) {
         this.dockerClient = dockerClient;
+        this.envActivityService = envActivityService;
     }
 
     @Override
@@ -96,7 +99,10 @@ public class TerminalWebSocketHandler extends TextWebSocketHandler {
             }
         });
 
-        sessionContexts.put(session.getId(), new TerminalSessionContext(clientWriter, callback, streamingTask));
+        sessionContexts.put(session.getId(),
+            new TerminalSessionContext(containerId, clientWriter, callback, streamingTask));
+        // 终端会话打开期间环境视为活跃，不会被空闲回收
+        envActivityService.terminalOpened(containerId);
 
         log.info("WebSocket 终端连接建立: sessionId={}, containerId={}", session.getId(), containerId);
     }
@@ -109,6 +115,7 @@ public class TerminalWebSocketHandler extends TextWebSocketHandler {
             session.close(new CloseStatus(4001, "状态已失效"));
             return;
         }
+        envActivityService.touchContainer(context.getContainerId());
         try {
             context.getClientWriter().write(message.getPayload().getBytes(StandardCharsets.UTF_8));
             context.getClientWriter().flush();
@@ -192,6 +199,7 @@ public class TerminalWebSocketHandler extends TextWebSocketHandler {
         if (context == null) {
             return;
         }
+        envActivityService.terminalClosed(context.getContainerId());
         try {
             context.getClientWriter().close();
         } catch (IOException e) {
@@ -215,18 +223,25 @@ public class TerminalWebSocketHandler extends TextWebSocketHandler {
     }
 
     private static class TerminalSessionContext {
+        private final String containerId;
         private final PipedOutputStream clientWriter;
         private final ResultCallback.Adapter<Frame> callback;
         private final Future<?> streamingTask;
 
-        TerminalSessionContext(PipedOutputStream clientWriter,
+        TerminalSessionContext(String containerId,
+                               PipedOutputStream clientWriter,
                                ResultCallback.Adapter<Frame> callback,
                                Future<?> streamingTask) {
+            this.containerId = containerId;
             this.clientWriter = clientWriter;
             this.callback = callback;
             this.streamingTask = streamingTask;
         }
 
+        public String getContainerId() {
+            return containerId;
+        }
+
         public PipedOutputStream getClientWriter() {
             return clientWriter;
         }
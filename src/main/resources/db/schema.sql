@@ -10,25 +10,70 @@ CREATE TABLE IF NOT EXISTS virtual_env (
     user_id VARCHAR(50) NOT NULL COMMENT '用户ID',
     system_id VARCHAR(50) COMMENT '系统ID',
     exp_id VARCHAR(50) NOT NULL COMMENT '实验ID',
-    port INT NOT NULL COMMENT '分配的端口',
+    port INT COMMENT '宿主机端口（ephemeral 模式下容器启动后由守护进程分配）',
+    extra_ports VARCHAR(500) COMMENT '附加端口映射（多端口实验，宿主机端口:容器端口，逗号分隔）',
     container_id VARCHAR(100) COMMENT '容器ID',
     env_dir VARCHAR(500) COMMENT '环境目录路径',
-    status VARCHAR(20) DEFAULT 'CREATED' COMMENT '状态：CREATED/RUNNING/STOPPED/DESTROYED',
+    compose_fingerprint VARCHAR(500) COMMENT '编排模型指纹（按服务的模型摘要，服务名=摘要，逗号分隔）',
+    runtime_descriptor VARCHAR(2000) COMMENT '运行时描述（JSON：项目名称、容器ID、网络、数据卷）',
+    status VARCHAR(20) DEFAULT 'CREATING' COMMENT '状态：CREATING/STARTING/STOPPING/WARM/RUNNING/PAUSED/STOPPED/DESTROYED',
     url VARCHAR(200) COMMENT '访问URL',
+    last_active_time DATETIME COMMENT '最近活跃时间',
+    status_reason VARCHAR(30) COMMENT '最近一次状态变更原因：MANUAL/IDLE/MAX_LIFETIME/DEMOTED/CREATE_FAILED/STALE',
     created_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     updated_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    -- 未销毁环境的唯一键：同一用户/系统/实验只能有一个未销毁的环境；已销毁和预热池中的环境为 NULL，不参与唯一约束
+    active_key VARCHAR(160) GENERATED ALWAYS AS (
+        CASE WHEN status NOT IN ('DESTROYED', 'WARM') AND user_id <> '__warm_pool__'
+             THEN CONCAT(user_id, '|', IFNULL(system_id, ''), '|', exp_id) END
+    ) VIRTUAL COMMENT '未销毁环境唯一键',
+    UNIQUE KEY uk_active_env (active_key),
     INDEX idx_user_id (user_id),
     INDEX idx_exp_id (exp_id),
     INDEX idx_status (status),
     INDEX idx_created_time (created_time)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='虚拟环境表';
 
+-- 已有数据库升级（添加未销毁环境唯一约束，执行前需先清理重复的未销毁环境）：
+-- ALTER TABLE virtual_env
+--     ADD COLUMN active_key VARCHAR(160) GENERATED ALWAYS AS (
+--         CASE WHEN status NOT IN ('DESTROYED', 'WARM') AND user_id <> '__warm_pool__'
+--              THEN CONCAT(user_id, '|', IFNULL(system_id, ''), '|', exp_id) END
+--     ) VIRTUAL COMMENT '未销毁环境唯一键',
+--     ADD UNIQUE KEY uk_active_env (active_key);
+
+-- 已有数据库升级（空闲回收）：
+-- ALTER TABLE virtual_env
+--     ADD COLUMN last_active_time DATETIME COMMENT '最近活跃时间' AFTER url,
+--     ADD COLUMN status_reason VARCHAR(30) COMMENT '最近一次状态变更原因：MANUAL/IDLE/MAX_LIFETIME/DEMOTED/CREATE_FAILED/STALE' AFTER last_active_time;
+
+-- 已有数据库升级（守护进程分配端口模式，容器启动前端口为空）：
+-- ALTER TABLE virtual_env
+--     MODIFY COLUMN port INT COMMENT '宿主机端口（ephemeral 模式下容器启动后由守护进程分配）';
+
+-- 已有数据库升级（多端口实验的附加端口）：
+-- ALTER TABLE virtual_env
+--     ADD COLUMN extra_ports VARCHAR(500) COMMENT '附加端口映射（多端口实验，宿主机端口:容器端口，逗号分隔）' AFTER port;
+
+-- 已有数据库升级（编排模型指纹，重置时只重建变化的服务）：
+-- ALTER TABLE virtual_env
+--     ADD COLUMN compose_fingerprint VARCHAR(500) COMMENT '编排模型指纹（按服务的模型摘要，服务名=摘要，逗号分隔）' AFTER env_dir;
+
+-- 已有数据库升级（运行时描述，容器操作不再从 compose 文件推导项目名称）：
+-- ALTER TABLE virtual_env
+--     ADD COLUMN runtime_descriptor VARCHAR(2000) COMMENT '运行时描述（JSON：项目名称、容器ID、网络、数据卷）' AFTER compose_fingerprint;
+
 -- 端口使用表
 CREATE TABLE IF NOT EXISTS port_usage (
     port INT PRIMARY KEY COMMENT '端口号',
     env_id VARCHAR(50) COMMENT '环境ID',
     status VARCHAR(20) DEFAULT 'USED' COMMENT '状态：USED/FREE',
     allocated_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '分配时间',
+    lease_expires_time DATETIME COMMENT '租约到期时间',
     INDEX idx_env_id (env_id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='端口使用表';
 
+-- 已有数据库升级（端口租约）：
+-- ALTER TABLE port_usage
+--     ADD COLUMN lease_expires_time DATETIME COMMENT '租约到期时间' AFTER allocated_time;
+
@@ -0,0 +1,215 @@
+package org.dockerenvs.service;
+
+import org.dockerenvs.dao.mapper.VirtualEnvMapper;
+import org.dockerenvs.dto.ExperimentMetadata;
+import org.dockerenvs.exception.EnvException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AdmissionControlServiceTests {
+
+    private AdmissionControlService admissionControlService;
+    private ExecutorService waiters;
+    private final List<String> grantOrder = new CopyOnWriteArrayList<>();
+    private final Map<String, AdmissionControlService.Ticket> tickets = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        // 主机只放得下一个环境（每个实验 1 核）
+        admissionControlService = service(1.0, 100_000);
+        waiters = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        waiters.shutdownNow();
+    }
+
+    @Test
+    void queueRotatesAcrossSystemsThenUsers() throws Exception {
+        AdmissionControlService.Ticket holder = admissionControlService.acquire("u0", "s1", "e1", () -> { });
+        assertNotNull(holder);
+
+        enqueue("B", "u1", "s1", "e1", 1);
+        enqueue("C", "u1", "s1", "e2", 2);
+        enqueue("D", "u2", "s1", "e1", 3);
+        enqueue("E", "u3", "s2", "e1", 4);
+
+        // 系统 s1、s2 轮转，s1 内 u1、u2 轮转，同一用户先到先得
+        assertEquals(Integer.valueOf(1), admissionControlService.getQueuePosition("u1", "s1", "e1"));
+        assertEquals(Integer.valueOf(2), admissionControlService.getQueuePosition("u3", "s2", "e1"));
+        assertEquals(Integer.valueOf(3), admissionControlService.getQueuePosition("u2", "s1", "e1"));
+        assertEquals(Integer.valueOf(4), admissionControlService.getQueuePosition("u1", "s1", "e2"));
+        assertNull(admissionControlService.getQueuePosition("u9", "s1", "e1"));
+
+        // 每释放一个环境放行一个，放行顺序与排队位置一致
+        admissionControlService.release(holder, false);
+        for (int i = 0; i < 4; i++) {
+            int granted = i + 1;
+            await(() -> grantOrder.size() >= granted);
+            admissionControlService.release(tickets.get(grantOrder.get(i)), false);
+        }
+        assertEquals(Arrays.asList("B", "E", "D", "C"), grantOrder);
+        assertEquals(0, admissionControlService.getStats().get("waiting"));
+        assertEquals(0, admissionControlService.getStats().get("inFlight"));
+    }
+
+    @Test
+    void tryAcquireYieldsToWaitingRequests() throws Exception {
+        AdmissionControlService.Ticket holder = admissionControlService.acquire("u0", "s1", "e1", () -> { });
+        assertNull(admissionControlService.tryAcquire("e1"));
+
+        enqueue("B", "u1", "s1", "e1", 1);
+        admissionControlService.release(holder, false);
+        await(() -> grantOrder.size() == 1);
+        // 排队的请求已放行后主机又满了
+        assertNull(admissionControlService.tryAcquire("e1"));
+
+        admissionControlService.release(tickets.get("B"), false);
+        assertNotNull(admissionControlService.tryAcquire("e1"));
+    }
+
+    @Test
+    void interruptedWaiterLeavesQueue() throws Exception {
+        AdmissionControlService.Ticket holder = admissionControlService.acquire("u0", "s1", "e1", () -> { });
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                admissionControlService.acquire("u1", "s1", "e1", () -> { });
+            } catch (EnvException e) {
+                errors.add(e);
+            }
+        });
+        waiter.start();
+        await(() -> waiting() == 1);
+        waiter.interrupt();
+        waiter.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertEquals(1, errors.size());
+        assertEquals(AdmissionControlService.ERROR_CODE_TIMEOUT, ((EnvException) errors.get(0)).getErrorCode());
+        assertEquals(0, waiting());
+        assertEquals(1, admissionControlService.getStats().get("inFlight"));
+        admissionControlService.release(holder, false);
+        assertEquals(0, admissionControlService.getStats().get("inFlight"));
+    }
+
+    @Test
+    void queueFullIsRejected() throws Exception {
+        ReflectionTestUtils.setField(admissionControlService, "maxQueue", 1);
+        admissionControlService.acquire("u0", "s1", "e1", () -> { });
+        enqueue("B", "u1", "s1", "e1", 1);
+        EnvException e = assertThrows(EnvException.class,
+            () -> admissionControlService.acquire("u2", "s1", "e1", () -> { }));
+        assertEquals(AdmissionControlService.ERROR_CODE_QUEUE_FULL, e.getErrorCode());
+    }
+
+    @Test
+    void unknownCapacityAdmitsOneAtATime() {
+        AdmissionControlService unknown = service(0, 0);
+        AdmissionControlService.Ticket first = unknown.tryAcquire("e1");
+        assertNotNull(first);
+        assertNull(unknown.tryAcquire("e1"));
+        unknown.release(first, false);
+        assertNotNull(unknown.tryAcquire("e1"));
+    }
+
+    @Test
+    void refreshCountsInterruptedCreatesAndSurvivesBadMetadata() {
+        AdmissionControlService service = service(4.0, 100_000);
+        ReflectionTestUtils.setField(service, "defaultCpu", 0.5);
+        ReflectionTestUtils.setField(service, "defaultMemoryMb", 256);
+        EnvManagerService envManagerService =
+            (EnvManagerService) ReflectionTestUtils.getField(service, "envManagerService");
+        when(envManagerService.readExperimentMetadata("bad")).thenThrow(new EnvException("EXP_NOT_FOUND", "实验不存在"));
+        VirtualEnvMapper virtualEnvMapper = mock(VirtualEnvMapper.class);
+        when(virtualEnvMapper.countActiveByExpAndStatus()).thenReturn(Arrays.asList(
+            row("bad", "RUNNING", 1), row("e1", "PAUSED", 1), row("e1", "CREATING", 2)));
+        ReflectionTestUtils.setField(service, "virtualEnvMapper", virtualEnvMapper);
+
+        // 本进程持有一个 e1 的凭证，另一个 CREATING 记录来自重启前中断的创建
+        service.acquire("u1", "s1", "e1", () -> { });
+        ReflectionTestUtils.invokeMethod(service, "refresh");
+
+        Map<String, Object> stats = service.getStats();
+        assertEquals(1.5, stats.get("committedCpu"));
+        assertEquals(256L + 512 + 512, stats.get("committedMemoryMb"));
+        assertEquals(1, stats.get("inFlight"));
+    }
+
+    private static Map<String, Object> row(String expId, String status, long count) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("exp_id", expId);
+        row.put("status", status);
+        row.put("cnt", count);
+        return row;
+    }
+
+    /**
+     * 在后台线程中申请资源，等到该请求进入队列（排队数达到 expectedWaiting）后返回
+     */
+    private void enqueue(String name, String userId, String systemId, String expId, int expectedWaiting)
+            throws InterruptedException {
+        waiters.submit(() -> {
+            tickets.put(name, admissionControlService.acquire(userId, systemId, expId, () -> { }));
+            grantOrder.add(name);
+        });
+        await(() -> waiting() == expectedWaiting);
+    }
+
+    private int waiting() {
+        return (Integer) admissionControlService.getStats().get("waiting");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("等待条件超时");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static AdmissionControlService service(double cpuCapacity, long memoryCapacityMb) {
+        ExperimentMetadata metadata = new ExperimentMetadata();
+        metadata.setCpuCores(1.0);
+        metadata.setMemoryMb(512);
+        EnvManagerService envManagerService = mock(EnvManagerService.class);
+        when(envManagerService.readExperimentMetadata(anyString())).thenReturn(metadata);
+
+        AdmissionControlService service = new AdmissionControlService();
+        ReflectionTestUtils.setField(service, "envManagerService", envManagerService);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "cpuCapacity", cpuCapacity);
+        ReflectionTestUtils.setField(service, "memoryCapacityMb", memoryCapacityMb);
+        ReflectionTestUtils.setField(service, "reservedMemoryMb", 0L);
+        ReflectionTestUtils.setField(service, "cpuOvercommit", 1.0);
+        ReflectionTestUtils.setField(service, "memoryOvercommit", 1.0);
+        ReflectionTestUtils.setField(service, "queueTimeoutSeconds", 30L);
+        ReflectionTestUtils.setField(service, "maxQueue", 100);
+        ReflectionTestUtils.setField(service, "userRatePerMinute", 0.0);
+        return service;
+    }
+}
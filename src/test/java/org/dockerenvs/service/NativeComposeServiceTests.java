@@ -0,0 +1,51 @@
+package org.dockerenvs.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NativeComposeServiceTests {
+
+    @Test
+    void splitCommandOnWhitespace() {
+        assertEquals(Arrays.asList("java", "-jar", "/app/program/app.jar"),
+            NativeComposeService.splitCommand("  java   -jar\t/app/program/app.jar "));
+        assertEquals(Collections.emptyList(), NativeComposeService.splitCommand("   "));
+    }
+
+    @Test
+    void splitCommandKeepsQuotedArguments() {
+        assertEquals(Arrays.asList("sh", "-c", "cd /app && python main.py"),
+            NativeComposeService.splitCommand("sh -c 'cd /app && python main.py'"));
+        assertEquals(Arrays.asList("echo", "say \"hi\"", "it's"),
+            NativeComposeService.splitCommand("echo \"say \\\"hi\\\"\" it\\'s"));
+        assertEquals(Arrays.asList("--name=a b", ""),
+            NativeComposeService.splitCommand("--name=\"a b\" ''"));
+    }
+
+    @Test
+    void splitCommandKeepsBackslashInSingleQuotes() {
+        assertEquals(Arrays.asList("printf", "a\\nb"),
+            NativeComposeService.splitCommand("printf 'a\\nb'"));
+    }
+
+    @Test
+    void parseDurationInComposeFormat() {
+        assertEquals(Long.valueOf(30_000_000_000L), NativeComposeService.parseDurationNanos("30s"));
+        assertEquals(Long.valueOf(90_000_000_000L), NativeComposeService.parseDurationNanos("1m30s"));
+        assertEquals(Long.valueOf(500_000_000L), NativeComposeService.parseDurationNanos("500ms"));
+        assertEquals(Long.valueOf(1_500_000_000L), NativeComposeService.parseDurationNanos("1.5s"));
+        assertEquals(Long.valueOf(3_600_000_000_000L), NativeComposeService.parseDurationNanos("1h"));
+    }
+
+    @Test
+    void parseDurationRejectsEmptyOrUnknownValues() {
+        assertNull(NativeComposeService.parseDurationNanos(null));
+        assertNull(NativeComposeService.parseDurationNanos(" "));
+        assertNull(NativeComposeService.parseDurationNanos("soon"));
+    }
+}
@@ -0,0 +1,214 @@
+package org.dockerenvs.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.dockerenvs.dao.mapper.PortUsageMapper;
+import org.dockerenvs.dao.mapper.VirtualEnvMapper;
+import org.dockerenvs.entity.PortUsage;
+import org.dockerenvs.entity.VirtualEnv;
+import org.dockerenvs.exception.PortException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PortManagerServiceTests {
+
+    private static final int MIN_PORT = 20000;
+    private static final int MAX_PORT = 20009;
+
+    private PortManagerService portManagerService;
+
+    @BeforeEach
+    void setUp() {
+        portManagerService = new PortManagerService();
+        ReflectionTestUtils.setField(portManagerService, "minPort", MIN_PORT);
+        ReflectionTestUtils.setField(portManagerService, "maxPort", MAX_PORT);
+        ReflectionTestUtils.setField(portManagerService, "allocator", "bitmap");
+        ReflectionTestUtils.setField(portManagerService, "mode", "range");
+        ReflectionTestUtils.setField(portManagerService, "bitmap", new PortManagerService.PortBitmap(10));
+        ReflectionTestUtils.setField(portManagerService, "owners", new AtomicReferenceArray<String>(10));
+        ReflectionTestUtils.setField(portManagerService, "bitmapLoaded", true);
+        hostListeners();
+    }
+
+    @Test
+    void bitmapSetsAndClearsOnce() {
+        PortManagerService.PortBitmap bitmap = new PortManagerService.PortBitmap(100);
+        assertTrue(bitmap.trySet(65));
+        assertFalse(bitmap.trySet(65));
+        assertTrue(bitmap.isSet(65));
+        assertEquals(1, bitmap.cardinality());
+        assertTrue(bitmap.clear(65));
+        assertFalse(bitmap.clear(65));
+        assertEquals(0, bitmap.cardinality());
+    }
+
+    @Test
+    void bitmapNextClearSkipsFullWords() {
+        PortManagerService.PortBitmap bitmap = new PortManagerService.PortBitmap(100);
+        for (int i = 0; i < 70; i++) {
+            bitmap.trySet(i);
+        }
+        assertEquals(70, bitmap.nextClear(0, 100));
+        assertEquals(-1, bitmap.nextClear(0, 70));
+        assertEquals(80, bitmap.nextClear(80, 100));
+        for (int i = 70; i < 100; i++) {
+            bitmap.trySet(i);
+        }
+        assertEquals(-1, bitmap.nextClear(0, 100));
+    }
+
+    @Test
+    void assignRecordsOwnerAndReleaseFreesPort() {
+        assertEquals(Integer.valueOf(MIN_PORT), portManagerService.assignPort("env-a"));
+        assertEquals("env-a", owners().get(0));
+
+        assertEquals(1, portManagerService.releasePorts("env-a", Collections.singletonList(MIN_PORT)));
+        assertNull(owners().get(0));
+        assertEquals(0, portManagerService.releasePorts("env-a", Collections.singletonList(MIN_PORT)));
+    }
+
+    @Test
+    void lateReleaseKeepsReassignedPort() {
+        Integer port = portManagerService.assignPort("env-a");
+        portManagerService.releasePorts("env-a", Collections.singletonList(port));
+        // 轮转到末尾后端口被重新分配给 env-b
+        for (int i = 1; i < 10; i++) {
+            portManagerService.assignPort("env-" + i);
+        }
+        assertEquals(port, portManagerService.assignPort("env-b"));
+
+        assertEquals(0, portManagerService.releasePorts("env-a", Collections.singletonList(port)));
+        assertEquals("env-b", owners().get(port - MIN_PORT));
+        assertThrows(PortException.class, () -> portManagerService.assignPort("env-c"));
+        assertEquals(1, portManagerService.releasePorts("env-b", Collections.singletonList(port)));
+    }
+
+    @Test
+    void assignFailsWhenRangeIsExhaustedAndReusesReleasedPort() {
+        for (int i = 0; i < 10; i++) {
+            portManagerService.assignPort("env-" + i);
+        }
+        assertThrows(PortException.class, () -> portManagerService.assignPort("env-x"));
+
+        portManagerService.releasePorts("env-4", Collections.singletonList(MIN_PORT + 4));
+        assertEquals(Integer.valueOf(MIN_PORT + 4), portManagerService.assignPort("env-x"));
+        assertEquals("env-x", owners().get(4));
+    }
+
+    @Test
+    void firstUseLoadsPortTableAndLiveEnvs() {
+        // 按列查询的 Lambda 条件需要实体的表信息（应用中由 MyBatis-Plus 启动时注册）
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), PortUsage.class);
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), VirtualEnv.class);
+        PortUsage usage = new PortUsage();
+        usage.setPort(MIN_PORT);
+        usage.setEnvId("env-a");
+        // 写回前进程退出：env-b 的端口只在环境记录中
+        VirtualEnv env = new VirtualEnv();
+        env.setEnvId("env-b");
+        env.setPort(MIN_PORT + 1);
+        env.setExtraPorts((MIN_PORT + 2) + ":9090");
+        PortUsageMapper portUsageMapper = mock(PortUsageMapper.class);
+        VirtualEnvMapper virtualEnvMapper = mock(VirtualEnvMapper.class);
+        when(portUsageMapper.selectList(any())).thenReturn(Collections.singletonList(usage));
+        when(virtualEnvMapper.selectList(any())).thenReturn(Collections.singletonList(env));
+        ReflectionTestUtils.setField(portManagerService, "portUsageMapper", portUsageMapper);
+        ReflectionTestUtils.setField(portManagerService, "virtualEnvMapper", virtualEnvMapper);
+        ReflectionTestUtils.setField(portManagerService, "bitmapLoaded", false);
+
+        assertEquals(Integer.valueOf(MIN_PORT + 3), portManagerService.assignPort("env-c"));
+        assertEquals("env-a", owners().get(0));
+        assertEquals("env-b", owners().get(1));
+        assertEquals("env-b", owners().get(2));
+    }
+
+    @Test
+    void assignSkipsHostListeners() {
+        hostListeners(MIN_PORT, MIN_PORT + 1);
+        assertEquals(Integer.valueOf(MIN_PORT + 2), portManagerService.assignPort("env-a"));
+    }
+
+    @Test
+    void contiguousBlockRestartsAfterBusyPort() {
+        hostListeners(MIN_PORT + 2);
+        List<Integer> block = portManagerService.assignPortBlock("env-a", 3, true);
+        assertEquals(Arrays.asList(MIN_PORT + 3, MIN_PORT + 4, MIN_PORT + 5), block);
+        for (Integer port : block) {
+            assertEquals("env-a", owners().get(port - MIN_PORT));
+        }
+    }
+
+    @Test
+    void blockAllocationIsAllOrNothing() {
+        Map<String, List<Integer>> blocks = portManagerService.assignPortBlocks(
+            Arrays.asList("env-a", "env-b"), 4, false);
+        assertEquals(4, blocks.get("env-a").size());
+        assertEquals(4, blocks.get("env-b").size());
+
+        assertThrows(PortException.class, () -> portManagerService.assignPortBlocks(
+            Arrays.asList("env-c", "env-d"), 2, false));
+        // 第一组分配成功后第二组失败，第一组的端口也要退回
+        assertEquals(Integer.valueOf(MIN_PORT + 8), portManagerService.assignPort("env-e"));
+        assertEquals(Integer.valueOf(MIN_PORT + 9), portManagerService.assignPort("env-f"));
+    }
+
+    @Test
+    void parseExtraPortsMapsContainerPortToHostPort() {
+        Map<String, Integer> mappings = PortManagerService.parseExtraPorts("18001:9090, 18002:9091/udp,bad,x:1");
+        assertEquals(2, mappings.size());
+        assertEquals(Integer.valueOf(18001), mappings.get("9090"));
+        assertEquals(Integer.valueOf(18002), mappings.get("9091/udp"));
+        assertTrue(PortManagerService.parseExtraPorts(null).isEmpty());
+        assertTrue(PortManagerService.parseExtraPorts("").isEmpty());
+    }
+
+    @Test
+    void envPortsIncludesExtraPorts() {
+        VirtualEnv env = new VirtualEnv();
+        env.setPort(18000);
+        env.setExtraPorts("18001:9090,18002:9091");
+        assertEquals(Arrays.asList(18000, 18001, 18002), PortManagerService.envPorts(env));
+    }
+
+    @Test
+    void parseListenerPortsKeepsOnlyListenState() {
+        List<String> lines = Arrays.asList(
+            "  sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode",
+            "   0: 00000000:1F90 00000000:0000 0A 00000000:00000000 00:00000000 00000000     0        0 1001",
+            "   1: 0100007F:4E20 00000000:0000 0A 00000000:00000000 00:00000000 00000000     0        0 1002",
+            "   2: 0100007F:9C40 0100007F:1F90 01 00000000:00000000 00:00000000 00000000     0        0 1003",
+            "   3: 00000000000000000000000000000000:4E21 00000000000000000000000000000000:0000 0A 0 0 0");
+        assertEquals(new HashSet<>(Arrays.asList(8080, 20000, 20001)), PortManagerService.parseListenerPorts(lines));
+    }
+
+    /**
+     * 固定宿主机监听端口快照，不读取 /proc/net/tcp
+     */
+    private void hostListeners(Integer... ports) {
+        ReflectionTestUtils.setField(portManagerService, "hostListeners", new HashSet<>(Arrays.asList(ports)));
+        ReflectionTestUtils.setField(portManagerService, "hostScannedAt", Long.MAX_VALUE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AtomicReferenceArray<String> owners() {
+        return (AtomicReferenceArray<String>) ReflectionTestUtils.getField(portManagerService, "owners");
+    }
+}
@@ -0,0 +1,133 @@
+package org.dockerenvs.service;
+
+import org.dockerenvs.dto.ComposeServiceSpec;
+import org.dockerenvs.dto.ComposeSpec;
+import org.dockerenvs.dto.DatabaseConfig;
+import org.dockerenvs.provider.MySqlStandaloneProvider;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TemplateManagerServiceTests {
+
+    private final TemplateManagerService templateManagerService = new TemplateManagerService();
+
+    @Test
+    void fingerprintIsStableForEqualModels() {
+        Map<String, String> first = templateManagerService.fingerprint(spec("java-base:latest", "mysql:8"));
+        Map<String, String> second = templateManagerService.fingerprint(spec("java-base:latest", "mysql:8"));
+        assertEquals(Arrays.asList("app", "db"), new ArrayList<>(first.keySet()));
+        assertEquals(first, second);
+        assertEquals(16, first.get("app").length());
+    }
+
+    @Test
+    void fingerprintChangesOnlyForChangedService() {
+        Map<String, String> before = templateManagerService.fingerprint(spec("java-base:latest", "mysql:8"));
+        Map<String, String> after = templateManagerService.fingerprint(spec("java-base:17", "mysql:8"));
+        assertNotEquals(before.get("app"), after.get("app"));
+        assertEquals(before.get("db"), after.get("db"));
+    }
+
+    @Test
+    void fingerprintIgnoresEnvironmentOrder() {
+        ComposeSpec first = spec("java-base:latest", "mysql:8");
+        ComposeSpec second = spec("java-base:latest", "mysql:8");
+        first.getServices().get(0).getEnvironment().put("A", "1");
+        first.getServices().get(0).getEnvironment().put("B", "2");
+        second.getServices().get(0).getEnvironment().put("B", "2");
+        second.getServices().get(0).getEnvironment().put("A", "1");
+        assertEquals(templateManagerService.fingerprint(first), templateManagerService.fingerprint(second));
+    }
+
+    @Test
+    void projectChangesAffectEveryService() {
+        Map<String, String> before = templateManagerService.fingerprint(spec("java-base:latest", "mysql:8"));
+        ComposeSpec relabeled = spec("java-base:latest", "mysql:8");
+        relabeled.getLabels().put(DockerOpsService.USER_ID_LABEL, "u2");
+        Map<String, String> after = templateManagerService.fingerprint(relabeled);
+        assertNotEquals(before.get("app"), after.get("app"));
+        assertNotEquals(before.get("db"), after.get("db"));
+    }
+
+    @Test
+    void fingerprintFormatRoundTrips() {
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        fingerprints.put("app", "0123456789abcdef");
+        fingerprints.put("db", "fedcba9876543210");
+        String formatted = TemplateManagerService.formatFingerprint(fingerprints);
+        assertEquals("app=0123456789abcdef,db=fedcba9876543210", formatted);
+        assertEquals(fingerprints, TemplateManagerService.parseFingerprint(formatted));
+        assertTrue(TemplateManagerService.parseFingerprint(null).isEmpty());
+        assertTrue(TemplateManagerService.parseFingerprint("").isEmpty());
+    }
+
+    @Test
+    void changedServicesComparesWithRecordedFingerprint() {
+        Map<String, String> current = new LinkedHashMap<>();
+        current.put("app", "1111");
+        current.put("db", "2222");
+        current.put("cache", "3333");
+        assertEquals(Collections.singleton("cache"),
+            EnvManagerService.changedServices("app=1111,db=2222", current));
+        assertEquals(current.keySet(),
+            EnvManagerService.changedServices(null, current));
+        assertEquals(Collections.singleton("app"),
+            EnvManagerService.changedServices("app=0000,db=2222,cache=3333", current));
+    }
+
+    @Test
+    void quoteComposeStringEscapesYamlAndInterpolation() {
+        assertEquals("\"env.user=alice\"", TemplateManagerService.quoteComposeString("env.user=alice"));
+        assertEquals("\"a\\\"b\\\\c\"", TemplateManagerService.quoteComposeString("a\"b\\c"));
+        assertEquals("\"x\\ny: 1 # z\"", TemplateManagerService.quoteComposeString("x\ny: 1 # z"));
+        assertEquals("\"$${HOME}\"", TemplateManagerService.quoteComposeString("${HOME}"));
+        assertEquals("\"\\u0001\"", TemplateManagerService.quoteComposeString("\u0001"));
+    }
+
+    @Test
+    void dbServiceLabelsAreQuoted() {
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put(DockerOpsService.USER_ID_LABEL, "a\"\n    privileged: true");
+        labels.put(DockerOpsService.EXP_ID_LABEL, "${SECRET}");
+        Map<String, Object> context = new HashMap<>();
+        context.put("containerName", "env-test");
+        context.put("networkName", "env-test-net");
+        context.put("envDir", "/tmp/env-test");
+        context.put("labels", labels);
+        String config = new MySqlStandaloneProvider().getServiceConfig(new DatabaseConfig(), context);
+        assertTrue(config.contains("      - \"" + DockerOpsService.USER_ID_LABEL + "=a\\\"\\n    privileged: true\"\n"));
+        assertTrue(config.contains("      - \"" + DockerOpsService.EXP_ID_LABEL + "=$${SECRET}\"\n"));
+        assertFalse(config.contains("\n    privileged: true"));
+    }
+
+    private ComposeSpec spec(String appImage, String dbImage) {
+        ComposeSpec spec = new ComposeSpec();
+        spec.setProjectName("env-test");
+        spec.getNetworks().add("env-test-net");
+        spec.getLabels().put(DockerOpsService.ENV_ID_LABEL, "test");
+        spec.getLabels().put(DockerOpsService.USER_ID_LABEL, "u1");
+        spec.getServices().add(service("app", appImage));
+        spec.getServices().add(service("db", dbImage));
+        return spec;
+    }
+
+    private ComposeServiceSpec service(String name, String image) {
+        ComposeServiceSpec service = new ComposeServiceSpec();
+        service.setName(name);
+        service.setImage(image);
+        service.setContainerName("env-test-" + name);
+        service.getNetworks().add("env-test-net");
+        return service;
+    }
+}